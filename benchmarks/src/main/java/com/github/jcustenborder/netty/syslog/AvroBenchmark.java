@@ -0,0 +1,178 @@
+/**
+ * Copyright © 2018 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.netty.syslog;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encodes and decodes the parsed samples with {@link AvroMessageEncoder} and
+ * {@link AvroMessageDecoder}, one message per frame and all of them in one batch, and with Jackson
+ * JSON written to a pooled buffer. The number of bytes per message of each format is printed
+ * during setup.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AvroBenchmark {
+  static final int MESSAGES = 512;
+
+  public enum Format {
+    JSON,
+    AVRO,
+    AVRO_BATCH
+  }
+
+  @Param({"JSON", "AVRO", "AVRO_BATCH"})
+  public Format format;
+
+  List<Message> messages;
+  ObjectMapper mapper;
+  EmbeddedChannel encoder;
+  EmbeddedChannel decoder;
+  List<ByteBuf> encoded;
+
+  static List<Message> messages(int count) {
+    final List<String> samples = new ArrayList<>();
+    for (String type : Arrays.asList("cef", "rfc3164", "rfc5424")) {
+      samples.addAll(Corpus.samples(type));
+    }
+    final SyslogMessageHandler handler = new SyslogMessageHandler();
+    final List<Message> parsed = new ArrayList<>();
+    for (SyslogRequest request : MessageParserBenchmark.requests(samples)) {
+      final Message message = handler.parse(request);
+      if (null != message) {
+        parsed.add(message);
+      }
+    }
+    final List<Message> result = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      result.add(parsed.get(i % parsed.size()));
+    }
+    return result;
+  }
+
+  @Setup
+  public void setup() throws IOException {
+    this.messages = messages(MESSAGES);
+    this.mapper = new ObjectMapper()
+        .configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false)
+        .setSerializationInclusion(JsonInclude.Include.NON_NULL)
+        .registerModule(new JavaTimeModule());
+    this.encoder = new EmbeddedChannel(new AvroMessageEncoder());
+    this.decoder = new EmbeddedChannel(new AvroMessageDecoder());
+    this.encoded = encode();
+    int bytes = 0;
+    for (ByteBuf buffer : this.encoded) {
+      bytes += buffer.readableBytes();
+    }
+    System.out.printf("%n%s: %.1f bytes per message%n", this.format, bytes / (double) MESSAGES);
+  }
+
+  @TearDown
+  public void tearDown() {
+    for (ByteBuf buffer : this.encoded) {
+      buffer.release();
+    }
+    this.encoder.finishAndReleaseAll();
+    this.decoder.finishAndReleaseAll();
+  }
+
+  List<ByteBuf> encode() throws IOException {
+    final List<ByteBuf> result = new ArrayList<>();
+    switch (this.format) {
+      case JSON:
+        for (Message message : this.messages) {
+          final ByteBuf buffer = PooledByteBufAllocator.DEFAULT.ioBuffer();
+          // ByteBufOutputStream is a DataOutput as well, pick the OutputStream overload.
+          final OutputStream outputStream = new ByteBufOutputStream(buffer);
+          this.mapper.writeValue(outputStream, message);
+          result.add(buffer);
+        }
+        break;
+      case AVRO:
+        for (Message message : this.messages) {
+          this.encoder.writeOutbound(message);
+          result.add(this.encoder.readOutbound());
+        }
+        break;
+      default:
+        this.encoder.writeOutbound(new ArrayList<>(this.messages));
+        result.add(this.encoder.readOutbound());
+        break;
+    }
+    return result;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(MESSAGES)
+  public int encodeMessages() throws IOException {
+    int result = 0;
+    for (ByteBuf buffer : encode()) {
+      result += buffer.readableBytes();
+      buffer.release();
+    }
+    return result;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(MESSAGES)
+  public int decodeMessages() throws IOException {
+    int result = 0;
+    for (ByteBuf buffer : this.encoded) {
+      if (Format.JSON == this.format) {
+        final InputStream inputStream = new ByteBufInputStream(buffer.duplicate());
+        result += this.mapper.readValue(inputStream, SyslogMessage.class).rawMessage().length();
+      } else {
+        this.decoder.writeInbound(buffer.retainedDuplicate());
+        final Object decoded = this.decoder.readInbound();
+        result += decoded instanceof List ? ((List<?>) decoded).size() : 1;
+      }
+    }
+    return result;
+  }
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright © 2018 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.netty.syslog;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Messages used by the benchmarks. The samples from the test resources of netty-codec-syslog are
+ * combined with synthetic long messages and messages with a lot of structured data. The location
+ * of the test resources can be changed with the syslog.corpus system property, by default the
+ * benchmarks are expected to be run from the benchmarks directory.
+ */
+final class Corpus {
+  static final String DIRECTORY = System.getProperty(
+      "syslog.corpus",
+      "../src/test/resources/com/github/jcustenborder/netty/syslog"
+  );
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private Corpus() {
+  }
+
+  /**
+   * Method is used to load the samples of a single format.
+   *
+   * @param type cef, rfc3164 or rfc5424
+   * @return Raw messages.
+   */
+  static List<String> samples(String type) {
+    final File directory = new File(DIRECTORY, type);
+    final File[] files = directory.listFiles(f -> f.getName().endsWith(".json"));
+    if (null == files || files.length == 0) {
+      throw new IllegalStateException(
+          String.format("Could not find samples in '%s'. Set -Dsyslog.corpus to the test resources.", directory.getAbsolutePath())
+      );
+    }
+    Arrays.sort(files);
+    final List<String> result = new ArrayList<>(files.length);
+    for (File file : files) {
+      try {
+        final JsonNode node = MAPPER.readTree(file);
+        result.add(node.get("input").asText());
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return rfc 3164 message with a message body of about 8k.
+   */
+  static String longMessage() {
+    final StringBuilder builder = new StringBuilder("<34>Oct 11 22:14:15 mymachine.example.com su[1234]: ");
+    while (builder.length() < 8192) {
+      builder.append("'su root' failed for lonvick on /dev/pts/8 ");
+    }
+    return builder.toString();
+  }
+
+  /**
+   * @return rfc 5424 message with several structured data elements with many params.
+   */
+  static String structuredDataMessage() {
+    final StringBuilder builder = new StringBuilder("<165>1 2003-10-11T22:14:15.003Z mymachine.example.com auditd 4321 ID47 ");
+    for (int element = 0; element < 4; element++) {
+      builder.append("[audit").append(element).append("@32473");
+      for (int param = 0; param < 16; param++) {
+        builder.append(" key").append(param).append("=\"value \\\"").append(param).append("\\\" \\]\"");
+      }
+      builder.append(']');
+    }
+    builder.append(" BOMAn application event log entry...");
+    return builder.toString();
+  }
+
+  /**
+   * @return Every sample and synthetic message in a fixed random order.
+   */
+  static List<String> mixed() {
+    final List<String> result = new ArrayList<>();
+    result.addAll(samples("cef"));
+    result.addAll(samples("rfc3164"));
+    result.addAll(samples("rfc5424"));
+    result.add(longMessage());
+    result.add(structuredDataMessage());
+    Collections.shuffle(result, new Random(1234));
+    return result;
+  }
+}
@@ -0,0 +1,130 @@
+/**
+ * Copyright © 2018 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.netty.syslog;
+
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.ReferenceCountUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link SyslogForwarder} sending to a {@link SyslogServer} over loopback tcp. Each invocation
+ * sends a batch of messages and waits until the server has parsed all of them. A max flush batch
+ * of 1 flushes every message, which is what a writeAndFlush per message without
+ * {@link io.netty.handler.flush.FlushConsolidationHandler} does.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ForwarderBenchmark {
+  static final int MESSAGES = 10000;
+  static final int PORT = 21514;
+
+  @Param({"1", "256"})
+  public int maxFlushBatch;
+
+  @Param({"1", "4"})
+  public int connectionsPerTarget;
+
+  @ChannelHandler.Sharable
+  static class CountingHandler extends ChannelInboundHandlerAdapter {
+    final AtomicLong count = new AtomicLong();
+
+    @Override
+    public void channelRead(ChannelHandlerContext context, Object message) {
+      ReferenceCountUtil.release(message);
+      this.count.incrementAndGet();
+    }
+  }
+
+  Message message;
+  CountingHandler handler;
+  SyslogServer server;
+  SyslogForwarder forwarder;
+  long expected;
+
+  @Setup
+  public void setup() throws Exception {
+    final SyslogMessageHandler messageHandler = new SyslogMessageHandler(
+        Arrays.asList(new CEFMessageParser(), new RFC5424ScanningMessageParser(), new RFC3164ScanningMessageParser())
+    );
+    this.message = messageHandler.parse(
+        MessageParserBenchmark.requests(Arrays.asList(MessageEncoderBenchmark.sample(MessageType.RFC5424)))[0]
+    );
+    final InetAddress loopback = InetAddress.getLoopbackAddress();
+    this.handler = new CountingHandler();
+    this.server = SyslogServer.builder()
+        .bindAddress(loopback)
+        .tcp(PORT, MessageType.RFC5424)
+        .workerThreads(this.connectionsPerTarget)
+        .handler(this.handler)
+        .build()
+        .start();
+    this.forwarder = SyslogForwarder.builder()
+        .target(new InetSocketAddress(loopback, PORT))
+        .connectionsPerTarget(this.connectionsPerTarget)
+        .workerThreads(this.connectionsPerTarget)
+        .maxFlushBatch(this.maxFlushBatch)
+        .build()
+        .start();
+    while (this.forwarder.activeCount() < this.connectionsPerTarget) {
+      Thread.sleep(10);
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    this.forwarder.close();
+    this.server.close();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(MESSAGES)
+  public long forward() throws InterruptedException {
+    for (int i = 0; i < MESSAGES; i++) {
+      while (!this.forwarder.send(this.message)) {
+        Thread.yield();
+      }
+    }
+    this.expected += MESSAGES;
+    while (this.handler.count.get() < this.expected) {
+      Thread.yield();
+    }
+    return this.expected;
+  }
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright © 2018 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.netty.syslog;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encodes a message of each {@link MessageType} with {@link MessageEncoder}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MessageEncoderBenchmark {
+  @Param({"CEF", "RFC3164", "RFC5424"})
+  public MessageType type;
+
+  Message message;
+  EmbeddedChannel channel;
+
+  static String sample(MessageType type) {
+    switch (type) {
+      case CEF:
+        return "<134>Oct 11 22:14:15 host.example.com CEF:0|Security|threatmanager|1.0|100|worm successfully stopped|10|" +
+            "src=10.0.0.1 dst=2.1.2.2 spt=1232 act=blocked msg=Detected a threat. No action needed.";
+      case RFC3164:
+        return "<34>Oct 11 22:14:15 mymachine su[1234]: 'su root' failed for lonvick on /dev/pts/8";
+      case RFC5424:
+        return "<165>1 2003-10-11T22:14:15.003Z mymachine.example.com evntslog 1234 ID47 " +
+            "[exampleSDID@32473 iut=\"3\" eventSource=\"Application\" eventID=\"1011\"] BOMAn application event log entry...";
+      default:
+        throw new IllegalArgumentException("Unsupported type " + type);
+    }
+  }
+
+  @Setup
+  public void setup() {
+    final SyslogMessageHandler handler = new SyslogMessageHandler(
+        Arrays.asList(new CEFMessageParser(), new RFC5424ScanningMessageParser(), new RFC3164ScanningMessageParser())
+    );
+    this.message = handler.parse(MessageParserBenchmark.requests(Arrays.asList(sample(this.type)))[0]);
+    if (null == this.message || this.type != this.message.type()) {
+      throw new IllegalStateException("Could not parse the sample for " + this.type);
+    }
+    this.channel = new EmbeddedChannel(new MessageEncoder(DateTimeFormatter.ofPattern("MMM d HH:mm:ss")));
+  }
+
+  @TearDown
+  public void tearDown() {
+    this.channel.finishAndReleaseAll();
+  }
+
+  @Benchmark
+  public int encode() {
+    this.channel.writeOutbound(this.message);
+    final ByteBuf buffer = this.channel.readOutbound();
+    final int result = buffer.readableBytes();
+    buffer.release();
+    return result;
+  }
+}
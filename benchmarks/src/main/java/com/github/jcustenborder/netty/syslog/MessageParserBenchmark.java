@@ -0,0 +1,100 @@
+/**
+ * Copyright © 2018 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.netty.syslog;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.InetAddress;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses the messages of a corpus with each parser. The mixed corpus includes messages in other
+ * formats so the cost of rejecting a message is measured as well.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MessageParserBenchmark {
+  @Param({
+      "RFC3164MessageParser",
+      "RFC3164ScanningMessageParser",
+      "RFC5424MessageParser",
+      "RFC5424ScanningMessageParser",
+      "CEFMessageParser"
+  })
+  public String parserName;
+
+  @Param({"mixed", "native"})
+  public String corpus;
+
+  MessageParser parser;
+  SyslogRequest[] requests;
+  int index;
+
+  static SyslogRequest[] requests(List<String> messages) {
+    final SyslogRequest[] result = new SyslogRequest[messages.size()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = ImmutableSyslogRequest.builder()
+          .receivedDate(LocalDateTime.now())
+          .remoteAddress(InetAddress.getLoopbackAddress())
+          .rawMessage(messages.get(i))
+          .build();
+    }
+    return result;
+  }
+
+  @Setup
+  public void setup() throws Exception {
+    this.parser = (MessageParser) Class.forName(MessageParser.class.getPackage().getName() + "." + this.parserName)
+        .getDeclaredConstructor()
+        .newInstance();
+    final List<String> messages;
+    if ("mixed".equals(this.corpus)) {
+      messages = Corpus.mixed();
+    } else {
+      final MessageType type = this.parser.type();
+      messages = Corpus.samples(type.name().toLowerCase());
+      if (MessageType.RFC3164 == type) {
+        messages.add(Corpus.longMessage());
+      } else if (MessageType.RFC5424 == type) {
+        messages.add(Corpus.structuredDataMessage());
+      }
+    }
+    this.requests = requests(messages);
+  }
+
+  @Benchmark
+  public Message parse() {
+    final SyslogRequest request = this.requests[this.index];
+    this.index = this.index + 1 == this.requests.length ? 0 : this.index + 1;
+    return this.parser.parse(request);
+  }
+}
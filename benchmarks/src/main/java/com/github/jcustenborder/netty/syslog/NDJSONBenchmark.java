@@ -0,0 +1,101 @@
+/**
+ * Copyright © 2018 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.netty.syslog;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.MessageToByteEncoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the parsed samples as newline delimited JSON with {@link NDJSONMessageEncoder} and with
+ * an encoder that serializes with Jackson databind to a byte array and copies it into a pooled
+ * buffer.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class NDJSONBenchmark {
+  static final int MESSAGES = AvroBenchmark.MESSAGES;
+
+  @Param({"JACKSON", "NDJSON"})
+  public String encoder;
+
+  static class JacksonEncoder extends MessageToByteEncoder<Message> {
+    final ObjectMapper mapper = new ObjectMapper()
+        .configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false)
+        .setSerializationInclusion(JsonInclude.Include.NON_NULL)
+        .registerModule(new JavaTimeModule());
+
+    @Override
+    protected void encode(ChannelHandlerContext context, Message message, ByteBuf buffer) throws Exception {
+      buffer.writeBytes(this.mapper.writeValueAsBytes(message));
+      buffer.writeByte('\n');
+    }
+  }
+
+  List<Message> messages;
+  EmbeddedChannel channel;
+
+  @Setup
+  public void setup() {
+    this.messages = AvroBenchmark.messages(MESSAGES);
+    this.channel = new EmbeddedChannel(
+        "JACKSON".equals(this.encoder) ? new JacksonEncoder() : new NDJSONMessageEncoder()
+    );
+  }
+
+  @TearDown
+  public void tearDown() {
+    this.channel.finishAndReleaseAll();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(MESSAGES)
+  public int encode() {
+    int result = 0;
+    for (Message message : this.messages) {
+      this.channel.writeOutbound(message);
+      final ByteBuf buffer = this.channel.readOutbound();
+      result += buffer.readableBytes();
+      buffer.release();
+    }
+    return result;
+  }
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright © 2018 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.netty.syslog;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.CharsetUtil;
+import io.netty.util.ReferenceCountUtil;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.List;
+
+/**
+ * Helpers used to build the byte streams fed to the decoders.
+ */
+public final class Streams {
+  static final InetSocketAddress REMOTE = new InetSocketAddress("127.0.0.1", 51400);
+  static final InetSocketAddress LOCAL = new InetSocketAddress("127.0.0.1", 514);
+
+  public enum Framing {
+    /**
+     * Each message is followed by a line feed.
+     */
+    LF,
+    /**
+     * Each message is prefixed by its length in bytes and a space. rfc 6587 section 3.4.1.
+     */
+    OCTET_COUNTED
+  }
+
+  private Streams() {
+  }
+
+  /**
+   * Method is used to write the messages to a single direct buffer with the supplied framing. Line
+   * feeds inside of the messages are replaced with spaces so every message is one frame.
+   */
+  static ByteBuf stream(List<String> messages, Framing framing) {
+    final ByteBuf result = Unpooled.directBuffer();
+    for (String message : messages) {
+      final byte[] bytes = message.replace('\n', ' ').getBytes(CharsetUtil.UTF_8);
+      if (Framing.OCTET_COUNTED == framing) {
+        result.writeCharSequence(Integer.toString(bytes.length), CharsetUtil.US_ASCII);
+        result.writeByte(' ');
+        result.writeBytes(bytes);
+      } else {
+        result.writeBytes(bytes);
+        result.writeByte('\n');
+      }
+    }
+    return Unpooled.unreleasableBuffer(result);
+  }
+
+  /**
+   * Method is used to read and release everything that reached the end of the pipeline.
+   *
+   * @return Number of messages that were read.
+   */
+  static int drain(EmbeddedChannel channel) {
+    int count = 0;
+    Object message;
+    while (null != (message = channel.readInbound())) {
+      ReferenceCountUtil.release(message);
+      count++;
+    }
+    return count;
+  }
+
+  /**
+   * EmbeddedChannel with an {@link InetSocketAddress} as the remote address like a tcp channel.
+   */
+  static final class RemoteChannel extends EmbeddedChannel {
+    RemoteChannel(ChannelHandler... handlers) {
+      super(handlers);
+    }
+
+    @Override
+    public SocketAddress remoteAddress() {
+      return REMOTE;
+    }
+  }
+}
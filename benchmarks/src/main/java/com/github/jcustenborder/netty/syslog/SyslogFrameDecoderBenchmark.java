@@ -0,0 +1,82 @@
+/**
+ * Copyright © 2018 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.netty.syslog;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Splits a stream of {@link #MESSAGES} messages into frames. An operation is a single frame.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SyslogFrameDecoderBenchmark {
+  static final int MESSAGES = 1000;
+
+  @Param({"LF", "OCTET_COUNTED"})
+  public Streams.Framing framing;
+
+  ByteBuf stream;
+  EmbeddedChannel channel;
+
+  static List<String> messages(int count) {
+    final List<String> corpus = Corpus.mixed();
+    final List<String> result = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      result.add(corpus.get(i % corpus.size()));
+    }
+    return result;
+  }
+
+  @Setup
+  public void setup() {
+    this.stream = Streams.stream(messages(MESSAGES), this.framing);
+    this.channel = new EmbeddedChannel(new SyslogFrameDecoder(16 * 1024));
+  }
+
+  @TearDown
+  public void tearDown() {
+    this.channel.finishAndReleaseAll();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(MESSAGES)
+  public int decode() {
+    this.channel.writeInbound(this.stream.duplicate());
+    return Streams.drain(this.channel);
+  }
+}
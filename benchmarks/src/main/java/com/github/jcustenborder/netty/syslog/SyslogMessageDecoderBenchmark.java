@@ -0,0 +1,89 @@
+/**
+ * Copyright © 2018 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.netty.syslog;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.util.CharsetUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turns frames into {@link SyslogRequest}s with {@link TCPSyslogMessageDecoder} and
+ * {@link UDPSyslogMessageDecoder}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SyslogMessageDecoderBenchmark {
+  ByteBuf[] frames;
+  EmbeddedChannel tcp;
+  EmbeddedChannel udp;
+  int index;
+
+  @Setup
+  public void setup() {
+    final List<String> messages = Corpus.mixed();
+    this.frames = new ByteBuf[messages.size()];
+    for (int i = 0; i < this.frames.length; i++) {
+      final byte[] bytes = messages.get(i).getBytes(CharsetUtil.UTF_8);
+      this.frames[i] = Unpooled.unreleasableBuffer(Unpooled.directBuffer(bytes.length).writeBytes(bytes));
+    }
+    this.tcp = new Streams.RemoteChannel(new TCPSyslogMessageDecoder());
+    this.udp = new EmbeddedChannel(new UDPSyslogMessageDecoder());
+  }
+
+  @TearDown
+  public void tearDown() {
+    this.tcp.finishAndReleaseAll();
+    this.udp.finishAndReleaseAll();
+  }
+
+  ByteBuf next() {
+    final ByteBuf frame = this.frames[this.index];
+    this.index = this.index + 1 == this.frames.length ? 0 : this.index + 1;
+    return frame.duplicate();
+  }
+
+  @Benchmark
+  public Object tcp() {
+    this.tcp.writeInbound(next());
+    return this.tcp.readInbound();
+  }
+
+  @Benchmark
+  public Object udp() {
+    this.udp.writeInbound(new DatagramPacket(next(), Streams.LOCAL, Streams.REMOTE));
+    return this.udp.readInbound();
+  }
+}
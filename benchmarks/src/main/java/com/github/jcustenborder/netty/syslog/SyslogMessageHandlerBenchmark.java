@@ -0,0 +1,86 @@
+/**
+ * Copyright © 2018 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.netty.syslog;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link SyslogMessageHandler} on its own and at the end of a tcp pipeline that starts
+ * with the bytes read from the socket.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SyslogMessageHandlerBenchmark {
+  static final int MESSAGES = SyslogFrameDecoderBenchmark.MESSAGES;
+
+  SyslogRequest[] requests;
+  int index;
+  EmbeddedChannel handler;
+  ByteBuf stream;
+  EmbeddedChannel pipeline;
+
+  @Setup
+  public void setup() {
+    this.requests = MessageParserBenchmark.requests(Corpus.mixed());
+    this.handler = new EmbeddedChannel(new SyslogMessageHandler());
+    this.stream = Streams.stream(SyslogFrameDecoderBenchmark.messages(MESSAGES), Streams.Framing.LF);
+    this.pipeline = new Streams.RemoteChannel(
+        new SyslogFrameDecoder(16 * 1024),
+        new TCPSyslogMessageDecoder(),
+        new SyslogMessageHandler()
+    );
+  }
+
+  @TearDown
+  public void tearDown() {
+    this.handler.finishAndReleaseAll();
+    this.pipeline.finishAndReleaseAll();
+  }
+
+  @Benchmark
+  public Object handler() {
+    final SyslogRequest request = this.requests[this.index];
+    this.index = this.index + 1 == this.requests.length ? 0 : this.index + 1;
+    this.handler.writeInbound(request);
+    return this.handler.readInbound();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(MESSAGES)
+  public int pipeline() {
+    this.pipeline.writeInbound(this.stream.duplicate());
+    return Streams.drain(this.pipeline);
+  }
+}
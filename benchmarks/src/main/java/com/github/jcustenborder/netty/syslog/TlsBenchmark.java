@@ -0,0 +1,116 @@
+/**
+ * Copyright © 2018 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.netty.syslog;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
+import io.netty.handler.ssl.util.SelfSignedCertificate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rfc 5425 pipeline with the JDK and OpenSSL engines. The client encrypts octet counted frames in
+ * memory and the server decrypts, frames and parses them. OpenSSL needs netty-tcnative, which is a
+ * dependency of this module.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TlsBenchmark {
+  static final int MESSAGES = SyslogFrameDecoderBenchmark.MESSAGES;
+
+  @Param({"JDK", "OPENSSL"})
+  public SslProvider provider;
+
+  SelfSignedCertificate certificate;
+  ByteBuf stream;
+  EmbeddedChannel client;
+  EmbeddedChannel server;
+
+  @Setup
+  public void setup() throws Exception {
+    this.certificate = new SelfSignedCertificate();
+    final SslContext serverContext = SyslogTls.forServer(this.certificate.certificate(), this.certificate.privateKey())
+        .sslProvider(this.provider)
+        .build();
+    final SslContext clientContext = SslContextBuilder.forClient()
+        .sslProvider(this.provider)
+        .trustManager(InsecureTrustManagerFactory.INSTANCE)
+        .build();
+    this.stream = Streams.stream(SyslogFrameDecoderBenchmark.messages(MESSAGES), Streams.Framing.OCTET_COUNTED);
+    this.server = new Streams.RemoteChannel(
+        serverContext.newHandler(ByteBufAllocator.DEFAULT),
+        new SyslogFrameDecoder(16 * 1024),
+        new TCPSyslogMessageDecoder(),
+        new SyslogMessageHandler()
+    );
+    this.client = new EmbeddedChannel(clientContext.newHandler(ByteBufAllocator.DEFAULT));
+
+    final SslHandler clientHandler = this.client.pipeline().get(SslHandler.class);
+    final SslHandler serverHandler = this.server.pipeline().get(SslHandler.class);
+    while (!clientHandler.handshakeFuture().isDone() || !serverHandler.handshakeFuture().isDone()) {
+      transfer(this.client, this.server);
+      transfer(this.server, this.client);
+    }
+    if (!clientHandler.handshakeFuture().isSuccess()) {
+      throw new IllegalStateException("Handshake failed", clientHandler.handshakeFuture().cause());
+    }
+  }
+
+  static void transfer(EmbeddedChannel from, EmbeddedChannel to) {
+    ByteBuf buffer;
+    while (null != (buffer = from.readOutbound())) {
+      to.writeInbound(buffer);
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    this.client.finishAndReleaseAll();
+    this.server.finishAndReleaseAll();
+    this.certificate.delete();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(MESSAGES)
+  public int pipeline() {
+    this.client.writeOutbound(this.stream.duplicate());
+    transfer(this.client, this.server);
+    return Streams.drain(this.server);
+  }
+}
@@ -0,0 +1,362 @@
+/**
+ * Copyright © 2018 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.netty.syslog;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.util.CharsetUtil;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaNormalization;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Class is used to read and write {@link Message} and {@link MessageKey} in the Avro binary
+ * encoding of {@link #MESSAGE_SCHEMA} and {@link #KEY_SCHEMA}. The fields are written straight
+ * into the buffer without a datum writer or an intermediate object.
+ *
+ * <p>The date is written as timestamp-micros in UTC, the precision of an rfc 5424 timestamp, and
+ * the remote address as the bytes of the address.</p>
+ */
+final class AvroCodec {
+  static final String MESSAGE_SCHEMA = "{\"type\":\"record\",\"name\":\"Message\"," +
+      "\"namespace\":\"com.github.jcustenborder.netty.syslog\",\"fields\":[" +
+      "{\"name\":\"date\",\"type\":{\"type\":\"long\",\"logicalType\":\"timestamp-micros\"}}," +
+      "{\"name\":\"remoteAddress\",\"type\":\"bytes\"}," +
+      "{\"name\":\"rawMessage\",\"type\":\"string\"}," +
+      "{\"name\":\"type\",\"type\":{\"type\":\"enum\",\"name\":\"MessageType\",\"symbols\":[\"UNKNOWN\",\"CEF\",\"RFC3164\",\"RFC5424\"]}}," +
+      "{\"name\":\"level\",\"type\":[\"null\",\"int\"]}," +
+      "{\"name\":\"version\",\"type\":[\"null\",\"int\"]}," +
+      "{\"name\":\"facility\",\"type\":[\"null\",\"int\"]}," +
+      "{\"name\":\"host\",\"type\":[\"null\",\"string\"]}," +
+      "{\"name\":\"message\",\"type\":[\"null\",\"string\"]}," +
+      "{\"name\":\"processId\",\"type\":[\"null\",\"string\"]}," +
+      "{\"name\":\"tag\",\"type\":[\"null\",\"string\"]}," +
+      "{\"name\":\"messageId\",\"type\":[\"null\",\"string\"]}," +
+      "{\"name\":\"appName\",\"type\":[\"null\",\"string\"]}," +
+      "{\"name\":\"structuredData\",\"type\":[\"null\",{\"type\":\"array\",\"items\":{\"type\":\"record\",\"name\":\"StructuredData\",\"fields\":[" +
+      "{\"name\":\"id\",\"type\":\"string\"}," +
+      "{\"name\":\"structuredDataElements\",\"type\":{\"type\":\"map\",\"values\":\"string\"}}]}}]}," +
+      "{\"name\":\"deviceVendor\",\"type\":[\"null\",\"string\"]}," +
+      "{\"name\":\"deviceProduct\",\"type\":[\"null\",\"string\"]}," +
+      "{\"name\":\"deviceVersion\",\"type\":[\"null\",\"string\"]}," +
+      "{\"name\":\"deviceEventClassId\",\"type\":[\"null\",\"string\"]}," +
+      "{\"name\":\"name\",\"type\":[\"null\",\"string\"]}," +
+      "{\"name\":\"severity\",\"type\":[\"null\",\"string\"]}," +
+      "{\"name\":\"extension\",\"type\":[\"null\",{\"type\":\"map\",\"values\":\"string\"}]}]}";
+  static final String KEY_SCHEMA = "{\"type\":\"record\",\"name\":\"MessageKey\"," +
+      "\"namespace\":\"com.github.jcustenborder.netty.syslog\",\"fields\":[" +
+      "{\"name\":\"remoteAddress\",\"type\":[\"null\",\"string\"]}," +
+      "{\"name\":\"host\",\"type\":[\"null\",\"string\"]}]}";
+  static final byte[] MESSAGE_SCHEMA_BYTES = MESSAGE_SCHEMA.getBytes(CharsetUtil.UTF_8);
+  static final byte[] KEY_SCHEMA_BYTES = KEY_SCHEMA.getBytes(CharsetUtil.UTF_8);
+  /**
+   * CRC-64-AVRO fingerprints of the parsing canonical form, used by the single object encoding.
+   */
+  static final long MESSAGE_FINGERPRINT = fingerprint(MESSAGE_SCHEMA);
+  static final long KEY_FINGERPRINT = fingerprint(KEY_SCHEMA);
+  static final MessageType[] TYPES = MessageType.values();
+  private static final int NULL = 0;
+  private static final int NOT_NULL = 2;
+
+  private AvroCodec() {
+  }
+
+  static long fingerprint(String schema) {
+    return SchemaNormalization.parsingFingerprint64(new Schema.Parser().parse(schema));
+  }
+
+  static void writeLong(ByteBuf buffer, long value) {
+    long n = (value << 1) ^ (value >> 63);
+    while ((n & ~0x7FL) != 0) {
+      buffer.writeByte((int) ((n & 0x7F) | 0x80));
+      n >>>= 7;
+    }
+    buffer.writeByte((int) n);
+  }
+
+  static long readLong(ByteBuf buffer) {
+    long n = 0;
+    int shift = 0;
+    int b;
+    do {
+      if (shift >= 64) {
+        throw new CorruptedFrameException("Varint is longer than 10 bytes.");
+      }
+      b = buffer.readByte();
+      n |= (long) (b & 0x7F) << shift;
+      shift += 7;
+    } while ((b & 0x80) != 0);
+    return (n >>> 1) ^ -(n & 1);
+  }
+
+  static int readInt(ByteBuf buffer) {
+    final long value = readLong(buffer);
+    if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+      throw new CorruptedFrameException("Value " + value + " does not fit in an int.");
+    }
+    return (int) value;
+  }
+
+  /**
+   * @return Length of a string or bytes field, checked against the readable bytes.
+   */
+  static int readLength(ByteBuf buffer) {
+    final long length = readLong(buffer);
+    if (length < 0 || length > buffer.readableBytes()) {
+      throw new CorruptedFrameException("Length " + length + " is outside of the frame.");
+    }
+    return (int) length;
+  }
+
+  static void writeString(ByteBuf buffer, CharSequence value) {
+    final int length = ByteBufUtil.utf8Bytes(value);
+    writeLong(buffer, length);
+    ByteBufUtil.reserveAndWriteUtf8(buffer, value, length);
+  }
+
+  static String readString(ByteBuf buffer) {
+    final int length = readLength(buffer);
+    final String result = buffer.toString(buffer.readerIndex(), length, CharsetUtil.UTF_8);
+    buffer.skipBytes(length);
+    return result;
+  }
+
+  /**
+   * Method is used to read a string that repeats from message to message through the shared
+   * {@link StringCache}.
+   */
+  static String readCachedString(ByteBuf buffer) {
+    final int length = readLength(buffer);
+    final int start = buffer.readerIndex();
+    final String result = StringCache.shared().get(buffer, start, start + length);
+    buffer.skipBytes(length);
+    return result;
+  }
+
+  static void writeBytes(ByteBuf buffer, byte[] value) {
+    writeLong(buffer, value.length);
+    buffer.writeBytes(value);
+  }
+
+  static boolean readUnion(ByteBuf buffer) {
+    final int index = readInt(buffer);
+    if (0 == index) {
+      return false;
+    } else if (1 == index) {
+      return true;
+    }
+    throw new CorruptedFrameException("Union index " + index + " is not in the schema.");
+  }
+
+  static void writeNullable(ByteBuf buffer, String value) {
+    if (null == value) {
+      buffer.writeByte(NULL);
+    } else {
+      buffer.writeByte(NOT_NULL);
+      writeString(buffer, value);
+    }
+  }
+
+  static String readNullable(ByteBuf buffer) {
+    return readUnion(buffer) ? readString(buffer) : null;
+  }
+
+  static String readNullableCached(ByteBuf buffer) {
+    return readUnion(buffer) ? readCachedString(buffer) : null;
+  }
+
+  static void writeNullable(ByteBuf buffer, Integer value) {
+    if (null == value) {
+      buffer.writeByte(NULL);
+    } else {
+      buffer.writeByte(NOT_NULL);
+      writeLong(buffer, value);
+    }
+  }
+
+  static Integer readNullableInt(ByteBuf buffer) {
+    return readUnion(buffer) ? readInt(buffer) : null;
+  }
+
+  static void writeMap(ByteBuf buffer, Map<String, String> map) {
+    if (!map.isEmpty()) {
+      writeLong(buffer, map.size());
+      for (Map.Entry<String, String> entry : map.entrySet()) {
+        writeString(buffer, entry.getKey());
+        writeString(buffer, entry.getValue());
+      }
+    }
+    buffer.writeByte(0);
+  }
+
+  /**
+   * @return Number of items in the next block. A negative count is followed by the size of the
+   * block, which is skipped.
+   */
+  static long readBlockCount(ByteBuf buffer) {
+    long count = readLong(buffer);
+    if (count < 0) {
+      count = -count;
+      readLong(buffer);
+    }
+    return count;
+  }
+
+  static Map<String, String> readMap(ByteBuf buffer) {
+    final Map<String, String> result = new LinkedHashMap<>();
+    long count;
+    while (0 != (count = readBlockCount(buffer))) {
+      for (long i = 0; i < count; i++) {
+        final String key = readCachedString(buffer);
+        result.put(key, readString(buffer));
+      }
+    }
+    return result;
+  }
+
+  static long micros(LocalDateTime date) {
+    return date.toEpochSecond(ZoneOffset.UTC) * 1000000L + date.getNano() / 1000;
+  }
+
+  static LocalDateTime date(long micros) {
+    return LocalDateTime.ofEpochSecond(
+        Math.floorDiv(micros, 1000000L),
+        (int) Math.floorMod(micros, 1000000L) * 1000,
+        ZoneOffset.UTC
+    );
+  }
+
+  static void writeMessage(ByteBuf buffer, Message message) {
+    writeLong(buffer, micros(message.date()));
+    writeBytes(buffer, message.remoteAddress().getAddress());
+    writeString(buffer, message.rawMessage());
+    writeLong(buffer, message.type().ordinal());
+    writeNullable(buffer, message.level());
+    writeNullable(buffer, message.version());
+    writeNullable(buffer, message.facility());
+    writeNullable(buffer, message.host());
+    writeNullable(buffer, message.message());
+    writeNullable(buffer, message.processId());
+    writeNullable(buffer, message.tag());
+    writeNullable(buffer, message.messageId());
+    writeNullable(buffer, message.appName());
+
+    final List<Message.StructuredData> structuredData = message.structuredData();
+    if (null == structuredData) {
+      buffer.writeByte(NULL);
+    } else {
+      buffer.writeByte(NOT_NULL);
+      if (!structuredData.isEmpty()) {
+        writeLong(buffer, structuredData.size());
+        for (Message.StructuredData element : structuredData) {
+          writeString(buffer, element.id());
+          writeMap(buffer, element.structuredDataElements());
+        }
+      }
+      buffer.writeByte(0);
+    }
+
+    writeNullable(buffer, message.deviceVendor());
+    writeNullable(buffer, message.deviceProduct());
+    writeNullable(buffer, message.deviceVersion());
+    writeNullable(buffer, message.deviceEventClassId());
+    writeNullable(buffer, message.name());
+    writeNullable(buffer, message.severity());
+    final Map<String, String> extension = message.extension();
+    if (null == extension) {
+      buffer.writeByte(NULL);
+    } else {
+      buffer.writeByte(NOT_NULL);
+      writeMap(buffer, extension);
+    }
+  }
+
+  static Message readMessage(ByteBuf buffer) {
+    final ImmutableSyslogMessage.Builder builder = ImmutableSyslogMessage.builder()
+        .date(date(readLong(buffer)));
+    final byte[] address = new byte[readLength(buffer)];
+    buffer.readBytes(address);
+    try {
+      builder.remoteAddress(InetAddress.getByAddress(address));
+    } catch (UnknownHostException e) {
+      throw new CorruptedFrameException("Remote address is " + address.length + " bytes.", e);
+    }
+    builder.rawMessage(readString(buffer));
+    final int type = readInt(buffer);
+    if (type < 0 || type >= TYPES.length) {
+      throw new CorruptedFrameException("Message type " + type + " is not in the schema.");
+    }
+    builder.type(TYPES[type])
+        .level(readNullableInt(buffer))
+        .version(readNullableInt(buffer))
+        .facility(readNullableInt(buffer))
+        .host(readNullableCached(buffer))
+        .message(readNullable(buffer))
+        .processId(readNullable(buffer))
+        .tag(readNullableCached(buffer))
+        .messageId(readNullableCached(buffer))
+        .appName(readNullableCached(buffer));
+
+    if (readUnion(buffer)) {
+      final List<Message.StructuredData> structuredData = new ArrayList<>();
+      long count;
+      while (0 != (count = readBlockCount(buffer))) {
+        for (long i = 0; i < count; i++) {
+          final String id = readCachedString(buffer);
+          structuredData.add(ImmutableStructuredData.of(id, readMap(buffer)));
+        }
+      }
+      builder.structuredData(structuredData);
+    }
+
+    return builder.deviceVendor(readNullableCached(buffer))
+        .deviceProduct(readNullableCached(buffer))
+        .deviceVersion(readNullableCached(buffer))
+        .deviceEventClassId(readNullable(buffer))
+        .name(readNullable(buffer))
+        .severity(readNullable(buffer))
+        .extension(readUnion(buffer) ? readMap(buffer) : null)
+        .build();
+  }
+
+  static void writeKey(ByteBuf buffer, MessageKey key) {
+    writeNullable(buffer, key.remoteAddress());
+    writeNullable(buffer, key.host());
+  }
+
+  static SyslogMessageKey readKey(ByteBuf buffer) {
+    return ImmutableSyslogMessageKey.builder()
+        .remoteAddress(readNullableCached(buffer))
+        .host(readNullableCached(buffer))
+        .build();
+  }
+
+  /**
+   * @return Rough number of bytes a message takes, used to size the buffer up front.
+   */
+  static int estimate(Message message) {
+    return 2 * message.rawMessage().length() + 64;
+  }
+}
@@ -0,0 +1,151 @@
+/**
+ * Copyright © 2018 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.netty.syslog;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.MessageToMessageDecoder;
+import io.netty.util.CharsetUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decoder is used to read the frames written by {@link AvroMessageEncoder}. Each buffer must hold
+ * exactly one frame, put a {@link io.netty.handler.codec.LengthFieldBasedFrameDecoder} in front of
+ * the decoder. A single object is passed along as a {@link Message} or {@link SyslogMessageKey}, an
+ * object container as a {@code List} of them. Containers written by other Avro writers are read as
+ * long as the schema has the same parsing canonical form and the codec is null.
+ *
+ * <pre>
+ * channelPipeline.addLast(
+ *     new LengthFieldBasedFrameDecoder(maxFrameLength, 0, 4, 0, 4),
+ *     new AvroMessageDecoder()
+ * );
+ * </pre>
+ *
+ * @see AvroMessageEncoder
+ */
+@ChannelHandler.Sharable
+public class AvroMessageDecoder extends MessageToMessageDecoder<ByteBuf> {
+  private static final Logger log = LoggerFactory.getLogger(AvroMessageDecoder.class);
+  static final ByteBuf MESSAGE_SCHEMA = Unpooled.unreleasableBuffer(Unpooled.wrappedBuffer(AvroCodec.MESSAGE_SCHEMA_BYTES));
+  static final ByteBuf KEY_SCHEMA = Unpooled.unreleasableBuffer(Unpooled.wrappedBuffer(AvroCodec.KEY_SCHEMA_BYTES));
+  static final String SCHEMA_KEY = "avro.schema";
+  static final String CODEC_KEY = "avro.codec";
+
+  static boolean startsWith(ByteBuf buffer, byte[] prefix) {
+    if (buffer.readableBytes() < prefix.length) {
+      return false;
+    }
+    final int start = buffer.readerIndex();
+    for (int i = 0; i < prefix.length; i++) {
+      if (buffer.getByte(start + i) != prefix[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  protected void decode(ChannelHandlerContext context, ByteBuf buffer, List<Object> output) throws Exception {
+    if (startsWith(buffer, AvroMessageEncoder.SINGLE_OBJECT_MAGIC)) {
+      buffer.skipBytes(AvroMessageEncoder.SINGLE_OBJECT_MAGIC.length);
+      final long fingerprint = buffer.readLongLE();
+      if (AvroCodec.MESSAGE_FINGERPRINT == fingerprint) {
+        output.add(AvroCodec.readMessage(buffer));
+      } else if (AvroCodec.KEY_FINGERPRINT == fingerprint) {
+        output.add(AvroCodec.readKey(buffer));
+      } else {
+        throw new CorruptedFrameException(String.format("Unknown schema fingerprint %016x.", fingerprint));
+      }
+    } else if (startsWith(buffer, AvroMessageEncoder.CONTAINER_MAGIC)) {
+      buffer.skipBytes(AvroMessageEncoder.CONTAINER_MAGIC.length);
+      output.add(readContainer(buffer));
+    } else {
+      throw new CorruptedFrameException("Frame is not an Avro single object or object container.");
+    }
+    if (buffer.isReadable()) {
+      throw new CorruptedFrameException(buffer.readableBytes() + " byte(s) after the end of the frame.");
+    }
+  }
+
+  /**
+   * @return true if the schema is the message schema, false if it is the key schema.
+   */
+  static boolean messageSchema(ByteBuf schema) {
+    if (ByteBufUtil.equals(MESSAGE_SCHEMA, schema)) {
+      return true;
+    } else if (ByteBufUtil.equals(KEY_SCHEMA, schema)) {
+      return false;
+    }
+    // Written by another writer, compare the canonical forms.
+    final long fingerprint = AvroCodec.fingerprint(schema.toString(CharsetUtil.UTF_8));
+    if (AvroCodec.MESSAGE_FINGERPRINT == fingerprint) {
+      return true;
+    } else if (AvroCodec.KEY_FINGERPRINT == fingerprint) {
+      return false;
+    }
+    throw new CorruptedFrameException("Object container has an unknown schema.");
+  }
+
+  static List<Object> readContainer(ByteBuf buffer) {
+    Boolean messages = null;
+    long count;
+    while (0 != (count = AvroCodec.readBlockCount(buffer))) {
+      for (long i = 0; i < count; i++) {
+        final String key = AvroCodec.readString(buffer);
+        final int length = AvroCodec.readLength(buffer);
+        final ByteBuf value = buffer.readSlice(length);
+        if (SCHEMA_KEY.equals(key)) {
+          messages = messageSchema(value);
+        } else if (CODEC_KEY.equals(key) && !"null".equals(value.toString(CharsetUtil.UTF_8))) {
+          throw new CorruptedFrameException("Object container codec " + value.toString(CharsetUtil.UTF_8) + " is not supported.");
+        }
+      }
+    }
+    if (null == messages) {
+      throw new CorruptedFrameException("Object container does not have a schema.");
+    }
+    log.trace("readContainer() - messages = {}", messages);
+    final ByteBuf sync = buffer.readSlice(AvroMessageEncoder.SYNC_LENGTH);
+
+    final List<Object> result = new ArrayList<>();
+    while (buffer.isReadable()) {
+      final long records = AvroCodec.readLong(buffer);
+      final int size = AvroCodec.readLength(buffer);
+      final int end = buffer.readerIndex() + size;
+      for (long i = 0; i < records; i++) {
+        result.add(messages ? AvroCodec.readMessage(buffer) : AvroCodec.readKey(buffer));
+      }
+      if (buffer.readerIndex() != end) {
+        throw new CorruptedFrameException("Block size does not match its records.");
+      }
+      if (buffer.readableBytes() < AvroMessageEncoder.SYNC_LENGTH ||
+          !ByteBufUtil.equals(sync, 0, buffer, buffer.readerIndex(), AvroMessageEncoder.SYNC_LENGTH)) {
+        throw new CorruptedFrameException("Block does not end with the sync marker.");
+      }
+      buffer.skipBytes(AvroMessageEncoder.SYNC_LENGTH);
+    }
+    return result;
+  }
+}
@@ -0,0 +1,167 @@
+/**
+ * Copyright © 2018 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.netty.syslog;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.EncoderException;
+import io.netty.handler.codec.MessageToByteEncoder;
+import io.netty.util.ReferenceCountUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.security.SecureRandom;
+import java.util.List;
+
+/**
+ * Encoder is used to write {@link Message}s and {@link MessageKey}s in the Avro binary encoding for
+ * transport between nodes. A single message or key is written in the Avro single object encoding,
+ * two marker bytes and the fingerprint of the schema before the record. A {@code List} of messages
+ * or keys, for example from {@link MessageBatchHandler}, is written as an Avro object container
+ * with the schema once at the start and every record in one block. Frames are not delimited,
+ * put a {@link io.netty.handler.codec.LengthFieldPrepender} in front of the encoder.
+ *
+ * <pre>
+ * channelPipeline.addLast(
+ *     new LengthFieldPrepender(4),
+ *     new AvroMessageEncoder()
+ * );
+ * </pre>
+ *
+ * <p>The messages in a list are released once they are written, like the message passed on its
+ * own.</p>
+ *
+ * @see AvroMessageDecoder
+ */
+@ChannelHandler.Sharable
+public class AvroMessageEncoder extends MessageToByteEncoder<Object> {
+  private static final Logger log = LoggerFactory.getLogger(AvroMessageEncoder.class);
+  static final byte[] CONTAINER_MAGIC = {'O', 'b', 'j', 1};
+  static final byte[] SINGLE_OBJECT_MAGIC = {(byte) 0xC3, 0x01};
+  static final int SYNC_LENGTH = 16;
+  static final byte[] SCHEMA_KEY = "avro.schema".getBytes(EncoderHelper.CHARSET);
+  static final byte[] CODEC_KEY = "avro.codec".getBytes(EncoderHelper.CHARSET);
+  static final byte[] NULL_CODEC = "null".getBytes(EncoderHelper.CHARSET);
+  /**
+   * The size of a block is written before its records, a five byte varint is reserved and filled
+   * in once the records are written.
+   */
+  static final int BLOCK_SIZE_LENGTH = 5;
+  final byte[] sync;
+
+  public AvroMessageEncoder() {
+    super(true);
+    this.sync = new byte[SYNC_LENGTH];
+    new SecureRandom().nextBytes(this.sync);
+  }
+
+  @Override
+  public boolean acceptOutboundMessage(Object message) {
+    if (message instanceof Message || message instanceof MessageKey) {
+      return true;
+    }
+    if (message instanceof List && !((List<?>) message).isEmpty()) {
+      final Object first = ((List<?>) message).get(0);
+      return first instanceof Message || first instanceof MessageKey;
+    }
+    return false;
+  }
+
+  @Override
+  protected ByteBuf allocateBuffer(ChannelHandlerContext context, Object message, boolean preferDirect) {
+    int size;
+    if (message instanceof Message) {
+      size = SINGLE_OBJECT_MAGIC.length + 8 + AvroCodec.estimate((Message) message);
+    } else if (message instanceof MessageKey) {
+      size = 64;
+    } else {
+      final List<?> list = (List<?>) message;
+      size = AvroCodec.MESSAGE_SCHEMA_BYTES.length + 64 + 2 * SYNC_LENGTH;
+      for (Object item : list) {
+        size += item instanceof Message ? AvroCodec.estimate((Message) item) : 64;
+      }
+    }
+    return preferDirect ? context.alloc().ioBuffer(size) : context.alloc().heapBuffer(size);
+  }
+
+  static void writeFingerprint(ByteBuf buffer, long fingerprint) {
+    buffer.writeBytes(SINGLE_OBJECT_MAGIC);
+    buffer.writeLongLE(fingerprint);
+  }
+
+  /**
+   * Method is used to write a varint in exactly {@link #BLOCK_SIZE_LENGTH} bytes. The bytes that
+   * are not needed are written as continuation bytes with no bits set, which readers accept.
+   */
+  static void setBlockSize(ByteBuf buffer, int index, int size) {
+    long n = (long) size << 1;
+    for (int i = 0; i < BLOCK_SIZE_LENGTH - 1; i++) {
+      buffer.setByte(index + i, (int) ((n & 0x7F) | 0x80));
+      n >>>= 7;
+    }
+    buffer.setByte(index + BLOCK_SIZE_LENGTH - 1, (int) n);
+  }
+
+  void writeContainer(ByteBuf buffer, List<?> list) {
+    final boolean messages = list.get(0) instanceof Message;
+    buffer.writeBytes(CONTAINER_MAGIC);
+    AvroCodec.writeLong(buffer, 2);
+    AvroCodec.writeBytes(buffer, SCHEMA_KEY);
+    AvroCodec.writeBytes(buffer, messages ? AvroCodec.MESSAGE_SCHEMA_BYTES : AvroCodec.KEY_SCHEMA_BYTES);
+    AvroCodec.writeBytes(buffer, CODEC_KEY);
+    AvroCodec.writeBytes(buffer, NULL_CODEC);
+    buffer.writeByte(0);
+    buffer.writeBytes(this.sync);
+
+    AvroCodec.writeLong(buffer, list.size());
+    final int sizeIndex = buffer.writerIndex();
+    buffer.writeZero(BLOCK_SIZE_LENGTH);
+    final int start = buffer.writerIndex();
+    for (Object item : list) {
+      if (messages && item instanceof Message) {
+        AvroCodec.writeMessage(buffer, (Message) item);
+      } else if (!messages && item instanceof MessageKey) {
+        AvroCodec.writeKey(buffer, (MessageKey) item);
+      } else {
+        throw new EncoderException("Every item of a batch must be a Message or every item a MessageKey.");
+      }
+    }
+    setBlockSize(buffer, sizeIndex, buffer.writerIndex() - start);
+    buffer.writeBytes(this.sync);
+  }
+
+  @Override
+  protected void encode(ChannelHandlerContext context, Object message, ByteBuf buffer) throws Exception {
+    log.trace("encode() - message = {}", message);
+    if (message instanceof Message) {
+      writeFingerprint(buffer, AvroCodec.MESSAGE_FINGERPRINT);
+      AvroCodec.writeMessage(buffer, (Message) message);
+    } else if (message instanceof MessageKey) {
+      writeFingerprint(buffer, AvroCodec.KEY_FINGERPRINT);
+      AvroCodec.writeKey(buffer, (MessageKey) message);
+    } else {
+      final List<?> list = (List<?>) message;
+      try {
+        writeContainer(buffer, list);
+      } finally {
+        for (Object item : list) {
+          ReferenceCountUtil.release(item);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,354 @@
+/**
+ * Copyright © 2018 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.netty.syslog;
+
+import com.fasterxml.jackson.annotation.JsonValue;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufHolder;
+import io.netty.util.AbstractReferenceCounted;
+import io.netty.util.CharsetUtil;
+import io.netty.util.IllegalReferenceCountException;
+import io.netty.util.Recycler;
+
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * SyslogRequest that holds the bytes of the frame instead of a string. Parsers read the bytes from
+ * {@link #content()} and {@link #rawMessage()} is only decoded when it is called. Frames that only
+ * contain US-ASCII skip the charset decoder. Malformed input is handled with the
+ * {@link CodingErrorAction} passed to the constructor.
+ *
+ * <p>The request owns one reference to the content and releases it when the request is released.
+ * {@link SyslogMessageHandler} is a {@link io.netty.channel.SimpleChannelInboundHandler} so the
+ * request is released as soon as it has been parsed. A message that needs the bytes after that
+ * retains them itself, see {@link LazyMessage}. Any other handler that keeps a request past
+ * channelRead must {@link #retain()} it. Once released, {@link #rawMessage()} only works if it was
+ * decoded before the release.</p>
+ *
+ * <p>Requests created with {@link #newInstance(ByteBuf, long, InetAddress, Charset, CodingErrorAction)}
+ * are taken from a {@link Recycler} and returned to it when they are released. A pooled request
+ * must not be touched in any way after it has been released, it may already hold another message.</p>
+ *
+ * @see TCPSyslogMessageDecoder
+ * @see UDPSyslogMessageDecoder
+ */
+public final class BufferedSyslogRequest extends AbstractReferenceCounted implements ByteBufHolder, SyslogRequest {
+  private static final Recycler<BufferedSyslogRequest> RECYCLER = new Recycler<BufferedSyslogRequest>() {
+    @Override
+    protected BufferedSyslogRequest newObject(Handle<BufferedSyslogRequest> handle) {
+      return new BufferedSyslogRequest(handle);
+    }
+  };
+
+  private final Recycler.Handle<BufferedSyslogRequest> handle;
+  private ByteBuf content;
+  private long receivedNanos;
+  private LocalDateTime receivedDate;
+  private InetAddress remoteAddress;
+  private Charset charset;
+  private CodingErrorAction malformedInputAction;
+  private String rawMessage;
+
+  private BufferedSyslogRequest(Recycler.Handle<BufferedSyslogRequest> handle) {
+    this.handle = handle;
+  }
+
+  /**
+   * @param content Frame of the message. Ownership is transferred to the request.
+   * @param receivedDate The time the message was received by Netty.
+   * @param remoteAddress IP Address for the sender of the message.
+   * @param charset Charset of the message.
+   * @param malformedInputAction How malformed input is handled when the message is decoded.
+   */
+  public BufferedSyslogRequest(ByteBuf content, LocalDateTime receivedDate, InetAddress remoteAddress, Charset charset, CodingErrorAction malformedInputAction) {
+    this(content, epochNanos(receivedDate.atZone(ZoneId.systemDefault()).toInstant()), remoteAddress, charset, malformedInputAction);
+    this.receivedDate = receivedDate;
+  }
+
+  /**
+   * @param content Frame of the message. Ownership is transferred to the request.
+   * @param receivedNanos The time the message was received by Netty in nanoseconds since the epoch.
+   * @param remoteAddress IP Address for the sender of the message.
+   * @param charset Charset of the message.
+   * @param malformedInputAction How malformed input is handled when the message is decoded.
+   * @see ReceiveClock
+   */
+  public BufferedSyslogRequest(ByteBuf content, long receivedNanos, InetAddress remoteAddress, Charset charset, CodingErrorAction malformedInputAction) {
+    this.handle = null;
+    init(content, receivedNanos, remoteAddress, charset, malformedInputAction);
+  }
+
+  /**
+   * Method is used to take a request from the pool.
+   *
+   * @param content Frame of the message. Ownership is transferred to the request.
+   * @param receivedNanos The time the message was received by Netty in nanoseconds since the epoch.
+   * @param remoteAddress IP Address for the sender of the message.
+   * @param charset Charset of the message.
+   * @param malformedInputAction How malformed input is handled when the message is decoded.
+   * @return Pooled request that is returned to the pool when it is released.
+   */
+  public static BufferedSyslogRequest newInstance(ByteBuf content, long receivedNanos, InetAddress remoteAddress, Charset charset, CodingErrorAction malformedInputAction) {
+    final BufferedSyslogRequest request = RECYCLER.get();
+    request.setRefCnt(1);
+    request.init(content, receivedNanos, remoteAddress, charset, malformedInputAction);
+    return request;
+  }
+
+  private void init(ByteBuf content, long receivedNanos, InetAddress remoteAddress, Charset charset, CodingErrorAction malformedInputAction) {
+    if (null == content) {
+      throw new NullPointerException("content");
+    }
+    this.content = content;
+    this.receivedNanos = receivedNanos;
+    this.remoteAddress = remoteAddress;
+    this.charset = charset;
+    this.malformedInputAction = malformedInputAction;
+  }
+
+  /**
+   * @return true if the request was taken from the pool.
+   */
+  public boolean pooled() {
+    return null != this.handle;
+  }
+
+  @Override
+  public ByteBuf content() {
+    if (refCnt() <= 0) {
+      throw new IllegalReferenceCountException(refCnt());
+    }
+    return this.content;
+  }
+
+  public BufferedSyslogRequest(ByteBuf content, LocalDateTime receivedDate, InetAddress remoteAddress) {
+    this(content, receivedDate, remoteAddress, CharsetUtil.UTF_8, CodingErrorAction.REPLACE);
+  }
+
+  /**
+   * {@inheritDoc} The date is created from {@link #receivedNanos()} the first time it is requested.
+   */
+  @Override
+  public LocalDateTime receivedDate() {
+    if (null == this.receivedDate) {
+      this.receivedDate = LocalDateTime.ofInstant(receivedInstant(), ZoneId.systemDefault());
+    }
+    return this.receivedDate;
+  }
+
+  @Override
+  public Instant receivedInstant() {
+    return Instant.ofEpochSecond(0L, this.receivedNanos);
+  }
+
+  /**
+   * @return The time the message was received by Netty in nanoseconds since the epoch.
+   */
+  public long receivedNanos() {
+    return this.receivedNanos;
+  }
+
+  static long epochNanos(Instant instant) {
+    return instant.getEpochSecond() * 1000000000L + instant.getNano();
+  }
+
+  @Override
+  public InetAddress remoteAddress() {
+    return this.remoteAddress;
+  }
+
+  @Override
+  public String rawMessage() {
+    if (null == this.rawMessage) {
+      if (refCnt() == 0) {
+        throw new IllegalReferenceCountException(0);
+      }
+      final ByteBuf content = content();
+      this.rawMessage = decode(content, content.readerIndex(), content.writerIndex(), this.charset, this.malformedInputAction);
+    }
+    return this.rawMessage;
+  }
+
+  public Charset charset() {
+    return this.charset;
+  }
+
+  public CodingErrorAction malformedInputAction() {
+    return this.malformedInputAction;
+  }
+
+  /**
+   * Method is used to copy the request to a request that does not hold a reference to the buffer.
+   * This is also how the request is serialized by Jackson.
+   *
+   * @return Copy of the request.
+   */
+  @JsonValue
+  public SyslogRequest toSyslogRequest() {
+    return ImmutableSyslogRequest.builder()
+        .receivedDate(receivedDate())
+        .remoteAddress(this.remoteAddress)
+        .rawMessage(rawMessage())
+        .build();
+  }
+
+  static boolean isAscii(ByteBuf buffer, int start, int end) {
+    for (int i = start; i < end; i++) {
+      if (buffer.getByte(i) < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  static boolean isAsciiCompatible(Charset charset) {
+    return CharsetUtil.UTF_8.equals(charset) ||
+        CharsetUtil.US_ASCII.equals(charset) ||
+        CharsetUtil.ISO_8859_1.equals(charset);
+  }
+
+  /**
+   * Method is used to decode the bytes between start and end. Bytes that are all US-ASCII are
+   * copied straight to the string.
+   *
+   * @param buffer Buffer to decode.
+   * @param start Index of the first byte.
+   * @param end Index after the last byte.
+   * @param charset Charset of the bytes.
+   * @param malformedInputAction How malformed input is handled.
+   * @return Decoded string.
+   * @throws UncheckedIOException if the input is malformed and the action is
+   *                              {@link CodingErrorAction#REPORT}.
+   */
+  @SuppressWarnings("deprecation")
+  static String decode(ByteBuf buffer, int start, int end, Charset charset, CodingErrorAction malformedInputAction) {
+    final int length = end - start;
+    if (isAsciiCompatible(charset) && isAscii(buffer, start, end)) {
+      if (buffer.hasArray()) {
+        return new String(buffer.array(), 0, buffer.arrayOffset() + start, length);
+      }
+      final byte[] bytes = new byte[length];
+      buffer.getBytes(start, bytes);
+      return new String(bytes, 0, 0, length);
+    }
+    if (CodingErrorAction.REPLACE == malformedInputAction) {
+      return buffer.toString(start, length, charset);
+    }
+    final CharsetDecoder decoder = charset.newDecoder()
+        .onMalformedInput(malformedInputAction)
+        .onUnmappableCharacter(malformedInputAction);
+    try {
+      final CharBuffer result = decoder.decode(buffer.nioBuffer(start, length));
+      return result.toString();
+    } catch (CharacterCodingException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Method is used to check that the bytes between start and end are valid in the charset.
+   *
+   * @return true if the bytes can be decoded without replacing anything.
+   */
+  static boolean isValid(ByteBuf buffer, int start, int end, Charset charset) {
+    if (isAsciiCompatible(charset) && isAscii(buffer, start, end)) {
+      return true;
+    }
+    try {
+      charset.newDecoder()
+          .onMalformedInput(CodingErrorAction.REPORT)
+          .onUnmappableCharacter(CodingErrorAction.REPORT)
+          .decode(buffer.nioBuffer(start, end - start));
+      return true;
+    } catch (CharacterCodingException e) {
+      return false;
+    }
+  }
+
+  @Override
+  public BufferedSyslogRequest copy() {
+    return replace(content().copy());
+  }
+
+  @Override
+  public BufferedSyslogRequest duplicate() {
+    return replace(content().duplicate());
+  }
+
+  @Override
+  public BufferedSyslogRequest retainedDuplicate() {
+    return replace(content().retainedDuplicate());
+  }
+
+  @Override
+  public BufferedSyslogRequest replace(ByteBuf content) {
+    return new BufferedSyslogRequest(content, this.receivedNanos, this.remoteAddress, this.charset, this.malformedInputAction);
+  }
+
+  @Override
+  protected void deallocate() {
+    this.content.release();
+    if (null != this.handle) {
+      this.content = null;
+      this.receivedDate = null;
+      this.remoteAddress = null;
+      this.rawMessage = null;
+      this.handle.recycle(this);
+    }
+  }
+
+  @Override
+  public BufferedSyslogRequest retain() {
+    super.retain();
+    return this;
+  }
+
+  @Override
+  public BufferedSyslogRequest retain(int increment) {
+    super.retain(increment);
+    return this;
+  }
+
+  @Override
+  public BufferedSyslogRequest touch() {
+    super.touch();
+    return this;
+  }
+
+  @Override
+  public BufferedSyslogRequest touch(Object hint) {
+    this.content.touch(hint);
+    return this;
+  }
+
+  @Override
+  public String toString() {
+    return "BufferedSyslogRequest{" +
+        "receivedDate=" + receivedDate() +
+        ", remoteAddress=" + this.remoteAddress +
+        ", rawMessage=" + (null != this.rawMessage || refCnt() > 0 ? rawMessage() : "(released)") +
+        '}';
+  }
+}
@@ -15,77 +15,79 @@
  */
 package com.github.jcustenborder.netty.syslog;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.util.CharsetUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Clock;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
 import java.util.LinkedHashMap;
-import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
 
 public class CEFMessageParser extends MessageParser {
   private static final Logger log = LoggerFactory.getLogger(CEFMessageParser.class);
-  private static final String CEF_PREFIX_PATTERN = "^(<(?<priority>\\d+)>)?(?<date>([a-zA-Z]{3}\\s+\\d+\\s+\\d+:\\d+:\\d+)|([0-9T:.Z-]+))\\s+(?<host>\\S+)\\s+CEF:(?<version>\\d+)\\|(?<data>.*)$";
-  private static final String CEF_MAIN_PATTERN = "(?<!\\\\)\\|";
-  private static final String PATTERN_EXTENSION = "(\\w+)=";
-
-  private final ThreadLocal<Matcher> matcherCEFPrefix;
-  private final ThreadLocal<Matcher> matcherCEFMain;
-  private final ThreadLocal<Matcher> matcherCEFExtension;
+  private static final byte[] CEF_PREFIX = "CEF:".getBytes(CharsetUtil.US_ASCII);
+  private static final int HEADER_FIELDS = 6;
+  private static final int[] FIELDS = {
+      FieldOffsets.DEVICE_VENDOR,
+      FieldOffsets.DEVICE_PRODUCT,
+      FieldOffsets.DEVICE_VERSION,
+      FieldOffsets.DEVICE_EVENT_CLASS_ID,
+      FieldOffsets.NAME,
+      FieldOffsets.SEVERITY,
+      FieldOffsets.EXTENSION
+  };
 
+  private final boolean lazy;
 
   public CEFMessageParser() {
-    this.matcherCEFPrefix = initMatcher(CEF_PREFIX_PATTERN);
-    this.matcherCEFMain = initMatcher(CEF_MAIN_PATTERN);
-    this.matcherCEFExtension = initMatcher(PATTERN_EXTENSION);
+    this.lazy = false;
   }
 
-  List<String> splitToList(String data) {
-    List<String> result = new ArrayList<>(10);
-    final Matcher matcherData = this.matcherCEFMain.get().reset(data);
-
-    int start = 0;
-    int end = 0;
-    while (matcherData.find()) {
-      end = matcherData.end();
-      String part = data.substring(start, end - 1);
-      start = end;
-      result.add(part);
-    }
+  public CEFMessageParser(Clock clock) {
+    this(clock, false);
+  }
 
-    if (data.length() > end) {
-      result.add(data.substring(end));
-    }
+  /**
+   * @param clock Clock used to determine the year for timestamps that do not include one.
+   * @param lazy true to return a {@link LazyMessage} that decodes each field when it is read.
+   */
+  public CEFMessageParser(Clock clock, boolean lazy) {
+    super(clock);
+    this.lazy = lazy;
+  }
 
-    return result;
+  @Override
+  public MessageType type() {
+    return MessageType.CEF;
   }
 
   @Override
   public Message parse(SyslogRequest request) {
     log.trace("parse() - request = '{}'", request);
-    final Matcher matcherPrefix = this.matcherCEFPrefix.get().reset(request.rawMessage());
+    final ByteBuf buffer = content(request);
+    final int[] offsets = FieldOffsets.scratch();
 
-    if (!matcherPrefix.find()) {
+    if (!scan(buffer, offsets)) {
       log.trace("parse() - Could not match message. request = '{}'", request);
       return null;
     }
 
     log.trace("parse() - Parsed message as CEF.");
-    final String groupPriority = matcherPrefix.group("priority");
-    final String groupDate = matcherPrefix.group("date");
-    final String groupHost = matcherPrefix.group("host");
-    final String groupCEFVersion = matcherPrefix.group("version");
-    final String groupData = matcherPrefix.group("data");
-
-    final Integer priority = (groupPriority == null || groupPriority.isEmpty()) ? null : Integer.parseInt(groupPriority);
+    final LocalDateTime date = parseDate(buffer, offsets);
+    if (null == date) {
+      return null;
+    }
+    if (this.lazy) {
+      return LazyMessage.newInstance(this, MessageType.CEF, request.remoteAddress(), date, buffer, offsets, malformedInputAction(request), pooled(request));
+    }
+    final Integer priority = priority(buffer, offsets);
     final Integer facility = null == priority ? null : Priority.facility(priority);
     final Integer level = null == priority ? null : Priority.level(priority, facility);
-    final LocalDateTime date = parseDate(groupDate);
-    final Integer cefVersion = Integer.parseInt(groupCEFVersion);
-
-    final List<String> parts = splitToList(groupData);
+    final Integer cefVersion = ParserHelper.parseInt(
+        buffer, FieldOffsets.start(offsets, FieldOffsets.VERSION), FieldOffsets.end(offsets, FieldOffsets.VERSION)
+    );
 
     ImmutableSyslogMessage.Builder builder = ImmutableSyslogMessage.builder();
     builder.type(MessageType.CEF);
@@ -93,81 +95,173 @@ public class CEFMessageParser extends MessageParser {
     builder.remoteAddress(request.remoteAddress());
     builder.date(date);
     builder.version(cefVersion);
-    builder.host(groupHost);
+    builder.host(cachedString(buffer, offsets, FieldOffsets.HOST));
     builder.level(level);
     builder.facility(facility);
+    builder.deviceVendor(headerString(buffer, offsets, FieldOffsets.DEVICE_VENDOR));
+    builder.deviceProduct(headerString(buffer, offsets, FieldOffsets.DEVICE_PRODUCT));
+    builder.deviceVersion(headerString(buffer, offsets, FieldOffsets.DEVICE_VERSION));
+    builder.deviceEventClassId(headerString(buffer, offsets, FieldOffsets.DEVICE_EVENT_CLASS_ID));
+    builder.name(headerString(buffer, offsets, FieldOffsets.NAME));
+    builder.severity(headerString(buffer, offsets, FieldOffsets.SEVERITY));
+    builder.extension(extension(buffer, offsets));
+
+    return builder.build();
+  }
+
+  @Override
+  Object decode(ByteBuf buffer, int[] offsets, int field) {
+    switch (field) {
+      case FieldOffsets.PRIORITY:
+        return priority(buffer, offsets);
+      case FieldOffsets.VERSION:
+        return ParserHelper.parseInt(
+            buffer, FieldOffsets.start(offsets, FieldOffsets.VERSION), FieldOffsets.end(offsets, FieldOffsets.VERSION)
+        );
+      case FieldOffsets.HOST:
+        return cachedString(buffer, offsets, field);
+      case FieldOffsets.DEVICE_VENDOR:
+      case FieldOffsets.DEVICE_PRODUCT:
+      case FieldOffsets.DEVICE_VERSION:
+      case FieldOffsets.DEVICE_EVENT_CLASS_ID:
+      case FieldOffsets.NAME:
+      case FieldOffsets.SEVERITY:
+        return headerString(buffer, offsets, field);
+      case FieldOffsets.EXTENSION:
+        return extension(buffer, offsets);
+      default:
+        return null;
+    }
+  }
+
+  private Map<String, String> extension(ByteBuf buffer, int[] offsets) {
+    if (!FieldOffsets.present(offsets, FieldOffsets.EXTENSION)) {
+      return null;
+    }
+    return parseExtension(buffer, FieldOffsets.start(offsets, FieldOffsets.EXTENSION), FieldOffsets.end(offsets, FieldOffsets.EXTENSION));
+  }
+
+  /**
+   * Method is used to locate the fields of a CEF message. The header fields are delimited by
+   * pipes. A backslash escapes the byte that follows it so '\|' does not end a field while '\\|'
+   * does. Everything after the sixth header field is the extension, pipes included.
+   *
+   * <pre>
+   * [&lt;PRI&gt;]TIMESTAMP SP HOSTNAME SP CEF:Version|Device Vendor|Device Product|Device Version|Device Event Class ID|Name|Severity|[Extension]
+   * </pre>
+   *
+   * @param buffer Buffer containing the raw message. The readable bytes are scanned.
+   * @param offsets Offsets to record the field boundaries in.
+   * @return true if the message has the shape of a CEF message.
+   */
+  static boolean scan(ByteBuf buffer, int[] offsets) {
+    int index = buffer.readerIndex();
+    final int end = ParserHelper.trimLineEnd(buffer, index, buffer.writerIndex());
 
-    int index = 0;
-    for (String token : parts) {
-      token = token.replace("\\|", "|");
-      log.trace("parse() - index={}, token='{}'", index, token);
-
-      switch (index) {
-        case 0:
-          builder.deviceVendor(token);
-          break;
-        case 1:
-          builder.deviceProduct(token);
-          break;
-        case 2:
-          builder.deviceVersion(token);
-          break;
-        case 3:
-          builder.deviceEventClassId(token);
-          break;
-        case 4:
-          builder.name(token);
-          break;
-        case 5:
-          builder.severity(token);
-          break;
-        case 6:
-          Map<String, String> extension = parseExtension(token);
-          builder.extension(extension);
-          break;
-        default:
-          break;
+    index = ParserHelper.header(buffer, index, end, offsets);
+    if (index < 0 || end - index < CEF_PREFIX.length) {
+      return false;
+    }
+    for (int i = 0; i < CEF_PREFIX.length; i++) {
+      if (buffer.getByte(index++) != CEF_PREFIX[i]) {
+        return false;
       }
+    }
+    final int versionEnd = ParserHelper.skipDigits(buffer, index, end);
+    if (versionEnd == index || versionEnd >= end || buffer.getByte(versionEnd) != '|') {
+      return false;
+    }
+    FieldOffsets.set(offsets, FieldOffsets.VERSION, index, versionEnd);
+    index = versionEnd + 1;
 
+    int field = 0;
+    int start = index;
+    while (index < end && field < HEADER_FIELDS) {
+      final byte b = buffer.getByte(index);
+      if (b == '\\') {
+        index += 2;
+        continue;
+      }
+      if (b == '|') {
+        FieldOffsets.set(offsets, FIELDS[field++], start, index);
+        start = index + 1;
+      }
       index++;
     }
-
-    return builder.build();
+    if (field < HEADER_FIELDS) {
+      if (start < end) {
+        FieldOffsets.set(offsets, FIELDS[field], start, Math.min(index, end));
+      }
+    } else if (start < end) {
+      FieldOffsets.set(offsets, FieldOffsets.EXTENSION, start, end);
+    }
+    return true;
   }
 
-  private Map<String, String> parseExtension(String token) {
-    log.trace("parseExtension() - token = '{}'", token);
-    final Map<String, String> result = new LinkedHashMap<>();
-    if (null == token || token.isEmpty()) {
+  /**
+   * Method is used to decode a header field, replacing any escaped pipes.
+   */
+  private String headerString(ByteBuf buffer, int[] offsets, int field) {
+    final String result = cachedString(buffer, offsets, field);
+    if (null == result || result.indexOf('\\') < 0) {
       return result;
     }
+    return result.replace("\\|", "|");
+  }
 
-    Matcher matcher = this.matcherCEFExtension.get().reset(token);
+  /**
+   * Method is used to split the extension into key value pairs in a single pass. A key is a run of
+   * word characters at the start of the extension or after whitespace that is followed by an
+   * unescaped '='. The value runs until the next key and is trimmed of surrounding whitespace.
+   * Values are returned as they were sent, escape sequences are not replaced.
+   */
+  Map<String, String> parseExtension(ByteBuf buffer, int start, int end) {
+    final Map<String, String> result = new LinkedHashMap<>();
 
     String key = null;
-    String value;
-    int lastEnd = -1, lastStart = -1;
-
-    while (matcher.find()) {
-      log.trace("parseExtension() - matcher.start() = {}, matcher.end() = {}", matcher.start(), matcher.end());
-
-      if (lastEnd > -1) {
-        value = token.substring(lastEnd, matcher.start()).trim();
-        result.put(key, value);
-        log.trace("parseExtension() - key='{}' value='{}'", key, value);
+    int valueStart = -1;
+    int keyStart = start;
+    int index = start;
+    while (index < end) {
+      final byte b = buffer.getByte(index);
+      if (b == '\\') {
+        keyStart = -1;
+        index += 2;
+        continue;
       }
-
-      key = matcher.group(1);
-      lastStart = matcher.start();
-      lastEnd = matcher.end();
+      if (b == '=' && keyStart > -1 && keyStart < index) {
+        if (null != key) {
+          putExtension(result, key, buffer, valueStart, keyStart);
+        }
+        key = this.stringCache.get(buffer, keyStart, index);
+        valueStart = index + 1;
+        keyStart = -1;
+      } else if (ParserHelper.isWhitespace(b)) {
+        keyStart = index + 1;
+      } else if (keyStart > -1 && !isWordCharacter(b)) {
+        keyStart = -1;
+      }
+      index++;
+    }
+    if (null != key) {
+      putExtension(result, key, buffer, valueStart, end);
     }
+    return result;
+  }
 
-    if (lastStart > -1 && !result.containsKey(key)) {
-      value = token.substring(lastEnd).trim();
-      result.put(key, value);
-      log.trace("parseExtension() - key='{}' value='{}'", key, value);
+  private void putExtension(Map<String, String> result, String key, ByteBuf buffer, int start, int end) {
+    while (start < end && buffer.getByte(start) <= ' ' && buffer.getByte(start) >= 0) {
+      start++;
+    }
+    while (end > start && buffer.getByte(end - 1) <= ' ' && buffer.getByte(end - 1) >= 0) {
+      end--;
     }
+    final String value = buffer.toString(start, end - start, CharsetUtil.UTF_8);
+    log.trace("parseExtension() - key='{}' value='{}'", key, value);
+    result.put(key, value);
+  }
 
-    return result;
+  private static boolean isWordCharacter(byte b) {
+    return ParserHelper.isDigit(b) || (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || b == '_';
   }
 }
@@ -0,0 +1,68 @@
+/**
+ * Copyright © 2018 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.netty.syslog;
+
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Class is used to keep the formatted bytes of the last second that was formatted. Messages that
+ * are relayed arrive in roughly date order so most of them reuse the bytes of the message before.
+ * Formatters that print fractions of a second are not cached.
+ *
+ * <p>Like a ByteBuf this class is not thread safe.</p>
+ */
+final class DateCache {
+  private static final LocalDateTime PROBE = LocalDateTime.of(2018, 6, 15, 12, 30, 45);
+  final DateTimeFormatter formatter;
+  final boolean cacheable;
+  private long second = Long.MIN_VALUE;
+  private byte[] bytes;
+
+  DateCache(DateTimeFormatter formatter) {
+    this.formatter = formatter;
+    this.cacheable = secondResolution(formatter);
+  }
+
+  static boolean secondResolution(DateTimeFormatter formatter) {
+    try {
+      return formatter.format(PROBE).equals(formatter.format(PROBE.withNano(123456789)));
+    } catch (DateTimeException e) {
+      // The formatter needs an offset or zone, every call fails the same way.
+      return false;
+    }
+  }
+
+  static long epochSecond(LocalDateTime date) {
+    return date.toLocalDate().toEpochDay() * 86400L + date.toLocalTime().toSecondOfDay();
+  }
+
+  /**
+   * @return Formatted date as UTF-8. The array is shared and must not be modified.
+   */
+  byte[] format(LocalDateTime date) {
+    if (!this.cacheable) {
+      return this.formatter.format(date).getBytes(EncoderHelper.CHARSET);
+    }
+    final long second = epochSecond(date);
+    if (second != this.second || null == this.bytes) {
+      this.bytes = this.formatter.format(date).getBytes(EncoderHelper.CHARSET);
+      this.second = second;
+    }
+    return this.bytes;
+  }
+}
@@ -16,6 +16,7 @@
 package com.github.jcustenborder.netty.syslog;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
 
 import java.nio.charset.Charset;
 
@@ -27,14 +28,66 @@ class EncoderHelper {
   public static final byte[] RIGHT_SQUARE = "]".getBytes(CHARSET);
   public static final byte[] SPACE = " ".getBytes(CHARSET);
   public static final byte[] EQUALS = "=".getBytes(CHARSET);
+  public static final byte[] COLON_SPACE = ": ".getBytes(CHARSET);
+  public static final byte[] EQUALS_QUOTE = "=\"".getBytes(CHARSET);
+  /**
+   * {@code <0>} through {@code <191>}, every priority that a facility and level can produce.
+   */
+  static final byte[][] PRIORITIES = new byte[192][];
 
+  static {
+    for (int i = 0; i < PRIORITIES.length; i++) {
+      PRIORITIES[i] = ("<" + i + ">").getBytes(CHARSET);
+    }
+  }
+
+  /**
+   * @return Number of bytes {@link #appendPriority(ByteBuf, Message)} writes.
+   */
+  public static int priorityLength(Message message) {
+    if (null != message.facility() && null != message.level()) {
+      final int priority = Priority.priority(message.level(), message.facility());
+      return priority >= 0 && priority < PRIORITIES.length ?
+          PRIORITIES[priority].length :
+          2 + Integer.toString(priority).length();
+    }
+    return 0;
+  }
 
   public static void appendPriority(ByteBuf buffer, Message message) {
     if (null != message.facility() && null != message.level()) {
-      Integer priority = Priority.priority(message.level(), message.facility());
-      buffer.writeBytes(LESS_THAN);
-      buffer.writeCharSequence(priority.toString(), CHARSET);
-      buffer.writeBytes(GREATER_THAN);
+      final int priority = Priority.priority(message.level(), message.facility());
+      if (priority >= 0 && priority < PRIORITIES.length) {
+        buffer.writeBytes(PRIORITIES[priority]);
+      } else {
+        buffer.writeBytes(LESS_THAN);
+        ByteBufUtil.writeAscii(buffer, Integer.toString(priority));
+        buffer.writeBytes(GREATER_THAN);
+      }
     }
   }
+
+  /**
+   * @return Number of bytes of the value in UTF-8. 0 for null.
+   */
+  public static int length(CharSequence value) {
+    return null == value ? 0 : ByteBufUtil.utf8Bytes(value);
+  }
+
+  /**
+   * Method is used to write a value as UTF-8 without going through a charset encoder. Null is
+   * skipped.
+   *
+   * @param length Number of bytes of the value, see {@link #length(CharSequence)}. Only that many
+   *               bytes are reserved in the buffer.
+   */
+  public static void write(ByteBuf buffer, CharSequence value, int length) {
+    if (null != value) {
+      ByteBufUtil.reserveAndWriteUtf8(buffer, value, length);
+    }
+  }
+
+  public static void write(ByteBuf buffer, CharSequence value) {
+    write(buffer, value, length(value));
+  }
 }
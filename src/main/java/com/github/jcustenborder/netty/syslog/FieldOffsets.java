@@ -0,0 +1,87 @@
+/**
+ * Copyright © 2018 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.netty.syslog;
+
+import io.netty.util.concurrent.FastThreadLocal;
+
+import java.util.Arrays;
+
+/**
+ * Field boundaries recorded while scanning a raw message. Each field occupies two slots in the
+ * offsets array, the start index (inclusive) followed by the end index (exclusive) in the scanned
+ * buffer. A start index of -1 means the field was not present in the message.
+ */
+final class FieldOffsets {
+  static final int PRIORITY = 0;
+  static final int VERSION = 1;
+  static final int DATE = 2;
+  static final int HOST = 3;
+  static final int APP_NAME = 4;
+  static final int PROCESS_ID = 5;
+  static final int MESSAGE_ID = 6;
+  static final int STRUCTURED_DATA = 7;
+  static final int MESSAGE = 8;
+  static final int TAG = 9;
+  static final int DEVICE_VENDOR = 10;
+  static final int DEVICE_PRODUCT = 11;
+  static final int DEVICE_VERSION = 12;
+  static final int DEVICE_EVENT_CLASS_ID = 13;
+  static final int NAME = 14;
+  static final int SEVERITY = 15;
+  static final int EXTENSION = 16;
+
+  static final int COUNT = 17;
+
+  private static final FastThreadLocal<int[]> SCRATCH = new FastThreadLocal<int[]>() {
+    @Override
+    protected int[] initialValue() {
+      return new int[COUNT * 2];
+    }
+  };
+
+  private FieldOffsets() {
+  }
+
+  /**
+   * Method is used to return an offsets array that belongs to the current thread. The array is
+   * reset on every call so it can only be used until the next call, parsers copy it when a
+   * {@link LazyMessage} needs the offsets after parse returns.
+   *
+   * @return Reset offsets array.
+   */
+  static int[] scratch() {
+    final int[] result = SCRATCH.get();
+    Arrays.fill(result, -1);
+    return result;
+  }
+
+  static void set(int[] offsets, int field, int start, int end) {
+    offsets[field * 2] = start;
+    offsets[field * 2 + 1] = end;
+  }
+
+  static int start(int[] offsets, int field) {
+    return offsets[field * 2];
+  }
+
+  static int end(int[] offsets, int field) {
+    return offsets[field * 2 + 1];
+  }
+
+  static boolean present(int[] offsets, int field) {
+    return offsets[field * 2] > -1;
+  }
+}
@@ -0,0 +1,296 @@
+/**
+ * Copyright © 2018 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.netty.syslog;
+
+import com.fasterxml.jackson.annotation.JsonValue;
+import io.netty.buffer.ByteBuf;
+import io.netty.util.AbstractReferenceCounted;
+import io.netty.util.CharsetUtil;
+import io.netty.util.IllegalReferenceCountException;
+import io.netty.util.Recycler;
+
+import java.net.InetAddress;
+import java.nio.charset.CodingErrorAction;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Message that keeps the bytes of the raw message and the field offsets recorded by a scanning
+ * parser. Each field is decoded the first time it is read and cached after that. The date is
+ * decoded up front because a message without a date is not a message.
+ *
+ * <p>The message holds a reference to the buffer it was scanned from and must be released like any
+ * other {@link io.netty.util.ReferenceCounted} message. Handlers extending
+ * {@link io.netty.channel.SimpleChannelInboundHandler} and encoders extending
+ * {@link io.netty.handler.codec.MessageToMessageEncoder} do this automatically. Call
+ * {@link #toSyslogMessage()} to keep a copy after the message is released. Reading a field that
+ * has not been decoded after the message is released throws {@link IllegalReferenceCountException}.</p>
+ *
+ * <p>Messages parsed from a pooled {@link BufferedSyslogRequest} are taken from a {@link Recycler}
+ * and returned to it when they are released. A pooled message must not be touched in any way after
+ * it has been released, it may already hold another message.</p>
+ *
+ * <p>Like a ByteBuf this class is not thread safe. It is meant to be read by one thread at a time.</p>
+ *
+ * @see FieldOffsets
+ */
+public final class LazyMessage extends AbstractReferenceCounted implements Message {
+  private static final int RAW_MESSAGE = FieldOffsets.COUNT;
+
+  private static final Recycler<LazyMessage> RECYCLER = new Recycler<LazyMessage>() {
+    @Override
+    protected LazyMessage newObject(Handle<LazyMessage> handle) {
+      return new LazyMessage(handle);
+    }
+  };
+
+  private final Recycler.Handle<LazyMessage> handle;
+  private final int[] offsets = new int[FieldOffsets.COUNT * 2];
+  private final Object[] values = new Object[FieldOffsets.COUNT + 1];
+  private MessageParser parser;
+  private MessageType type;
+  private InetAddress remoteAddress;
+  private LocalDateTime date;
+  private ByteBuf buffer;
+  private CodingErrorAction malformedInputAction;
+  private int rawStart;
+  private int rawEnd;
+  private int decoded;
+
+  private LazyMessage(Recycler.Handle<LazyMessage> handle) {
+    this.handle = handle;
+  }
+
+  /**
+   * Method is used to create a message. The offsets are copied so the parser can reuse its array.
+   *
+   * @param malformedInputAction Action of the request, used to decode the raw message the same way
+   *                             the request does.
+   * @param pooled true to take the message from the pool.
+   */
+  static LazyMessage newInstance(MessageParser parser, MessageType type, InetAddress remoteAddress, LocalDateTime date, ByteBuf buffer, int[] offsets, CodingErrorAction malformedInputAction, boolean pooled) {
+    final LazyMessage message;
+    if (pooled) {
+      message = RECYCLER.get();
+      message.setRefCnt(1);
+    } else {
+      message = new LazyMessage(null);
+    }
+    message.parser = parser;
+    message.type = type;
+    message.remoteAddress = remoteAddress;
+    message.date = date;
+    message.buffer = buffer.retain();
+    message.malformedInputAction = malformedInputAction;
+    message.rawStart = buffer.readerIndex();
+    message.rawEnd = buffer.writerIndex();
+    System.arraycopy(offsets, 0, message.offsets, 0, message.offsets.length);
+    return message;
+  }
+
+  @SuppressWarnings("unchecked")
+  private <T> T value(int field) {
+    final int mask = 1 << field;
+    if ((this.decoded & mask) == 0) {
+      if (refCnt() == 0) {
+        throw new IllegalReferenceCountException(0);
+      }
+      this.values[field] = RAW_MESSAGE == field ?
+          BufferedSyslogRequest.decode(this.buffer, this.rawStart, this.rawEnd, CharsetUtil.UTF_8, this.malformedInputAction) :
+          this.parser.decode(this.buffer, this.offsets, field);
+      this.decoded |= mask;
+    }
+    return (T) this.values[field];
+  }
+
+  /**
+   * @return Number of bytes in the raw message.
+   */
+  int size() {
+    return this.rawEnd - this.rawStart;
+  }
+
+  @Override
+  public LocalDateTime date() {
+    return this.date;
+  }
+
+  @Override
+  public InetAddress remoteAddress() {
+    return this.remoteAddress;
+  }
+
+  @Override
+  public String rawMessage() {
+    return value(RAW_MESSAGE);
+  }
+
+  @Override
+  public MessageType type() {
+    return this.type;
+  }
+
+  @Override
+  public Integer level() {
+    final Integer priority = value(FieldOffsets.PRIORITY);
+    return null == priority ? null : Priority.level(priority, Priority.facility(priority));
+  }
+
+  @Override
+  public Integer version() {
+    return value(FieldOffsets.VERSION);
+  }
+
+  @Override
+  public Integer facility() {
+    final Integer priority = value(FieldOffsets.PRIORITY);
+    return null == priority ? null : Priority.facility(priority);
+  }
+
+  @Override
+  public String host() {
+    return value(FieldOffsets.HOST);
+  }
+
+  @Override
+  public String message() {
+    return value(FieldOffsets.MESSAGE);
+  }
+
+  @Override
+  public String processId() {
+    return value(FieldOffsets.PROCESS_ID);
+  }
+
+  @Override
+  public String tag() {
+    return value(FieldOffsets.TAG);
+  }
+
+  @Override
+  public String messageId() {
+    return value(FieldOffsets.MESSAGE_ID);
+  }
+
+  @Override
+  public String appName() {
+    return value(FieldOffsets.APP_NAME);
+  }
+
+  @Override
+  public List<StructuredData> structuredData() {
+    return value(FieldOffsets.STRUCTURED_DATA);
+  }
+
+  @Override
+  public String deviceVendor() {
+    return value(FieldOffsets.DEVICE_VENDOR);
+  }
+
+  @Override
+  public String deviceProduct() {
+    return value(FieldOffsets.DEVICE_PRODUCT);
+  }
+
+  @Override
+  public String deviceVersion() {
+    return value(FieldOffsets.DEVICE_VERSION);
+  }
+
+  @Override
+  public String deviceEventClassId() {
+    return value(FieldOffsets.DEVICE_EVENT_CLASS_ID);
+  }
+
+  @Override
+  public String name() {
+    return value(FieldOffsets.NAME);
+  }
+
+  @Override
+  public String severity() {
+    return value(FieldOffsets.SEVERITY);
+  }
+
+  @Override
+  public Map<String, String> extension() {
+    return value(FieldOffsets.EXTENSION);
+  }
+
+  /**
+   * Method is used to decode every field and copy the message to an immutable message that does not
+   * hold a reference to the buffer. This is also how the message is serialized by Jackson.
+   *
+   * @return Copy of the message.
+   */
+  @JsonValue
+  public SyslogMessage toSyslogMessage() {
+    return ImmutableSyslogMessage.builder()
+        .from((Message) this)
+        .build();
+  }
+
+  @Override
+  public LazyMessage touch(Object hint) {
+    this.buffer.touch(hint);
+    return this;
+  }
+
+  @Override
+  public LazyMessage retain() {
+    super.retain();
+    return this;
+  }
+
+  @Override
+  public LazyMessage retain(int increment) {
+    super.retain(increment);
+    return this;
+  }
+
+  @Override
+  public LazyMessage touch() {
+    super.touch();
+    return this;
+  }
+
+  @Override
+  protected void deallocate() {
+    this.buffer.release();
+    if (null != this.handle) {
+      this.parser = null;
+      this.remoteAddress = null;
+      this.date = null;
+      this.buffer = null;
+      this.malformedInputAction = null;
+      this.decoded = 0;
+      Arrays.fill(this.values, null);
+      this.handle.recycle(this);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "LazyMessage{" +
+        "type=" + this.type +
+        ", date=" + this.date +
+        ", remoteAddress=" + this.remoteAddress +
+        ", refCnt=" + refCnt() +
+        '}';
+  }
+}
@@ -0,0 +1,317 @@
+/**
+ * Copyright © 2018 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.netty.syslog;
+
+import io.netty.buffer.ByteBufHolder;
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+import io.netty.util.internal.ObjectUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Budget is used to bound the memory held by requests that were received but not handed to the next
+ * handler yet, across every channel that shares it. {@link SyslogMessageHandler} acquires the size
+ * of each request when it arrives and releases it once the parsed message was passed along, so
+ * requests waiting in the {@link ParseExecution} queue count against the budget. With
+ * {@link ParseExecution#inline()} a request is parsed and passed along before the next one is read,
+ * nothing is ever waiting and the budget has no effect. A handler that queues messages itself can
+ * call {@link #acquire(Channel, int)} and {@link #release(Channel, int)} as well.
+ *
+ * <p>When the bytes in use cross the high watermark reads are paused on the connections holding
+ * the most bytes, enough of them to get back under the low watermark, and the senders are slowed by
+ * tcp flow control. Reads resume once the bytes in use fall under the low watermark, unless another
+ * handler such as {@link RELPServerHandler} paused them as well. Udp sockets can not be slowed
+ * down, over the high watermark datagrams are dropped and counted, see {@link DatagramPolicy}.</p>
+ *
+ * <pre>
+ * MemoryBudget budget = MemoryBudget.builder()
+ *     .highWatermark(256 * 1024 * 1024)
+ *     .lowWatermark(192 * 1024 * 1024)
+ *     .build();
+ * </pre>
+ */
+public final class MemoryBudget {
+  private static final Logger log = LoggerFactory.getLogger(MemoryBudget.class);
+  private static final AttributeKey<Usage> USAGE = AttributeKey.valueOf(MemoryBudget.class, "usage");
+  public static final long DEFAULT_HIGH_WATERMARK = 256L * 1024 * 1024;
+
+  public enum DatagramPolicy {
+    /**
+     * Datagrams that arrive over the high watermark are dropped.
+     */
+    DROP,
+    /**
+     * Datagrams are always accepted, the ones that arrive over the high watermark are counted.
+     */
+    ACCEPT
+  }
+
+  final long highWatermark;
+  final long lowWatermark;
+  final DatagramPolicy datagramPolicy;
+  final AtomicLong used = new AtomicLong();
+  final AtomicInteger paused = new AtomicInteger();
+  final LongAdder dropped = new LongAdder();
+  final Map<Channel, Usage> channels = new ConcurrentHashMap<>();
+  /**
+   * Bytes in use at which the connections are looked at again. Keeps the connections that are not
+   * paused from sorting every connection on every request while over the high watermark.
+   */
+  volatile long nextPause;
+
+  private MemoryBudget(Builder builder) {
+    this.highWatermark = builder.highWatermark;
+    this.lowWatermark = builder.lowWatermark;
+    this.datagramPolicy = builder.datagramPolicy;
+    this.nextPause = builder.highWatermark;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * @return Size of the request in bytes. Requests that do not hold a buffer are counted by the
+   * length of the raw message.
+   */
+  static int size(SyslogRequest request) {
+    if (request instanceof ByteBufHolder) {
+      return ((ByteBufHolder) request).content().readableBytes();
+    }
+    final String rawMessage = request.rawMessage();
+    return null == rawMessage ? 0 : rawMessage.length();
+  }
+
+  /**
+   * @return Bytes in use.
+   */
+  public long used() {
+    return this.used.get();
+  }
+
+  /**
+   * @return Number of connections that are paused.
+   */
+  public int pausedCount() {
+    return this.paused.get();
+  }
+
+  /**
+   * @return Number of datagrams that arrived over the high watermark.
+   */
+  public long droppedCount() {
+    return this.dropped.sum();
+  }
+
+  /**
+   * Method is used to account for bytes received on a connection. Reads are paused on the heaviest
+   * connections when the high watermark is crossed.
+   *
+   * @param channel Connection the bytes were received on.
+   * @param bytes   Number of bytes.
+   */
+  public void acquire(Channel channel, int bytes) {
+    Usage usage = channel.attr(USAGE).get();
+    if (null == usage) {
+      usage = new Usage(channel);
+      final Usage existing = channel.attr(USAGE).setIfAbsent(usage);
+      if (null == existing) {
+        this.channels.put(channel, usage);
+      } else {
+        usage = existing;
+      }
+    }
+    usage.bytes.addAndGet(bytes);
+    if (this.used.addAndGet(bytes) > this.nextPause && !usage.paused) {
+      pause();
+    }
+  }
+
+  /**
+   * Method is used to account for a datagram.
+   *
+   * @param bytes Number of bytes.
+   * @return false if the datagram must be dropped. Nothing was acquired.
+   */
+  public boolean tryAcquireDatagram(int bytes) {
+    if (this.used.get() > this.highWatermark) {
+      this.dropped.increment();
+      if (DatagramPolicy.DROP == this.datagramPolicy) {
+        return false;
+      }
+    }
+    this.used.addAndGet(bytes);
+    return true;
+  }
+
+  /**
+   * Method is used to give back bytes acquired for a connection. Reads are resumed on every
+   * connection when the bytes in use fall under the low watermark.
+   *
+   * @param channel Connection the bytes were acquired for.
+   * @param bytes   Number of bytes.
+   */
+  public void release(Channel channel, int bytes) {
+    final Usage usage = channel.attr(USAGE).get();
+    if (null != usage) {
+      usage.bytes.addAndGet(-bytes);
+    }
+    released(this.used.addAndGet(-bytes));
+  }
+
+  /**
+   * Method is used to give back bytes acquired for a datagram.
+   *
+   * @param bytes Number of bytes.
+   */
+  public void releaseDatagram(int bytes) {
+    released(this.used.addAndGet(-bytes));
+  }
+
+  /**
+   * Method is used to stop tracking a connection once it is closed. Bytes still held for it must
+   * be released.
+   */
+  public void remove(Channel channel) {
+    final Usage usage = this.channels.remove(channel);
+    if (null != usage) {
+      synchronized (this) {
+        if (usage.paused) {
+          usage.paused = false;
+          this.paused.decrementAndGet();
+        }
+      }
+    }
+  }
+
+  /**
+   * Pauses the connections holding the most bytes until the paused connections hold enough to get
+   * back under the low watermark once they are drained.
+   */
+  synchronized void pause() {
+    final long used = this.used.get();
+    if (used <= this.highWatermark) {
+      return;
+    }
+    // Look again once another eighth of the gap between the watermarks has come in.
+    this.nextPause = used + Math.max(1, (this.highWatermark - this.lowWatermark) / 8);
+    final List<Usage> candidates = new ArrayList<>(this.channels.size());
+    long pausedBytes = 0;
+    for (Usage usage : this.channels.values()) {
+      if (usage.paused) {
+        pausedBytes += usage.bytes.get();
+      } else {
+        candidates.add(usage);
+      }
+    }
+    candidates.sort(Comparator.comparingLong((Usage u) -> u.bytes.get()).reversed());
+    final long target = used - this.lowWatermark;
+    for (Usage usage : candidates) {
+      if (pausedBytes >= target) {
+        break;
+      }
+      usage.paused = true;
+      this.paused.incrementAndGet();
+      pausedBytes += usage.bytes.get();
+      ReadPause.pause(usage.channel, ReadPause.BUDGET);
+      log.debug("pause() - Pausing reads. remoteAddress = '{}' bytes = {} used = {}", usage.channel.remoteAddress(), usage.bytes.get(), used);
+    }
+  }
+
+  void released(long used) {
+    if (used < this.lowWatermark && (this.paused.get() > 0 || this.nextPause > this.highWatermark)) {
+      resume();
+    }
+  }
+
+  synchronized void resume() {
+    if (this.used.get() >= this.lowWatermark) {
+      return;
+    }
+    this.nextPause = this.highWatermark;
+    for (Usage usage : this.channels.values()) {
+      if (usage.paused) {
+        usage.paused = false;
+        this.paused.decrementAndGet();
+        ReadPause.resume(usage.channel, ReadPause.BUDGET);
+        log.debug("resume() - Resuming reads. remoteAddress = '{}'", usage.channel.remoteAddress());
+      }
+    }
+  }
+
+  static final class Usage {
+    final Channel channel;
+    final AtomicLong bytes = new AtomicLong();
+    volatile boolean paused;
+
+    Usage(Channel channel) {
+      this.channel = channel;
+    }
+  }
+
+  public static final class Builder {
+    long highWatermark = DEFAULT_HIGH_WATERMARK;
+    long lowWatermark = -1;
+    DatagramPolicy datagramPolicy = DatagramPolicy.DROP;
+
+    private Builder() {
+    }
+
+    /**
+     * @param highWatermark Bytes in use at which connections are paused and datagrams dropped.
+     * @return this
+     */
+    public Builder highWatermark(long highWatermark) {
+      this.highWatermark = ObjectUtil.checkPositive(highWatermark, "highWatermark");
+      return this;
+    }
+
+    /**
+     * @param lowWatermark Bytes in use under which the connections are resumed. Defaults to three
+     *                     quarters of the high watermark.
+     * @return this
+     */
+    public Builder lowWatermark(long lowWatermark) {
+      this.lowWatermark = ObjectUtil.checkPositiveOrZero(lowWatermark, "lowWatermark");
+      return this;
+    }
+
+    public Builder datagramPolicy(DatagramPolicy datagramPolicy) {
+      this.datagramPolicy = ObjectUtil.checkNotNull(datagramPolicy, "datagramPolicy");
+      return this;
+    }
+
+    public MemoryBudget build() {
+      if (this.lowWatermark < 0) {
+        this.lowWatermark = this.highWatermark / 4 * 3;
+      }
+      if (this.lowWatermark > this.highWatermark) {
+        throw new IllegalStateException("lowWatermark must not be larger than highWatermark.");
+      }
+      return new MemoryBudget(this);
+    }
+  }
+}
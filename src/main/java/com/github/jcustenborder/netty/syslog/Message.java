@@ -159,8 +159,10 @@ rfc 5424
   @JsonSerialize(as = ImmutableStructuredData.class)
   @JsonDeserialize(as = ImmutableStructuredData.class)
   interface StructuredData {
+    @Value.Parameter
     String id();
 
+    @Value.Parameter
     Map<String, String> structuredDataElements();
   }
   /*
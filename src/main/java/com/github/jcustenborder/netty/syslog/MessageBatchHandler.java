@@ -0,0 +1,211 @@
+/**
+ * Copyright © 2018 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.netty.syslog;
+
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.FastThreadLocal;
+import io.netty.util.concurrent.ScheduledFuture;
+import io.netty.util.internal.ObjectUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Handler is used to collect the parsed {@link Message}s into batches so the next handler is called
+ * once per {@code List<Message>} instead of once per message. It goes between
+ * {@link SyslogMessageHandler} and the handler that writes the messages somewhere. A batch is passed
+ * along when
+ *
+ * <ul>
+ * <li>it holds {@code maxMessages} messages,</li>
+ * <li>the raw messages in it add up to {@code maxBytes} bytes,</li>
+ * <li>{@code linger} has passed since the first message was added,</li>
+ * <li>a read completes or the channel is closed.</li>
+ * </ul>
+ *
+ * <p>With {@link Scope#CHANNEL} each channel has its own batch. With {@link Scope#EVENT_LOOP} the
+ * channels of an event loop share a batch, which suits many quiet connections or several udp
+ * sockets. A completed read does not pass the shared batch along right away, the event loop
+ * completes the read of each channel before it reads the next one. It is passed along once the
+ * event loop has handled every channel that was ready, so the reads of one pass end up in the same
+ * batch. The batch is passed along on the channel that added the last message, use
+ * {@link Message#remoteAddress()} to tell the senders apart. Either way the batch is only touched by
+ * the event loop and is handed over as is, the handler keeps no reference to it. Pooled messages
+ * must still be released one by one.</p>
+ *
+ * <pre>
+ * channel.pipeline().addLast(
+ *     new TCPSyslogMessageDecoder(),
+ *     new SyslogMessageHandler(),
+ *     new MessageBatchHandler(512, 1024 * 1024, 50, TimeUnit.MILLISECONDS, MessageBatchHandler.Scope.EVENT_LOOP),
+ *     new SimpleChannelInboundHandler&lt;List&lt;Message&gt;&gt;() {...}
+ * );
+ * </pre>
+ */
+@ChannelHandler.Sharable
+public class MessageBatchHandler extends ChannelInboundHandlerAdapter {
+  private static final Logger log = LoggerFactory.getLogger(MessageBatchHandler.class);
+  private static final AttributeKey<Batch> BATCH = AttributeKey.valueOf(MessageBatchHandler.class, "batch");
+  public static final int DEFAULT_MAX_MESSAGES = 512;
+  public static final int DEFAULT_MAX_BYTES = 1024 * 1024;
+  public static final long DEFAULT_LINGER_MILLIS = 50;
+
+  public enum Scope {
+    CHANNEL,
+    EVENT_LOOP
+  }
+
+  final int maxMessages;
+  final int maxBytes;
+  final long lingerNanos;
+  final Scope scope;
+  private final FastThreadLocal<Batch> loopBatch = new FastThreadLocal<Batch>() {
+    @Override
+    protected Batch initialValue() {
+      return new Batch();
+    }
+  };
+
+  /**
+   * @param maxMessages Number of messages at which a batch is passed along.
+   * @param maxBytes    Size of the raw messages at which a batch is passed along.
+   * @param linger      How long the first message of a batch waits for more. 0 to only pass
+   *                    batches along when they are full or a read completes.
+   * @param unit        Unit of linger.
+   * @param scope       Whether a batch is kept per channel or per event loop.
+   */
+  public MessageBatchHandler(int maxMessages, int maxBytes, long linger, TimeUnit unit, Scope scope) {
+    this.maxMessages = ObjectUtil.checkPositive(maxMessages, "maxMessages");
+    this.maxBytes = ObjectUtil.checkPositive(maxBytes, "maxBytes");
+    this.lingerNanos = unit.toNanos(ObjectUtil.checkPositiveOrZero(linger, "linger"));
+    this.scope = ObjectUtil.checkNotNull(scope, "scope");
+  }
+
+  public MessageBatchHandler(Scope scope) {
+    this(DEFAULT_MAX_MESSAGES, DEFAULT_MAX_BYTES, DEFAULT_LINGER_MILLIS, TimeUnit.MILLISECONDS, scope);
+  }
+
+  public MessageBatchHandler() {
+    this(Scope.CHANNEL);
+  }
+
+  /**
+   * @return Size of the raw message in bytes. Messages that were not parsed from a buffer are
+   * counted by the length of the raw message.
+   */
+  static int size(Message message) {
+    if (message instanceof LazyMessage) {
+      return ((LazyMessage) message).size();
+    }
+    final String rawMessage = message.rawMessage();
+    return null == rawMessage ? 0 : rawMessage.length();
+  }
+
+  Batch batch(ChannelHandlerContext context) {
+    if (Scope.EVENT_LOOP == this.scope) {
+      return this.loopBatch.get();
+    }
+    Batch batch = context.channel().attr(BATCH).get();
+    if (null == batch) {
+      batch = new Batch();
+      context.channel().attr(BATCH).set(batch);
+    }
+    return batch;
+  }
+
+  @Override
+  public void channelRead(ChannelHandlerContext context, Object msg) throws Exception {
+    if (!(msg instanceof Message)) {
+      context.fireChannelRead(msg);
+      return;
+    }
+    final Batch batch = batch(context);
+    batch.context = context;
+    batch.messages.add((Message) msg);
+    batch.bytes += size((Message) msg);
+    if (batch.messages.size() >= this.maxMessages || batch.bytes >= this.maxBytes) {
+      batch.emit();
+    } else if (1 == batch.messages.size() && this.lingerNanos > 0) {
+      batch.linger = context.executor().schedule(batch.lingerTask, this.lingerNanos, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  @Override
+  public void channelReadComplete(ChannelHandlerContext context) throws Exception {
+    final Batch batch = batch(context);
+    if (Scope.EVENT_LOOP != this.scope) {
+      batch.emit();
+    } else if (!batch.messages.isEmpty() && !batch.emitScheduled) {
+      // Runs after the event loop is done with the channels that are ready.
+      batch.emitScheduled = true;
+      context.executor().execute(batch.emitTask);
+    }
+    super.channelReadComplete(context);
+  }
+
+  @Override
+  public void channelInactive(ChannelHandlerContext context) throws Exception {
+    batch(context).emit();
+    super.channelInactive(context);
+  }
+
+  /**
+   * Messages waiting to be passed along. Only read and written on the event loop.
+   */
+  static final class Batch {
+    final Runnable lingerTask = this::lingerExpired;
+    final Runnable emitTask = this::emitScheduled;
+    List<Message> messages = new ArrayList<>();
+    int bytes;
+    ChannelHandlerContext context;
+    ScheduledFuture<?> linger;
+    boolean emitScheduled;
+
+    void lingerExpired() {
+      this.linger = null;
+      emit();
+    }
+
+    void emitScheduled() {
+      this.emitScheduled = false;
+      emit();
+    }
+
+    void emit() {
+      if (null != this.linger) {
+        this.linger.cancel(false);
+        this.linger = null;
+      }
+      if (this.messages.isEmpty()) {
+        return;
+      }
+      final List<Message> batch = this.messages;
+      // Size the next batch like this one to skip growing the list.
+      this.messages = new ArrayList<>(batch.size());
+      this.bytes = 0;
+      final ChannelHandlerContext context = this.context;
+      this.context = null;
+      log.trace("emit() - messages = {}", batch.size());
+      context.fireChannelRead(batch);
+    }
+  }
+}
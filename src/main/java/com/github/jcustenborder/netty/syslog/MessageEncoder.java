@@ -16,129 +16,397 @@
 package com.github.jcustenborder.netty.syslog;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToMessageEncoder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.nio.charset.Charset;
+import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * Encoder is used to write a {@link Message} in the format of its {@link MessageType}. The size of
+ * each message is worked out before anything is written so the buffer is allocated once at its
+ * final size. Strings are written as UTF-8 without a charset encoder, the priority comes from a
+ * table and the date is formatted once per second.
+ *
+ * <p>RFC 5424 messages are written as the RFC describes them. Empty header fields are written as
+ * the nil value, the date is written in UTC with up to microseconds and the values of the
+ * structured data are escaped. When a {@link Framing} is passed the frame is written into the same
+ * buffer as the message, octet counting prefixes the length that is already known.</p>
+ */
 public class MessageEncoder extends MessageToMessageEncoder<Message> {
   private final static Logger log = LoggerFactory.getLogger(MessageEncoder.class);
+  static final DateTimeFormatter RFC5424_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
+  static final int MAX_FRACTION_DIGITS = 6;
   final DateTimeFormatter cefDateFormat;
+  final DateCache dateCache;
+  final DateCache rfc5424DateCache;
+  final Framing framing;
   final Charset charset;
   final byte[] cef;
-  final byte[] pipe;
 
-  public MessageEncoder(DateTimeFormatter cefDateFormat) {
+  /**
+   * Framing written around each message.
+   */
+  public enum Framing {
+    /**
+     * Each message is written as is. Used for datagrams.
+     */
+    NONE,
+    /**
+     * Each message is prefixed with its length and a space. RFC 6587 section 3.4.1.
+     */
+    OCTET_COUNTING,
+    /**
+     * Each message is followed by a line feed. RFC 6587 section 3.4.2.
+     */
+    NON_TRANSPARENT
+  }
+
+  public MessageEncoder(DateTimeFormatter cefDateFormat, Framing framing) {
     this.cefDateFormat = cefDateFormat;
+    this.framing = framing;
+    this.dateCache = new DateCache(cefDateFormat);
+    this.rfc5424DateCache = new DateCache(RFC5424_DATE_FORMAT);
     this.charset = Charset.forName("UTF-8");
-    this.cef = "CEF:0".getBytes(this.charset);
-    this.pipe = "|".getBytes(this.charset);
+    this.cef = "CEF:0|".getBytes(this.charset);
+  }
+
+  public MessageEncoder(DateTimeFormatter cefDateFormat) {
+    this(cefDateFormat, Framing.NONE);
+  }
+
+  static int digits(int value) {
+    int digits = 1;
+    while (value >= 10) {
+      value /= 10;
+      digits++;
+    }
+    return digits;
+  }
+
+  static void writeNumber(ByteBuf buffer, int value, int digits) {
+    final int index = buffer.writerIndex();
+    for (int i = digits - 1; i >= 0; i--) {
+      buffer.setByte(index + i, '0' + value % 10);
+      value /= 10;
+    }
+    buffer.writerIndex(index + digits);
+  }
+
+  /**
+   * Method is used to allocate the buffer for a message of the supplied size with room for the
+   * framing. The length of octet counted frames is written before the message.
+   */
+  ByteBuf allocate(ChannelHandlerContext context, int size) {
+    final ByteBuf buffer;
+    switch (this.framing) {
+      case OCTET_COUNTING:
+        final int digits = digits(size);
+        buffer = context.alloc().buffer(digits + 1 + size);
+        writeNumber(buffer, size, digits);
+        buffer.writeByte(' ');
+        break;
+      case NON_TRANSPARENT:
+        buffer = context.alloc().buffer(size + 1);
+        break;
+      default:
+        buffer = context.alloc().buffer(size);
+        break;
+    }
+    return buffer;
+  }
+
+  void finish(ByteBuf buffer, List<Object> output) {
+    if (Framing.NON_TRANSPARENT == this.framing) {
+      buffer.writeByte('\n');
+    }
+    output.add(buffer);
+  }
+
+  static int versionLength(Integer version) {
+    if (null == version) {
+      return 0;
+    }
+    return version >= 0 && version < 10 ? 1 : Integer.toString(version).length();
+  }
+
+  static void writeVersion(ByteBuf buffer, Integer version) {
+    if (null == version) {
+      return;
+    }
+    if (version >= 0 && version < 10) {
+      buffer.writeByte('0' + version);
+    } else {
+      ByteBufUtil.writeAscii(buffer, Integer.toString(version));
+    }
   }
 
   private void encodeCEF(ChannelHandlerContext context, Message message, List<Object> output) throws Exception {
     log.trace("encode() - message = {}", message);
-    final ByteBuf buffer = context.alloc().buffer();
-    EncoderHelper.appendPriority(buffer, message);
+    final byte[] date = this.dateCache.format(message.date());
+    final String host = message.host();
+    final String deviceVendor = message.deviceVendor();
+    final String deviceProduct = message.deviceProduct();
+    final String deviceVersion = message.deviceVersion();
+    final String deviceEventClassId = message.deviceEventClassId();
+    final String name = message.name();
+    final String severity = message.severity();
+    final Map<String, String> extension = message.extension();
+
+    final int hostLength = EncoderHelper.length(host);
+    final int deviceVendorLength = EncoderHelper.length(deviceVendor);
+    final int deviceProductLength = EncoderHelper.length(deviceProduct);
+    final int deviceVersionLength = EncoderHelper.length(deviceVersion);
+    final int deviceEventClassIdLength = EncoderHelper.length(deviceEventClassId);
+    final int nameLength = EncoderHelper.length(name);
+    final int severityLength = EncoderHelper.length(severity);
 
-    buffer.writeCharSequence(cefDateFormat.format(message.date()), this.charset);
-    buffer.writeBytes(EncoderHelper.SPACE);
-    buffer.writeCharSequence(message.host(), this.charset);
-    buffer.writeBytes(EncoderHelper.SPACE);
+    int size = EncoderHelper.priorityLength(message) + date.length + 1 + hostLength + 1 + this.cef.length +
+        deviceVendorLength + 1 + deviceProductLength + 1 + deviceVersionLength + 1 +
+        deviceEventClassIdLength + 1 + nameLength + 1 + severityLength + 1;
+    if (!extension.isEmpty()) {
+      size += extension.size() * 2 - 1;
+      for (Map.Entry<String, String> kvp : extension.entrySet()) {
+        size += EncoderHelper.length(kvp.getKey()) + EncoderHelper.length(kvp.getValue());
+      }
+    }
+
+    final ByteBuf buffer = allocate(context, size);
+    EncoderHelper.appendPriority(buffer, message);
+    buffer.writeBytes(date);
+    buffer.writeByte(' ');
+    EncoderHelper.write(buffer, host, hostLength);
+    buffer.writeByte(' ');
     buffer.writeBytes(this.cef);
-    buffer.writeBytes(this.pipe);
-    buffer.writeCharSequence(message.deviceVendor(), this.charset);
-    buffer.writeBytes(this.pipe);
-    buffer.writeCharSequence(message.deviceProduct(), this.charset);
-    buffer.writeBytes(this.pipe);
-    buffer.writeCharSequence(message.deviceVersion(), this.charset);
-    buffer.writeBytes(this.pipe);
-    buffer.writeCharSequence(message.deviceEventClassId(), this.charset);
-    buffer.writeBytes(this.pipe);
-    buffer.writeCharSequence(message.name(), this.charset);
-    buffer.writeBytes(this.pipe);
-    buffer.writeCharSequence(message.severity(), this.charset);
-    buffer.writeBytes(this.pipe);
+    EncoderHelper.write(buffer, deviceVendor, deviceVendorLength);
+    buffer.writeByte('|');
+    EncoderHelper.write(buffer, deviceProduct, deviceProductLength);
+    buffer.writeByte('|');
+    EncoderHelper.write(buffer, deviceVersion, deviceVersionLength);
+    buffer.writeByte('|');
+    EncoderHelper.write(buffer, deviceEventClassId, deviceEventClassIdLength);
+    buffer.writeByte('|');
+    EncoderHelper.write(buffer, name, nameLength);
+    buffer.writeByte('|');
+    EncoderHelper.write(buffer, severity, severityLength);
+    buffer.writeByte('|');
 
     int index = 0;
-    for (Map.Entry<String, String> kvp : message.extension().entrySet()) {
+    for (Map.Entry<String, String> kvp : extension.entrySet()) {
       if (index > 0) {
-        buffer.writeBytes(EncoderHelper.SPACE);
+        buffer.writeByte(' ');
       }
-      buffer.writeCharSequence(kvp.getKey(), this.charset);
-      buffer.writeBytes(EncoderHelper.EQUALS);
-      buffer.writeCharSequence(kvp.getValue(), this.charset);
+      EncoderHelper.write(buffer, kvp.getKey());
+      buffer.writeByte('=');
+      EncoderHelper.write(buffer, kvp.getValue());
       index++;
     }
 
-    output.add(buffer);
+    finish(buffer, output);
   }
 
   private void encodeRFC3164(ChannelHandlerContext context, Message message, List<Object> output) {
     log.trace("encode() - message = {}", message);
-    final ByteBuf buffer = context.alloc().buffer();
+    final byte[] date = this.dateCache.format(message.date());
+    final String host = message.host();
+    final String tag = message.tag();
+    final String processId = message.processId();
+    final String text = message.message();
+
+    final int hostLength = EncoderHelper.length(host);
+    final int tagLength = EncoderHelper.length(tag);
+    final int processIdLength = EncoderHelper.length(processId);
+    final int textLength = EncoderHelper.length(text);
+
+    int size = EncoderHelper.priorityLength(message) + date.length + 1 + hostLength + 1 + tagLength +
+        EncoderHelper.COLON_SPACE.length + textLength;
+    if (null != processId) {
+      size += processIdLength + 2;
+    }
+
+    final ByteBuf buffer = allocate(context, size);
     EncoderHelper.appendPriority(buffer, message);
+    buffer.writeBytes(date);
+    buffer.writeByte(' ');
+    EncoderHelper.write(buffer, host, hostLength);
+    buffer.writeByte(' ');
+    EncoderHelper.write(buffer, tag, tagLength);
 
-    buffer.writeCharSequence(message.date().format(this.cefDateFormat), this.charset);
-    buffer.writeCharSequence(" ", this.charset);
-    buffer.writeCharSequence(message.host(), this.charset);
-    buffer.writeCharSequence(" ", this.charset);
-    buffer.writeCharSequence(message.tag(), this.charset);
+    if (null != processId) {
+      buffer.writeByte('[');
+      EncoderHelper.write(buffer, processId, processIdLength);
+      buffer.writeByte(']');
+    }
+    buffer.writeBytes(EncoderHelper.COLON_SPACE);
+    EncoderHelper.write(buffer, text, textLength);
+    finish(buffer, output);
+  }
 
-    if (null != message.processId()) {
-      buffer.writeCharSequence("[", this.charset);
-      buffer.writeCharSequence(message.processId().toString(), this.charset);
-      buffer.writeCharSequence("]", this.charset);
+  /**
+   * @return Number of bytes of the value, or of the nil value if it is null or empty.
+   */
+  static int headerLength(String value) {
+    return null == value || value.isEmpty() ? 1 : EncoderHelper.length(value);
+  }
+
+  static void writeHeader(ByteBuf buffer, String value, int length) {
+    if (null == value || value.isEmpty()) {
+      buffer.writeByte('-');
+    } else {
+      EncoderHelper.write(buffer, value, length);
     }
-    buffer.writeCharSequence(": ", this.charset);
-    buffer.writeCharSequence(message.message(), this.charset);
-    output.add(buffer);
   }
 
-  private void encodeRFC5424(ChannelHandlerContext context, Message message, List<Object> output) {
-    final ByteBuf buffer = context.alloc().buffer();
+  static int fractionDigits(int nanos) {
+    int micros = nanos / 1000;
+    if (0 == micros) {
+      return 0;
+    }
+    int digits = MAX_FRACTION_DIGITS;
+    while (micros % 10 == 0) {
+      micros /= 10;
+      digits--;
+    }
+    return digits;
+  }
+
+  /**
+   * Method is used to write the fraction of a second and the Z, the dates are in UTC.
+   */
+  static void writeFraction(ByteBuf buffer, int nanos, int digits) {
+    if (digits > 0) {
+      buffer.writeByte('.');
+      int micros = nanos / 1000;
+      for (int i = digits; i < MAX_FRACTION_DIGITS; i++) {
+        micros /= 10;
+      }
+      writeNumber(buffer, micros, digits);
+    }
+    buffer.writeByte('Z');
+  }
 
+  static boolean isEscaped(char c) {
+    return c == '"' || c == '\\' || c == ']';
+  }
 
-    EncoderHelper.appendPriority(buffer, message);
-    if (null != message.version()) {
-      buffer.writeCharSequence(message.version().toString(), this.charset);
+  /**
+   * @return Number of bytes of the param value once '"', '\' and ']' are escaped.
+   */
+  static int escapedLength(String value) {
+    int length = EncoderHelper.length(value);
+    for (int i = 0; i < value.length(); i++) {
+      if (isEscaped(value.charAt(i))) {
+        length++;
+      }
     }
-    buffer.writeBytes(EncoderHelper.SPACE);
-    buffer.writeCharSequence(message.date().format(this.cefDateFormat), this.charset);
-    buffer.writeCharSequence(" ", this.charset);
-    buffer.writeCharSequence(message.host(), this.charset);
-    buffer.writeCharSequence(" ", this.charset);
+    return length;
+  }
 
-    if (null != message.appName()) {
-      buffer.writeCharSequence(message.appName(), this.charset);
+  static void writeEscaped(ByteBuf buffer, String value) {
+    int start = 0;
+    for (int i = 0; i < value.length(); i++) {
+      if (isEscaped(value.charAt(i))) {
+        EncoderHelper.write(buffer, value.subSequence(start, i));
+        buffer.writeByte('\\');
+        start = i;
+      }
     }
-    if (null != message.processId()) {
-      buffer.writeCharSequence(message.processId(), this.charset);
-    } else {
-      buffer.writeCharSequence(" -", this.charset);
+    EncoderHelper.write(buffer, 0 == start ? value : value.subSequence(start, value.length()));
+  }
+
+  static int structuredDataLength(List<Message.StructuredData> structuredData) {
+    if (null == structuredData || structuredData.isEmpty()) {
+      return 1;
     }
-    if (null != message.messageId()) {
-      buffer.writeCharSequence(message.messageId(), this.charset);
-    } else {
-      buffer.writeCharSequence(" -", this.charset);
+    int length = 0;
+    for (Message.StructuredData element : structuredData) {
+      length += 2 + EncoderHelper.length(element.id());
+      for (Map.Entry<String, String> param : element.structuredDataElements().entrySet()) {
+        // SP PARAM-NAME '="' PARAM-VALUE '"'
+        length += 4 + EncoderHelper.length(param.getKey()) + escapedLength(param.getValue());
+      }
+    }
+    return length;
+  }
+
+  static void writeStructuredData(ByteBuf buffer, List<Message.StructuredData> structuredData) {
+    if (null == structuredData || structuredData.isEmpty()) {
+      buffer.writeByte('-');
+      return;
     }
+    for (Message.StructuredData element : structuredData) {
+      buffer.writeByte('[');
+      EncoderHelper.write(buffer, element.id());
+      for (Map.Entry<String, String> param : element.structuredDataElements().entrySet()) {
+        buffer.writeByte(' ');
+        EncoderHelper.write(buffer, param.getKey());
+        buffer.writeBytes(EncoderHelper.EQUALS_QUOTE);
+        writeEscaped(buffer, param.getValue());
+        buffer.writeByte('"');
+      }
+      buffer.writeByte(']');
+    }
+  }
+
+  /**
+   * <pre>
+   * SYSLOG-MSG = PRI VERSION SP TIMESTAMP SP HOSTNAME SP APP-NAME SP PROCID SP MSGID SP STRUCTURED-DATA [SP MSG]
+   * </pre>
+   */
+  private void encodeRFC5424(ChannelHandlerContext context, Message message, List<Object> output) {
+    log.trace("encode() - message = {}", message);
+    final Integer version = null == message.version() ? Integer.valueOf(1) : message.version();
+    final LocalDateTime date = message.date();
+    final byte[] seconds = this.rfc5424DateCache.format(date);
+    final int fractionDigits = fractionDigits(date.getNano());
+    final String host = message.host();
+    final String appName = message.appName();
+    final String processId = message.processId();
+    final String messageId = message.messageId();
+    final List<Message.StructuredData> structuredData = message.structuredData();
+    final String text = message.message();
 
-    buffer.writeCharSequence(" - ", this.charset);
+    final int hostLength = headerLength(host);
+    final int appNameLength = headerLength(appName);
+    final int processIdLength = headerLength(processId);
+    final int messageIdLength = headerLength(messageId);
+    final int textLength = EncoderHelper.length(text);
 
+    int size = EncoderHelper.priorityLength(message) + versionLength(version) + 1 +
+        seconds.length + (fractionDigits > 0 ? fractionDigits + 1 : 0) + 1 + 1 +
+        hostLength + 1 + appNameLength + 1 + processIdLength + 1 + messageIdLength + 1 +
+        structuredDataLength(structuredData);
+    if (textLength > 0) {
+      size += 1 + textLength;
+    }
 
-//    buffer.writeCharSequence(message.tag(), this.charset);
-//
-//    if (null != message.processId()) {
-//      buffer.writeCharSequence("[", this.charset);
-//      buffer.writeCharSequence(message.processId().toString(), this.charset);
-//      buffer.writeCharSequence("]", this.charset);
-//    }
-    buffer.writeCharSequence(message.message(), this.charset);
-    output.add(buffer);
+    final ByteBuf buffer = allocate(context, size);
+    EncoderHelper.appendPriority(buffer, message);
+    writeVersion(buffer, version);
+    buffer.writeByte(' ');
+    buffer.writeBytes(seconds);
+    writeFraction(buffer, date.getNano(), fractionDigits);
+    buffer.writeByte(' ');
+    writeHeader(buffer, host, hostLength);
+    buffer.writeByte(' ');
+    writeHeader(buffer, appName, appNameLength);
+    buffer.writeByte(' ');
+    writeHeader(buffer, processId, processIdLength);
+    buffer.writeByte(' ');
+    writeHeader(buffer, messageId, messageIdLength);
+    buffer.writeByte(' ');
+    writeStructuredData(buffer, structuredData);
+    if (textLength > 0) {
+      buffer.writeByte(' ');
+      EncoderHelper.write(buffer, text, textLength);
+    }
+    finish(buffer, output);
   }
 
   @Override
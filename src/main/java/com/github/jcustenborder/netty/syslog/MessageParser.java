@@ -15,9 +15,16 @@
  */
 package com.github.jcustenborder.netty.syslog;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufHolder;
+import io.netty.buffer.Unpooled;
+import io.netty.util.CharsetUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.time.Clock;
 import java.time.LocalDateTime;
 import java.time.OffsetDateTime;
 import java.time.ZoneId;
@@ -35,17 +42,37 @@ import java.util.regex.Pattern;
 public abstract class MessageParser {
   private static final Logger log = LoggerFactory.getLogger(MessageParser.class);
   private static final String NULL_TOKEN = "-";
+  private static final Pattern WHITESPACE = Pattern.compile("\\s+");
   protected final List<DateTimeFormatter> dateFormats;
   private final ThreadLocal<Matcher> matcherStructuredData;
   private final ThreadLocal<Matcher> matcherKeyValue;
-  private final ZoneId zoneId;
+  private final Clock clock;
+  private final TimestampParser timestampParser;
+  protected final StringCache stringCache;
 
   public MessageParser() {
     this(ZoneId.of("UTC"));
   }
 
   public MessageParser(ZoneId zoneId) {
-    this.zoneId = zoneId;
+    this(Clock.system(zoneId));
+  }
+
+  /**
+   * @param clock Clock used to determine the year for timestamps that do not include one.
+   */
+  public MessageParser(Clock clock) {
+    this(clock, StringCache.shared());
+  }
+
+  /**
+   * @param clock Clock used to determine the year for timestamps that do not include one.
+   * @param stringCache Cache used for the fields that repeat from message to message.
+   */
+  public MessageParser(Clock clock, StringCache stringCache) {
+    this.clock = clock;
+    this.stringCache = stringCache;
+    this.timestampParser = new TimestampParser(clock);
 
     this.dateFormats = Arrays.asList(
         DateTimeFormatter.ISO_OFFSET_DATE_TIME,
@@ -73,6 +100,17 @@ public abstract class MessageParser {
    */
   public abstract Message parse(SyslogRequest request);
 
+  /**
+   * Method is used to return the type of message this parser produces. SyslogMessageHandler uses
+   * this to send a message straight to the parser for its format.
+   *
+   * @return Type of message produced or null if the parser should only be tried in order.
+   * @see SyslogMessageHandler
+   */
+  public MessageType type() {
+    return null;
+  }
+
   protected final ThreadLocal<Matcher> initMatcher(String pattern) {
     return initMatcher(pattern, 0);
   }
@@ -86,8 +124,206 @@ public abstract class MessageParser {
     return NULL_TOKEN.equals(groupText) ? null : groupText;
   }
 
+  /**
+   * Method is used to return the bytes of the raw message for the parsers that scan bytes
+   * instead of matching a regular expression. The bytes of a {@link BufferedSyslogRequest} are
+   * returned as is, they belong to the request and are only valid until it is released. Retain the
+   * buffer to keep it longer. The scanned fields are decoded as UTF-8, so a request received in any
+   * other charset is decoded with its own charset and the UTF-8 bytes of the result are returned.
+   *
+   * @param request Incoming syslog request.
+   * @return Buffer containing the raw message.
+   */
+  protected ByteBuf content(SyslogRequest request) {
+    if (request instanceof ByteBufHolder && isUTF8(request)) {
+      return ((ByteBufHolder) request).content();
+    }
+    return Unpooled.wrappedBuffer(request.rawMessage().getBytes(CharsetUtil.UTF_8));
+  }
+
+  static boolean isUTF8(SyslogRequest request) {
+    if (!(request instanceof BufferedSyslogRequest)) {
+      return true;
+    }
+    final Charset charset = ((BufferedSyslogRequest) request).charset();
+    return CharsetUtil.UTF_8.equals(charset) || CharsetUtil.US_ASCII.equals(charset);
+  }
+
+  /**
+   * Method is used to decode a field that was located by a scanning parser.
+   *
+   * @param buffer Buffer that was scanned.
+   * @param offsets Offsets recorded during the scan.
+   * @param field Field to decode.
+   * @return Decoded field. Null if the field was not present.
+   * @see FieldOffsets
+   */
+  protected String string(ByteBuf buffer, int[] offsets, int field) {
+    if (!FieldOffsets.present(offsets, field)) {
+      return null;
+    }
+    final int start = FieldOffsets.start(offsets, field);
+    final int end = FieldOffsets.end(offsets, field);
+    return buffer.toString(start, end - start, CharsetUtil.UTF_8);
+  }
+
+  /**
+   * Method is used to decode a field that was located by a scanning parser, treating the nil
+   * value '-' as null.
+   *
+   * @param buffer Buffer that was scanned.
+   * @param offsets Offsets recorded during the scan.
+   * @param field Field to decode.
+   * @return Decoded field. Null if the field was not present or was nil.
+   */
+  protected String nullableString(ByteBuf buffer, int[] offsets, int field) {
+    if (!FieldOffsets.present(offsets, field)) {
+      return null;
+    }
+    final int start = FieldOffsets.start(offsets, field);
+    final int end = FieldOffsets.end(offsets, field);
+    if (end - start == 1 && buffer.getByte(start) == '-') {
+      return null;
+    }
+    return string(buffer, offsets, field);
+  }
+
+  /**
+   * Method is used to decode the priority located by a scanning parser.
+   *
+   * @param buffer Buffer that was scanned.
+   * @param offsets Offsets recorded during the scan.
+   * @return Priority of the message. Null if the priority was not present.
+   */
+  protected Integer priority(ByteBuf buffer, int[] offsets) {
+    if (!FieldOffsets.present(offsets, FieldOffsets.PRIORITY)) {
+      return null;
+    }
+    return Priority.box(
+        ParserHelper.parseInt(
+            buffer, FieldOffsets.start(offsets, FieldOffsets.PRIORITY), FieldOffsets.end(offsets, FieldOffsets.PRIORITY)
+        )
+    );
+  }
+
+  /**
+   * Method is used to check if a lazy message created for the request should come from the pool.
+   *
+   * @param request Request that is being parsed.
+   * @return true if the request was taken from the pool.
+   */
+  static boolean pooled(SyslogRequest request) {
+    return request instanceof BufferedSyslogRequest && ((BufferedSyslogRequest) request).pooled();
+  }
+
+  /**
+   * @param request Request that is being parsed.
+   * @return Action the request decodes malformed input with.
+   */
+  static CodingErrorAction malformedInputAction(SyslogRequest request) {
+    return request instanceof BufferedSyslogRequest ?
+        ((BufferedSyslogRequest) request).malformedInputAction() :
+        CodingErrorAction.REPLACE;
+  }
+
+  /**
+   * Method is used by {@link LazyMessage} to decode a single field the first time it is read.
+   * Scanning parsers that create lazy messages override this to decode each field the same way
+   * their parse method does.
+   *
+   * @param buffer Buffer that was scanned.
+   * @param offsets Offsets recorded during the scan.
+   * @param field Field to decode.
+   * @return Decoded value of the field. Null if the parser does not produce the field.
+   * @see FieldOffsets
+   */
+  Object decode(ByteBuf buffer, int[] offsets, int field) {
+    return null;
+  }
+
+  /**
+   * Method is used to return a field that was located by a scanning parser from the string cache.
+   * This is used for the fields that repeat from message to message such as the host.
+   *
+   * @param buffer Buffer that was scanned.
+   * @param offsets Offsets recorded during the scan.
+   * @param field Field to return.
+   * @return Cached field. Null if the field was not present.
+   * @see StringCache
+   */
+  protected String cachedString(ByteBuf buffer, int[] offsets, int field) {
+    if (!FieldOffsets.present(offsets, field)) {
+      return null;
+    }
+    return this.stringCache.get(buffer, FieldOffsets.start(offsets, field), FieldOffsets.end(offsets, field));
+  }
+
+  /**
+   * Method is used to return a field that was located by a scanning parser from the string cache,
+   * treating the nil value '-' as null.
+   *
+   * @param buffer Buffer that was scanned.
+   * @param offsets Offsets recorded during the scan.
+   * @param field Field to return.
+   * @return Cached field. Null if the field was not present or was nil.
+   */
+  protected String nullableCachedString(ByteBuf buffer, int[] offsets, int field) {
+    if (!FieldOffsets.present(offsets, field)) {
+      return null;
+    }
+    final int start = FieldOffsets.start(offsets, field);
+    final int end = FieldOffsets.end(offsets, field);
+    if (end - start == 1 && buffer.getByte(start) == '-') {
+      return null;
+    }
+    return this.stringCache.get(buffer, start, end);
+  }
+
+  /**
+   * Method is used to return a group that was matched by a regular expression from the string
+   * cache.
+   *
+   * @param input Text the matcher was reset with.
+   * @param matcher Matcher that matched the input.
+   * @param group Name of the group.
+   * @return Cached group. Null if the group did not match.
+   */
+  protected String cachedGroup(CharSequence input, Matcher matcher, String group) {
+    final int start = matcher.start(group);
+    if (start < 0) {
+      return null;
+    }
+    return this.stringCache.get(input, start, matcher.end(group));
+  }
+
   protected LocalDateTime parseDate(String date) {
-    final String cleanDate = date.replaceAll("\\s+", " ");
+    final LocalDateTime result = this.timestampParser.parse(date);
+    return null != result ? result : parseDateFallback(date);
+  }
+
+  /**
+   * Method is used to parse a timestamp located by a scanning parser.
+   *
+   * @param buffer Buffer that was scanned.
+   * @param offsets Offsets recorded during the scan.
+   * @return Parsed date. Null if the date was not present or could not be parsed.
+   */
+  protected LocalDateTime parseDate(ByteBuf buffer, int[] offsets) {
+    if (!FieldOffsets.present(offsets, FieldOffsets.DATE)) {
+      return null;
+    }
+    final LocalDateTime result = this.timestampParser.parse(
+        buffer, FieldOffsets.start(offsets, FieldOffsets.DATE), FieldOffsets.end(offsets, FieldOffsets.DATE)
+    );
+    return null != result ? result : parseDateFallback(string(buffer, offsets, FieldOffsets.DATE));
+  }
+
+  /**
+   * Method is used to parse dates that are not handled by the TimestampParser with the
+   * formatters in dateFormats.
+   */
+  LocalDateTime parseDateFallback(String date) {
+    final String cleanDate = WHITESPACE.matcher(date).replaceAll(" ");
     LocalDateTime result = null;
 
     for (DateTimeFormatter formatter : this.dateFormats) {
@@ -110,7 +346,7 @@ public abstract class MessageParser {
          */
 
         if (result.getLong(ChronoField.YEAR_OF_ERA) == 1) {
-          result = result.withYear(LocalDateTime.now(this.zoneId).getYear());
+          result = result.withYear(LocalDateTime.now(this.clock).getYear());
         }
         break;
       } catch (java.time.DateTimeException e) {
@@ -125,6 +361,31 @@ public abstract class MessageParser {
 
   protected List<Message.StructuredData> parseStructuredData(String structuredData) {
     log.trace("parseStructuredData() - structuredData = '{}'", structuredData);
+    final ByteBuf buffer = Unpooled.wrappedBuffer(structuredData.getBytes(CharsetUtil.UTF_8));
+    final List<Message.StructuredData> result = StructuredDataParser.parse(buffer, 0, buffer.writerIndex(), this.stringCache);
+    return null != result ? result : parseStructuredDataFallback(structuredData);
+  }
+
+  /**
+   * Method is used to parse structured data located by a scanning parser.
+   *
+   * @param buffer Buffer that was scanned.
+   * @param start Index of the first byte of the structured data.
+   * @param end Index after the last byte of the structured data.
+   * @return Parsed structured data.
+   * @see StructuredDataParser
+   */
+  protected List<Message.StructuredData> parseStructuredData(ByteBuf buffer, int start, int end) {
+    final List<Message.StructuredData> result = StructuredDataParser.parse(buffer, start, end, this.stringCache);
+    return null != result ? result : parseStructuredDataFallback(buffer.toString(start, end - start, CharsetUtil.UTF_8));
+  }
+
+  /**
+   * Method is used to parse structured data that does not follow rfc 5424 with the regular
+   * expressions used before the StructuredDataParser.
+   */
+  List<Message.StructuredData> parseStructuredDataFallback(String structuredData) {
+    log.trace("parseStructuredDataFallback() - structuredData = '{}'", structuredData);
     final Matcher matcher = matcherStructuredData.get().reset(structuredData);
     final List<Message.StructuredData> result = new ArrayList<>();
     while (matcher.find()) {
@@ -0,0 +1,132 @@
+/**
+ * Copyright © 2018 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.netty.syslog;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.CharsetUtil;
+
+/**
+ * Class is used to guess the format of a message from its first bytes so it can be sent straight to
+ * the parser for that format.
+ *
+ * <ul>
+ * <li>&lt;PRI&gt; followed by a version of one to three digits and a space is rfc 5424.</li>
+ * <li>' CEF:' within the first {@link #WINDOW} characters is CEF.</li>
+ * <li>Anything else is rfc 3164.</li>
+ * </ul>
+ * A malformed PRI returns {@link MessageType#UNKNOWN}. The guess is only a hint, the caller falls
+ * back to trying every parser when the chosen parser cannot parse the message.
+ */
+class MessageTypeDetector {
+  static final int WINDOW = 128;
+  private static final String CEF_MARKER = " CEF:";
+  private static final byte[] CEF_MARKER_BYTES = CEF_MARKER.getBytes(CharsetUtil.US_ASCII);
+
+  private MessageTypeDetector() {
+  }
+
+  static MessageType detect(CharSequence message) {
+    final int length = Math.min(message.length(), WINDOW);
+    int index = 0;
+    if (length > 0 && message.charAt(0) == '<') {
+      index = 1;
+      while (index < length && index < 5 && isDigit(message.charAt(index))) {
+        index++;
+      }
+      if (index == 1 || index >= length || message.charAt(index) != '>') {
+        return MessageType.UNKNOWN;
+      }
+      index++;
+      int versionEnd = index;
+      while (versionEnd < length && isDigit(message.charAt(versionEnd))) {
+        versionEnd++;
+      }
+      if (versionEnd > index && versionEnd - index <= 3 && versionEnd < length && message.charAt(versionEnd) == ' ') {
+        return MessageType.RFC5424;
+      }
+    }
+    if (indexOf(message, index, length, CEF_MARKER) > -1) {
+      return MessageType.CEF;
+    }
+    return MessageType.RFC3164;
+  }
+
+  /**
+   * Method is used to guess the format of the readable bytes of a buffer.
+   *
+   * @param buffer Buffer containing the message.
+   * @return Guessed format.
+   */
+  static MessageType detect(ByteBuf buffer) {
+    final int start = buffer.readerIndex();
+    final int end = Math.min(buffer.writerIndex(), start + WINDOW);
+    int index = start;
+    if (end > start && buffer.getByte(start) == '<') {
+      index = ParserHelper.skipDigits(buffer, start + 1, Math.min(end, start + 5));
+      if (index == start + 1 || index >= end || buffer.getByte(index) != '>') {
+        return MessageType.UNKNOWN;
+      }
+      index++;
+      final int versionEnd = ParserHelper.skipDigits(buffer, index, end);
+      if (versionEnd > index && versionEnd - index <= 3 && versionEnd < end && buffer.getByte(versionEnd) == ' ') {
+        return MessageType.RFC5424;
+      }
+    }
+    if (indexOf(buffer, index, end, CEF_MARKER_BYTES) > -1) {
+      return MessageType.CEF;
+    }
+    return MessageType.RFC3164;
+  }
+
+  private static int indexOf(ByteBuf buffer, int start, int end, byte[] marker) {
+    final int last = end - marker.length;
+    for (int i = start; i <= last; i++) {
+      if (buffer.getByte(i) != marker[0]) {
+        continue;
+      }
+      int j = 1;
+      while (j < marker.length && buffer.getByte(i + j) == marker[j]) {
+        j++;
+      }
+      if (j == marker.length) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static int indexOf(CharSequence message, int start, int end, String marker) {
+    final int last = end - marker.length();
+    final char first = marker.charAt(0);
+    for (int i = start; i <= last; i++) {
+      if (message.charAt(i) != first) {
+        continue;
+      }
+      int j = 1;
+      while (j < marker.length() && message.charAt(i + j) == marker.charAt(j)) {
+        j++;
+      }
+      if (j == marker.length()) {
+        return i;
+      }
+    }
+    return -1;
+  }
+}
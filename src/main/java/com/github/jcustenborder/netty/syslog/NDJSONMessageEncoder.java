@@ -0,0 +1,366 @@
+/**
+ * Copyright © 2018 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.netty.syslog;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToByteEncoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetAddress;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encoder is used to write each {@link Message} as one line of JSON followed by a line feed. The
+ * fields are written straight into the buffer without going through Jackson. The output is the
+ * same as an {@link com.fasterxml.jackson.databind.ObjectMapper} with the JavaTimeModule,
+ * WRITE_DATES_AS_TIMESTAMPS disabled and NON_NULL inclusion: the names of the
+ * {@link com.fasterxml.jackson.annotation.JsonProperty} accessors in the order they are declared,
+ * null fields left out, dates as ISO local date times and the remote address as its host name if
+ * it is known, otherwise its address.
+ *
+ * <p>The field names are encoded once. The strings that repeat from message to message, such as the
+ * host and app name, are kept encoded in a small table that is checked before a value is escaped
+ * and encoded again. Like {@link MessageEncoder} an instance must not be shared between channels.</p>
+ */
+public class NDJSONMessageEncoder extends MessageToByteEncoder<Message> {
+  private static final Logger log = LoggerFactory.getLogger(NDJSONMessageEncoder.class);
+  static final int CACHE_SIZE = 256;
+  static final byte[] HEX = "0123456789ABCDEF".getBytes(EncoderHelper.CHARSET);
+  static final byte[] NULL = name("null");
+  static final byte[] DATE = name("{\"date\":\"");
+  static final byte[] REMOTE_ADDRESS = name(",\"remoteAddress\":");
+  static final byte[] RAW_MESSAGE = name(",\"rawMessage\":");
+  static final byte[] TYPE = name(",\"type\":\"");
+  static final byte[] LEVEL = name(",\"level\":");
+  static final byte[] VERSION = name(",\"version\":");
+  static final byte[] FACILITY = name(",\"facility\":");
+  static final byte[] HOST = name(",\"host\":");
+  static final byte[] MESSAGE = name(",\"message\":");
+  static final byte[] PROCESS_ID = name(",\"processId\":");
+  static final byte[] TAG = name(",\"tag\":");
+  static final byte[] MESSAGE_ID = name(",\"messageId\":");
+  static final byte[] APP_NAME = name(",\"appName\":");
+  static final byte[] STRUCTURED_DATA = name(",\"structuredData\":[");
+  static final byte[] ID = name("{\"id\":");
+  static final byte[] STRUCTURED_DATA_ELEMENTS = name(",\"structuredDataElements\":");
+  static final byte[] DEVICE_VENDOR = name(",\"deviceVendor\":");
+  static final byte[] DEVICE_PRODUCT = name(",\"deviceProduct\":");
+  static final byte[] DEVICE_VERSION = name(",\"deviceVersion\":");
+  static final byte[] DEVICE_EVENT_CLASS_ID = name(",\"deviceEventClassId\":");
+  static final byte[] NAME = name(",\"name\":");
+  static final byte[] SEVERITY = name(",\"severity\":");
+  static final byte[] EXTENSION = name(",\"extension\":");
+  static final byte[][] TYPES = new byte[MessageType.values().length][];
+
+  static {
+    for (MessageType type : MessageType.values()) {
+      TYPES[type.ordinal()] = name(type.name() + "\"");
+    }
+  }
+
+  final String[] keys;
+  final byte[][] values;
+  InetAddress lastAddress;
+  byte[] lastAddressValue;
+
+  public NDJSONMessageEncoder() {
+    super(true);
+    this.keys = new String[CACHE_SIZE];
+    this.values = new byte[CACHE_SIZE][];
+  }
+
+  static byte[] name(String value) {
+    return value.getBytes(EncoderHelper.CHARSET);
+  }
+
+  static boolean isEscaped(char c) {
+    return c < 0x20 || c == '"' || c == '\\';
+  }
+
+  static void writeEscape(ByteBuf buffer, char c) {
+    buffer.writeByte('\\');
+    switch (c) {
+      case '"':
+      case '\\':
+        buffer.writeByte(c);
+        break;
+      case '\b':
+        buffer.writeByte('b');
+        break;
+      case '\t':
+        buffer.writeByte('t');
+        break;
+      case '\n':
+        buffer.writeByte('n');
+        break;
+      case '\f':
+        buffer.writeByte('f');
+        break;
+      case '\r':
+        buffer.writeByte('r');
+        break;
+      default:
+        buffer.writeByte('u');
+        buffer.writeByte('0');
+        buffer.writeByte('0');
+        buffer.writeByte(HEX[c >> 4]);
+        buffer.writeByte(HEX[c & 0xF]);
+        break;
+    }
+  }
+
+  /**
+   * Method is used to write a value as a quoted and escaped JSON string. Values that are US-ASCII
+   * and have nothing to escape, which is most of them, are copied in one call. Otherwise the value
+   * is written in pieces between the characters that are escaped.
+   */
+  static void writeString(ByteBuf buffer, String value) {
+    buffer.writeByte('"');
+    final int length = value.length();
+    for (int i = 0; i < length; i++) {
+      final char c = value.charAt(i);
+      if (c >= 0x80 || isEscaped(c)) {
+        writeRemaining(buffer, value, 0);
+        return;
+      }
+    }
+    ByteBufUtil.writeAscii(buffer, value);
+    buffer.writeByte('"');
+  }
+
+  static void writeRemaining(ByteBuf buffer, String value, int start) {
+    for (int i = start; i < value.length(); i++) {
+      final char c = value.charAt(i);
+      if (isEscaped(c)) {
+        if (i > start) {
+          EncoderHelper.write(buffer, value.subSequence(start, i));
+        }
+        writeEscape(buffer, c);
+        start = i + 1;
+      }
+    }
+    if (start < value.length()) {
+      EncoderHelper.write(buffer, value.subSequence(start, value.length()));
+    }
+    buffer.writeByte('"');
+  }
+
+  /**
+   * Method is used to write a string that repeats from message to message. The parsers return the
+   * same instance for these strings, see {@link StringCache}, so most lookups are a reference
+   * comparison.
+   */
+  void writeCachedString(ByteBuf buffer, String value) {
+    final int index = value.hashCode() & (CACHE_SIZE - 1);
+    final String key = this.keys[index];
+    byte[] encoded = this.values[index];
+    if (key != value && !value.equals(key)) {
+      final ByteBuf scratch = buffer.alloc().heapBuffer(value.length() + 2);
+      try {
+        writeString(scratch, value);
+        encoded = new byte[scratch.readableBytes()];
+        scratch.readBytes(encoded);
+      } finally {
+        scratch.release();
+      }
+      this.keys[index] = value;
+      this.values[index] = encoded;
+    }
+    buffer.writeBytes(encoded);
+  }
+
+  static void writeField(ByteBuf buffer, byte[] name, String value) {
+    if (null != value) {
+      buffer.writeBytes(name);
+      writeString(buffer, value);
+    }
+  }
+
+  void writeCachedField(ByteBuf buffer, byte[] name, String value) {
+    if (null != value) {
+      buffer.writeBytes(name);
+      writeCachedString(buffer, value);
+    }
+  }
+
+  static void writeField(ByteBuf buffer, byte[] name, Integer value) {
+    if (null != value) {
+      buffer.writeBytes(name);
+      final int i = value;
+      if (i >= 0 && i < 10) {
+        buffer.writeByte('0' + i);
+      } else {
+        EncoderHelper.write(buffer, Integer.toString(i));
+      }
+    }
+  }
+
+  void writeMap(ByteBuf buffer, Map<String, String> map) {
+    buffer.writeByte('{');
+    boolean first = true;
+    for (Map.Entry<String, String> entry : map.entrySet()) {
+      if (!first) {
+        buffer.writeByte(',');
+      }
+      first = false;
+      writeCachedString(buffer, entry.getKey());
+      buffer.writeByte(':');
+      if (null == entry.getValue()) {
+        buffer.writeBytes(NULL);
+      } else {
+        writeString(buffer, entry.getValue());
+      }
+    }
+    buffer.writeByte('}');
+  }
+
+  static void writeDigits(ByteBuf buffer, int value, int digits) {
+    final int index = buffer.writerIndex();
+    for (int i = digits - 1; i >= 0; i--) {
+      buffer.setByte(index + i, '0' + value % 10);
+      value /= 10;
+    }
+    buffer.writerIndex(index + digits);
+  }
+
+  /**
+   * Method is used to write the date the way LocalDateTimeSerializer does, seconds are always
+   * written and the fraction only as far as it is not zero. The digits are written directly, years
+   * that ISO 8601 writes with a sign go through the formatter.
+   */
+  static void writeDate(ByteBuf buffer, LocalDateTime date) {
+    final int year = date.getYear();
+    if (year < 0 || year > 9999) {
+      EncoderHelper.write(buffer, DateTimeFormatter.ISO_LOCAL_DATE_TIME.format(date));
+      return;
+    }
+    buffer.ensureWritable(29);
+    writeDigits(buffer, year, 4);
+    buffer.writeByte('-');
+    writeDigits(buffer, date.getMonthValue(), 2);
+    buffer.writeByte('-');
+    writeDigits(buffer, date.getDayOfMonth(), 2);
+    buffer.writeByte('T');
+    writeDigits(buffer, date.getHour(), 2);
+    buffer.writeByte(':');
+    writeDigits(buffer, date.getMinute(), 2);
+    buffer.writeByte(':');
+    writeDigits(buffer, date.getSecond(), 2);
+    int nanos = date.getNano();
+    if (nanos > 0) {
+      int digits = 9;
+      while (nanos % 10 == 0) {
+        nanos /= 10;
+        digits--;
+      }
+      buffer.writeByte('.');
+      writeDigits(buffer, nanos, digits);
+    }
+  }
+
+  /**
+   * Method is used to write the remote address the way InetAddressSerializer does. The senders
+   * are usually the same so the value of the last address is kept.
+   */
+  void writeRemoteAddress(ByteBuf buffer, InetAddress address) {
+    if (address != this.lastAddress) {
+      String value = address.toString().trim();
+      final int index = value.indexOf('/');
+      if (index == 0) {
+        value = value.substring(1);
+      } else if (index > 0) {
+        value = value.substring(0, index);
+      }
+      final ByteBuf scratch = buffer.alloc().heapBuffer(value.length() + 2);
+      try {
+        writeString(scratch, value);
+        this.lastAddressValue = new byte[scratch.readableBytes()];
+        scratch.readBytes(this.lastAddressValue);
+      } finally {
+        scratch.release();
+      }
+      this.lastAddress = address;
+    }
+    buffer.writeBytes(this.lastAddressValue);
+  }
+
+  @Override
+  protected ByteBuf allocateBuffer(ChannelHandlerContext context, Message message, boolean preferDirect) {
+    // The raw message is written once as is and the fields are mostly taken from it.
+    final int size = 2 * message.rawMessage().length() + 256;
+    return preferDirect ? context.alloc().ioBuffer(size) : context.alloc().heapBuffer(size);
+  }
+
+  @Override
+  protected void encode(ChannelHandlerContext context, Message message, ByteBuf buffer) throws Exception {
+    log.trace("encode() - message = {}", message);
+    buffer.writeBytes(DATE);
+    writeDate(buffer, message.date());
+    buffer.writeByte('"');
+    buffer.writeBytes(REMOTE_ADDRESS);
+    writeRemoteAddress(buffer, message.remoteAddress());
+    writeField(buffer, RAW_MESSAGE, message.rawMessage());
+    buffer.writeBytes(TYPE);
+    buffer.writeBytes(TYPES[message.type().ordinal()]);
+    writeField(buffer, LEVEL, message.level());
+    writeField(buffer, VERSION, message.version());
+    writeField(buffer, FACILITY, message.facility());
+    writeCachedField(buffer, HOST, message.host());
+    writeField(buffer, MESSAGE, message.message());
+    writeCachedField(buffer, PROCESS_ID, message.processId());
+    writeCachedField(buffer, TAG, message.tag());
+    writeCachedField(buffer, MESSAGE_ID, message.messageId());
+    writeCachedField(buffer, APP_NAME, message.appName());
+
+    final List<Message.StructuredData> structuredData = message.structuredData();
+    if (null != structuredData) {
+      buffer.writeBytes(STRUCTURED_DATA);
+      boolean first = true;
+      for (Message.StructuredData element : structuredData) {
+        if (!first) {
+          buffer.writeByte(',');
+        }
+        first = false;
+        buffer.writeBytes(ID);
+        writeCachedString(buffer, element.id());
+        buffer.writeBytes(STRUCTURED_DATA_ELEMENTS);
+        writeMap(buffer, element.structuredDataElements());
+        buffer.writeByte('}');
+      }
+      buffer.writeByte(']');
+    }
+
+    writeCachedField(buffer, DEVICE_VENDOR, message.deviceVendor());
+    writeCachedField(buffer, DEVICE_PRODUCT, message.deviceProduct());
+    writeCachedField(buffer, DEVICE_VERSION, message.deviceVersion());
+    writeCachedField(buffer, DEVICE_EVENT_CLASS_ID, message.deviceEventClassId());
+    writeField(buffer, NAME, message.name());
+    writeCachedField(buffer, SEVERITY, message.severity());
+    final Map<String, String> extension = message.extension();
+    if (null != extension) {
+      buffer.writeBytes(EXTENSION);
+      writeMap(buffer, extension);
+    }
+    buffer.writeByte('}');
+    buffer.writeByte('\n');
+  }
+}
@@ -0,0 +1,86 @@
+/**
+ * Copyright © 2018 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.netty.syslog;
+
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollDatagramChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.DatagramChannel;
+import io.netty.channel.socket.ServerSocketChannel;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Class is used to pick the native epoll transport when it is available and fall back to NIO.
+ */
+final class NativeTransport {
+  private static final Logger log = LoggerFactory.getLogger(NativeTransport.class);
+  static final boolean EPOLL;
+
+  static {
+    boolean epoll = false;
+    try {
+      epoll = Epoll.isAvailable();
+      if (!epoll) {
+        log.debug("Native epoll transport is not available, using NIO.", Epoll.unavailabilityCause());
+      }
+    } catch (Throwable t) {
+      log.debug("Native epoll transport is not available, using NIO.", t);
+    }
+    EPOLL = epoll;
+  }
+
+  private NativeTransport() {
+  }
+
+  static EventLoopGroup eventLoopGroup(int threads) {
+    return EPOLL ? new EpollEventLoopGroup(threads) : new NioEventLoopGroup(threads);
+  }
+
+  static Class<? extends DatagramChannel> datagramChannel(EventLoopGroup group) {
+    return group instanceof EpollEventLoopGroup ? EpollDatagramChannel.class : NioDatagramChannel.class;
+  }
+
+  static Class<? extends ServerSocketChannel> serverSocketChannel(EventLoopGroup group) {
+    return group instanceof EpollEventLoopGroup ? EpollServerSocketChannel.class : NioServerSocketChannel.class;
+  }
+
+  static Class<? extends SocketChannel> socketChannel(EventLoopGroup group) {
+    return group instanceof EpollEventLoopGroup ? EpollSocketChannel.class : NioSocketChannel.class;
+  }
+
+  /**
+   * Method is used to look up an option that is only present in newer versions of Netty.
+   *
+   * @param owner Class that declares the option.
+   * @param name Name of the option.
+   * @return The option or null if this version of Netty does not have it.
+   */
+  @SuppressWarnings("unchecked")
+  static <T> ChannelOption<T> option(Class<?> owner, String name) {
+    final String key = owner.getName() + "#" + name;
+    return ChannelOption.exists(key) ? (ChannelOption<T>) ChannelOption.valueOf(key) : null;
+  }
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright © 2018 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.netty.syslog;
+
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.EventExecutorGroup;
+import io.netty.util.internal.ObjectUtil;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Controls where {@link SyslogMessageHandler} parses requests.
+ *
+ * <ul>
+ * <li>{@link Mode#INLINE} parses on the event loop in channelRead. Messages are passed along in
+ * the order they were received.</li>
+ * <li>{@link Mode#OFFLOAD} parses on an executor from the supplied group. Each sender address is
+ * assigned to one executor (a lane) so messages from one sender, and therefore from one TCP channel,
+ * are passed along in the order they were received. Parsed messages are passed along on the event
+ * loop of the channel.</li>
+ * <li>{@link Mode#AUTO} parses inline until more than threshold requests arrive in a single read
+ * and offloads the rest of the read. A channel only goes back to parsing inline once everything it
+ * offloaded has been passed along, so the ordering of {@link Mode#OFFLOAD} is kept.</li>
+ * </ul>
+ * The group controls how deep the queues can get. A {@link io.netty.util.concurrent.DefaultEventExecutorGroup}
+ * created with maxPendingTasks and {@link io.netty.util.concurrent.RejectedExecutionHandlers#reject()}
+ * bounds each lane, requests that do not fit are dropped and counted by
+ * {@link SyslogMessageHandler#rejectedCount()}. The group is not shut down by the handler.
+ */
+public final class ParseExecution {
+  public enum Mode {
+    INLINE,
+    OFFLOAD,
+    AUTO
+  }
+
+  private static final ParseExecution INLINE = new ParseExecution(Mode.INLINE, null, 0);
+
+  final Mode mode;
+  final EventExecutor[] lanes;
+  final int threshold;
+
+  private ParseExecution(Mode mode, EventExecutorGroup group, int threshold) {
+    this.mode = mode;
+    this.threshold = threshold;
+    if (null == group) {
+      this.lanes = new EventExecutor[0];
+    } else {
+      final List<EventExecutor> executors = new ArrayList<>();
+      for (EventExecutor executor : group) {
+        executors.add(executor);
+      }
+      this.lanes = executors.toArray(new EventExecutor[executors.size()]);
+    }
+  }
+
+  /**
+   * @return Parse on the event loop.
+   */
+  public static ParseExecution inline() {
+    return INLINE;
+  }
+
+  /**
+   * @param group Group to parse on.
+   * @return Parse every request on the supplied group.
+   */
+  public static ParseExecution offload(EventExecutorGroup group) {
+    ObjectUtil.checkNotNull(group, "group");
+    return new ParseExecution(Mode.OFFLOAD, group, 0);
+  }
+
+  /**
+   * @param group Group to parse on once the threshold is crossed.
+   * @param threshold Number of requests in a single read that are parsed inline.
+   * @return Parse inline under light load and on the supplied group above it.
+   */
+  public static ParseExecution auto(EventExecutorGroup group, int threshold) {
+    ObjectUtil.checkNotNull(group, "group");
+    ObjectUtil.checkPositiveOrZero(threshold, "threshold");
+    return new ParseExecution(Mode.AUTO, group, threshold);
+  }
+
+  public Mode mode() {
+    return this.mode;
+  }
+
+  EventExecutor lane(InetAddress remoteAddress) {
+    final int hash = null == remoteAddress ? 0 : remoteAddress.hashCode();
+    return this.lanes[(hash & Integer.MAX_VALUE) % this.lanes.length];
+  }
+}
@@ -0,0 +1,210 @@
+/**
+ * Copyright © 2018 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.netty.syslog;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.ByteProcessor;
+
+/**
+ * Byte level helpers used by the scanning parsers. All of the methods work on absolute indexes
+ * and never modify the reader or writer index of the buffer.
+ */
+class ParserHelper {
+  static final ByteProcessor WHITESPACE = ParserHelper::isWhitespace;
+  static final ByteProcessor NON_WHITESPACE = b -> !isWhitespace(b);
+  static final ByteProcessor DIGIT = ParserHelper::isDigit;
+
+  private ParserHelper() {
+  }
+
+  /**
+   * Matches the same characters as \s in a java regex.
+   */
+  static boolean isWhitespace(byte b) {
+    return b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == 0x0B || b == '\f';
+  }
+
+  static boolean isDigit(byte b) {
+    return b >= '0' && b <= '9';
+  }
+
+  /**
+   * Method is used to find the first non whitespace byte.
+   *
+   * @return index of the first non whitespace byte or end if there is none.
+   */
+  static int skipWhitespace(ByteBuf buffer, int index, int end) {
+    return scan(buffer, index, end, WHITESPACE);
+  }
+
+  /**
+   * Method is used to find the first whitespace byte.
+   *
+   * @return index of the first whitespace byte or end if there is none.
+   */
+  static int nextWhitespace(ByteBuf buffer, int index, int end) {
+    return scan(buffer, index, end, NON_WHITESPACE);
+  }
+
+  /**
+   * Method is used to find the first byte that is not a digit.
+   *
+   * @return index of the first byte that is not a digit or end if there is none.
+   */
+  static int skipDigits(ByteBuf buffer, int index, int end) {
+    return scan(buffer, index, end, DIGIT);
+  }
+
+  private static int scan(ByteBuf buffer, int index, int end, ByteProcessor processor) {
+    if (index >= end) {
+      return end;
+    }
+    final int result = buffer.forEachByte(index, end - index, processor);
+    return result < 0 ? end : result;
+  }
+
+  /**
+   * Method is used to return the end of the message without the trailing line terminator.
+   */
+  static int trimLineEnd(ByteBuf buffer, int start, int end) {
+    while (end > start) {
+      final byte b = buffer.getByte(end - 1);
+      if (b != '\n' && b != '\r') {
+        break;
+      }
+      end--;
+    }
+    return end;
+  }
+
+  /**
+   * Method is used to parse a positive integer without decoding the bytes to a string.
+   *
+   * @return The parsed value or -1 if the range is empty, contains a non digit or is too long.
+   */
+  static int parseInt(ByteBuf buffer, int start, int end) {
+    if (start < 0 || start >= end || end - start > 9) {
+      return -1;
+    }
+    int result = 0;
+    for (int i = start; i < end; i++) {
+      final byte b = buffer.getByte(i);
+      if (!isDigit(b)) {
+        return -1;
+      }
+      result = result * 10 + (b - '0');
+    }
+    return result;
+  }
+
+  /**
+   * Method is used to locate the [&lt;PRI&gt;]TIMESTAMP SP HOSTNAME SP prefix shared by rfc 3164 and
+   * CEF messages.
+   *
+   * @return index after the whitespace following the host or -1 if the prefix does not match.
+   */
+  static int header(ByteBuf buffer, int index, int end, int[] offsets) {
+    if (index < end && buffer.getByte(index) == '<') {
+      final int priorityEnd = skipDigits(buffer, index + 1, end);
+      if (priorityEnd == index + 1 || priorityEnd - index > 4 || priorityEnd >= end || buffer.getByte(priorityEnd) != '>') {
+        return -1;
+      }
+      FieldOffsets.set(offsets, FieldOffsets.PRIORITY, index + 1, priorityEnd);
+      index = priorityEnd + 1;
+    }
+
+    final int dateEnd = timestampEnd(buffer, index, end);
+    if (dateEnd < 0) {
+      return -1;
+    }
+    FieldOffsets.set(offsets, FieldOffsets.DATE, index, dateEnd);
+
+    index = requireWhitespace(buffer, dateEnd, end);
+    if (index < 0 || index >= end) {
+      return -1;
+    }
+    final int hostEnd = nextWhitespace(buffer, index, end);
+    FieldOffsets.set(offsets, FieldOffsets.HOST, index, hostEnd);
+    return requireWhitespace(buffer, hostEnd, end);
+  }
+
+  /**
+   * Method is used to find the end of the timestamp. Both 'MMM d HH:mm:ss' with an optional year
+   * after the day and an ISO 8601 timestamp are located. Validation of the values is left to
+   * {@link TimestampParser}.
+   *
+   * @return index after the timestamp or -1 if there is no timestamp.
+   */
+  static int timestampEnd(ByteBuf buffer, int index, int end) {
+    if (index >= end) {
+      return -1;
+    }
+    final byte first = buffer.getByte(index);
+    if (isDigit(first)) {
+      return nextWhitespace(buffer, index, end);
+    }
+    if (end - index < 3 || !isLetter(first) || !isLetter(buffer.getByte(index + 1)) || !isLetter(buffer.getByte(index + 2))) {
+      return -1;
+    }
+    index = requireDigits(buffer, requireWhitespace(buffer, index + 3, end), end);
+    if (index < 0) {
+      return -1;
+    }
+    int timeStart = requireWhitespace(buffer, index, end);
+    int digitsEnd = requireDigits(buffer, timeStart, end);
+    if (digitsEnd < 0) {
+      return -1;
+    }
+    if (digitsEnd < end && buffer.getByte(digitsEnd) != ':') {
+      // The sender included the year after the day.
+      timeStart = requireWhitespace(buffer, digitsEnd, end);
+      digitsEnd = requireDigits(buffer, timeStart, end);
+    }
+    for (int i = 0; i < 2; i++) {
+      if (digitsEnd < 0 || digitsEnd >= end || buffer.getByte(digitsEnd) != ':') {
+        return -1;
+      }
+      digitsEnd = requireDigits(buffer, digitsEnd + 1, end);
+    }
+    return digitsEnd;
+  }
+
+  private static boolean isLetter(byte b) {
+    return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z');
+  }
+
+  /**
+   * @return index after at least one whitespace or -1.
+   */
+  private static int requireWhitespace(ByteBuf buffer, int index, int end) {
+    if (index < 0) {
+      return -1;
+    }
+    final int result = skipWhitespace(buffer, index, end);
+    return result == index ? -1 : result;
+  }
+
+  /**
+   * @return index after at least one digit or -1.
+   */
+  private static int requireDigits(ByteBuf buffer, int index, int end) {
+    if (index < 0) {
+      return -1;
+    }
+    final int result = skipDigits(buffer, index, end);
+    return result == index ? -1 : result;
+  }
+}
@@ -16,9 +16,24 @@
 package com.github.jcustenborder.netty.syslog;
 
 class Priority {
+  /**
+   * Integer.valueOf only caches up to 127, local0 through local7 are 128 through 191.
+   */
+  private static final Integer[] VALUES = new Integer[192];
+
+  static {
+    for (int i = 0; i < VALUES.length; i++) {
+      VALUES[i] = i;
+    }
+  }
+
   private Priority() {
   }
 
+  static Integer box(int priority) {
+    return priority >= 0 && priority < VALUES.length ? VALUES[priority] : Integer.valueOf(priority);
+  }
+
   public static int facility(int priority) {
     return priority >> 3;
   }
@@ -0,0 +1,117 @@
+/**
+ * Copyright © 2018 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.netty.syslog;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.DefaultByteBufHolder;
+import io.netty.util.CharsetUtil;
+
+/**
+ * Frame of the <a href="https://github.com/rsyslog/librelp/blob/master/doc/relp.html">Reliable Event Logging Protocol</a>.
+ *
+ * <pre>
+ * RELP-FRAME = TXNR SP COMMAND SP DATALEN [SP DATA] TRAILER
+ * TXNR       = NUMBER ; 1 - 999999999
+ * COMMAND    = 1*32ALPHA
+ * DATALEN    = NUMBER
+ * TRAILER    = LF
+ * </pre>
+ *
+ * @see RELPFrameDecoder
+ * @see RELPFrameEncoder
+ */
+public final class RELPFrame extends DefaultByteBufHolder {
+  public static final String OPEN = "open";
+  public static final String CLOSE = "close";
+  public static final String SYSLOG = "syslog";
+  public static final String RSP = "rsp";
+  public static final String SERVERCLOSE = "serverclose";
+
+  private final int txnr;
+  private final String command;
+
+  /**
+   * @param txnr Transaction number.
+   * @param command Command of the frame.
+   * @param data Data of the frame. Ownership is transferred to the frame.
+   */
+  public RELPFrame(int txnr, String command, ByteBuf data) {
+    super(data);
+    this.txnr = txnr;
+    this.command = command;
+  }
+
+  public int txnr() {
+    return this.txnr;
+  }
+
+  public String command() {
+    return this.command;
+  }
+
+  @Override
+  public RELPFrame replace(ByteBuf content) {
+    return new RELPFrame(this.txnr, this.command, content);
+  }
+
+  @Override
+  public RELPFrame copy() {
+    return replace(content().copy());
+  }
+
+  @Override
+  public RELPFrame duplicate() {
+    return replace(content().duplicate());
+  }
+
+  @Override
+  public RELPFrame retainedDuplicate() {
+    return replace(content().retainedDuplicate());
+  }
+
+  @Override
+  public RELPFrame retain() {
+    super.retain();
+    return this;
+  }
+
+  @Override
+  public RELPFrame retain(int increment) {
+    super.retain(increment);
+    return this;
+  }
+
+  @Override
+  public RELPFrame touch() {
+    super.touch();
+    return this;
+  }
+
+  @Override
+  public RELPFrame touch(Object hint) {
+    super.touch(hint);
+    return this;
+  }
+
+  @Override
+  public String toString() {
+    return "RELPFrame{" +
+        "txnr=" + this.txnr +
+        ", command=" + this.command +
+        ", data=" + (refCnt() > 0 ? content().toString(CharsetUtil.UTF_8) : "(released)") +
+        '}';
+  }
+}
@@ -0,0 +1,180 @@
+/**
+ * Copyright © 2018 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.netty.syslog;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.TooLongFrameException;
+import io.netty.util.CharsetUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+/**
+ * Decoder is used to split a RELP stream into {@link RELPFrame}s. The data of each frame is a
+ * retained slice of the received bytes. The framing of a RELP stream can not be recovered after an
+ * error so a malformed or oversized frame throws and the connection should be closed, which
+ * {@link RELPServerHandler} does.
+ */
+public class RELPFrameDecoder extends ByteToMessageDecoder {
+  private static final Logger log = LoggerFactory.getLogger(RELPFrameDecoder.class);
+  public static final int DEFAULT_MAX_LENGTH = 128 * 1024;
+  /**
+   * Length of 999999999, the largest transaction number.
+   */
+  static final int MAX_DIGITS = 9;
+  static final int MAX_COMMAND_LENGTH = 32;
+  static final String[] COMMANDS = {
+      RELPFrame.SYSLOG,
+      RELPFrame.OPEN,
+      RELPFrame.CLOSE,
+      RELPFrame.RSP,
+      RELPFrame.SERVERCLOSE
+  };
+
+  final int maxLength;
+
+  public RELPFrameDecoder(int maxLength) {
+    this.maxLength = maxLength;
+  }
+
+  public RELPFrameDecoder() {
+    this(DEFAULT_MAX_LENGTH);
+  }
+
+  @Override
+  protected void decode(ChannelHandlerContext ctx, ByteBuf buffer, List<Object> output) throws Exception {
+    final RELPFrame frame = decode(buffer);
+    if (null != frame) {
+      log.trace("decode() - frame = '{}'", frame);
+      output.add(frame);
+    }
+  }
+
+  /**
+   * Method is used to read the next frame.
+   *
+   * @return Frame or null if more bytes are needed.
+   */
+  RELPFrame decode(ByteBuf buffer) {
+    final int start = buffer.readerIndex();
+    final int end = buffer.writerIndex();
+
+    int index = start;
+    int txnr = 0;
+    for (; index < end && ParserHelper.isDigit(buffer.getByte(index)); index++) {
+      if (index - start == MAX_DIGITS) {
+        throw corrupted(buffer, "TXNR is too long.");
+      }
+      txnr = txnr * 10 + (buffer.getByte(index) - '0');
+    }
+    if (index == end) {
+      return null;
+    }
+    if (index == start || buffer.getByte(index) != ' ') {
+      throw corrupted(buffer, "Invalid TXNR.");
+    }
+
+    final int commandStart = ++index;
+    for (; index < end && isAlpha(buffer.getByte(index)); index++) {
+      if (index - commandStart == MAX_COMMAND_LENGTH) {
+        throw corrupted(buffer, "COMMAND is too long.");
+      }
+    }
+    if (index == end) {
+      return null;
+    }
+    if (index == commandStart || buffer.getByte(index) != ' ') {
+      throw corrupted(buffer, "Invalid COMMAND.");
+    }
+    final int commandEnd = index;
+
+    final int lengthStart = ++index;
+    int length = 0;
+    for (; index < end && ParserHelper.isDigit(buffer.getByte(index)); index++) {
+      if (index - lengthStart == MAX_DIGITS) {
+        throw corrupted(buffer, "DATALEN is too long.");
+      }
+      length = length * 10 + (buffer.getByte(index) - '0');
+    }
+    if (index == end) {
+      return null;
+    }
+    if (index == lengthStart) {
+      throw corrupted(buffer, "Invalid DATALEN.");
+    }
+    if (length > this.maxLength) {
+      buffer.skipBytes(buffer.readableBytes());
+      throw new TooLongFrameException("RELP frame length (" + length + ") exceeds the allowed maximum (" + this.maxLength + ")");
+    }
+
+    final int dataStart;
+    final byte separator = buffer.getByte(index);
+    if (separator == ' ') {
+      dataStart = index + 1;
+    } else if (separator == '\n' && 0 == length) {
+      dataStart = index;
+    } else {
+      throw corrupted(buffer, "Invalid DATALEN.");
+    }
+    final int trailer = dataStart + length;
+    if (trailer >= end) {
+      return null;
+    }
+    if (buffer.getByte(trailer) != '\n') {
+      throw corrupted(buffer, "Frame does not end with a line feed.");
+    }
+
+    final String command = command(buffer, commandStart, commandEnd);
+    final ByteBuf data = buffer.retainedSlice(dataStart, length);
+    buffer.readerIndex(trailer + 1);
+    return new RELPFrame(txnr, command, data);
+  }
+
+  static boolean isAlpha(byte b) {
+    return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z');
+  }
+
+  /**
+   * Method is used to return the command without creating a string for the known commands.
+   */
+  static String command(ByteBuf buffer, int start, int end) {
+    final int length = end - start;
+    for (String command : COMMANDS) {
+      if (command.length() == length && matches(buffer, start, command)) {
+        return command;
+      }
+    }
+    return buffer.toString(start, length, CharsetUtil.US_ASCII);
+  }
+
+  static boolean matches(ByteBuf buffer, int start, String command) {
+    for (int i = 0; i < command.length(); i++) {
+      if (buffer.getByte(start + i) != command.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  static CorruptedFrameException corrupted(ByteBuf buffer, String message) {
+    buffer.skipBytes(buffer.readableBytes());
+    return new CorruptedFrameException(message);
+  }
+}
@@ -0,0 +1,55 @@
+/**
+ * Copyright © 2018 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.netty.syslog;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToByteEncoder;
+
+/**
+ * Encoder is used to write {@link RELPFrame}s.
+ */
+@ChannelHandler.Sharable
+public class RELPFrameEncoder extends MessageToByteEncoder<RELPFrame> {
+  @Override
+  protected void encode(ChannelHandlerContext ctx, RELPFrame frame, ByteBuf output) {
+    final ByteBuf data = frame.content();
+    final int length = data.readableBytes();
+    output.ensureWritable(length + RELPFrameDecoder.MAX_COMMAND_LENGTH + 2 * RELPFrameDecoder.MAX_DIGITS + 4);
+    writeNumber(output, frame.txnr());
+    output.writeByte(' ');
+    ByteBufUtil.writeAscii(output, frame.command());
+    output.writeByte(' ');
+    writeNumber(output, length);
+    if (length > 0) {
+      output.writeByte(' ');
+      output.writeBytes(data, data.readerIndex(), length);
+    }
+    output.writeByte('\n');
+  }
+
+  static void writeNumber(ByteBuf output, int value) {
+    int divisor = 1;
+    while (value / divisor >= 10) {
+      divisor *= 10;
+    }
+    for (; divisor > 0; divisor /= 10) {
+      output.writeByte('0' + (value / divisor) % 10);
+    }
+  }
+}
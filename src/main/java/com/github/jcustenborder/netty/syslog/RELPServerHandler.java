@@ -0,0 +1,326 @@
+/**
+ * Copyright © 2018 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.netty.syslog;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.DecoderException;
+import io.netty.util.CharsetUtil;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.internal.ObjectUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Handler is used to run the server side of a RELP session. It sits between {@link RELPFrameDecoder}
+ * and {@link SyslogMessageHandler} and turns each {@code syslog} frame into a
+ * {@link BufferedSyslogRequest}. A message is only acknowledged once a downstream handler calls
+ * {@link #confirm(ChannelHandlerContext)} for it, the acknowledgements are sent in the order the
+ * messages were received.
+ *
+ * <p>Acknowledgements are not flushed one at a time. The ones confirmed while a read is in progress
+ * are flushed when the read completes, the others are flushed together once the event loop has run
+ * the tasks that are already queued. The sender keeps its window full and is never waiting on a round
+ * trip per message. Once {@code maxPending} messages are waiting for confirmation the channel stops
+ * reading until half of them have been confirmed.
+ *
+ * <pre>
+ * channel.pipeline().addLast(
+ *     new RELPFrameEncoder(),
+ *     new RELPFrameDecoder(),
+ *     new RELPServerHandler(),
+ *     new SyslogMessageHandler(),
+ *     handler
+ * );
+ * </pre>
+ */
+public class RELPServerHandler extends ChannelDuplexHandler {
+  private static final Logger log = LoggerFactory.getLogger(RELPServerHandler.class);
+  public static final int DEFAULT_MAX_PENDING = 1024;
+  static final String SOFTWARE = "netty-codec-syslog";
+  static final String OPEN_RESPONSE = "200 OK\nrelp_version=0\nrelp_software=" + SOFTWARE + "\ncommands=" + RELPFrame.SYSLOG;
+  static final ByteBuf OK = constant("200 OK");
+  static final ByteBuf EMPTY = Unpooled.EMPTY_BUFFER;
+
+  final Charset charset;
+  final CodingErrorAction malformedInputAction;
+  final ReceiveClock receiveClock;
+  final boolean pooled;
+  final int maxPending;
+
+  ChannelHandlerContext context;
+  /**
+   * Transaction numbers waiting for confirmation, oldest first.
+   */
+  int[] pending = new int[16];
+  int head;
+  int size;
+  int unflushed;
+  boolean reading;
+  boolean flushScheduled;
+  int closeTxnr = -1;
+  boolean closing;
+  final Runnable flushTask = this::scheduledFlush;
+
+  /**
+   * @param charset              Charset of the messages.
+   * @param malformedInputAction How malformed input is handled. {@link CodingErrorAction#REPORT}
+   *                             rejects the message with a 500 response.
+   * @param receiveClock         How the time each message was received is read.
+   * @param pooled               true to take the requests from a pool.
+   * @param maxPending           Number of unconfirmed messages at which the channel stops reading.
+   */
+  public RELPServerHandler(Charset charset, CodingErrorAction malformedInputAction, ReceiveClock receiveClock, boolean pooled, int maxPending) {
+    this.charset = charset;
+    this.malformedInputAction = malformedInputAction;
+    this.receiveClock = receiveClock;
+    this.pooled = pooled;
+    this.maxPending = ObjectUtil.checkPositive(maxPending, "maxPending");
+  }
+
+  public RELPServerHandler(Charset charset, CodingErrorAction malformedInputAction) {
+    this(charset, malformedInputAction, ReceiveClock.coarse(), false, DEFAULT_MAX_PENDING);
+  }
+
+  public RELPServerHandler() {
+    this(CharsetUtil.UTF_8, CodingErrorAction.REPLACE);
+  }
+
+  static ByteBuf constant(String value) {
+    return Unpooled.unreleasableBuffer(Unpooled.copiedBuffer(value, CharsetUtil.US_ASCII));
+  }
+
+  /**
+   * Method is used to acknowledge the oldest unconfirmed message of the RELP session on the channel
+   * of the supplied context. It can be called from any thread, the acknowledgement is written on
+   * the event loop of the channel.
+   *
+   * @param context Context of any handler in the pipeline.
+   * @return false if the pipeline does not contain a {@link RELPServerHandler}.
+   */
+  public static boolean confirm(ChannelHandlerContext context) {
+    final RELPServerHandler handler = context.pipeline().get(RELPServerHandler.class);
+    if (null == handler) {
+      return false;
+    }
+    if (handler.context.executor().inEventLoop()) {
+      handler.confirm();
+    } else {
+      handler.context.executor().execute(handler::confirm);
+    }
+    return true;
+  }
+
+  /**
+   * @return Number of messages waiting for confirmation.
+   */
+  public int pendingCount() {
+    return this.size;
+  }
+
+  @Override
+  public void handlerAdded(ChannelHandlerContext context) {
+    this.context = context;
+  }
+
+  @Override
+  public void channelRead(ChannelHandlerContext context, Object msg) throws Exception {
+    if (!(msg instanceof RELPFrame)) {
+      context.fireChannelRead(msg);
+      return;
+    }
+    final RELPFrame frame = (RELPFrame) msg;
+    log.trace("channelRead() - frame = '{}'", frame);
+    this.reading = true;
+    try {
+      switch (frame.command()) {
+        case RELPFrame.SYSLOG:
+          syslog(context, frame);
+          break;
+        case RELPFrame.OPEN:
+          respond(context, frame.txnr(), Unpooled.copiedBuffer(OPEN_RESPONSE, CharsetUtil.US_ASCII));
+          break;
+        case RELPFrame.CLOSE:
+          this.closeTxnr = frame.txnr();
+          closeIfConfirmed(context);
+          break;
+        default:
+          log.warn("channelRead() - Unsupported command '{}'", frame.command());
+          respond(context, frame.txnr(), Unpooled.copiedBuffer("500 unsupported command " + frame.command(), CharsetUtil.US_ASCII));
+          break;
+      }
+    } finally {
+      frame.release();
+    }
+  }
+
+  void syslog(ChannelHandlerContext context, RELPFrame frame) {
+    final ByteBuf data = frame.content();
+    if (this.closeTxnr >= 0) {
+      respond(context, frame.txnr(), Unpooled.copiedBuffer("500 session is closing", CharsetUtil.US_ASCII));
+      return;
+    }
+    if (CodingErrorAction.REPORT == this.malformedInputAction &&
+        !BufferedSyslogRequest.isValid(data, data.readerIndex(), data.writerIndex(), this.charset)) {
+      respond(context, frame.txnr(), Unpooled.copiedBuffer("500 message is not valid " + this.charset, CharsetUtil.US_ASCII));
+      return;
+    }
+    offer(frame.txnr());
+    if (this.size >= this.maxPending && !ReadPause.isPaused(context.channel(), ReadPause.PENDING)) {
+      log.trace("syslog() - Pausing reads. pending = {}", this.size);
+      ReadPause.pause(context.channel(), ReadPause.PENDING);
+    }
+
+    final long receivedNanos = this.receiveClock.epochNanos();
+    final InetAddress remoteAddress = ((InetSocketAddress) context.channel().remoteAddress()).getAddress();
+    context.fireChannelRead(
+        this.pooled ?
+            BufferedSyslogRequest.newInstance(data.retain(), receivedNanos, remoteAddress, this.charset, this.malformedInputAction) :
+            new BufferedSyslogRequest(data.retain(), receivedNanos, remoteAddress, this.charset, this.malformedInputAction)
+    );
+  }
+
+  /**
+   * Method is used to acknowledge the oldest unconfirmed message. Must be called on the event loop.
+   */
+  void confirm() {
+    if (0 == this.size) {
+      log.warn("confirm() - No message is waiting for confirmation.");
+      return;
+    }
+    final int txnr = poll();
+    respond(this.context, txnr, OK);
+    if (!this.reading && !this.flushScheduled) {
+      this.flushScheduled = true;
+      this.context.executor().execute(this.flushTask);
+    }
+    if (ReadPause.isPaused(this.context.channel(), ReadPause.PENDING) && this.size <= this.maxPending / 2 && this.closeTxnr < 0) {
+      log.trace("confirm() - Resuming reads. pending = {}", this.size);
+      ReadPause.resume(this.context.channel(), ReadPause.PENDING);
+    }
+    closeIfConfirmed(this.context);
+  }
+
+  void respond(ChannelHandlerContext context, int txnr, ByteBuf data) {
+    this.unflushed++;
+    context.write(new RELPFrame(txnr, RELPFrame.RSP, data), context.voidPromise());
+  }
+
+  void flushResponses(ChannelHandlerContext context) {
+    if (this.unflushed > 0) {
+      log.trace("flushResponses() - unflushed = {}", this.unflushed);
+      this.unflushed = 0;
+      context.flush();
+    }
+  }
+
+  void scheduledFlush() {
+    this.flushScheduled = false;
+    if (!this.reading) {
+      flushResponses(this.context);
+    }
+  }
+
+  /**
+   * Method is used to answer the close command once every message sent before it is confirmed.
+   */
+  void closeIfConfirmed(ChannelHandlerContext context) {
+    if (this.closeTxnr < 0 || this.size > 0 || this.closing) {
+      return;
+    }
+    this.closing = true;
+    this.unflushed = 0;
+    context.writeAndFlush(new RELPFrame(this.closeTxnr, RELPFrame.RSP, EMPTY))
+        .addListener(ChannelFutureListener.CLOSE);
+  }
+
+  @Override
+  public void channelReadComplete(ChannelHandlerContext context) throws Exception {
+    this.reading = false;
+    this.receiveClock.readComplete();
+    flushResponses(context);
+    super.channelReadComplete(context);
+  }
+
+  /**
+   * Messages that {@link SyslogMessageHandler} could not parse are written back to the pipeline.
+   * The sender has delivered them, they are acknowledged and dropped.
+   */
+  @Override
+  public void write(ChannelHandlerContext context, Object msg, ChannelPromise promise) throws Exception {
+    if (msg instanceof Message) {
+      log.trace("write() - Acknowledging unparseable message. msg = '{}'", msg);
+      ReferenceCountUtil.release(msg);
+      promise.trySuccess();
+      confirm();
+      return;
+    }
+    super.write(context, msg, promise);
+  }
+
+  /**
+   * A session closed by the server is announced with a {@code serverclose} hint.
+   */
+  @Override
+  public void close(ChannelHandlerContext context, ChannelPromise promise) throws Exception {
+    if (!this.closing && context.channel().isActive()) {
+      this.closing = true;
+      context.write(new RELPFrame(0, RELPFrame.SERVERCLOSE, EMPTY), context.voidPromise());
+      context.flush();
+    }
+    super.close(context, promise);
+  }
+
+  @Override
+  public void exceptionCaught(ChannelHandlerContext context, Throwable cause) throws Exception {
+    if (cause instanceof DecoderException) {
+      // The framing can not be recovered, the sender retransmits the unacknowledged messages.
+      log.warn("exceptionCaught() - Closing session with invalid frame. remoteAddress = '{}'", context.channel().remoteAddress(), cause);
+      context.close();
+      return;
+    }
+    super.exceptionCaught(context, cause);
+  }
+
+  void offer(int txnr) {
+    if (this.size == this.pending.length) {
+      final int[] grown = new int[this.pending.length * 2];
+      for (int i = 0; i < this.size; i++) {
+        grown[i] = this.pending[(this.head + i) % this.pending.length];
+      }
+      this.pending = grown;
+      this.head = 0;
+    }
+    this.pending[(this.head + this.size) % this.pending.length] = txnr;
+    this.size++;
+  }
+
+  int poll() {
+    final int txnr = this.pending[this.head];
+    this.head = (this.head + 1) % this.pending.length;
+    this.size--;
+    return txnr;
+  }
+}
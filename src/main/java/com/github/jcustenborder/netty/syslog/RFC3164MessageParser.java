@@ -18,6 +18,7 @@ package com.github.jcustenborder.netty.syslog;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Clock;
 import java.time.LocalDateTime;
 import java.util.regex.Matcher;
 
@@ -30,6 +31,16 @@ public class RFC3164MessageParser extends MessageParser {
     this.matcherThreadLocal = initMatcher(PATTERN);
   }
 
+  public RFC3164MessageParser(Clock clock) {
+    super(clock);
+    this.matcherThreadLocal = initMatcher(PATTERN);
+  }
+
+  @Override
+  public MessageType type() {
+    return MessageType.RFC3164;
+  }
+
   @Override
   public Message parse(SyslogRequest request) {
     log.trace("parse() - request = '{}'", request);
@@ -43,9 +54,9 @@ public class RFC3164MessageParser extends MessageParser {
     log.trace("parse() - Parsed message as RFC 3164");
     final String groupPriority = matcher.group("priority");
     final String groupDate = matcher.group("date");
-    final String groupHost = matcher.group("host");
+    final String groupHost = cachedGroup(request.rawMessage(), matcher, "host");
     final String groupMessage = matcher.group("message");
-    final String groupTag = matcher.group("tag");
+    final String groupTag = cachedGroup(request.rawMessage(), matcher, "tag");
     final String groupProcId = matcher.group("procid");
     final String processId = (groupProcId == null || groupProcId.isEmpty()) ? null : groupProcId;
     final Integer priority = (groupPriority == null || groupPriority.isEmpty()) ? null : Integer.parseInt(groupPriority);
@@ -0,0 +1,183 @@
+/**
+ * Copyright © 2018 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.netty.syslog;
+
+import io.netty.buffer.ByteBuf;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+
+/**
+ * Parser for rfc 3164 messages that scans the raw bytes of the message once. Unlike
+ * {@link RFC3164MessageParser} there is no backtracking, every byte is visited a bounded number of
+ * times so the time to parse a message is linear in its length regardless of the input.
+ *
+ * @see FieldOffsets
+ */
+public class RFC3164ScanningMessageParser extends MessageParser {
+  private static final Logger log = LoggerFactory.getLogger(RFC3164ScanningMessageParser.class);
+
+  private final boolean lazy;
+
+  public RFC3164ScanningMessageParser() {
+    this.lazy = false;
+  }
+
+  public RFC3164ScanningMessageParser(Clock clock) {
+    this(clock, false);
+  }
+
+  /**
+   * @param clock Clock used to determine the year for timestamps that do not include one.
+   * @param lazy true to return a {@link LazyMessage} that decodes each field when it is read.
+   */
+  public RFC3164ScanningMessageParser(Clock clock, boolean lazy) {
+    super(clock);
+    this.lazy = lazy;
+  }
+
+  @Override
+  public MessageType type() {
+    return MessageType.RFC3164;
+  }
+
+  @Override
+  public Message parse(SyslogRequest request) {
+    log.trace("parse() - request = '{}'", request);
+    final ByteBuf buffer = content(request);
+    final int[] offsets = FieldOffsets.scratch();
+
+    if (!scan(buffer, offsets)) {
+      log.trace("parse() - Could not match message. request = '{}'", request);
+      return null;
+    }
+
+    log.trace("parse() - Parsed message as RFC 3164");
+    final LocalDateTime date = parseDate(buffer, offsets);
+    if (null == date) {
+      return null;
+    }
+    if (this.lazy) {
+      return LazyMessage.newInstance(this, MessageType.RFC3164, request.remoteAddress(), date, buffer, offsets, malformedInputAction(request), pooled(request));
+    }
+    final Integer priority = priority(buffer, offsets);
+    final Integer facility = null == priority ? null : Priority.facility(priority);
+    final Integer level = null == priority ? null : Priority.level(priority, facility);
+
+    return ImmutableSyslogMessage.builder()
+        .type(MessageType.RFC3164)
+        .rawMessage(request.rawMessage())
+        .remoteAddress(request.remoteAddress())
+        .date(date)
+        .host(cachedString(buffer, offsets, FieldOffsets.HOST))
+        .level(level)
+        .facility(facility)
+        .message(string(buffer, offsets, FieldOffsets.MESSAGE))
+        .tag(cachedString(buffer, offsets, FieldOffsets.TAG))
+        .processId(string(buffer, offsets, FieldOffsets.PROCESS_ID))
+        .build();
+  }
+
+  @Override
+  Object decode(ByteBuf buffer, int[] offsets, int field) {
+    switch (field) {
+      case FieldOffsets.PRIORITY:
+        return priority(buffer, offsets);
+      case FieldOffsets.HOST:
+      case FieldOffsets.TAG:
+        return cachedString(buffer, offsets, field);
+      case FieldOffsets.MESSAGE:
+      case FieldOffsets.PROCESS_ID:
+        return string(buffer, offsets, field);
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Method is used to locate the fields of a rfc 3164 message.
+   *
+   * <pre>
+   * [&lt;PRI&gt;]TIMESTAMP SP HOSTNAME SP [TAG[\[PID\]]:] MSG
+   * </pre>
+   *
+   * @param buffer Buffer containing the raw message. The readable bytes are scanned.
+   * @param offsets Offsets to record the field boundaries in.
+   * @return true if the message has the shape of a rfc 3164 message.
+   */
+  static boolean scan(ByteBuf buffer, int[] offsets) {
+    int index = buffer.readerIndex();
+    final int end = ParserHelper.trimLineEnd(buffer, index, buffer.writerIndex());
+
+    index = ParserHelper.header(buffer, index, end, offsets);
+    if (index < 0 || index >= end) {
+      return false;
+    }
+
+    final int messageStart = tag(buffer, index, end, offsets);
+    FieldOffsets.set(offsets, FieldOffsets.MESSAGE, messageStart, end);
+    return true;
+  }
+
+  /**
+   * Method is used to locate the optional TAG[PID]: part of the message. When it is missing the
+   * whole remainder is the message.
+   *
+   * @return index of the start of the message.
+   */
+  static int tag(ByteBuf buffer, int index, int end, int[] offsets) {
+    int tagEnd = index;
+    while (tagEnd < end) {
+      final byte b = buffer.getByte(tagEnd);
+      if (b == '[' || b == ']' || ParserHelper.isWhitespace(b)) {
+        break;
+      }
+      tagEnd++;
+    }
+
+    int messageStart = -1;
+    if (tagEnd > index && tagEnd < end && buffer.getByte(tagEnd) == '[') {
+      final int processIdEnd = ParserHelper.skipDigits(buffer, tagEnd + 1, end);
+      if (processIdEnd > tagEnd + 1 && processIdEnd + 1 < end &&
+          buffer.getByte(processIdEnd) == ']' && buffer.getByte(processIdEnd + 1) == ':') {
+        FieldOffsets.set(offsets, FieldOffsets.PROCESS_ID, tagEnd + 1, processIdEnd);
+        messageStart = processIdEnd + 2;
+      }
+    }
+    if (messageStart < 0) {
+      int colon = tagEnd - 1;
+      while (colon > index && buffer.getByte(colon) != ':') {
+        colon--;
+      }
+      if (colon <= index) {
+        return index;
+      }
+      tagEnd = colon;
+      messageStart = colon + 1;
+    }
+
+    final int result = ParserHelper.skipWhitespace(buffer, messageStart, end);
+    if (result >= end) {
+      // Nothing follows the tag so it is part of the message.
+      FieldOffsets.set(offsets, FieldOffsets.PROCESS_ID, -1, -1);
+      return index;
+    }
+    FieldOffsets.set(offsets, FieldOffsets.TAG, index, tagEnd);
+    return result;
+  }
+}
@@ -18,6 +18,7 @@ package com.github.jcustenborder.netty.syslog;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Clock;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.regex.Matcher;
@@ -31,6 +32,16 @@ public class RFC5424MessageParser extends MessageParser {
     this.matcherThreadLocal = initMatcher(PATTERN);
   }
 
+  public RFC5424MessageParser(Clock clock) {
+    super(clock);
+    this.matcherThreadLocal = initMatcher(PATTERN);
+  }
+
+  @Override
+  public MessageType type() {
+    return MessageType.RFC5424;
+  }
+
   @Override
   public Message parse(SyslogRequest request) {
     log.trace("parse() - request = '{}'", request);
@@ -45,10 +56,10 @@ public class RFC5424MessageParser extends MessageParser {
     final String groupPriority = matcher.group("priority");
     final String groupVersion = matcher.group("version");
     final String groupDate = matcher.group("date");
-    final String groupHost = matcher.group("host");
-    final String groupAppName = matcher.group("appname");
+    final String groupHost = cachedGroup(request.rawMessage(), matcher, "host");
+    final String groupAppName = cachedGroup(request.rawMessage(), matcher, "appname");
     final String groupProcID = matcher.group("procid");
-    final String groupMessageID = matcher.group("msgid");
+    final String groupMessageID = cachedGroup(request.rawMessage(), matcher, "msgid");
     final String groupStructuredData = matcher.group("structureddata");
     final String groupMessage = matcher.group("message");
 
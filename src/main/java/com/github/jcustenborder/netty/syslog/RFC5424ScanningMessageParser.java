@@ -0,0 +1,269 @@
+/**
+ * Copyright © 2018 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.netty.syslog;
+
+import io.netty.buffer.ByteBuf;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Parser for rfc 5424 messages that walks the raw bytes of the message once instead of matching
+ * a regular expression. The boundaries of each field are recorded in an offsets array and only the
+ * fields that are present are decoded. This parser returns the same results as
+ * {@link RFC5424MessageParser} and can be used in its place.
+ *
+ * @see FieldOffsets
+ */
+public class RFC5424ScanningMessageParser extends MessageParser {
+  private static final Logger log = LoggerFactory.getLogger(RFC5424ScanningMessageParser.class);
+
+  private final boolean lazy;
+  private final boolean structuredData;
+
+  public RFC5424ScanningMessageParser() {
+    this.lazy = false;
+    this.structuredData = true;
+  }
+
+  public RFC5424ScanningMessageParser(Clock clock) {
+    this(clock, false);
+  }
+
+  /**
+   * @param clock Clock used to determine the year for timestamps that do not include one.
+   * @param lazy true to return a {@link LazyMessage} that decodes each field when it is read.
+   */
+  public RFC5424ScanningMessageParser(Clock clock, boolean lazy) {
+    this(clock, lazy, true);
+  }
+
+  /**
+   * @param clock Clock used to determine the year for timestamps that do not include one.
+   * @param lazy true to return a {@link LazyMessage} that decodes each field when it is read.
+   * @param structuredData false to skip parsing the structured data. The structured data of the
+   *                       returned messages is null.
+   */
+  public RFC5424ScanningMessageParser(Clock clock, boolean lazy, boolean structuredData) {
+    super(clock);
+    this.lazy = lazy;
+    this.structuredData = structuredData;
+  }
+
+  @Override
+  public MessageType type() {
+    return MessageType.RFC5424;
+  }
+
+  @Override
+  public Message parse(SyslogRequest request) {
+    log.trace("parse() - request = '{}'", request);
+    final ByteBuf buffer = content(request);
+    final int[] offsets = FieldOffsets.scratch();
+
+    if (!scan(buffer, offsets)) {
+      log.trace("parse() - Could not match message. request = '{}'", request);
+      return null;
+    }
+
+    log.trace("parse() - Successfully scanned message");
+    final LocalDateTime date = parseDate(buffer, offsets);
+    if (null == date) {
+      return null;
+    }
+    if (this.lazy) {
+      return LazyMessage.newInstance(this, MessageType.RFC5424, request.remoteAddress(), date, buffer, offsets, malformedInputAction(request), pooled(request));
+    }
+    final int priority = ParserHelper.parseInt(
+        buffer, FieldOffsets.start(offsets, FieldOffsets.PRIORITY), FieldOffsets.end(offsets, FieldOffsets.PRIORITY)
+    );
+    final int facility = Priority.facility(priority);
+    final int level = Priority.level(priority, facility);
+    final Integer version = ParserHelper.parseInt(
+        buffer, FieldOffsets.start(offsets, FieldOffsets.VERSION), FieldOffsets.end(offsets, FieldOffsets.VERSION)
+    );
+    final List<Message.StructuredData> structuredData = structuredData(buffer, offsets);
+
+    return ImmutableSyslogMessage.builder()
+        .type(MessageType.RFC5424)
+        .rawMessage(request.rawMessage())
+        .remoteAddress(request.remoteAddress())
+        .date(date)
+        .host(cachedString(buffer, offsets, FieldOffsets.HOST))
+        .level(level)
+        .facility(facility)
+        .message(string(buffer, offsets, FieldOffsets.MESSAGE))
+        .version(version)
+        .processId(nullableString(buffer, offsets, FieldOffsets.PROCESS_ID))
+        .messageId(nullableCachedString(buffer, offsets, FieldOffsets.MESSAGE_ID))
+        .structuredData(structuredData)
+        .appName(nullableCachedString(buffer, offsets, FieldOffsets.APP_NAME))
+        .build();
+  }
+
+  List<Message.StructuredData> structuredData(ByteBuf buffer, int[] offsets) {
+    if (!this.structuredData) {
+      return null;
+    }
+    return parseStructuredData(
+        buffer, FieldOffsets.start(offsets, FieldOffsets.STRUCTURED_DATA), FieldOffsets.end(offsets, FieldOffsets.STRUCTURED_DATA)
+    );
+  }
+
+  @Override
+  Object decode(ByteBuf buffer, int[] offsets, int field) {
+    switch (field) {
+      case FieldOffsets.PRIORITY:
+        return priority(buffer, offsets);
+      case FieldOffsets.VERSION:
+        return ParserHelper.parseInt(
+            buffer, FieldOffsets.start(offsets, FieldOffsets.VERSION), FieldOffsets.end(offsets, FieldOffsets.VERSION)
+        );
+      case FieldOffsets.HOST:
+        return cachedString(buffer, offsets, field);
+      case FieldOffsets.MESSAGE:
+        return string(buffer, offsets, field);
+      case FieldOffsets.APP_NAME:
+      case FieldOffsets.MESSAGE_ID:
+        return nullableCachedString(buffer, offsets, field);
+      case FieldOffsets.PROCESS_ID:
+        return nullableString(buffer, offsets, field);
+      case FieldOffsets.STRUCTURED_DATA:
+        return structuredData(buffer, offsets);
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Method is used to locate the fields of a rfc 5424 message.
+   *
+   * <pre>
+   * SYSLOG-MSG = PRI VERSION SP TIMESTAMP SP HOSTNAME SP APP-NAME SP PROCID SP MSGID SP STRUCTURED-DATA [SP MSG]
+   * </pre>
+   *
+   * @param buffer Buffer containing the raw message. The readable bytes are scanned.
+   * @param offsets Offsets to record the field boundaries in.
+   * @return true if the message has the shape of a rfc 5424 message.
+   */
+  static boolean scan(ByteBuf buffer, int[] offsets) {
+    int index = buffer.readerIndex();
+    final int end = ParserHelper.trimLineEnd(buffer, index, buffer.writerIndex());
+
+    if (index >= end || buffer.getByte(index) != '<') {
+      return false;
+    }
+    index++;
+    int fieldEnd = ParserHelper.skipDigits(buffer, index, end);
+    if (fieldEnd == index || fieldEnd - index > 3 || fieldEnd >= end || buffer.getByte(fieldEnd) != '>') {
+      return false;
+    }
+    FieldOffsets.set(offsets, FieldOffsets.PRIORITY, index, fieldEnd);
+    index = fieldEnd + 1;
+
+    fieldEnd = ParserHelper.skipDigits(buffer, index, end);
+    if (fieldEnd == index || fieldEnd - index > 3) {
+      return false;
+    }
+    FieldOffsets.set(offsets, FieldOffsets.VERSION, index, fieldEnd);
+    index = fieldEnd;
+
+    index = token(buffer, index, end, offsets, FieldOffsets.DATE);
+    index = token(buffer, index, end, offsets, FieldOffsets.HOST);
+    index = token(buffer, index, end, offsets, FieldOffsets.APP_NAME);
+    index = token(buffer, index, end, offsets, FieldOffsets.PROCESS_ID);
+    index = token(buffer, index, end, offsets, FieldOffsets.MESSAGE_ID);
+    if (index < 0) {
+      return false;
+    }
+
+    index = ParserHelper.skipWhitespace(buffer, index, end);
+    if (index >= end) {
+      return false;
+    }
+    final byte b = buffer.getByte(index);
+    if (b == '-') {
+      fieldEnd = index + 1;
+    } else if (b == '[') {
+      fieldEnd = structuredDataEnd(buffer, index, end);
+      if (fieldEnd < 0) {
+        return false;
+      }
+    } else {
+      return false;
+    }
+    FieldOffsets.set(offsets, FieldOffsets.STRUCTURED_DATA, index, fieldEnd);
+
+    index = ParserHelper.skipWhitespace(buffer, fieldEnd, end);
+    if (index < end) {
+      FieldOffsets.set(offsets, FieldOffsets.MESSAGE, index, end);
+    }
+    return true;
+  }
+
+  /**
+   * Method is used to record the next whitespace delimited token.
+   *
+   * @return index after the token or -1 if there is no token.
+   */
+  private static int token(ByteBuf buffer, int index, int end, int[] offsets, int field) {
+    if (index < 0) {
+      return -1;
+    }
+    final int start = ParserHelper.skipWhitespace(buffer, index, end);
+    if (start >= end) {
+      return -1;
+    }
+    final int tokenEnd = ParserHelper.nextWhitespace(buffer, start, end);
+    FieldOffsets.set(offsets, field, start, tokenEnd);
+    return tokenEnd;
+  }
+
+  /**
+   * Method is used to find the end of the structured data. Brackets within quoted param values are
+   * skipped along with any escaped character.
+   *
+   * @return index after the last SD-ELEMENT or -1 if an element is not terminated.
+   */
+  static int structuredDataEnd(ByteBuf buffer, int index, int end) {
+    while (index < end && buffer.getByte(index) == '[') {
+      boolean quoted = false;
+      index++;
+      for (; index < end; index++) {
+        final byte b = buffer.getByte(index);
+        if (quoted) {
+          if (b == '\\') {
+            index++;
+          } else if (b == '"') {
+            quoted = false;
+          }
+        } else if (b == '"') {
+          quoted = true;
+        } else if (b == ']') {
+          break;
+        }
+      }
+      if (index >= end) {
+        return -1;
+      }
+      index++;
+    }
+    return index;
+  }
+}
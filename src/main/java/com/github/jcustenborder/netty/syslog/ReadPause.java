@@ -0,0 +1,105 @@
+/**
+ * Copyright © 2018 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.netty.syslog;
+
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoop;
+import io.netty.util.AttributeKey;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Class is used to pause reads on a channel for more than one reason at a time. Each handler that
+ * stops reading sets its own reason and reads are only resumed once no reason is left, so one
+ * handler resuming does not undo the pause of another.
+ */
+final class ReadPause {
+  /**
+   * Reads are paused by {@link MemoryBudget}.
+   */
+  static final int BUDGET = 1;
+  /**
+   * Reads are paused by {@link RELPServerHandler} until enough messages are confirmed.
+   */
+  static final int PENDING = 1 << 1;
+
+  private static final AttributeKey<AtomicInteger> REASONS = AttributeKey.valueOf(ReadPause.class, "reasons");
+
+  private ReadPause() {
+  }
+
+  static AtomicInteger reasons(Channel channel) {
+    AtomicInteger reasons = channel.attr(REASONS).get();
+    if (null == reasons) {
+      reasons = new AtomicInteger();
+      final AtomicInteger existing = channel.attr(REASONS).setIfAbsent(reasons);
+      if (null != existing) {
+        reasons = existing;
+      }
+    }
+    return reasons;
+  }
+
+  /**
+   * @return true if reads are paused on the channel for the reason.
+   */
+  static boolean isPaused(Channel channel, int reason) {
+    return 0 != (reasons(channel).get() & reason);
+  }
+
+  /**
+   * Method is used to stop reading from the channel.
+   *
+   * @param channel Channel to stop reading from.
+   * @param reason  Reason reads are paused.
+   */
+  static void pause(Channel channel, int reason) {
+    final AtomicInteger reasons = reasons(channel);
+    int current;
+    do {
+      current = reasons.get();
+    } while (!reasons.compareAndSet(current, current | reason));
+    update(channel, reasons);
+  }
+
+  /**
+   * Method is used to remove a reason reads are paused. Reads are resumed once no reason is left.
+   *
+   * @param channel Channel to resume reading from.
+   * @param reason  Reason that no longer applies.
+   */
+  static void resume(Channel channel, int reason) {
+    final AtomicInteger reasons = reasons(channel);
+    int current;
+    do {
+      current = reasons.get();
+    } while (!reasons.compareAndSet(current, current & ~reason));
+    update(channel, reasons);
+  }
+
+  /**
+   * The reasons can change on any thread. Auto read is set from the event loop so the last update
+   * always sees the latest reasons.
+   */
+  static void update(Channel channel, AtomicInteger reasons) {
+    final EventLoop eventLoop = channel.eventLoop();
+    if (eventLoop.inEventLoop()) {
+      channel.config().setAutoRead(0 == reasons.get());
+    } else {
+      eventLoop.execute(() -> channel.config().setAutoRead(0 == reasons.get()));
+    }
+  }
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright © 2018 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.netty.syslog;
+
+import io.netty.util.concurrent.FastThreadLocal;
+import io.netty.util.internal.ObjectUtil;
+
+import java.time.Clock;
+
+/**
+ * Controls how {@link TCPSyslogMessageDecoder} and {@link UDPSyslogMessageDecoder} read the time a
+ * request was received. The time is returned as nanoseconds since the epoch.
+ *
+ * <ul>
+ * <li>{@link Mode#EXACT} reads the clock for every request.</li>
+ * <li>{@link Mode#COARSE} reads the clock once per read on each event loop. Every request decoded
+ * from one read gets the same time. The cached time is dropped when the read completes, or after
+ * {@link #MAX_USES} requests, whichever comes first.</li>
+ * </ul>
+ */
+public final class ReceiveClock {
+  public enum Mode {
+    EXACT,
+    COARSE
+  }
+
+  /**
+   * Upper bound on the number of requests that share a coarse time. Keeps the time moving on a
+   * channel that never completes a read, for example an EmbeddedChannel.
+   */
+  static final int MAX_USES = 1024;
+  private static final ReceiveClock EXACT = new ReceiveClock(Mode.EXACT, Clock.systemUTC());
+  private static final ReceiveClock COARSE = new ReceiveClock(Mode.COARSE, Clock.systemUTC());
+
+  final Mode mode;
+  final Clock clock;
+  private final FastThreadLocal<CachedTime> cached;
+
+  private ReceiveClock(Mode mode, Clock clock) {
+    this.mode = mode;
+    this.clock = clock;
+    this.cached = Mode.COARSE == mode ? new FastThreadLocal<CachedTime>() {
+      @Override
+      protected CachedTime initialValue() {
+        return new CachedTime();
+      }
+    } : null;
+  }
+
+  public static ReceiveClock exact() {
+    return EXACT;
+  }
+
+  public static ReceiveClock exact(Clock clock) {
+    return new ReceiveClock(Mode.EXACT, ObjectUtil.checkNotNull(clock, "clock"));
+  }
+
+  public static ReceiveClock coarse() {
+    return COARSE;
+  }
+
+  public static ReceiveClock coarse(Clock clock) {
+    return new ReceiveClock(Mode.COARSE, ObjectUtil.checkNotNull(clock, "clock"));
+  }
+
+  public Mode mode() {
+    return this.mode;
+  }
+
+  /**
+   * Method is used to return the receive time of a request.
+   *
+   * @return Nanoseconds since the epoch.
+   */
+  public long epochNanos() {
+    if (Mode.EXACT == this.mode) {
+      return read();
+    }
+    final CachedTime time = this.cached.get();
+    if (0 == time.uses) {
+      time.epochNanos = read();
+    }
+    if (++time.uses >= MAX_USES) {
+      time.uses = 0;
+    }
+    return time.epochNanos;
+  }
+
+  /**
+   * Method is called by the decoders when a read completes so the next read gets a new time.
+   */
+  void readComplete() {
+    if (Mode.COARSE == this.mode) {
+      this.cached.get().uses = 0;
+    }
+  }
+
+  long read() {
+    // Clock.millis() does not allocate, Clock.instant() does.
+    return this.clock.millis() * 1000000L;
+  }
+
+  static final class CachedTime {
+    long epochNanos;
+    int uses;
+  }
+}
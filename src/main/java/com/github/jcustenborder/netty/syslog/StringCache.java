@@ -0,0 +1,181 @@
+/**
+ * Copyright © 2018 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.netty.syslog;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.CharsetUtil;
+import io.netty.util.internal.MathUtil;
+import io.netty.util.internal.ObjectUtil;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of the strings that repeat from message to message such as the host, app name,
+ * tag, SD-ID and the CEF vendor and product. A lookup hashes the bytes or characters of the range
+ * and compares them to the cached string, the range is only decoded on a miss.
+ *
+ * <p>The cache is a direct mapped table, each slot holds at most one string and a miss replaces
+ * whatever was in the slot. Slots are read and written with {@link AtomicReferenceArray} so there
+ * are no locks. Only US-ASCII ranges up to {@link #MAX_LENGTH} bytes are cached, everything else
+ * is decoded as usual.</p>
+ */
+public final class StringCache {
+  public static final int DEFAULT_SIZE = 4096;
+  public static final int MAX_LENGTH = 64;
+  private static final StringCache SHARED = new StringCache(DEFAULT_SIZE);
+
+  private final AtomicReferenceArray<String> table;
+  private final int mask;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  /**
+   * @param size Number of slots in the cache. Rounded up to a power of two.
+   */
+  public StringCache(int size) {
+    ObjectUtil.checkPositive(size, "size");
+    final int capacity = MathUtil.findNextPositivePowerOfTwo(size);
+    this.table = new AtomicReferenceArray<>(capacity);
+    this.mask = capacity - 1;
+  }
+
+  /**
+   * @return Cache shared by every parser that is not given a cache.
+   */
+  public static StringCache shared() {
+    return SHARED;
+  }
+
+  /**
+   * Method is used to return the string for the bytes between start and end.
+   *
+   * @param buffer Buffer containing the string.
+   * @param start Index of the first byte.
+   * @param end Index after the last byte.
+   * @return Cached or newly decoded string.
+   */
+  public String get(ByteBuf buffer, int start, int end) {
+    final int length = end - start;
+    if (length > MAX_LENGTH) {
+      return buffer.toString(start, length, CharsetUtil.UTF_8);
+    }
+    int hash = 0;
+    for (int i = start; i < end; i++) {
+      final byte b = buffer.getByte(i);
+      if (b < 0) {
+        return buffer.toString(start, length, CharsetUtil.UTF_8);
+      }
+      hash = 31 * hash + b;
+    }
+    final int slot = slot(hash);
+    final String cached = this.table.get(slot);
+    if (null != cached && matches(cached, buffer, start, length)) {
+      this.hits.increment();
+      return cached;
+    }
+    return put(slot, cached, buffer.toString(start, length, CharsetUtil.US_ASCII));
+  }
+
+  /**
+   * Method is used to return the string for the characters between start and end.
+   *
+   * @param input Text containing the string.
+   * @param start Index of the first character.
+   * @param end Index after the last character.
+   * @return Cached or newly created string.
+   */
+  public String get(CharSequence input, int start, int end) {
+    final int length = end - start;
+    if (length > MAX_LENGTH) {
+      return input.subSequence(start, end).toString();
+    }
+    int hash = 0;
+    for (int i = start; i < end; i++) {
+      final char c = input.charAt(i);
+      if (c > 0x7F) {
+        return input.subSequence(start, end).toString();
+      }
+      hash = 31 * hash + c;
+    }
+    final int slot = slot(hash);
+    final String cached = this.table.get(slot);
+    if (null != cached && matches(cached, input, start, length)) {
+      this.hits.increment();
+      return cached;
+    }
+    return put(slot, cached, input.subSequence(start, end).toString());
+  }
+
+  private int slot(int hash) {
+    return (hash ^ (hash >>> 16)) & this.mask;
+  }
+
+  private String put(int slot, String previous, String value) {
+    this.misses.increment();
+    if (null != previous) {
+      this.evictions.increment();
+    }
+    this.table.lazySet(slot, value);
+    return value;
+  }
+
+  private static boolean matches(String cached, ByteBuf buffer, int start, int length) {
+    if (cached.length() != length) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if (cached.charAt(i) != buffer.getByte(start + i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean matches(String cached, CharSequence input, int start, int length) {
+    if (cached.length() != length) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if (cached.charAt(i) != input.charAt(start + i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return Number of lookups that returned a cached string.
+   */
+  public long hits() {
+    return this.hits.sum();
+  }
+
+  /**
+   * @return Number of lookups that had to decode the string.
+   */
+  public long misses() {
+    return this.misses.sum();
+  }
+
+  /**
+   * @return Number of cached strings that were replaced by another string.
+   */
+  public long evictions() {
+    return this.evictions.sum();
+  }
+}
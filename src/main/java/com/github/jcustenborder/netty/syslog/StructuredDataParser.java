@@ -0,0 +1,165 @@
+/**
+ * Copyright © 2018 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.netty.syslog;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.CharsetUtil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Single pass tokenizer for rfc 5424 STRUCTURED-DATA.
+ *
+ * <pre>
+ * STRUCTURED-DATA = NILVALUE / 1*SD-ELEMENT
+ * SD-ELEMENT      = "[" SD-ID *(SP SD-PARAM) "]"
+ * SD-PARAM        = PARAM-NAME "=" %d34 PARAM-VALUE %d34
+ * SD-ID           = SD-NAME
+ * PARAM-NAME      = SD-NAME
+ * PARAM-VALUE     = UTF-8-STRING ; characters '"', '\' and ']' MUST be escaped.
+ * SD-NAME         = 1*32PRINTUSASCII ; except '=', SP, ']', %d34 (")
+ * </pre>
+ * A backslash followed by any other character is kept as is. The only objects created are the
+ * strings, maps and elements that are returned. The parameters of each element are collected in a
+ * map that is reused by the thread. SD-IDs and PARAM-NAMEs are looked up in the {@link StringCache}.
+ */
+final class StructuredDataParser {
+  static final int MAX_NAME_LENGTH = 32;
+  private static final ThreadLocal<State> STATE = ThreadLocal.withInitial(State::new);
+
+  private StructuredDataParser() {
+  }
+
+  /**
+   * Method is used to parse the STRUCTURED-DATA between start and end.
+   *
+   * @param buffer Buffer containing the structured data.
+   * @param index Index of the first byte of the structured data.
+   * @param end Index after the last byte of the structured data.
+   * @param stringCache Cache for the SD-IDs and PARAM-NAMEs.
+   * @return Elements in the order they appear. Null if the structured data does not follow the ABNF.
+   */
+  static List<Message.StructuredData> parse(ByteBuf buffer, int index, int end, StringCache stringCache) {
+    if (index >= end) {
+      return null;
+    }
+    if (end - index == 1 && buffer.getByte(index) == '-') {
+      return Collections.emptyList();
+    }
+    final State state = STATE.get();
+    final List<Message.StructuredData> result = new ArrayList<>(2);
+    while (index < end) {
+      if (buffer.getByte(index) != '[') {
+        return null;
+      }
+      index++;
+      int nameEnd = nameEnd(buffer, index, end);
+      if (nameEnd < 0) {
+        return null;
+      }
+      final String id = stringCache.get(buffer, index, nameEnd);
+      index = nameEnd;
+
+      final Map<String, String> params = state.params;
+      params.clear();
+      while (index < end && buffer.getByte(index) == ' ') {
+        index++;
+        nameEnd = nameEnd(buffer, index, end);
+        if (nameEnd < 0 || nameEnd + 1 >= end || buffer.getByte(nameEnd) != '=' || buffer.getByte(nameEnd + 1) != '"') {
+          return null;
+        }
+        final String name = stringCache.get(buffer, index, nameEnd);
+        index = nameEnd + 2;
+        final int valueEnd = valueEnd(buffer, index, end);
+        if (valueEnd < 0) {
+          return null;
+        }
+        params.put(name, value(buffer, index, valueEnd, state));
+        index = valueEnd + 1;
+      }
+      if (index >= end || buffer.getByte(index) != ']') {
+        return null;
+      }
+      index++;
+      result.add(ImmutableStructuredData.of(id, params));
+    }
+    return result;
+  }
+
+  static boolean isNameByte(byte b) {
+    return b > ' ' && b <= '~' && b != '=' && b != ']' && b != '"';
+  }
+
+  /**
+   * @return index after the last byte of the SD-NAME. -1 if the name is empty or too long.
+   */
+  static int nameEnd(ByteBuf buffer, int index, int end) {
+    final int start = index;
+    while (index < end && isNameByte(buffer.getByte(index))) {
+      index++;
+    }
+    final int length = index - start;
+    return length == 0 || length > MAX_NAME_LENGTH ? -1 : index;
+  }
+
+  /**
+   * @return index of the closing quote of the PARAM-VALUE. -1 if there is none.
+   */
+  static int valueEnd(ByteBuf buffer, int index, int end) {
+    for (; index < end; index++) {
+      final byte b = buffer.getByte(index);
+      if (b == '\\') {
+        index++;
+      } else if (b == '"') {
+        return index;
+      }
+    }
+    return -1;
+  }
+
+  static String value(ByteBuf buffer, int start, int end, State state) {
+    if (buffer.indexOf(start, end, (byte) '\\') < 0) {
+      return buffer.toString(start, end - start, CharsetUtil.UTF_8);
+    }
+    byte[] bytes = state.bytes;
+    if (bytes.length < end - start) {
+      bytes = state.bytes = new byte[Math.max(end - start, bytes.length * 2)];
+    }
+    int length = 0;
+    for (int index = start; index < end; index++) {
+      final byte b = buffer.getByte(index);
+      if (b == '\\' && index + 1 < end) {
+        final byte next = buffer.getByte(index + 1);
+        if (next == '"' || next == '\\' || next == ']') {
+          bytes[length++] = next;
+          index++;
+          continue;
+        }
+      }
+      bytes[length++] = b;
+    }
+    return new String(bytes, 0, length, CharsetUtil.UTF_8);
+  }
+
+  static final class State {
+    final Map<String, String> params = new LinkedHashMap<>();
+    byte[] bytes = new byte[256];
+  }
+}
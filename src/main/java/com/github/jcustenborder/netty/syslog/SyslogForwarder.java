@@ -0,0 +1,520 @@
+/**
+ * Copyright © 2018 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.netty.syslog;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.handler.flush.FlushConsolidationHandler;
+import io.netty.util.concurrent.ScheduledFuture;
+import io.netty.util.internal.ObjectUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.net.InetSocketAddress;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Client is used to send {@link Message}s to one or more collectors over a fixed pool of tcp or
+ * udp channels. Each channel has the pipeline {@link FlushConsolidationHandler} →
+ * {@link MessageEncoder}, messages sent from outside the event loop are written in batches and the
+ * flushes between them are merged so there is not one system call per message. The native epoll
+ * transport is used when it is available, otherwise NIO.
+ *
+ * <p>{@link #send(Message)} does not queue messages. When the selected channel is not writable the
+ * other channels are tried and false is returned when none of them is, the caller should slow down
+ * or drop the message. Channels that close or fail to connect are reconnected after a backoff that
+ * doubles up to a limit and is jittered so a pool does not reconnect at the same time.</p>
+ *
+ * <pre>
+ * SyslogForwarder forwarder = SyslogForwarder.builder()
+ *     .target("collector1", 514)
+ *     .target("collector2", 514)
+ *     .connectionsPerTarget(2)
+ *     .build();
+ * forwarder.start();
+ * forwarder.send(message);
+ * </pre>
+ */
+public final class SyslogForwarder implements Closeable {
+  private static final Logger log = LoggerFactory.getLogger(SyslogForwarder.class);
+  public static final int DEFAULT_CONNECTIONS_PER_TARGET = 2;
+  public static final int DEFAULT_MAX_FLUSH_BATCH = 256;
+  public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 5000;
+  public static final long DEFAULT_MIN_RECONNECT_DELAY_MILLIS = 100;
+  public static final long DEFAULT_MAX_RECONNECT_DELAY_MILLIS = 30000;
+  /**
+   * The forwarder writes all of the time, high marks keep the socket busy between flushes.
+   */
+  public static final WriteBufferWaterMark DEFAULT_WRITE_BUFFER_WATER_MARK = new WriteBufferWaterMark(256 * 1024, 1024 * 1024);
+
+  public enum Protocol {
+    TCP,
+    UDP
+  }
+
+  public enum Selection {
+    /**
+     * Each message goes to the next channel.
+     */
+    ROUND_ROBIN,
+    /**
+     * Messages with the same {@link Message#host()} go to the same channel as long as it is
+     * writable.
+     */
+    HASH_BY_HOST
+  }
+
+  final List<InetSocketAddress> targets;
+  final Protocol protocol;
+  final int connectionsPerTarget;
+  final Selection selection;
+  final MessageEncoder.Framing framing;
+  final DateTimeFormatter dateFormat;
+  final EventLoopGroup group;
+  final boolean ownsGroup;
+  final int maxFlushBatch;
+  final int connectTimeoutMillis;
+  final long minReconnectDelayMillis;
+  final long maxReconnectDelayMillis;
+  final WriteBufferWaterMark writeBufferWaterMark;
+  final ByteBufAllocator allocator;
+  final List<Connection> connections = new ArrayList<>();
+  final AtomicInteger next = new AtomicInteger();
+  final LongAdder sent = new LongAdder();
+  final LongAdder rejected = new LongAdder();
+  volatile boolean closed;
+
+  private SyslogForwarder(Builder builder) {
+    this.targets = new ArrayList<>(builder.targets);
+    this.protocol = builder.protocol;
+    this.connectionsPerTarget = builder.connectionsPerTarget;
+    this.selection = builder.selection;
+    this.framing = builder.framing;
+    this.dateFormat = builder.dateFormat;
+    this.maxFlushBatch = builder.maxFlushBatch;
+    this.connectTimeoutMillis = builder.connectTimeoutMillis;
+    this.minReconnectDelayMillis = builder.minReconnectDelayMillis;
+    this.maxReconnectDelayMillis = builder.maxReconnectDelayMillis;
+    this.writeBufferWaterMark = builder.writeBufferWaterMark;
+    this.allocator = builder.allocator;
+    if (null == builder.group) {
+      this.group = NativeTransport.eventLoopGroup(builder.workerThreads);
+      this.ownsGroup = true;
+    } else {
+      this.group = builder.group;
+      this.ownsGroup = false;
+    }
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Method is used to connect every channel of the pool. Targets that cannot be reached are
+   * retried in the background.
+   *
+   * @return this
+   */
+  public SyslogForwarder start() {
+    final Bootstrap bootstrap = bootstrap();
+    for (InetSocketAddress target : this.targets) {
+      for (int i = 0; i < this.connectionsPerTarget; i++) {
+        this.connections.add(new Connection(bootstrap, target, this.group.next()));
+      }
+    }
+    for (Connection connection : this.connections) {
+      connection.connect();
+    }
+    log.info("start() - Forwarding over {} to {} with {} channel(s) per target.", this.protocol, this.targets, this.connectionsPerTarget);
+    return this;
+  }
+
+  Bootstrap bootstrap() {
+    final Bootstrap bootstrap = new Bootstrap()
+        .option(ChannelOption.ALLOCATOR, this.allocator)
+        .option(ChannelOption.WRITE_BUFFER_WATER_MARK, this.writeBufferWaterMark)
+        .handler(new ChannelInitializer<Channel>() {
+          @Override
+          protected void initChannel(Channel channel) {
+            channel.pipeline().addLast(
+                new FlushConsolidationHandler(maxFlushBatch, true),
+                new MessageEncoder(dateFormat, framing)
+            );
+          }
+        });
+    if (Protocol.TCP == this.protocol) {
+      bootstrap.channel(NativeTransport.socketChannel(this.group))
+          .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, this.connectTimeoutMillis)
+          .option(ChannelOption.TCP_NODELAY, true)
+          .option(ChannelOption.SO_KEEPALIVE, true);
+    } else {
+      bootstrap.channel(NativeTransport.datagramChannel(this.group));
+    }
+    return bootstrap;
+  }
+
+  /**
+   * Method is used to return how long to wait before the supplied reconnect attempt. The delay
+   * doubles with each attempt up to the max and a random value of up to half of it is taken off.
+   *
+   * @param attempt Number of attempts that failed in a row.
+   * @param min     Delay of the first attempt.
+   * @param max     Largest delay.
+   * @param random  Source of the jitter.
+   * @return Delay in milliseconds.
+   */
+  static long reconnectDelay(int attempt, long min, long max, Random random) {
+    final long delay = attempt >= Long.numberOfLeadingZeros(min) - 1 ? max : Math.min(max, min << attempt);
+    final long half = delay / 2;
+    return delay - (long) (random.nextDouble() * half);
+  }
+
+  /**
+   * @return Channel that was writable when it was selected. Null if no channel is writable. The
+   * channel is returned instead of the connection because the connection drops its channel as soon
+   * as it closes.
+   */
+  Channel select(Message message) {
+    final int size = this.connections.size();
+    final int start;
+    if (Selection.HASH_BY_HOST == this.selection) {
+      final String host = message.host();
+      start = null == host ? 0 : (host.hashCode() & Integer.MAX_VALUE) % size;
+    } else {
+      start = (this.next.getAndIncrement() & Integer.MAX_VALUE) % size;
+    }
+    for (int i = 0; i < size; i++) {
+      final Channel channel = this.connections.get((start + i) % size).writableChannel();
+      if (null != channel) {
+        return channel;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Method is used to write a message to a channel of the pool. The message is released once it
+   * has been encoded. When false is returned the message was not written and is still owned by the
+   * caller.
+   *
+   * @param message Message with a type of {@link MessageType#CEF}, {@link MessageType#RFC3164} or
+   *                {@link MessageType#RFC5424}.
+   * @return false if no channel is connected and writable.
+   */
+  public boolean send(Message message) {
+    if (this.closed || this.connections.isEmpty()) {
+      this.rejected.increment();
+      return false;
+    }
+    final Channel channel = select(message);
+    if (null == channel) {
+      log.trace("send() - No writable channel. message = '{}'", message);
+      this.rejected.increment();
+      return false;
+    }
+    channel.writeAndFlush(message, channel.voidPromise());
+    this.sent.increment();
+    return true;
+  }
+
+  /**
+   * @return true if at least one channel of the pool is connected and writable.
+   */
+  public boolean isWritable() {
+    for (Connection connection : this.connections) {
+      if (connection.isWritable()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return Number of channels of the pool that are connected.
+   */
+  public int activeCount() {
+    int result = 0;
+    for (Connection connection : this.connections) {
+      final Channel channel = connection.channel;
+      if (null != channel && channel.isActive()) {
+        result++;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return Number of messages handed to a channel.
+   */
+  public long sentCount() {
+    return this.sent.sum();
+  }
+
+  /**
+   * @return Number of messages {@link #send(Message)} returned false for.
+   */
+  public long rejectedCount() {
+    return this.rejected.sum();
+  }
+
+  /**
+   * Method is used to flush and close every channel, stop reconnecting and shut down the event
+   * loop group if it was created by the forwarder.
+   */
+  @Override
+  public void close() {
+    this.closed = true;
+    for (Connection connection : this.connections) {
+      connection.close();
+    }
+    if (this.ownsGroup) {
+      this.group.shutdownGracefully().awaitUninterruptibly();
+    }
+  }
+
+  /**
+   * One channel of the pool. The channel is replaced when it reconnects, attempts is only used on
+   * the event loop of the connection.
+   */
+  final class Connection {
+    final Bootstrap bootstrap;
+    final InetSocketAddress target;
+    final EventLoop eventLoop;
+    volatile Channel channel;
+    volatile ScheduledFuture<?> reconnect;
+    int attempts;
+
+    Connection(Bootstrap bootstrap, InetSocketAddress target, EventLoop eventLoop) {
+      this.bootstrap = bootstrap;
+      this.target = target;
+      this.eventLoop = eventLoop;
+    }
+
+    boolean isWritable() {
+      return null != writableChannel();
+    }
+
+    /**
+     * @return Channel if it is connected and writable, otherwise null.
+     */
+    Channel writableChannel() {
+      final Channel channel = this.channel;
+      return null != channel && channel.isActive() && channel.isWritable() ? channel : null;
+    }
+
+    void connect() {
+      if (closed) {
+        return;
+      }
+      log.trace("connect() - target = '{}'", this.target);
+      this.bootstrap.clone(this.eventLoop).connect(this.target).addListener((ChannelFuture future) -> {
+        if (!future.isSuccess()) {
+          log.debug("connect() - Could not connect to {}.", this.target, future.cause());
+          scheduleReconnect();
+          return;
+        }
+        final Channel channel = future.channel();
+        if (closed) {
+          channel.close();
+          return;
+        }
+        log.debug("connect() - Connected to {}.", this.target);
+        this.attempts = 0;
+        this.channel = channel;
+        channel.closeFuture().addListener(f -> {
+          this.channel = null;
+          log.debug("connect() - Connection to {} closed.", this.target);
+          scheduleReconnect();
+        });
+      });
+    }
+
+    void scheduleReconnect() {
+      if (closed) {
+        return;
+      }
+      final long delay = reconnectDelay(this.attempts++, minReconnectDelayMillis, maxReconnectDelayMillis, ThreadLocalRandom.current());
+      log.trace("scheduleReconnect() - target = '{}' delay = '{}'", this.target, delay);
+      this.reconnect = this.eventLoop.schedule(this::connect, delay, TimeUnit.MILLISECONDS);
+    }
+
+    void close() {
+      final ScheduledFuture<?> reconnect = this.reconnect;
+      if (null != reconnect) {
+        reconnect.cancel(false);
+      }
+      final Channel channel = this.channel;
+      if (null != channel) {
+        channel.close().awaitUninterruptibly();
+      }
+    }
+  }
+
+  public static final class Builder {
+    final List<InetSocketAddress> targets = new ArrayList<>();
+    Protocol protocol = Protocol.TCP;
+    int connectionsPerTarget = DEFAULT_CONNECTIONS_PER_TARGET;
+    Selection selection = Selection.ROUND_ROBIN;
+    MessageEncoder.Framing framing;
+    DateTimeFormatter dateFormat = DateTimeFormatter.ofPattern("MMM d HH:mm:ss");
+    EventLoopGroup group;
+    int workerThreads = Runtime.getRuntime().availableProcessors();
+    int maxFlushBatch = DEFAULT_MAX_FLUSH_BATCH;
+    int connectTimeoutMillis = DEFAULT_CONNECT_TIMEOUT_MILLIS;
+    long minReconnectDelayMillis = DEFAULT_MIN_RECONNECT_DELAY_MILLIS;
+    long maxReconnectDelayMillis = DEFAULT_MAX_RECONNECT_DELAY_MILLIS;
+    WriteBufferWaterMark writeBufferWaterMark = DEFAULT_WRITE_BUFFER_WATER_MARK;
+    ByteBufAllocator allocator = PooledByteBufAllocator.DEFAULT;
+
+    private Builder() {
+    }
+
+    public Builder target(String host, int port) {
+      return target(new InetSocketAddress(host, port));
+    }
+
+    /**
+     * @param target Collector to send to. Can be called more than once.
+     * @return this
+     */
+    public Builder target(InetSocketAddress target) {
+      this.targets.add(ObjectUtil.checkNotNull(target, "target"));
+      return this;
+    }
+
+    /**
+     * @param protocol Protocol of every channel. Defaults to tcp.
+     * @return this
+     */
+    public Builder protocol(Protocol protocol) {
+      this.protocol = ObjectUtil.checkNotNull(protocol, "protocol");
+      return this;
+    }
+
+    public Builder connectionsPerTarget(int connectionsPerTarget) {
+      this.connectionsPerTarget = ObjectUtil.checkPositive(connectionsPerTarget, "connectionsPerTarget");
+      return this;
+    }
+
+    public Builder selection(Selection selection) {
+      this.selection = ObjectUtil.checkNotNull(selection, "selection");
+      return this;
+    }
+
+    /**
+     * @param framing Framing of the messages. Defaults to octet counting over tcp and none over udp.
+     * @return this
+     */
+    public Builder framing(MessageEncoder.Framing framing) {
+      this.framing = framing;
+      return this;
+    }
+
+    /**
+     * @param dateFormat Format of the date of CEF and rfc 3164 messages.
+     * @return this
+     */
+    public Builder dateFormat(DateTimeFormatter dateFormat) {
+      this.dateFormat = ObjectUtil.checkNotNull(dateFormat, "dateFormat");
+      return this;
+    }
+
+    /**
+     * @param group Group the channels run on. The group is not shut down when the forwarder is
+     *              closed.
+     * @return this
+     */
+    public Builder group(EventLoopGroup group) {
+      this.group = ObjectUtil.checkNotNull(group, "group");
+      return this;
+    }
+
+    public Builder workerThreads(int workerThreads) {
+      this.workerThreads = ObjectUtil.checkPositive(workerThreads, "workerThreads");
+      return this;
+    }
+
+    /**
+     * @param maxFlushBatch Number of flushes merged before the channel is flushed while writes keep
+     *                      arriving.
+     * @return this
+     * @see FlushConsolidationHandler
+     */
+    public Builder maxFlushBatch(int maxFlushBatch) {
+      this.maxFlushBatch = ObjectUtil.checkPositive(maxFlushBatch, "maxFlushBatch");
+      return this;
+    }
+
+    public Builder connectTimeoutMillis(int connectTimeoutMillis) {
+      this.connectTimeoutMillis = ObjectUtil.checkPositive(connectTimeoutMillis, "connectTimeoutMillis");
+      return this;
+    }
+
+    /**
+     * @param min  Delay before the first reconnect attempt.
+     * @param max  Largest delay between reconnect attempts.
+     * @param unit Unit of min and max.
+     * @return this
+     */
+    public Builder reconnectDelay(long min, long max, TimeUnit unit) {
+      ObjectUtil.checkPositive(min, "min");
+      ObjectUtil.checkPositive(max, "max");
+      if (max < min) {
+        throw new IllegalArgumentException("max must be greater than or equal to min.");
+      }
+      this.minReconnectDelayMillis = Math.max(1, unit.toMillis(min));
+      this.maxReconnectDelayMillis = Math.max(this.minReconnectDelayMillis, unit.toMillis(max));
+      return this;
+    }
+
+    public Builder writeBufferWaterMark(WriteBufferWaterMark writeBufferWaterMark) {
+      this.writeBufferWaterMark = ObjectUtil.checkNotNull(writeBufferWaterMark, "writeBufferWaterMark");
+      return this;
+    }
+
+    public Builder allocator(ByteBufAllocator allocator) {
+      this.allocator = ObjectUtil.checkNotNull(allocator, "allocator");
+      return this;
+    }
+
+    public SyslogForwarder build() {
+      if (this.targets.isEmpty()) {
+        throw new IllegalStateException("At least one target must be configured.");
+      }
+      if (null == this.framing) {
+        this.framing = Protocol.TCP == this.protocol ? MessageEncoder.Framing.OCTET_COUNTING : MessageEncoder.Framing.NONE;
+      }
+      return new SyslogForwarder(this);
+    }
+  }
+}
@@ -17,36 +17,142 @@ package com.github.jcustenborder.netty.syslog;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.CorruptedFrameException;
 import io.netty.handler.codec.LineBasedFrameDecoder;
-import io.netty.util.ByteProcessor;
-import io.netty.util.CharsetUtil;
+import io.netty.handler.codec.TooLongFrameException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+/**
+ * Decoder is used to split a tcp stream into syslog messages. Both methods from rfc 6587 are
+ * supported, octet counting where each message is prefixed by its length and non-transparent
+ * framing where each message ends with a line feed. The method is detected from the first frame
+ * and used for the rest of the connection. A stream that starts with a non zero digit followed by
+ * digits and a space is octet counted, anything else is line delimited. Frames are returned as
+ * retained slices of the received bytes.
+ *
+ * <pre>
+ * OCTET-COUNTED-FRAME = MSG-LEN SP SYSLOG-MSG
+ * MSG-LEN             = NONZERO-DIGIT *DIGIT
+ * </pre>
+ */
 public class SyslogFrameDecoder extends LineBasedFrameDecoder {
-  final static ByteProcessor INTEGER = b -> b >= ((byte) 48) && b <= ((byte) 57);
+  private static final Logger log = LoggerFactory.getLogger(SyslogFrameDecoder.class);
+  /**
+   * Length of Integer.MAX_VALUE.
+   */
+  static final int MAX_LENGTH_DIGITS = 10;
+
+  enum Framing {
+    UNKNOWN,
+    OCTET_COUNTING,
+    NON_TRANSPARENT
+  }
+
+  final int maxLength;
+  Framing framing = Framing.UNKNOWN;
+  long bytesToDiscard;
 
   public SyslogFrameDecoder(int maxLength) {
     super(maxLength, true, false);
+    this.maxLength = maxLength;
   }
 
   @Override
-  protected Object decode(ChannelHandlerContext ctx, ByteBuf b) throws Exception {
-    ByteBuf buffer = b.retain();
-    int lengthIndex = buffer.forEachByte(INTEGER);
-    final int digitCount = lengthIndex - buffer.readerIndex();
-    if (digitCount > 0) {
-      buffer.markReaderIndex();
-      final String frameLength = buffer.getCharSequence(buffer.readerIndex(), digitCount, CharsetUtil.UTF_8).toString();
-      buffer.skipBytes(digitCount + 1);
-      int length = Integer.parseInt(frameLength);
-
-      if (b.readerIndex() + length > b.writerIndex()) {
-        buffer.resetReaderIndex();
+  protected Object decode(ChannelHandlerContext ctx, ByteBuf buffer) throws Exception {
+    if (Framing.UNKNOWN == this.framing) {
+      this.framing = detect(buffer);
+      if (Framing.UNKNOWN == this.framing) {
         return null;
       }
-      return buffer.slice(digitCount + 1, length);
-    } else {
-      return super.decode(ctx, buffer);
+      log.trace("decode() - framing = '{}'", this.framing);
     }
+    if (Framing.OCTET_COUNTING == this.framing) {
+      return decodeOctetCounted(ctx, buffer);
+    }
+    return super.decode(ctx, buffer);
   }
-}
 
+  /**
+   * Method is used to determine the framing from the first bytes of the stream.
+   *
+   * @return Framing or UNKNOWN if more bytes are needed.
+   */
+  static Framing detect(ByteBuf buffer) {
+    final int start = buffer.readerIndex();
+    final int end = buffer.writerIndex();
+    if (start == end) {
+      return Framing.UNKNOWN;
+    }
+    final byte first = buffer.getByte(start);
+    if (first < '1' || first > '9') {
+      return Framing.NON_TRANSPARENT;
+    }
+    final int digitsEnd = ParserHelper.skipDigits(buffer, start, end);
+    if (digitsEnd - start > MAX_LENGTH_DIGITS) {
+      return Framing.NON_TRANSPARENT;
+    }
+    if (digitsEnd == end) {
+      return Framing.UNKNOWN;
+    }
+    return buffer.getByte(digitsEnd) == ' ' ? Framing.OCTET_COUNTING : Framing.NON_TRANSPARENT;
+  }
+
+  Object decodeOctetCounted(ChannelHandlerContext ctx, ByteBuf buffer) {
+    if (this.bytesToDiscard > 0) {
+      final int discard = (int) Math.min(this.bytesToDiscard, buffer.readableBytes());
+      buffer.skipBytes(discard);
+      this.bytesToDiscard -= discard;
+      if (this.bytesToDiscard > 0) {
+        return null;
+      }
+    }
+
+    int start = buffer.readerIndex();
+    final int end = buffer.writerIndex();
+    // Some senders terminate octet counted frames with a line feed as well.
+    while (start < end && (buffer.getByte(start) == '\n' || buffer.getByte(start) == '\r')) {
+      start++;
+    }
+    buffer.readerIndex(start);
+
+    long length = 0;
+    int index = start;
+    for (; index < end; index++) {
+      final byte b = buffer.getByte(index);
+      if (b == ' ') {
+        break;
+      }
+      if (!ParserHelper.isDigit(b) || index - start >= MAX_LENGTH_DIGITS) {
+        buffer.skipBytes(buffer.readableBytes());
+        throw new CorruptedFrameException("Invalid MSG-LEN in octet counted frame.");
+      }
+      length = length * 10 + (b - '0');
+    }
+    if (index == end) {
+      return null;
+    }
+    if (index == start || 0 == length) {
+      buffer.skipBytes(buffer.readableBytes());
+      throw new CorruptedFrameException("Invalid MSG-LEN in octet counted frame.");
+    }
+
+    final int frameStart = index + 1;
+    if (length > this.maxLength) {
+      final int discard = (int) Math.min(frameStart - start + length, buffer.readableBytes());
+      this.bytesToDiscard = frameStart - start + length - discard;
+      buffer.skipBytes(discard);
+      ctx.fireExceptionCaught(
+          new TooLongFrameException(
+              String.format("frame length (%s) exceeds the allowed maximum (%s)", length, this.maxLength)
+          )
+      );
+      return null;
+    }
+    if (end - frameStart < length) {
+      return null;
+    }
+    buffer.readerIndex(frameStart + (int) length);
+    return buffer.retainedSlice(frameStart, (int) length);
+  }
+}
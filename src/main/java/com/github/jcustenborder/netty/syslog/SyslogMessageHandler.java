@@ -15,57 +15,396 @@
  */
 package com.github.jcustenborder.netty.syslog;
 
+import io.netty.buffer.ByteBufHolder;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.socket.DatagramChannel;
+import io.netty.util.AttributeKey;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.EventExecutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.LocalDateTime;
 import java.util.Arrays;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Handler is used to parse incoming requests. The format of each request is detected from its first
+ * bytes and the request is sent to the parser for that format. When that parser cannot parse the
+ * request every parser is tried in order. Where the parsing happens is controlled by the
+ * {@link ParseExecution} passed to the constructor, by default requests are parsed inline. When the
+ * format of every request is known up front, for example a port that only receives CEF, it can be
+ * passed as a hint and detection is skipped. When a {@link MemoryBudget} is supplied each request
+ * counts against it until the parsed message was passed along.
+ *
+ * @see MessageTypeDetector
+ * @see ParseExecution
+ * @see MemoryBudget
+ */
 @ChannelHandler.Sharable
 public class SyslogMessageHandler extends SimpleChannelInboundHandler<SyslogRequest> {
   private static final Logger log = LoggerFactory.getLogger(SyslogMessageHandler.class);
+  private static final AttributeKey<ChannelState> STATE = AttributeKey.valueOf(SyslogMessageHandler.class, "state");
   final List<MessageParser> parsers;
+  final Map<MessageType, MessageParser> parsersByType;
+  final LongAdder[] detected;
+  final LongAdder fallback;
+  final ParseExecution execution;
+  final LongAdder queueDepth;
+  final LongAdder rejected;
+  final MessageType format;
+  final MemoryBudget budget;
 
-  public SyslogMessageHandler(List<MessageParser> parsers) {
+  /**
+   * @param parsers   Parsers to try.
+   * @param execution Where the requests are parsed.
+   * @param format    Format of every request, detection is skipped. Null to detect the format
+   *                  of each request.
+   * @param budget    Budget the requests waiting for an offloaded parse count against. Null to
+   *                  not track them.
+   */
+  public SyslogMessageHandler(List<MessageParser> parsers, ParseExecution execution, MessageType format, MemoryBudget budget) {
     this.parsers = parsers;
+    this.execution = execution;
+    this.format = format;
+    this.budget = budget;
+    this.parsersByType = new EnumMap<>(MessageType.class);
+    for (MessageParser parser : parsers) {
+      final MessageType type = parser.type();
+      if (null != type && !this.parsersByType.containsKey(type)) {
+        this.parsersByType.put(type, parser);
+      }
+    }
+    this.detected = new LongAdder[MessageType.values().length];
+    for (int i = 0; i < this.detected.length; i++) {
+      this.detected[i] = new LongAdder();
+    }
+    this.fallback = new LongAdder();
+    this.queueDepth = new LongAdder();
+    this.rejected = new LongAdder();
+  }
+
+  public SyslogMessageHandler(List<MessageParser> parsers, ParseExecution execution, MessageType format) {
+    this(parsers, execution, format, null);
+  }
+
+  public SyslogMessageHandler(List<MessageParser> parsers, ParseExecution execution) {
+    this(parsers, execution, null);
+  }
+
+  public SyslogMessageHandler(List<MessageParser> parsers) {
+    this(parsers, ParseExecution.inline());
+  }
+
+  public SyslogMessageHandler(ParseExecution execution, MessageType format) {
+    this(defaultParsers(), execution, format);
+  }
+
+  public SyslogMessageHandler(ParseExecution execution) {
+    this(execution, null);
   }
 
   public SyslogMessageHandler() {
-    this(
-        Arrays.asList(
-            new CEFMessageParser(),
-            new RFC5424MessageParser(),
-            new RFC3164MessageParser()
-        )
+    this(ParseExecution.inline());
+  }
+
+  static List<MessageParser> defaultParsers() {
+    return Arrays.asList(
+        new CEFMessageParser(),
+        new RFC5424ScanningMessageParser(),
+        new RFC3164ScanningMessageParser()
     );
   }
 
+  /**
+   * Method is used to return the number of requests that were parsed as the supplied type.
+   * {@link MessageType#UNKNOWN} is the number of requests that could not be parsed.
+   *
+   * @param type Type of message.
+   * @return Number of requests.
+   */
+  public long parsedCount(MessageType type) {
+    return this.detected[type.ordinal()].sum();
+  }
+
+  /**
+   * Method is used to return the number of requests where the detected format was wrong or could
+   * not be determined and every parser was tried.
+   *
+   * @return Number of requests.
+   */
+  public long fallbackCount() {
+    return this.fallback.sum();
+  }
+
+  /**
+   * Method is used to return the number of requests that were handed to the executor group and
+   * have not been passed along yet.
+   *
+   * @return Number of requests.
+   */
+  public long queueDepth() {
+    return this.queueDepth.sum();
+  }
+
+  /**
+   * Method is used to return the number of requests that were dropped because the executor group
+   * rejected them.
+   *
+   * @return Number of requests.
+   */
+  public long rejectedCount() {
+    return this.rejected.sum();
+  }
+
+  /**
+   * Method is used to parse a request.
+   *
+   * @param request Incoming syslog request.
+   * @return Parsed message. Null if no parser could parse the request.
+   */
+  Message parse(SyslogRequest request) {
+    final MessageType type;
+    if (null != this.format) {
+      type = this.format;
+    } else if (request instanceof ByteBufHolder) {
+      type = MessageTypeDetector.detect(((ByteBufHolder) request).content());
+    } else {
+      type = MessageTypeDetector.detect(request.rawMessage());
+    }
+    log.trace("parse() - type = '{}'", type);
+    final MessageParser detectedParser = this.parsersByType.get(type);
+
+    if (null != detectedParser) {
+      final Message result = detectedParser.parse(request);
+      if (null != result) {
+        this.detected[result.type().ordinal()].increment();
+        return result;
+      }
+    }
+
+    this.fallback.increment();
+    for (MessageParser parser : parsers) {
+      if (parser == detectedParser) {
+        continue;
+      }
+      final Message result = parser.parse(request);
+      if (null != result) {
+        this.detected[result.type().ordinal()].increment();
+        return result;
+      }
+    }
+    this.detected[MessageType.UNKNOWN.ordinal()].increment();
+    return null;
+  }
+
   @Override
   protected void channelRead0(ChannelHandlerContext context, SyslogRequest request) throws Exception {
     log.trace("channelRead0() - request = '{}'", request);
-    context.executor().submit(() -> {
-      for (MessageParser parser : parsers) {
-        Object result = parser.parse(request);
+    final int size;
+    if (null != this.budget) {
+      size = MemoryBudget.size(request);
+      if (!acquire(context, size)) {
+        log.trace("channelRead0() - Dropping request over the memory budget. request = '{}'", request);
+        return;
+      }
+    } else {
+      size = 0;
+    }
+    switch (this.execution.mode) {
+      case OFFLOAD:
+        offload(context, request, state(context), size);
+        break;
+      case AUTO:
+        final ChannelState state = state(context);
+        state.read++;
+        if (0 == state.inFlight && state.read <= this.execution.threshold) {
+          deliverInline(context, request, size);
+        } else {
+          offload(context, request, state, size);
+        }
+        break;
+      default:
+        deliverInline(context, request, size);
+        break;
+    }
+  }
+
+  void deliverInline(ChannelHandlerContext context, SyslogRequest request, int size) {
+    try {
+      final Message result;
+      try {
+        result = parse(request);
+      } catch (Throwable cause) {
+        failed(context, request, cause);
+        return;
+      }
+      deliver(context, request, result);
+    } finally {
+      release(context, size);
+    }
+  }
 
-        if (null != result) {
-          log.trace("channelRead0() - add result = '{}'", result);
-          context.fireChannelRead(result);
+  /**
+   * @return false if the request is a datagram that must be dropped.
+   */
+  boolean acquire(ChannelHandlerContext context, int size) {
+    if (context.channel() instanceof DatagramChannel) {
+      return this.budget.tryAcquireDatagram(size);
+    }
+    this.budget.acquire(context.channel(), size);
+    return true;
+  }
+
+  void release(ChannelHandlerContext context, int size) {
+    if (null == this.budget) {
+      return;
+    }
+    if (context.channel() instanceof DatagramChannel) {
+      this.budget.releaseDatagram(size);
+    } else {
+      this.budget.release(context.channel(), size);
+    }
+  }
+
+  @Override
+  public void channelInactive(ChannelHandlerContext context) throws Exception {
+    if (null != this.budget) {
+      this.budget.remove(context.channel());
+    }
+    super.channelInactive(context);
+  }
+
+  @Override
+  public void channelReadComplete(ChannelHandlerContext context) throws Exception {
+    if (ParseExecution.Mode.AUTO == this.execution.mode) {
+      state(context).read = 0;
+    }
+    super.channelReadComplete(context);
+  }
+
+  void offload(ChannelHandlerContext context, SyslogRequest request, ChannelState state, int size) {
+    final EventExecutor lane = this.execution.lane(request.remoteAddress());
+    state.inFlight++;
+    this.queueDepth.increment();
+    // channelRead0 releases the request when it returns, keep it until the result is delivered.
+    ReferenceCountUtil.retain(request);
+    try {
+      lane.execute(() -> {
+        final Message result;
+        try {
+          result = parse(request);
+        } catch (Throwable cause) {
+          complete(context, request, state, size, null, cause);
           return;
         }
+        complete(context, request, state, size, result, null);
+      });
+    } catch (RejectedExecutionException ex) {
+      state.inFlight--;
+      this.queueDepth.decrement();
+      this.rejected.increment();
+      log.warn("offload() - Dropping request, executor rejected it. request = '{}'", request);
+      try {
+        unparseable(context, request);
+      } finally {
+        ReferenceCountUtil.release(request);
+        release(context, size);
       }
+    }
+  }
+
+  /**
+   * Method is used to hand the outcome of an offloaded parse back to the event loop. The
+   * bookkeeping and the release of the request always happen, even if the parse failed or the event
+   * loop no longer accepts tasks.
+   */
+  void complete(ChannelHandlerContext context, SyslogRequest request, ChannelState state, int size, Message result, Throwable cause) {
+    try {
+      context.executor().execute(() -> {
+        state.inFlight--;
+        this.queueDepth.decrement();
+        try {
+          if (null != cause) {
+            failed(context, request, cause);
+          } else {
+            deliver(context, request, result);
+          }
+        } finally {
+          ReferenceCountUtil.release(request);
+          release(context, size);
+        }
+      });
+    } catch (RejectedExecutionException ex) {
+      state.inFlight--;
+      this.queueDepth.decrement();
+      this.rejected.increment();
+      // The event loop only rejects tasks once it is shut down, the channel is closed by then and
+      // nothing can be written back.
+      log.warn("complete() - Dropping result, event loop rejected it. request = '{}'", request);
+      ReferenceCountUtil.release(result);
+      ReferenceCountUtil.release(request);
+      release(context, size);
+    }
+  }
+
+  void deliver(ChannelHandlerContext context, SyslogRequest request, Message result) {
+    if (null != result) {
+      log.trace("deliver() - add result = '{}'", result);
+      context.fireChannelRead(result);
+      return;
+    }
+
+    log.warn("decode() - Could not parse message. request = '{}'", request);
+    unparseable(context, request);
+  }
+
+  /**
+   * Method is used to pass along a parser that threw. The request is handled like one that could
+   * not be parsed so handlers that track every request, like {@link RELPServerHandler}, see it.
+   */
+  void failed(ChannelHandlerContext context, SyslogRequest request, Throwable cause) {
+    log.trace("failed() - Parse failed. request = '{}'", request);
+    try {
+      unparseable(context, request);
+    } finally {
+      context.fireExceptionCaught(cause);
+    }
+  }
+
+  /**
+   * Method is used to write a request that was not parsed back to the pipeline.
+   */
+  void unparseable(ChannelHandlerContext context, SyslogRequest request) {
+    Message unparseableMessage = ImmutableSyslogMessage.builder()
+        .type(MessageType.UNKNOWN)
+        .date(LocalDateTime.now())
+        .rawMessage(request.rawMessage())
+        .remoteAddress(request.remoteAddress())
+        .build();
+    context.write(unparseableMessage);
+  }
+
+  static ChannelState state(ChannelHandlerContext context) {
+    ChannelState state = context.channel().attr(STATE).get();
+    if (null == state) {
+      state = new ChannelState();
+      context.channel().attr(STATE).set(state);
+    }
+    return state;
+  }
 
-      log.warn("decode() - Could not parse message. request = '{}'", request);
-      Message unparseableMessage = ImmutableSyslogMessage.builder()
-          .type(MessageType.UNKNOWN)
-          .date(LocalDateTime.now())
-          .rawMessage(request.rawMessage())
-          .remoteAddress(request.remoteAddress())
-          .build();
-      context.write(unparseableMessage);
-    });
+  /**
+   * Per channel bookkeeping. Only read and written on the event loop of the channel.
+   */
+  static final class ChannelState {
+    int read;
+    int inFlight;
   }
 }
@@ -15,13 +15,16 @@
  */
 package com.github.jcustenborder.netty.syslog;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import org.immutables.value.Value;
 
 import java.net.InetAddress;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 
 /**
  * Interface represents an incoming syslog request. This interface acts as an intermediary between
@@ -43,6 +46,17 @@ public interface SyslogRequest {
   @JsonProperty(required = true)
   LocalDateTime receivedDate();
 
+  /**
+   * The time the message was received by Netty. {@link #receivedDate()} is in the default time
+   * zone of the JVM.
+   *
+   * @return The time the message was received by Netty.
+   */
+  @JsonIgnore
+  default Instant receivedInstant() {
+    return receivedDate().atZone(ZoneId.systemDefault()).toInstant();
+  }
+
   /**
    * IP Address for the sender of the message.
    *
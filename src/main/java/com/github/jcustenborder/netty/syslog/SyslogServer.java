@@ -0,0 +1,568 @@
+/**
+ * Copyright © 2018 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.netty.syslog;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.handler.ssl.SslContext;
+import io.netty.util.CharsetUtil;
+import io.netty.util.internal.ObjectUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Server is used to receive syslog messages on one or more tcp and udp ports. The native epoll
+ * transport is used when it is available, otherwise NIO. Each tcp connection gets the pipeline
+ * {@link SyslogFrameDecoder} → {@link TCPSyslogMessageDecoder} → {@link SyslogMessageHandler} →
+ * handler. Tls ports (rfc 5425) put an {@link io.netty.handler.ssl.SslHandler} in front of that, see
+ * {@link SyslogTls}. Relp ports replace the frame and message decoders with
+ * {@link RELPFrameEncoder}, {@link RELPFrameDecoder} and {@link RELPServerHandler}, the handler must
+ * call {@link RELPServerHandler#confirm(ChannelHandlerContext)} for every message it has taken
+ * responsibility for. Udp ports are bound with {@link UDPSyslogListener}.
+ *
+ * <pre>
+ * SyslogServer server = SyslogServer.builder()
+ *     .tcp(514)
+ *     .udp(514)
+ *     .udp(1514, MessageType.CEF)
+ *     .tls(6514, sslContext)
+ *     .relp(2514)
+ *     .handler(handler)
+ *     .build();
+ * server.start();
+ * </pre>
+ */
+public final class SyslogServer implements Closeable {
+  private static final Logger log = LoggerFactory.getLogger(SyslogServer.class);
+  public static final int DEFAULT_MAX_FRAME_LENGTH = 64 * 1024;
+  public static final int DEFAULT_BACKLOG = 1024;
+  public static final int DEFAULT_TCP_RECEIVE_BUFFER_SIZE = 256 * 1024;
+  /**
+   * The server rarely writes, low marks keep a slow client from holding on to memory.
+   */
+  public static final WriteBufferWaterMark DEFAULT_WRITE_BUFFER_WATER_MARK = new WriteBufferWaterMark(8 * 1024, 32 * 1024);
+
+  public enum Protocol {
+    TCP,
+    UDP,
+    RELP
+  }
+
+  static final class Listener {
+    final Protocol protocol;
+    final int port;
+    final MessageType format;
+    final SslContext sslContext;
+
+    Listener(Protocol protocol, int port, MessageType format, SslContext sslContext) {
+      this.protocol = protocol;
+      this.port = port;
+      this.format = format;
+      this.sslContext = sslContext;
+    }
+  }
+
+  final List<Listener> listeners;
+  final InetAddress bindAddress;
+  final EventLoopGroup bossGroup;
+  final EventLoopGroup workerGroup;
+  final boolean ownsGroups;
+  final int udpSockets;
+  final int maxFrameLength;
+  final int maxDatagramSize;
+  final int backlog;
+  final int tcpReceiveBufferSize;
+  final int udpReceiveBufferSize;
+  final WriteBufferWaterMark writeBufferWaterMark;
+  final ByteBufAllocator allocator;
+  final Charset charset;
+  final CodingErrorAction malformedInputAction;
+  final ReceiveClock receiveClock;
+  final boolean pooled;
+  final int relpMaxPending;
+  final TCPSyslogMessageDecoder tcpDecoder;
+  final UDPSyslogMessageDecoder udpDecoder;
+  final Map<MessageType, SyslogMessageHandler> messageHandlers;
+  final ChannelHandler handler;
+  final List<Channel> channels = new ArrayList<>();
+  final List<UDPSyslogListener> udpListeners = new ArrayList<>();
+
+  private SyslogServer(Builder builder) {
+    this.listeners = new ArrayList<>(builder.listeners);
+    this.bindAddress = builder.bindAddress;
+    this.udpSockets = builder.udpSockets;
+    this.maxFrameLength = builder.maxFrameLength;
+    this.maxDatagramSize = builder.maxDatagramSize;
+    this.backlog = builder.backlog;
+    this.tcpReceiveBufferSize = builder.tcpReceiveBufferSize;
+    this.udpReceiveBufferSize = builder.udpReceiveBufferSize;
+    this.writeBufferWaterMark = builder.writeBufferWaterMark;
+    this.allocator = builder.allocator;
+    this.charset = builder.charset;
+    this.malformedInputAction = builder.malformedInputAction;
+    this.receiveClock = builder.receiveClock;
+    this.pooled = builder.pooled;
+    this.relpMaxPending = builder.relpMaxPending;
+    this.tcpDecoder = new TCPSyslogMessageDecoder(builder.charset, builder.malformedInputAction, builder.receiveClock, builder.pooled);
+    this.udpDecoder = new UDPSyslogMessageDecoder(builder.charset, builder.malformedInputAction, builder.receiveClock, builder.pooled);
+    this.handler = builder.handler;
+
+    // One handler per format hint so the ports with the same hint share their counters.
+    this.messageHandlers = new HashMap<>();
+    for (Listener listener : this.listeners) {
+      if (!this.messageHandlers.containsKey(listener.format)) {
+        this.messageHandlers.put(
+            listener.format,
+            new SyslogMessageHandler(builder.parsers, builder.execution, listener.format, builder.memoryBudget)
+        );
+      }
+    }
+
+    if (null == builder.workerGroup) {
+      this.bossGroup = NativeTransport.eventLoopGroup(1);
+      this.workerGroup = NativeTransport.eventLoopGroup(builder.workerThreads);
+      this.ownsGroups = true;
+    } else {
+      this.bossGroup = builder.bossGroup;
+      this.workerGroup = builder.workerGroup;
+      this.ownsGroups = false;
+    }
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Method is used to bind every port.
+   *
+   * @return this
+   * @throws InterruptedException if interrupted while binding.
+   */
+  public SyslogServer start() throws InterruptedException {
+    try {
+      for (Listener listener : this.listeners) {
+        final SyslogMessageHandler messageHandler = this.messageHandlers.get(listener.format);
+        if (Protocol.TCP == listener.protocol) {
+          final InetSocketAddress address = address(listener.port);
+          this.channels.add(tcp(messageHandler, listener.sslContext).bind(address).sync().channel());
+          log.info("start() - Listening on {} {} format = '{}'", null == listener.sslContext ? "tcp" : "tls", address, listener.format);
+        } else if (Protocol.RELP == listener.protocol) {
+          final InetSocketAddress address = address(listener.port);
+          this.channels.add(relp(messageHandler).bind(address).sync().channel());
+          log.info("start() - Listening on relp {} format = '{}'", address, listener.format);
+        } else {
+          this.udpListeners.add(
+              UDPSyslogListener.builder()
+                  .bindAddress(this.bindAddress)
+                  .port(listener.port)
+                  .sockets(this.udpSockets)
+                  .receiveBufferSize(this.udpReceiveBufferSize)
+                  .maxDatagramSize(this.maxDatagramSize)
+                  .allocator(this.allocator)
+                  .group(this.workerGroup)
+                  .decoder(this.udpDecoder)
+                  .messageHandler(messageHandler)
+                  .handler(this.handler)
+                  .build()
+                  .start()
+          );
+        }
+      }
+    } catch (InterruptedException | RuntimeException e) {
+      close();
+      throw e;
+    }
+    return this;
+  }
+
+  InetSocketAddress address(int port) {
+    return null == this.bindAddress ?
+        new InetSocketAddress(port) :
+        new InetSocketAddress(this.bindAddress, port);
+  }
+
+  ServerBootstrap tcp(SyslogMessageHandler messageHandler, SslContext sslContext) {
+    return serverBootstrap()
+        .childHandler(new ChannelInitializer<SocketChannel>() {
+          @Override
+          protected void initChannel(SocketChannel channel) {
+            if (null != sslContext) {
+              channel.pipeline().addLast(sslContext.newHandler(channel.alloc()));
+            }
+            channel.pipeline().addLast(
+                new SyslogFrameDecoder(maxFrameLength),
+                tcpDecoder,
+                messageHandler,
+                handler
+            );
+          }
+        });
+  }
+
+  ServerBootstrap relp(SyslogMessageHandler messageHandler) {
+    return serverBootstrap()
+        .childHandler(new ChannelInitializer<SocketChannel>() {
+          @Override
+          protected void initChannel(SocketChannel channel) {
+            channel.pipeline().addLast(
+                new RELPFrameEncoder(),
+                new RELPFrameDecoder(maxFrameLength),
+                new RELPServerHandler(charset, malformedInputAction, receiveClock, pooled, relpMaxPending),
+                messageHandler,
+                handler
+            );
+          }
+        });
+  }
+
+  ServerBootstrap serverBootstrap() {
+    return new ServerBootstrap()
+        .group(null == this.bossGroup ? this.workerGroup : this.bossGroup, this.workerGroup)
+        .channel(NativeTransport.serverSocketChannel(this.workerGroup))
+        .option(ChannelOption.SO_BACKLOG, this.backlog)
+        .option(ChannelOption.SO_REUSEADDR, true)
+        // Set on the listening socket so the window is in place before the handshake completes.
+        .option(ChannelOption.SO_RCVBUF, this.tcpReceiveBufferSize)
+        .option(ChannelOption.ALLOCATOR, this.allocator)
+        .childOption(ChannelOption.SO_KEEPALIVE, true)
+        .childOption(ChannelOption.ALLOCATOR, this.allocator)
+        .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, this.writeBufferWaterMark);
+  }
+
+  /**
+   * @return Handler that parses the messages for the supplied format hint. Null is the handler for
+   * the ports without a hint.
+   */
+  public SyslogMessageHandler messageHandler(MessageType format) {
+    return this.messageHandlers.get(format);
+  }
+
+  /**
+   * @return Channels of the bound tcp, tls and relp ports.
+   */
+  public List<Channel> tcpChannels() {
+    return Collections.unmodifiableList(this.channels);
+  }
+
+  /**
+   * @return Listeners of the bound udp ports.
+   */
+  public List<UDPSyslogListener> udpListeners() {
+    return Collections.unmodifiableList(this.udpListeners);
+  }
+
+  /**
+   * Method is used to close every port and shut down the event loop groups if they were created
+   * by the server.
+   */
+  @Override
+  public void close() {
+    for (Channel channel : this.channels) {
+      channel.close().awaitUninterruptibly();
+    }
+    this.channels.clear();
+    for (UDPSyslogListener listener : this.udpListeners) {
+      listener.close();
+    }
+    this.udpListeners.clear();
+    if (this.ownsGroups) {
+      this.bossGroup.shutdownGracefully().awaitUninterruptibly();
+      this.workerGroup.shutdownGracefully().awaitUninterruptibly();
+    }
+  }
+
+  public static final class Builder {
+    final List<Listener> listeners = new ArrayList<>();
+    InetAddress bindAddress;
+    EventLoopGroup bossGroup;
+    EventLoopGroup workerGroup;
+    int workerThreads = Runtime.getRuntime().availableProcessors();
+    int udpSockets = Runtime.getRuntime().availableProcessors();
+    int maxFrameLength = DEFAULT_MAX_FRAME_LENGTH;
+    int maxDatagramSize = UDPSyslogListener.DEFAULT_MAX_DATAGRAM_SIZE;
+    int backlog = DEFAULT_BACKLOG;
+    int tcpReceiveBufferSize = DEFAULT_TCP_RECEIVE_BUFFER_SIZE;
+    int udpReceiveBufferSize = UDPSyslogListener.DEFAULT_RECEIVE_BUFFER_SIZE;
+    WriteBufferWaterMark writeBufferWaterMark = DEFAULT_WRITE_BUFFER_WATER_MARK;
+    ByteBufAllocator allocator = PooledByteBufAllocator.DEFAULT;
+    Charset charset = CharsetUtil.UTF_8;
+    CodingErrorAction malformedInputAction = CodingErrorAction.REPLACE;
+    ReceiveClock receiveClock = ReceiveClock.coarse();
+    boolean pooled;
+    int relpMaxPending = RELPServerHandler.DEFAULT_MAX_PENDING;
+    List<MessageParser> parsers;
+    ParseExecution execution = ParseExecution.inline();
+    MemoryBudget memoryBudget;
+    ChannelHandler handler;
+
+    private Builder() {
+    }
+
+    public Builder tcp(int port) {
+      return tcp(port, null);
+    }
+
+    /**
+     * @param port   Port to listen on.
+     * @param format Format of every message sent to the port. Detection is skipped.
+     * @return this
+     */
+    public Builder tcp(int port, MessageType format) {
+      this.listeners.add(new Listener(Protocol.TCP, port, format, null));
+      return this;
+    }
+
+    public Builder tls(int port, SslContext sslContext) {
+      return tls(port, null, sslContext);
+    }
+
+    /**
+     * @param port       Port to listen on. Rfc 5425 uses 6514.
+     * @param format     Format of every message sent to the port. Null to detect the format.
+     * @param sslContext Server context, see {@link SyslogTls#forServer(java.io.File, java.io.File)}.
+     * @return this
+     */
+    public Builder tls(int port, MessageType format, SslContext sslContext) {
+      ObjectUtil.checkNotNull(sslContext, "sslContext");
+      if (sslContext.isClient()) {
+        throw new IllegalArgumentException("sslContext must be a server context.");
+      }
+      this.listeners.add(new Listener(Protocol.TCP, port, format, sslContext));
+      return this;
+    }
+
+    public Builder relp(int port) {
+      return relp(port, null);
+    }
+
+    /**
+     * @param port   Port to listen on.
+     * @param format Format of every message sent to the port. Null to detect the format.
+     * @return this
+     * @see RELPServerHandler
+     */
+    public Builder relp(int port, MessageType format) {
+      this.listeners.add(new Listener(Protocol.RELP, port, format, null));
+      return this;
+    }
+
+    public Builder udp(int port) {
+      return udp(port, null);
+    }
+
+    /**
+     * @param port   Port to listen on.
+     * @param format Format of every message sent to the port. Detection is skipped.
+     * @return this
+     */
+    public Builder udp(int port, MessageType format) {
+      this.listeners.add(new Listener(Protocol.UDP, port, format, null));
+      return this;
+    }
+
+    /**
+     * @param bindAddress Address to bind to. Defaults to the wildcard address.
+     * @return this
+     */
+    public Builder bindAddress(InetAddress bindAddress) {
+      this.bindAddress = bindAddress;
+      return this;
+    }
+
+    /**
+     * @param bossGroup   Group that accepts tcp connections. Null to accept on the worker group.
+     * @param workerGroup Group that reads the connections and udp sockets. The groups are not shut
+     *                    down when the server is closed.
+     * @return this
+     */
+    public Builder group(EventLoopGroup bossGroup, EventLoopGroup workerGroup) {
+      this.bossGroup = bossGroup;
+      this.workerGroup = ObjectUtil.checkNotNull(workerGroup, "workerGroup");
+      return this;
+    }
+
+    /**
+     * @param workerThreads Number of event loops created when no group is supplied. Defaults to
+     *                      the number of processors.
+     * @return this
+     */
+    public Builder workerThreads(int workerThreads) {
+      this.workerThreads = ObjectUtil.checkPositive(workerThreads, "workerThreads");
+      return this;
+    }
+
+    /**
+     * @param udpSockets Number of sockets bound per udp port.
+     * @return this
+     * @see UDPSyslogListener.Builder#sockets(int)
+     */
+    public Builder udpSockets(int udpSockets) {
+      this.udpSockets = ObjectUtil.checkPositive(udpSockets, "udpSockets");
+      return this;
+    }
+
+    /**
+     * @param maxFrameLength Largest tcp frame that is accepted.
+     * @return this
+     */
+    public Builder maxFrameLength(int maxFrameLength) {
+      this.maxFrameLength = ObjectUtil.checkPositive(maxFrameLength, "maxFrameLength");
+      return this;
+    }
+
+    /**
+     * @param maxDatagramSize Largest udp datagram that is accepted.
+     * @return this
+     * @see UDPSyslogListener.Builder#maxDatagramSize(int)
+     */
+    public Builder maxDatagramSize(int maxDatagramSize) {
+      this.maxDatagramSize = ObjectUtil.checkPositive(maxDatagramSize, "maxDatagramSize");
+      return this;
+    }
+
+    /**
+     * @param relpMaxPending Number of unconfirmed messages at which a relp connection stops reading.
+     * @return this
+     */
+    public Builder relpMaxPending(int relpMaxPending) {
+      this.relpMaxPending = ObjectUtil.checkPositive(relpMaxPending, "relpMaxPending");
+      return this;
+    }
+
+    public Builder backlog(int backlog) {
+      this.backlog = ObjectUtil.checkPositive(backlog, "backlog");
+      return this;
+    }
+
+    public Builder tcpReceiveBufferSize(int tcpReceiveBufferSize) {
+      this.tcpReceiveBufferSize = ObjectUtil.checkPositive(tcpReceiveBufferSize, "tcpReceiveBufferSize");
+      return this;
+    }
+
+    public Builder udpReceiveBufferSize(int udpReceiveBufferSize) {
+      this.udpReceiveBufferSize = ObjectUtil.checkPositive(udpReceiveBufferSize, "udpReceiveBufferSize");
+      return this;
+    }
+
+    public Builder writeBufferWaterMark(WriteBufferWaterMark writeBufferWaterMark) {
+      this.writeBufferWaterMark = ObjectUtil.checkNotNull(writeBufferWaterMark, "writeBufferWaterMark");
+      return this;
+    }
+
+    public Builder allocator(ByteBufAllocator allocator) {
+      this.allocator = ObjectUtil.checkNotNull(allocator, "allocator");
+      return this;
+    }
+
+    /**
+     * @param charset              Charset of the messages. Defaults to UTF-8.
+     * @param malformedInputAction What to do with bytes that are not valid in the charset.
+     * @return this
+     */
+    public Builder charset(Charset charset, CodingErrorAction malformedInputAction) {
+      this.charset = ObjectUtil.checkNotNull(charset, "charset");
+      this.malformedInputAction = ObjectUtil.checkNotNull(malformedInputAction, "malformedInputAction");
+      return this;
+    }
+
+    /**
+     * @param receiveClock How the time each message was received is read. Defaults to
+     *                     {@link ReceiveClock#coarse()}.
+     * @return this
+     */
+    public Builder receiveClock(ReceiveClock receiveClock) {
+      this.receiveClock = ObjectUtil.checkNotNull(receiveClock, "receiveClock");
+      return this;
+    }
+
+    /**
+     * @param pooled true to take requests and lazy messages from a pool. Every handler after the
+     *               {@link SyslogMessageHandler} must release the messages and must not use them
+     *               after that.
+     * @return this
+     * @see BufferedSyslogRequest#newInstance(io.netty.buffer.ByteBuf, long, InetAddress, Charset, CodingErrorAction)
+     */
+    public Builder pooled(boolean pooled) {
+      this.pooled = pooled;
+      return this;
+    }
+
+    /**
+     * @param parsers Parsers to use. Defaults to the parsers of {@link SyslogMessageHandler}.
+     * @return this
+     */
+    public Builder parsers(List<MessageParser> parsers) {
+      this.parsers = parsers;
+      return this;
+    }
+
+    public Builder execution(ParseExecution execution) {
+      this.execution = ObjectUtil.checkNotNull(execution, "execution");
+      return this;
+    }
+
+    /**
+     * @param memoryBudget Budget shared by every port. Connections are paused and datagrams dropped
+     *                     when it is used up. Null to not track the requests.
+     * @return this
+     */
+    public Builder memoryBudget(MemoryBudget memoryBudget) {
+      this.memoryBudget = memoryBudget;
+      return this;
+    }
+
+    /**
+     * @param handler Sharable handler that receives the parsed {@link Message}s.
+     * @return this
+     */
+    public Builder handler(ChannelHandler handler) {
+      this.handler = handler;
+      return this;
+    }
+
+    public SyslogServer build() {
+      ObjectUtil.checkNotNull(this.handler, "handler");
+      if (this.listeners.isEmpty()) {
+        throw new IllegalStateException("At least one tcp, tls, relp or udp port must be configured.");
+      }
+      if (null == this.parsers) {
+        this.parsers = SyslogMessageHandler.defaultParsers();
+      }
+      return new SyslogServer(this);
+    }
+  }
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright © 2018 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.netty.syslog;
+
+import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.OpenSslSessionContext;
+import io.netty.handler.ssl.OpenSslSessionTicketKey;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLSessionContext;
+import java.io.File;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+
+/**
+ * Class is used to create the {@link SslContext} for a <a href="https://tools.ietf.org/html/rfc5425">rfc 5425</a>
+ * listener. The OpenSSL engine from netty-tcnative is used when it is on the classpath, otherwise
+ * the JDK engine. The server session cache is enabled so clients that reconnect resume their
+ * session instead of doing a full handshake.
+ *
+ * <pre>
+ * SslContext sslContext = SyslogTls.forServer(certChainFile, keyFile).build();
+ * SyslogTls.sessionTicketKeys(sslContext, keys);
+ * SyslogServer server = SyslogServer.builder()
+ *     .tls(SyslogTls.DEFAULT_PORT, sslContext)
+ *     .handler(handler)
+ *     .build();
+ * </pre>
+ *
+ * @see SyslogServer.Builder#tls(int, SslContext)
+ */
+public final class SyslogTls {
+  private static final Logger log = LoggerFactory.getLogger(SyslogTls.class);
+  public static final int DEFAULT_PORT = 6514;
+  public static final long DEFAULT_SESSION_CACHE_SIZE = 20480;
+  public static final long DEFAULT_SESSION_TIMEOUT_SECONDS = 24 * 60 * 60;
+
+  private SyslogTls() {
+  }
+
+  /**
+   * @return {@link SslProvider#OPENSSL} if netty-tcnative is available, {@link SslProvider#JDK}
+   * otherwise.
+   */
+  public static SslProvider provider() {
+    if (OpenSsl.isAvailable()) {
+      return SslProvider.OPENSSL;
+    }
+    log.debug("provider() - OpenSSL is not available, using JDK.", OpenSsl.unavailabilityCause());
+    return SslProvider.JDK;
+  }
+
+  static SslContextBuilder configure(SslContextBuilder builder) {
+    return builder
+        .sslProvider(provider())
+        .sessionCacheSize(DEFAULT_SESSION_CACHE_SIZE)
+        .sessionTimeout(DEFAULT_SESSION_TIMEOUT_SECONDS);
+  }
+
+  /**
+   * Method is used to create a builder for a server context.
+   *
+   * @param keyCertChainFile PEM file with the certificate chain.
+   * @param keyFile PEM file with the PKCS#8 private key.
+   * @return Builder with the provider and session cache configured.
+   */
+  public static SslContextBuilder forServer(File keyCertChainFile, File keyFile) {
+    return configure(SslContextBuilder.forServer(keyCertChainFile, keyFile));
+  }
+
+  /**
+   * Method is used to create a builder for a server context.
+   *
+   * @param key Private key.
+   * @param keyCertChain Certificate chain.
+   * @return Builder with the provider and session cache configured.
+   */
+  public static SslContextBuilder forServer(PrivateKey key, X509Certificate... keyCertChain) {
+    return configure(SslContextBuilder.forServer(key, keyCertChain));
+  }
+
+  /**
+   * Method is used to set the keys used to encrypt session tickets. A ticket can be resumed by any
+   * server with the same keys, even after a restart, which the session cache can not do. Only the
+   * OpenSSL engine supports tickets on the server side.
+   *
+   * @param sslContext Context returned by the builder.
+   * @param keys Ticket keys. The first key is used to encrypt new tickets.
+   * @return true if the keys were set, false if the engine does not support tickets.
+   */
+  public static boolean sessionTicketKeys(SslContext sslContext, OpenSslSessionTicketKey... keys) {
+    final SSLSessionContext sessionContext = sslContext.sessionContext();
+    if (sessionContext instanceof OpenSslSessionContext) {
+      ((OpenSslSessionContext) sessionContext).setTicketKeys(keys);
+      return true;
+    }
+    log.warn("sessionTicketKeys() - {} does not support session tickets.", sessionContext.getClass().getName());
+    return false;
+  }
+}
@@ -18,19 +18,53 @@ package com.github.jcustenborder.netty.syslog;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.CorruptedFrameException;
 import io.netty.handler.codec.MessageToMessageDecoder;
 
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.nio.charset.Charset;
-import java.time.LocalDateTime;
+import java.nio.charset.CodingErrorAction;
 import java.util.List;
 
+/**
+ * Decoder is used to turn each frame into a {@link BufferedSyslogRequest}. The bytes are passed along
+ * as is, the message is only decoded if {@link SyslogRequest#rawMessage()} is called.
+ */
 @ChannelHandler.Sharable
 public class TCPSyslogMessageDecoder extends MessageToMessageDecoder<ByteBuf> {
   final Charset charset;
+  final CodingErrorAction malformedInputAction;
+  final ReceiveClock receiveClock;
+  final boolean pooled;
 
-  public TCPSyslogMessageDecoder(Charset charset) {
+  /**
+   * @param charset Charset of the messages.
+   * @param malformedInputAction How malformed input is handled. {@link CodingErrorAction#REPORT}
+   *                             drops the message with a {@link CorruptedFrameException},
+   *                             {@link CodingErrorAction#REPLACE} and {@link CodingErrorAction#IGNORE}
+   *                             are applied when the message is decoded.
+   * @param receiveClock How the time each message was received is read.
+   * @param pooled true to take the requests, and the lazy messages parsed from them, from a pool.
+   *               See {@link BufferedSyslogRequest#newInstance(ByteBuf, long, InetAddress, Charset, CodingErrorAction)}.
+   */
+  public TCPSyslogMessageDecoder(Charset charset, CodingErrorAction malformedInputAction, ReceiveClock receiveClock, boolean pooled) {
     this.charset = charset;
+    this.malformedInputAction = malformedInputAction;
+    this.receiveClock = receiveClock;
+    this.pooled = pooled;
+  }
+
+  public TCPSyslogMessageDecoder(Charset charset, CodingErrorAction malformedInputAction, ReceiveClock receiveClock) {
+    this(charset, malformedInputAction, receiveClock, false);
+  }
+
+  public TCPSyslogMessageDecoder(Charset charset, CodingErrorAction malformedInputAction) {
+    this(charset, malformedInputAction, ReceiveClock.coarse());
+  }
+
+  public TCPSyslogMessageDecoder(Charset charset) {
+    this(charset, CodingErrorAction.REPLACE);
   }
 
   public TCPSyslogMessageDecoder() {
@@ -40,14 +74,22 @@ public class TCPSyslogMessageDecoder extends MessageToMessageDecoder<ByteBuf> {
   @Override
   protected void decode(ChannelHandlerContext channelHandlerContext, ByteBuf byteBuf, List<Object> output) throws Exception {
     final InetSocketAddress socketAddress = (InetSocketAddress) channelHandlerContext.channel().remoteAddress();
-    final String rawMessage = byteBuf.toString(this.charset);
+    if (CodingErrorAction.REPORT == this.malformedInputAction &&
+        !BufferedSyslogRequest.isValid(byteBuf, byteBuf.readerIndex(), byteBuf.writerIndex(), this.charset)) {
+      throw new CorruptedFrameException("Message is not valid " + this.charset);
+    }
+    final long receivedNanos = this.receiveClock.epochNanos();
+    final InetAddress remoteAddress = socketAddress.getAddress();
     output.add(
-        ImmutableSyslogRequest.builder()
-            .receivedDate(LocalDateTime.now())
-            .remoteAddress(socketAddress.getAddress())
-            .rawMessage(rawMessage)
-            .build()
+        this.pooled ?
+            BufferedSyslogRequest.newInstance(byteBuf.retain(), receivedNanos, remoteAddress, this.charset, this.malformedInputAction) :
+            new BufferedSyslogRequest(byteBuf.retain(), receivedNanos, remoteAddress, this.charset, this.malformedInputAction)
     );
   }
 
+  @Override
+  public void channelReadComplete(ChannelHandlerContext context) throws Exception {
+    this.receiveClock.readComplete();
+    super.channelReadComplete(context);
+  }
 }
@@ -0,0 +1,381 @@
+/**
+ * Copyright © 2018 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.netty.syslog;
+
+import io.netty.buffer.ByteBuf;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Parser for the two timestamp shapes that make up nearly all syslog traffic, rfc 3339
+ * (2018-02-01T20:28:36.837100+00:00) and the rfc 3164 'MMM d HH:mm:ss' with an optional year after
+ * the day. Digits are read directly and nothing is thrown for input that does not match, null is
+ * returned instead so the caller can fall back to a DateTimeFormatter.
+ *
+ * Each thread keeps a small cache keyed on the bytes of the timestamp up to the second, so a burst
+ * of messages sharing a timestamp only pays for the lookup. The current year used for timestamps
+ * without one is cached as well and refreshed once a second.
+ */
+class TimestampParser {
+  static final int MAX_LENGTH = 64;
+  static final int CACHE_SIZE = 16;
+  static final int MAX_KEY_LENGTH = 32;
+  private static final long YEAR_REFRESH_MILLIS = 1000L;
+  private static final int[] NANOS_PER_DIGIT = {
+      100000000, 10000000, 1000000, 100000, 10000, 1000, 100, 10, 1
+  };
+
+  private final Clock clock;
+  private final ThreadLocal<State> state;
+
+  TimestampParser(Clock clock) {
+    this.clock = clock;
+    this.state = ThreadLocal.withInitial(State::new);
+  }
+
+  static class Entry {
+    final byte[] key = new byte[MAX_KEY_LENGTH];
+    int length = -1;
+    int hash;
+    long epochSecond;
+    LocalDateTime value;
+  }
+
+  static class State {
+    final byte[] scratch = new byte[MAX_LENGTH];
+    final Entry[] entries = new Entry[CACHE_SIZE];
+    long refreshYearAt = Long.MIN_VALUE;
+    int year;
+    int month;
+
+    State() {
+      for (int i = 0; i < entries.length; i++) {
+        entries[i] = new Entry();
+      }
+    }
+
+    void clear() {
+      for (Entry entry : entries) {
+        entry.length = -1;
+      }
+    }
+  }
+
+  /**
+   * Method is used to parse a timestamp located in a buffer.
+   *
+   * @return Parsed timestamp in UTC or null if the timestamp is not in one of the supported shapes.
+   */
+  LocalDateTime parse(ByteBuf buffer, int start, int end) {
+    final int length = end - start;
+    if (length <= 0 || length > MAX_LENGTH) {
+      return null;
+    }
+    final State state = this.state.get();
+    buffer.getBytes(start, state.scratch, 0, length);
+    return parse(state, length);
+  }
+
+  /**
+   * Method is used to parse a timestamp.
+   *
+   * @return Parsed timestamp in UTC or null if the timestamp is not in one of the supported shapes.
+   */
+  LocalDateTime parse(CharSequence text) {
+    final int length = text.length();
+    if (length == 0 || length > MAX_LENGTH) {
+      return null;
+    }
+    final State state = this.state.get();
+    for (int i = 0; i < length; i++) {
+      final char c = text.charAt(i);
+      if (c > 127) {
+        return null;
+      }
+      state.scratch[i] = (byte) c;
+    }
+    return parse(state, length);
+  }
+
+  private LocalDateTime parse(State state, int length) {
+    final byte first = state.scratch[0];
+    if (isDigit(first)) {
+      return parseRFC3339(state, length);
+    } else {
+      return parseRFC3164(state, length);
+    }
+  }
+
+  /**
+   * yyyy-MM-ddTHH:mm:ss[.S{1,9}](Z|+HH:mm|-HH:mm)
+   */
+  private LocalDateTime parseRFC3339(State state, int length) {
+    final byte[] b = state.scratch;
+    if (length < 20 || b[4] != '-' || b[7] != '-' || (b[10] != 'T' && b[10] != 't') || b[13] != ':' || b[16] != ':') {
+      return null;
+    }
+
+    int index = 19;
+    int nanos = 0;
+    if (b[index] == '.') {
+      index++;
+      int digits = 0;
+      while (index < length && isDigit(b[index])) {
+        if (digits == NANOS_PER_DIGIT.length) {
+          return null;
+        }
+        nanos += (b[index] - '0') * NANOS_PER_DIGIT[digits];
+        digits++;
+        index++;
+      }
+      if (digits == 0) {
+        return null;
+      }
+    }
+
+    int offsetSeconds;
+    if (index == length - 1 && (b[index] == 'Z' || b[index] == 'z')) {
+      offsetSeconds = 0;
+    } else if (index == length - 6 && (b[index] == '+' || b[index] == '-') && b[index + 3] == ':') {
+      final int offsetHours = number(b, index + 1, 2);
+      final int offsetMinutes = number(b, index + 4, 2);
+      if (offsetHours < 0 || offsetHours > 18 || offsetMinutes < 0 || offsetMinutes > 59) {
+        return null;
+      }
+      offsetSeconds = offsetHours * 3600 + offsetMinutes * 60;
+      if (b[index] == '-') {
+        offsetSeconds = -offsetSeconds;
+      }
+    } else {
+      return null;
+    }
+
+    Entry entry = lookup(state, 19);
+    if (null == entry.value) {
+      final int year = number(b, 0, 4);
+      final int month = number(b, 5, 2);
+      final int day = number(b, 8, 2);
+      if (!store(entry, year, month, day, number(b, 11, 2), number(b, 14, 2), number(b, 17, 2))) {
+        return null;
+      }
+    }
+
+    if (nanos == 0 && offsetSeconds == 0) {
+      return entry.value;
+    }
+    return LocalDateTime.ofEpochSecond(entry.epochSecond - offsetSeconds, nanos, ZoneOffset.UTC);
+  }
+
+  /**
+   * MMM d[ yyyy] HH:mm:ss with any amount of whitespace between the parts.
+   */
+  private LocalDateTime parseRFC3164(State state, int length) {
+    final byte[] b = state.scratch;
+    if (length < 14 || length > MAX_KEY_LENGTH) {
+      return null;
+    }
+    final int month = month(b[0], b[1], b[2]);
+    if (month < 1) {
+      return null;
+    }
+    int index = whitespace(b, 3, length);
+    if (index < 0) {
+      return null;
+    }
+    final int dayStart = index;
+    while (index < length && isDigit(b[index]) && index - dayStart < 2) {
+      index++;
+    }
+    final int day = number(b, dayStart, index - dayStart);
+    index = whitespace(b, index, length);
+    if (day < 1 || index < 0 || index + 8 > length) {
+      return null;
+    }
+
+    int year = -1;
+    if (b[index + 2] != ':') {
+      year = number(b, index, 4);
+      index = whitespace(b, index + 4, length);
+      if (year < 0 || index < 0 || index + 8 > length) {
+        return null;
+      }
+    }
+    if (index + 8 != length || b[index + 2] != ':' || b[index + 5] != ':') {
+      return null;
+    }
+
+    final Entry entry;
+    if (year < 0) {
+      refreshYear(state);
+      entry = lookup(state, length);
+      if (null == entry.value) {
+        year = state.year;
+        if (month == 12 && state.month == 1) {
+          year--;
+        } else if (month == 1 && state.month == 12) {
+          year++;
+        }
+      }
+    } else {
+      entry = lookup(state, length);
+    }
+    if (null == entry.value &&
+        !store(entry, year, month, day, number(b, index, 2), number(b, index + 3, 2), number(b, index + 6, 2))) {
+      return null;
+    }
+    return entry.value;
+  }
+
+  /**
+   * Method is used to find the entry for the first keyLength bytes of the scratch buffer. On a miss
+   * the entry is claimed for the key and its value is reset to null. keyLength must not exceed
+   * MAX_KEY_LENGTH.
+   */
+  private static Entry lookup(State state, int keyLength) {
+    final byte[] b = state.scratch;
+    int hash = 1;
+    for (int i = 0; i < keyLength; i++) {
+      hash = 31 * hash + b[i];
+    }
+    final Entry entry = state.entries[(hash ^ (hash >>> 16)) & (CACHE_SIZE - 1)];
+    if (entry.length == keyLength && entry.hash == hash) {
+      boolean equal = true;
+      for (int i = 0; i < keyLength; i++) {
+        if (entry.key[i] != b[i]) {
+          equal = false;
+          break;
+        }
+      }
+      if (equal) {
+        return entry;
+      }
+    }
+    System.arraycopy(b, 0, entry.key, 0, keyLength);
+    entry.length = keyLength;
+    entry.hash = hash;
+    entry.value = null;
+    return entry;
+  }
+
+  private static boolean store(Entry entry, int year, int month, int day, int hour, int minute, int second) {
+    if (year < 0 || month < 1 || month > 12 || day < 1 || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+      entry.length = -1;
+      return false;
+    }
+    if (day > 28 && day > LocalDate.of(year, month, 1).lengthOfMonth()) {
+      entry.length = -1;
+      return false;
+    }
+    entry.value = LocalDateTime.of(year, month, day, hour, minute, second);
+    entry.epochSecond = entry.value.toEpochSecond(ZoneOffset.UTC);
+    return true;
+  }
+
+  private void refreshYear(State state) {
+    final long now = this.clock.millis();
+    if (now < state.refreshYearAt) {
+      return;
+    }
+    final LocalDate today = LocalDate.now(this.clock);
+    if (today.getYear() != state.year || today.getMonthValue() != state.month) {
+      // Timestamps without a year were cached with the previous year.
+      state.clear();
+      state.year = today.getYear();
+      state.month = today.getMonthValue();
+    }
+    state.refreshYearAt = now + YEAR_REFRESH_MILLIS;
+  }
+
+  /**
+   * Method is used to return the month for an english three letter abbreviation.
+   *
+   * @return month of the year or -1 if the abbreviation is unknown.
+   */
+  static int month(byte a, byte b, byte c) {
+    switch (a) {
+      case 'J':
+        if (b == 'a' && c == 'n') {
+          return 1;
+        } else if (b == 'u' && c == 'n') {
+          return 6;
+        } else if (b == 'u' && c == 'l') {
+          return 7;
+        }
+        return -1;
+      case 'F':
+        return b == 'e' && c == 'b' ? 2 : -1;
+      case 'M':
+        if (b == 'a' && c == 'r') {
+          return 3;
+        } else if (b == 'a' && c == 'y') {
+          return 5;
+        }
+        return -1;
+      case 'A':
+        if (b == 'p' && c == 'r') {
+          return 4;
+        } else if (b == 'u' && c == 'g') {
+          return 8;
+        }
+        return -1;
+      case 'S':
+        return b == 'e' && c == 'p' ? 9 : -1;
+      case 'O':
+        return b == 'c' && c == 't' ? 10 : -1;
+      case 'N':
+        return b == 'o' && c == 'v' ? 11 : -1;
+      case 'D':
+        return b == 'e' && c == 'c' ? 12 : -1;
+      default:
+        return -1;
+    }
+  }
+
+  private static boolean isDigit(byte b) {
+    return b >= '0' && b <= '9';
+  }
+
+  /**
+   * @return index after at least one whitespace or -1.
+   */
+  private static int whitespace(byte[] b, int index, int length) {
+    final int start = index;
+    while (index < length && ParserHelper.isWhitespace(b[index])) {
+      index++;
+    }
+    return index == start ? -1 : index;
+  }
+
+  /**
+   * @return the value of exactly count digits or -1.
+   */
+  private static int number(byte[] b, int index, int count) {
+    if (count < 1) {
+      return -1;
+    }
+    int result = 0;
+    for (int i = index; i < index + count; i++) {
+      if (!isDigit(b[i])) {
+        return -1;
+      }
+      result = result * 10 + (b[i] - '0');
+    }
+    return result;
+  }
+}
@@ -0,0 +1,299 @@
+/**
+ * Copyright © 2018 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.netty.syslog;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.FixedRecvByteBufAllocator;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.socket.DatagramChannel;
+import io.netty.util.internal.ObjectUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Listener is used to receive syslog messages over udp on more than one socket. With the native
+ * epoll transport one socket is bound to the same port for each event loop with SO_REUSEPORT and
+ * the kernel spreads the senders across the sockets. When the version of Netty supports it the
+ * sockets read a batch of datagrams per system call (recvmmsg) and accept UDP GRO segments. When
+ * epoll is not available a single NIO socket is bound.
+ *
+ * <pre>
+ * UDPSyslogListener listener = UDPSyslogListener.builder()
+ *     .port(514)
+ *     .handler(handler)
+ *     .build();
+ * listener.start();
+ * </pre>
+ */
+public final class UDPSyslogListener implements Closeable {
+  private static final Logger log = LoggerFactory.getLogger(UDPSyslogListener.class);
+  public static final int DEFAULT_MAX_DATAGRAM_SIZE = 2048;
+  public static final int DEFAULT_BATCH_SIZE = 16;
+  public static final int DEFAULT_RECEIVE_BUFFER_SIZE = 4 * 1024 * 1024;
+
+  final InetAddress bindAddress;
+  final int port;
+  final int sockets;
+  final int maxDatagramSize;
+  final int batchSize;
+  final int receiveBufferSize;
+  final ByteBufAllocator allocator;
+  final EventLoopGroup group;
+  final boolean ownsGroup;
+  final UDPSyslogMessageDecoder decoder;
+  final SyslogMessageHandler messageHandler;
+  final ChannelHandler handler;
+  final List<Channel> channels = new ArrayList<>();
+
+  private UDPSyslogListener(Builder builder) {
+    this.bindAddress = builder.bindAddress;
+    this.port = builder.port;
+    this.maxDatagramSize = builder.maxDatagramSize;
+    this.batchSize = builder.batchSize;
+    this.receiveBufferSize = builder.receiveBufferSize;
+    this.allocator = builder.allocator;
+    this.decoder = builder.decoder;
+    this.messageHandler = builder.messageHandler;
+    this.handler = builder.handler;
+    if (null == builder.group) {
+      // Only epoll can bind more than one socket to the port, an nio group needs one thread.
+      this.sockets = NativeTransport.EPOLL ? builder.sockets : 1;
+      this.group = NativeTransport.eventLoopGroup(this.sockets);
+      this.ownsGroup = true;
+    } else {
+      this.group = builder.group;
+      this.ownsGroup = false;
+      this.sockets = this.group instanceof EpollEventLoopGroup ? builder.sockets : 1;
+    }
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Method is used to bind the sockets.
+   *
+   * @return this
+   * @throws InterruptedException if interrupted while binding.
+   */
+  public UDPSyslogListener start() throws InterruptedException {
+    final Bootstrap bootstrap = bootstrap();
+    final InetSocketAddress address = null == this.bindAddress ?
+        new InetSocketAddress(this.port) :
+        new InetSocketAddress(this.bindAddress, this.port);
+    try {
+      for (int i = 0; i < this.sockets; i++) {
+        this.channels.add(bootstrap.bind(address).sync().channel());
+      }
+    } catch (InterruptedException | RuntimeException e) {
+      close();
+      throw e;
+    }
+    log.info("start() - Listening on udp {} with {} socket(s) using {}.", address, this.sockets, bootstrap.config().channelFactory());
+    return this;
+  }
+
+  Bootstrap bootstrap() {
+    final Bootstrap bootstrap = new Bootstrap()
+        .group(this.group)
+        .channel(NativeTransport.datagramChannel(this.group))
+        .option(ChannelOption.SO_RCVBUF, this.receiveBufferSize)
+        .option(ChannelOption.ALLOCATOR, this.allocator)
+        .handler(new ChannelInitializer<DatagramChannel>() {
+          @Override
+          protected void initChannel(DatagramChannel channel) {
+            channel.pipeline().addLast(decoder, messageHandler, handler);
+          }
+        });
+
+    if (this.group instanceof EpollEventLoopGroup) {
+      bootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+      final ChannelOption<Integer> maxDatagramPayloadSize = NativeTransport.option(EpollChannelOption.class, "MAX_DATAGRAM_PAYLOAD_SIZE");
+      final ChannelOption<Boolean> udpGro = NativeTransport.option(EpollChannelOption.class, "UDP_GRO");
+      if (null != maxDatagramPayloadSize) {
+        // recvmmsg splits a buffer of batchSize * maxDatagramSize into one slot per datagram.
+        bootstrap.option(maxDatagramPayloadSize, this.maxDatagramSize);
+        bootstrap.option(ChannelOption.RCVBUF_ALLOCATOR, new FixedRecvByteBufAllocator(this.maxDatagramSize * this.batchSize));
+      } else {
+        log.debug("bootstrap() - recvmmsg is not supported by this version of Netty.");
+        bootstrap.option(ChannelOption.RCVBUF_ALLOCATOR, new FixedRecvByteBufAllocator(this.maxDatagramSize));
+      }
+      if (null != udpGro && null != maxDatagramPayloadSize) {
+        bootstrap.option(udpGro, true);
+      }
+    } else {
+      bootstrap.option(ChannelOption.RCVBUF_ALLOCATOR, new FixedRecvByteBufAllocator(this.maxDatagramSize));
+    }
+    return bootstrap;
+  }
+
+  /**
+   * @return Channels of the bound sockets.
+   */
+  public List<Channel> channels() {
+    return Collections.unmodifiableList(this.channels);
+  }
+
+  /**
+   * Method is used to close the sockets and shut down the event loop group if it was created by
+   * the listener.
+   */
+  @Override
+  public void close() {
+    for (Channel channel : this.channels) {
+      channel.close().awaitUninterruptibly();
+    }
+    this.channels.clear();
+    if (this.ownsGroup) {
+      this.group.shutdownGracefully().awaitUninterruptibly();
+    }
+  }
+
+  public static final class Builder {
+    InetAddress bindAddress;
+    int port = 514;
+    int sockets = Runtime.getRuntime().availableProcessors();
+    int maxDatagramSize = DEFAULT_MAX_DATAGRAM_SIZE;
+    int batchSize = DEFAULT_BATCH_SIZE;
+    int receiveBufferSize = DEFAULT_RECEIVE_BUFFER_SIZE;
+    ByteBufAllocator allocator = PooledByteBufAllocator.DEFAULT;
+    EventLoopGroup group;
+    UDPSyslogMessageDecoder decoder;
+    SyslogMessageHandler messageHandler;
+    ChannelHandler handler;
+
+    private Builder() {
+    }
+
+    /**
+     * @param bindAddress Address to bind to. Defaults to the wildcard address.
+     * @return this
+     */
+    public Builder bindAddress(InetAddress bindAddress) {
+      this.bindAddress = bindAddress;
+      return this;
+    }
+
+    public Builder port(int port) {
+      this.port = port;
+      return this;
+    }
+
+    /**
+     * @param sockets Number of sockets to bind. Defaults to the number of processors. Ignored
+     *                without the native epoll transport.
+     * @return this
+     */
+    public Builder sockets(int sockets) {
+      this.sockets = ObjectUtil.checkPositive(sockets, "sockets");
+      return this;
+    }
+
+    /**
+     * @param maxDatagramSize Largest datagram that is accepted. Defaults to 2048 which every
+     *                        receiver should support according to rfc 5426.
+     * @return this
+     */
+    public Builder maxDatagramSize(int maxDatagramSize) {
+      this.maxDatagramSize = ObjectUtil.checkPositive(maxDatagramSize, "maxDatagramSize");
+      return this;
+    }
+
+    /**
+     * @param batchSize Number of datagrams read per system call when recvmmsg is supported.
+     * @return this
+     */
+    public Builder batchSize(int batchSize) {
+      this.batchSize = ObjectUtil.checkPositive(batchSize, "batchSize");
+      return this;
+    }
+
+    /**
+     * @param receiveBufferSize SO_RCVBUF of each socket. The kernel may limit this with
+     *                          net.core.rmem_max.
+     * @return this
+     */
+    public Builder receiveBufferSize(int receiveBufferSize) {
+      this.receiveBufferSize = ObjectUtil.checkPositive(receiveBufferSize, "receiveBufferSize");
+      return this;
+    }
+
+    /**
+     * @param allocator Allocator for the receive buffers. Defaults to the pooled allocator.
+     * @return this
+     */
+    public Builder allocator(ByteBufAllocator allocator) {
+      this.allocator = ObjectUtil.checkNotNull(allocator, "allocator");
+      return this;
+    }
+
+    /**
+     * @param group Group to run the sockets on. The group is not shut down when the listener is
+     *              closed. By default a group with one event loop per socket is created.
+     * @return this
+     */
+    public Builder group(EventLoopGroup group) {
+      this.group = group;
+      return this;
+    }
+
+    public Builder decoder(UDPSyslogMessageDecoder decoder) {
+      this.decoder = decoder;
+      return this;
+    }
+
+    public Builder messageHandler(SyslogMessageHandler messageHandler) {
+      this.messageHandler = messageHandler;
+      return this;
+    }
+
+    /**
+     * @param handler Sharable handler that receives the parsed {@link Message}s.
+     * @return this
+     */
+    public Builder handler(ChannelHandler handler) {
+      this.handler = handler;
+      return this;
+    }
+
+    public UDPSyslogListener build() {
+      ObjectUtil.checkNotNull(this.handler, "handler");
+      if (null == this.decoder) {
+        this.decoder = new UDPSyslogMessageDecoder();
+      }
+      if (null == this.messageHandler) {
+        this.messageHandler = new SyslogMessageHandler();
+      }
+      return new UDPSyslogListener(this);
+    }
+  }
+}
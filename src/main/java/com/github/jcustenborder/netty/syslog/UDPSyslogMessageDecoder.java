@@ -15,22 +15,56 @@
  */
 package com.github.jcustenborder.netty.syslog;
 
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.socket.DatagramPacket;
+import io.netty.handler.codec.CorruptedFrameException;
 import io.netty.handler.codec.MessageToMessageDecoder;
 
 import java.net.InetAddress;
 import java.nio.charset.Charset;
-import java.time.LocalDateTime;
+import java.nio.charset.CodingErrorAction;
 import java.util.List;
 
+/**
+ * Decoder is used to turn each datagram into a {@link BufferedSyslogRequest}. The bytes are passed along
+ * as is, the message is only decoded if {@link SyslogRequest#rawMessage()} is called.
+ */
 @ChannelHandler.Sharable
 public class UDPSyslogMessageDecoder extends MessageToMessageDecoder<DatagramPacket> {
   final Charset charset;
+  final CodingErrorAction malformedInputAction;
+  final ReceiveClock receiveClock;
+  final boolean pooled;
 
-  public UDPSyslogMessageDecoder(Charset charset) {
+  /**
+   * @param charset Charset of the messages.
+   * @param malformedInputAction How malformed input is handled. {@link CodingErrorAction#REPORT}
+   *                             drops the message with a {@link CorruptedFrameException},
+   *                             {@link CodingErrorAction#REPLACE} and {@link CodingErrorAction#IGNORE}
+   *                             are applied when the message is decoded.
+   * @param receiveClock How the time each message was received is read.
+   * @param pooled true to take the requests, and the lazy messages parsed from them, from a pool.
+   *               See {@link BufferedSyslogRequest#newInstance(ByteBuf, long, InetAddress, Charset, CodingErrorAction)}.
+   */
+  public UDPSyslogMessageDecoder(Charset charset, CodingErrorAction malformedInputAction, ReceiveClock receiveClock, boolean pooled) {
     this.charset = charset;
+    this.malformedInputAction = malformedInputAction;
+    this.receiveClock = receiveClock;
+    this.pooled = pooled;
+  }
+
+  public UDPSyslogMessageDecoder(Charset charset, CodingErrorAction malformedInputAction, ReceiveClock receiveClock) {
+    this(charset, malformedInputAction, receiveClock, false);
+  }
+
+  public UDPSyslogMessageDecoder(Charset charset, CodingErrorAction malformedInputAction) {
+    this(charset, malformedInputAction, ReceiveClock.coarse());
+  }
+
+  public UDPSyslogMessageDecoder(Charset charset) {
+    this(charset, CodingErrorAction.REPLACE);
   }
 
   public UDPSyslogMessageDecoder() {
@@ -39,14 +73,23 @@ public class UDPSyslogMessageDecoder extends MessageToMessageDecoder<DatagramPac
 
   @Override
   protected void decode(ChannelHandlerContext channelHandlerContext, DatagramPacket datagramPacket, List<Object> output) throws Exception {
-    final String rawMessage = datagramPacket.content().toString(this.charset);
-    final InetAddress inetAddress = datagramPacket.sender().getAddress();
+    final ByteBuf content = datagramPacket.content();
+    if (CodingErrorAction.REPORT == this.malformedInputAction &&
+        !BufferedSyslogRequest.isValid(content, content.readerIndex(), content.writerIndex(), this.charset)) {
+      throw new CorruptedFrameException("Message is not valid " + this.charset);
+    }
+    final long receivedNanos = this.receiveClock.epochNanos();
+    final InetAddress remoteAddress = datagramPacket.sender().getAddress();
     output.add(
-        ImmutableSyslogRequest.builder()
-            .receivedDate(LocalDateTime.now())
-            .rawMessage(rawMessage)
-            .remoteAddress(inetAddress)
-            .build()
+        this.pooled ?
+            BufferedSyslogRequest.newInstance(content.retain(), receivedNanos, remoteAddress, this.charset, this.malformedInputAction) :
+            new BufferedSyslogRequest(content.retain(), receivedNanos, remoteAddress, this.charset, this.malformedInputAction)
     );
   }
+
+  @Override
+  public void channelReadComplete(ChannelHandlerContext context) throws Exception {
+    this.receiveClock.readComplete();
+    super.channelReadComplete(context);
+  }
 }
@@ -0,0 +1,208 @@
+/**
+ * Copyright © 2018 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.netty.syslog;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.DecoderException;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.LengthFieldPrepender;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaNormalization;
+import org.apache.avro.file.DataFileStream;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.DecoderFactory;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class AvroMessageCodecTest {
+  static List<Message> messages;
+
+  @BeforeAll
+  public static void corpus() {
+    final SyslogMessageHandler handler = new SyslogMessageHandler();
+    messages = Arrays.asList("cef", "rfc3164", "rfc5424").stream()
+        .map(p -> new File("src/test/resources/com/github/jcustenborder/netty/syslog", p))
+        .flatMap(p -> Arrays.stream(p.listFiles(f -> f.getName().endsWith(".json"))))
+        .map(file -> {
+          try {
+            final TestCase testCase = ObjectMapperFactory.INSTANCE.readValue(file, TestCase.class);
+            return handler.parse(SyslogMessageHandlerTest.request(testCase.input));
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        })
+        .collect(Collectors.toList());
+  }
+
+  static EmbeddedChannel channel() {
+    return new EmbeddedChannel(
+        new LengthFieldBasedFrameDecoder(1024 * 1024, 0, 4, 0, 4),
+        new AvroMessageDecoder(),
+        new LengthFieldPrepender(4),
+        new AvroMessageEncoder()
+    );
+  }
+
+  /**
+   * Method is used to write the object and read what the other end of the connection decodes.
+   */
+  static Object roundTrip(Object value) {
+    final EmbeddedChannel channel = channel();
+    channel.writeOutbound(value);
+    ByteBuf buffer;
+    while (null != (buffer = channel.readOutbound())) {
+      channel.writeInbound(buffer);
+    }
+    final Object result = channel.readInbound();
+    assertNull(channel.readInbound());
+    channel.finishAndReleaseAll();
+    return result;
+  }
+
+  static ByteBuf encode(Object value) {
+    final EmbeddedChannel channel = new EmbeddedChannel(new AvroMessageEncoder());
+    channel.writeOutbound(value);
+    final ByteBuf result = channel.readOutbound();
+    channel.finishAndReleaseAll();
+    return result;
+  }
+
+  @Test
+  public void message() {
+    for (Message message : messages) {
+      assertEquals(message, roundTrip(message));
+    }
+  }
+
+  @Test
+  public void batch() {
+    assertEquals(messages, roundTrip(new ArrayList<>(messages)));
+  }
+
+  @Test
+  public void keys() {
+    final List<SyslogMessageKey> keys = Arrays.asList(
+        ImmutableSyslogMessageKey.builder().remoteAddress("127.0.0.1").host("host").build(),
+        ImmutableSyslogMessageKey.builder().host("host").build()
+    );
+    assertEquals(keys.get(0), roundTrip(keys.get(0)));
+    assertEquals(keys, roundTrip(keys));
+  }
+
+  @Test
+  public void nanos() {
+    final Message message = ImmutableSyslogMessage.builder()
+        .type(MessageType.UNKNOWN)
+        .date(LocalDateTime.of(1969, 12, 31, 23, 59, 59, 123456789))
+        .remoteAddress(InetAddress.getLoopbackAddress())
+        .rawMessage("")
+        .build();
+    final Message actual = (Message) roundTrip(message);
+    assertEquals(LocalDateTime.of(1969, 12, 31, 23, 59, 59, 123456000), actual.date(), "Dates should be truncated to micros.");
+  }
+
+  @Test
+  public void readContainerWithAvro() throws IOException {
+    final ByteBuf buffer = encode(new ArrayList<>(messages));
+    final List<GenericRecord> records = new ArrayList<>();
+    try (DataFileStream<GenericRecord> stream = new DataFileStream<>(new ByteBufInputStream(buffer, true), new GenericDatumReader<>())) {
+      stream.forEach(records::add);
+    }
+    assertEquals(messages.size(), records.size());
+    for (int i = 0; i < records.size(); i++) {
+      final Message message = messages.get(i);
+      final GenericRecord record = records.get(i);
+      assertEquals(message.rawMessage(), record.get("rawMessage").toString());
+      assertEquals(message.type().name(), record.get("type").toString());
+      assertEquals(AvroCodec.micros(message.date()), record.get("date"));
+      assertEquals(message.host(), null == record.get("host") ? null : record.get("host").toString());
+      assertEquals(message.level(), record.get("level"));
+    }
+  }
+
+  @Test
+  public void readSingleObjectWithAvro() throws IOException {
+    final Schema schema = new Schema.Parser().parse(AvroCodec.MESSAGE_SCHEMA);
+    final Message message = messages.get(0);
+    final ByteBuf buffer = encode(message);
+    assertEquals(0xC3, buffer.readUnsignedByte());
+    assertEquals(0x01, buffer.readUnsignedByte());
+    assertEquals(SchemaNormalization.parsingFingerprint64(schema), buffer.readLongLE());
+    final byte[] bytes = new byte[buffer.readableBytes()];
+    buffer.readBytes(bytes);
+    buffer.release();
+    final GenericRecord record = new GenericDatumReader<GenericRecord>(schema).read(null, DecoderFactory.get().binaryDecoder(bytes, null));
+    assertEquals(message.rawMessage(), record.get("rawMessage").toString());
+    assertEquals(ByteBuffer.wrap(message.remoteAddress().getAddress()), record.get("remoteAddress"));
+  }
+
+  @Test
+  public void writtenByAvro() throws IOException {
+    final Schema schema = new Schema.Parser().parse(AvroCodec.KEY_SCHEMA);
+    final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    try (DataFileWriter<GenericRecord> writer = new DataFileWriter<>(new GenericDatumWriter<GenericRecord>(schema))) {
+      writer.create(schema, outputStream);
+      for (int i = 0; i < 3; i++) {
+        final GenericRecord record = new GenericData.Record(schema);
+        record.put("remoteAddress", "10.0.0." + i);
+        record.put("host", "host" + i);
+        writer.append(record);
+        // One block per record.
+        writer.sync();
+      }
+    }
+    final EmbeddedChannel channel = new EmbeddedChannel(new AvroMessageDecoder());
+    channel.writeInbound(Unpooled.wrappedBuffer(outputStream.toByteArray()));
+    final List<?> keys = channel.readInbound();
+    assertEquals(3, keys.size());
+    for (int i = 0; i < 3; i++) {
+      assertEquals(ImmutableSyslogMessageKey.builder().remoteAddress("10.0.0." + i).host("host" + i).build(), keys.get(i));
+    }
+  }
+
+  @Test
+  public void corrupted() {
+    final EmbeddedChannel channel = new EmbeddedChannel(new AvroMessageDecoder());
+    assertThrows(DecoderException.class, () -> channel.writeInbound(Unpooled.wrappedBuffer(new byte[]{'{', '}'})));
+
+    final ByteBuf truncated = encode(messages.get(0));
+    truncated.writerIndex(truncated.writerIndex() - 4);
+    assertThrows(DecoderException.class, () -> channel.writeInbound(truncated));
+  }
+}
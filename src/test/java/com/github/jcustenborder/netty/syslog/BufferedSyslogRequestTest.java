@@ -0,0 +1,178 @@
+/**
+ * Copyright © 2018 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.netty.syslog;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.util.CharsetUtil;
+import io.netty.util.IllegalReferenceCountException;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import org.junit.jupiter.api.Test;
+
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.CodingErrorAction;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+
+import static com.github.jcustenborder.netty.syslog.MessageParserTest.CLOCK;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BufferedSyslogRequestTest {
+  static final String MESSAGE = "<34>Oct 11 22:14:15 mymachine su: 'su root' failed for lonvick on /dev/pts/8";
+  static final InetSocketAddress SENDER = new InetSocketAddress(InetAddress.getLoopbackAddress(), 51400);
+  static final InetSocketAddress RECIPIENT = new InetSocketAddress(InetAddress.getLoopbackAddress(), 514);
+  static final byte[] MALFORMED = {'<', '3', '4', '>', 'a', (byte) 0xC3, 'b'};
+
+  static BufferedSyslogRequest request(ByteBuf content, CodingErrorAction action) {
+    return new BufferedSyslogRequest(content, LocalDateTime.now(), InetAddress.getLoopbackAddress(), CharsetUtil.UTF_8, action);
+  }
+
+  static ByteBuf direct(String text) {
+    final byte[] bytes = text.getBytes(CharsetUtil.UTF_8);
+    return PooledByteBufAllocator.DEFAULT.directBuffer(bytes.length).writeBytes(bytes);
+  }
+
+  static DatagramPacket datagram(ByteBuf content) {
+    return new DatagramPacket(content, RECIPIENT, SENDER);
+  }
+
+  @Test
+  public void rawMessage() {
+    for (String text : Arrays.asList(MESSAGE, "<34>Oct 11 22:14:15 mymachine su: café ☃")) {
+      final BufferedSyslogRequest direct = request(direct(text), CodingErrorAction.REPLACE);
+      assertEquals(text, direct.rawMessage());
+      assertTrue(direct.release());
+      final ByteBuf heap = Unpooled.buffer().writeByte('x');
+      heap.writeCharSequence(text, CharsetUtil.UTF_8);
+      heap.readerIndex(1);
+      final BufferedSyslogRequest request = request(heap, CodingErrorAction.REPLACE);
+      assertEquals(text, request.rawMessage());
+      assertTrue(request.release());
+    }
+  }
+
+  @Test
+  public void malformed() {
+    assertEquals("<34>a�b", request(Unpooled.wrappedBuffer(MALFORMED), CodingErrorAction.REPLACE).rawMessage());
+    assertEquals("<34>ab", request(Unpooled.wrappedBuffer(MALFORMED), CodingErrorAction.IGNORE).rawMessage());
+    assertThrows(UncheckedIOException.class, () -> request(Unpooled.wrappedBuffer(MALFORMED), CodingErrorAction.REPORT).rawMessage());
+
+    final EmbeddedChannel channel = new EmbeddedChannel(new UDPSyslogMessageDecoder(CharsetUtil.UTF_8, CodingErrorAction.REPORT));
+    final ByteBuf content = Unpooled.copiedBuffer(MALFORMED);
+    assertThrows(CorruptedFrameException.class, () -> channel.writeInbound(datagram(content)));
+    assertNull(channel.readInbound());
+    assertEquals(0, content.refCnt());
+  }
+
+  @Test
+  public void receivedDate() {
+    final LocalDateTime date = LocalDateTime.of(2018, 6, 15, 12, 30, 45, 123456789);
+    final BufferedSyslogRequest fromDate = new BufferedSyslogRequest(direct(MESSAGE), date, InetAddress.getLoopbackAddress());
+    assertEquals(date.atZone(ZoneId.systemDefault()).toInstant(), fromDate.receivedInstant());
+
+    final BufferedSyslogRequest fromNanos = new BufferedSyslogRequest(
+        direct(MESSAGE), fromDate.receivedNanos(), InetAddress.getLoopbackAddress(), CharsetUtil.UTF_8, CodingErrorAction.REPLACE
+    );
+    assertEquals(date, fromNanos.receivedDate());
+    assertEquals(date, fromNanos.toSyslogRequest().receivedDate());
+    assertEquals(fromDate.receivedInstant(), fromNanos.toSyslogRequest().receivedInstant());
+    assertTrue(fromDate.release());
+    assertTrue(fromNanos.release());
+  }
+
+  @Test
+  public void pooled() {
+    final ByteBuf first = direct(MESSAGE);
+    final BufferedSyslogRequest request = BufferedSyslogRequest.newInstance(first, 1L, InetAddress.getLoopbackAddress(), CharsetUtil.UTF_8, CodingErrorAction.REPLACE);
+    assertTrue(request.pooled());
+    assertEquals(MESSAGE, request.rawMessage());
+    assertTrue(request.release());
+    assertEquals(0, first.refCnt());
+
+    final ByteBuf second = direct("<34>Oct 11 22:14:16 othermachine su: second");
+    final BufferedSyslogRequest recycled = BufferedSyslogRequest.newInstance(second, 2L, InetAddress.getLoopbackAddress(), CharsetUtil.UTF_8, CodingErrorAction.REPLACE);
+    assertSame(request, recycled, "Request should be taken from the pool.");
+    assertEquals(1, recycled.refCnt());
+    assertEquals(2L, recycled.receivedNanos());
+    assertEquals("<34>Oct 11 22:14:16 othermachine su: second", recycled.rawMessage());
+    assertTrue(recycled.release());
+    assertEquals(0, second.refCnt());
+  }
+
+  @Test
+  public void released() {
+    final BufferedSyslogRequest decoded = request(direct(MESSAGE), CodingErrorAction.REPLACE);
+    assertEquals(MESSAGE, decoded.rawMessage());
+    assertTrue(decoded.release());
+    assertEquals(MESSAGE, decoded.rawMessage(), "Decoded message should be readable after release.");
+
+    final BufferedSyslogRequest request = request(direct(MESSAGE), CodingErrorAction.REPLACE);
+    assertTrue(request.release());
+    assertThrows(IllegalReferenceCountException.class, request::rawMessage);
+  }
+
+  @Test
+  public void pipeline() {
+    final EmbeddedChannel channel = new EmbeddedChannel(new UDPSyslogMessageDecoder(), new SyslogMessageHandler());
+    final ByteBuf content = direct(MESSAGE);
+    channel.writeInbound(datagram(content));
+    final Message message = channel.readInbound();
+    assertEquals(MESSAGE, message.rawMessage());
+    assertEquals(SENDER.getAddress(), message.remoteAddress());
+    assertEquals(0, content.refCnt(), "Request should be released by the handler.");
+  }
+
+  @Test
+  public void lazy() {
+    final EmbeddedChannel channel = new EmbeddedChannel(
+        new UDPSyslogMessageDecoder(),
+        new SyslogMessageHandler(Arrays.asList(new RFC3164ScanningMessageParser(CLOCK, true)))
+    );
+    final ByteBuf content = direct(MESSAGE);
+    channel.writeInbound(datagram(content));
+    final LazyMessage message = channel.readInbound();
+    assertEquals(1, content.refCnt(), "Message should hold the only reference.");
+    assertEquals("mymachine", message.host());
+    assertEquals(MESSAGE, message.rawMessage());
+    assertTrue(message.release());
+    assertEquals(0, content.refCnt());
+  }
+
+  @Test
+  public void offload() {
+    final EmbeddedChannel channel = new EmbeddedChannel(
+        new SyslogMessageHandler(ParseExecution.offload(ImmediateEventExecutor.INSTANCE))
+    );
+    final ByteBuf content = direct(MESSAGE);
+    channel.pipeline().fireChannelRead(request(content, CodingErrorAction.REPLACE));
+    assertEquals(1, content.refCnt(), "Request should be kept until the result is delivered.");
+    channel.runPendingTasks();
+    final Message message = channel.readInbound();
+    assertEquals(MESSAGE, message.rawMessage());
+    assertEquals(0, content.refCnt());
+  }
+}
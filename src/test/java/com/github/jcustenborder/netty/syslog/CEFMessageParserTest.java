@@ -15,19 +15,80 @@
  */
 package com.github.jcustenborder.netty.syslog;
 
+import org.junit.jupiter.api.Test;
+
 import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
+import static com.github.jcustenborder.netty.syslog.SyslogMessageHandlerTest.request;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 public class CEFMessageParserTest extends MessageParserTest<CEFMessageParser> {
 
   @Override
   protected CEFMessageParser createParser() {
-    return new CEFMessageParser();
+    return new CEFMessageParser(CLOCK);
   }
 
   @Override
   protected File testsPath() {
     return new File("src/test/resources/com/github/jcustenborder/netty/syslog/cef");
   }
+
+  Message parse(String header, String extension) {
+    return this.parser.parse(request("Sep 19 08:26:10 host CEF:0|" + header + "|" + extension));
+  }
+
+  static Map<String, String> extension(String... keyValues) {
+    final Map<String, String> result = new LinkedHashMap<>();
+    for (int i = 0; i < keyValues.length; i += 2) {
+      result.put(keyValues[i], keyValues[i + 1]);
+    }
+    return result;
+  }
+
+  @Test
+  public void escapedPipeInHeader() {
+    final Message message = parse("security|threat\\|manager|1.0|100|name|10", "src=10.0.0.1");
+    assertEquals("security", message.deviceVendor());
+    assertEquals("threat|manager", message.deviceProduct());
+    assertEquals("1.0", message.deviceVersion());
+    assertEquals("10", message.severity());
+    assertEquals(extension("src", "10.0.0.1"), message.extension());
+  }
+
+  @Test
+  public void escapedBackslashEndsHeaderField() {
+    final Message message = parse("security\\\\|threatmanager|1.0|100|name|10", "src=10.0.0.1");
+    assertEquals("security\\\\", message.deviceVendor());
+    assertEquals("threatmanager", message.deviceProduct());
+    assertEquals("10", message.severity());
+    assertEquals(extension("src", "10.0.0.1"), message.extension());
+  }
+
+  @Test
+  public void escapesInExtensionValue() {
+    final Message message = parse("security|threatmanager|1.0|100|name|10", "msg=a\\=b\\nc act=blocked");
+    assertEquals(extension("msg", "a\\=b\\nc", "act", "blocked"), message.extension());
+  }
+
+  @Test
+  public void keyAfterEscape() {
+    assertEquals(
+        extension("msg", "a\\\\act=blocked", "dst", "1.1.1.1"),
+        parse("security|threatmanager|1.0|100|name|10", "msg=a\\\\act=blocked dst=1.1.1.1").extension()
+    );
+    assertEquals(
+        extension("msg", "a\\ act=blocked", "dst", "1.1.1.1"),
+        parse("security|threatmanager|1.0|100|name|10", "msg=a\\ act=blocked dst=1.1.1.1").extension()
+    );
+  }
+
+  @Test
+  public void pipesInExtension() {
+    final Message message = parse("security|threatmanager|1.0|100|name|10", "src=10.0.0.1|x act=a|b");
+    assertEquals("10", message.severity());
+    assertEquals(extension("src", "10.0.0.1|x", "act", "a|b"), message.extension());
+  }
 }
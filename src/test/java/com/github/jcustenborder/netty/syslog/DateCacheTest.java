@@ -0,0 +1,56 @@
+/**
+ * Copyright © 2018 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.netty.syslog;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DateCacheTest {
+  static final LocalDateTime DATE = LocalDateTime.of(2018, 10, 11, 22, 14, 15, 3000000);
+
+  static String format(DateCache cache, LocalDateTime date) {
+    return new String(cache.format(date), StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void cachedPerSecond() {
+    final DateCache cache = new DateCache(DateTimeFormatter.ofPattern("MMM d HH:mm:ss"));
+    assertTrue(cache.cacheable);
+    final byte[] first = cache.format(DATE);
+    assertEquals("Oct 11 22:14:15", format(cache, DATE));
+    assertSame(first, cache.format(DATE.withNano(999999999)), "Same second should reuse the bytes.");
+    assertNotSame(first, cache.format(DATE.plusSeconds(1)));
+    assertEquals("Oct 11 22:14:16", format(cache, DATE.plusSeconds(1)));
+    assertEquals("Oct 12 22:14:15", format(cache, DATE.plusDays(1)));
+  }
+
+  @Test
+  public void fractions() {
+    final DateCache cache = new DateCache(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+    assertFalse(cache.cacheable, "Formatters that print fractions should not be cached.");
+    assertEquals("2018-10-11T22:14:15.003", format(cache, DATE));
+    assertEquals("2018-10-11T22:14:15.004", format(cache, DATE.withNano(4000000)));
+  }
+}
@@ -16,9 +16,31 @@
 package com.github.jcustenborder.netty.syslog;
 
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DynamicTest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestFactory;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.DynamicTest.dynamicTest;
 
 public class DateTimeFormatterTest {
   public static class Dummy extends MessageParser {
+    public Dummy() {
+    }
+
+    public Dummy(Clock clock) {
+      super(clock);
+    }
 
     @Override
     public Message parse(SyslogRequest request) {
@@ -30,6 +52,76 @@ public class DateTimeFormatterTest {
 
   @BeforeEach
   public void before() {
-    this.parser = new Dummy();
+    this.parser = new Dummy(MessageParserTest.CLOCK);
+  }
+
+  static Clock clock(String instant) {
+    return Clock.fixed(Instant.parse(instant), ZoneOffset.UTC);
+  }
+
+  @TestFactory
+  public Stream<DynamicTest> fastPath() {
+    final TimestampParser timestampParser = new TimestampParser(MessageParserTest.CLOCK);
+    return Arrays.stream(
+        new String[]{
+            "2018-02-01T20:28:36.837100+00:00",
+            "2018-02-01T20:28:36Z",
+            "2003-10-11T22:14:15.003Z",
+            "2003-08-24T05:14:15.000003-07:00",
+            "2003-08-24T05:14:15.123456789+05:30",
+            "2016-02-29T23:59:59-01:00",
+            "Mar 12 12:00:08",
+            "Sep   19  08:26:10",
+            "Feb 2 09:00:14",
+            "Mar 29 2004 09:54:18",
+        }
+    ).map(input -> dynamicTest(input, () -> {
+      final LocalDateTime actual = timestampParser.parse(input);
+      assertNotNull(actual, "TimestampParser should handle input.");
+      assertEquals(this.parser.parseDateFallback(input), actual);
+      assertEquals(actual, this.parser.parseDate(input));
+    }));
+  }
+
+  @TestFactory
+  public Stream<DynamicTest> fallback() {
+    final TimestampParser timestampParser = new TimestampParser(MessageParserTest.CLOCK);
+    return Arrays.stream(
+        new String[]{
+            "2018-02-01T20:28+00:00",
+            "2018-02-01T20:28:36",
+            "2018-02-30T20:28:36Z",
+            "Foo 12 12:00:08",
+            "Mar 12 12:00:61",
+            "Mar 12 2:00:08",
+            "nonsense",
+        }
+    ).map(input -> dynamicTest(input, () -> {
+      assertNull(timestampParser.parse(input));
+      assertEquals(this.parser.parseDateFallback(input), this.parser.parseDate(input));
+    }));
+  }
+
+  @Test
+  public void cached() {
+    final LocalDateTime expected = this.parser.parseDate("Mar 12 12:00:08");
+    assertSame(expected, this.parser.parseDate("Mar 12 12:00:08"));
+    final LocalDateTime utc = this.parser.parseDate("2018-02-01T20:28:36Z");
+    assertSame(utc, this.parser.parseDate("2018-02-01T20:28:36Z"));
+    assertEquals(LocalDateTime.of(2018, 2, 1, 20, 28, 36, 837100000), this.parser.parseDate("2018-02-01T20:28:36.8371Z"));
+  }
+
+  @Test
+  public void decemberInJanuary() {
+    this.parser = new Dummy(clock("2019-01-01T00:00:05Z"));
+    assertEquals(LocalDateTime.of(2018, 12, 31, 23, 59, 59), this.parser.parseDate("Dec 31 23:59:59"));
+    assertEquals(LocalDateTime.of(2019, 1, 1, 0, 0, 1), this.parser.parseDate("Jan 1 00:00:01"));
+  }
+
+  @Test
+  public void januaryInDecember() {
+    this.parser = new Dummy(clock("2018-12-31T23:59:58Z"));
+    assertEquals(LocalDateTime.of(2019, 1, 1, 0, 0, 1), this.parser.parseDate("Jan 1 00:00:01"));
+    assertEquals(LocalDateTime.of(2018, 12, 31, 23, 59, 58), this.parser.parseDate("Dec 31 23:59:58"));
   }
 }
@@ -0,0 +1,177 @@
+/**
+ * Copyright © 2018 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.netty.syslog;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.CharsetUtil;
+import io.netty.util.IllegalReferenceCountException;
+import io.netty.util.ReferenceCountUtil;
+import org.junit.jupiter.api.DynamicTest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestFactory;
+
+import java.io.File;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import static com.github.jcustenborder.netty.syslog.MessageParserTest.CLOCK;
+import static com.github.jcustenborder.netty.syslog.SyslogMessageHandlerTest.request;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.DynamicTest.dynamicTest;
+
+public class LazyMessageTest {
+
+  static Stream<DynamicTest> compare(String path, MessageParser eager, MessageParser lazy) {
+    final File testsPath = new File("src/test/resources/com/github/jcustenborder/netty/syslog", path);
+    return Arrays.stream(testsPath.listFiles(p -> p.getName().endsWith(".json"))).map(file -> dynamicTest(path + "/" + file.getName(), () -> {
+      final TestCase testCase = ObjectMapperFactory.INSTANCE.readValue(file, TestCase.class);
+      final SyslogRequest request = request(testCase.input);
+      final Message expected = eager.parse(request);
+      final Message actual = lazy.parse(request);
+      assertNotNull(actual, "actual should not be null.");
+      assertTrue(actual instanceof LazyMessage, "actual should be a LazyMessage.");
+      try {
+        assertEquals(expected, ((LazyMessage) actual).toSyslogMessage());
+        assertEquals(
+            ObjectMapperFactory.INSTANCE.writeValueAsString(expected),
+            ObjectMapperFactory.INSTANCE.writeValueAsString(actual)
+        );
+      } finally {
+        ((LazyMessage) actual).release();
+      }
+    }));
+  }
+
+  @TestFactory
+  public Stream<DynamicTest> parse() {
+    return Stream.of(
+        compare("cef", new CEFMessageParser(CLOCK), new CEFMessageParser(CLOCK, true)),
+        compare("rfc3164", new RFC3164ScanningMessageParser(CLOCK), new RFC3164ScanningMessageParser(CLOCK, true)),
+        compare("rfc5424", new RFC5424ScanningMessageParser(CLOCK), new RFC5424ScanningMessageParser(CLOCK, true))
+    ).flatMap(s -> s);
+  }
+
+  @Test
+  public void release() {
+    final RFC5424ScanningMessageParser parser = new RFC5424ScanningMessageParser(CLOCK, true);
+    final LazyMessage message = (LazyMessage) parser.parse(
+        request("<34>1 2003-10-11T22:14:15.003Z mymachine.example.com su - ID47 - BOM'su root' failed")
+    );
+    assertEquals(1, message.refCnt());
+    assertEquals("mymachine.example.com", message.host());
+    assertTrue(message.release());
+    assertEquals("mymachine.example.com", message.host(), "Decoded fields should still be readable.");
+    assertThrows(IllegalReferenceCountException.class, message::appName);
+  }
+
+  @Test
+  public void pipeline() {
+    final SyslogMessageHandler handler = new SyslogMessageHandler(
+        Arrays.asList(new RFC3164ScanningMessageParser(CLOCK, true))
+    );
+    final EmbeddedChannel channel = new EmbeddedChannel(handler);
+    channel.writeInbound(request("<34>Oct 11 22:14:15 mymachine su: 'su root' failed for lonvick on /dev/pts/8"));
+    final LazyMessage message = channel.readInbound();
+    assertEquals("mymachine", message.host());
+    assertEquals("su", message.tag());
+    assertEquals(Integer.valueOf(2), message.level());
+    assertEquals(1, message.refCnt());
+    assertTrue(message.release());
+    channel.finish();
+  }
+
+  @Test
+  public void pooled() {
+    final EmbeddedChannel channel = new EmbeddedChannel(
+        new UDPSyslogMessageDecoder(CharsetUtil.UTF_8, CodingErrorAction.REPLACE, ReceiveClock.coarse(), true),
+        new SyslogMessageHandler(Arrays.asList(new RFC3164ScanningMessageParser(CLOCK, true)))
+    );
+    final ByteBuf first = BufferedSyslogRequestTest.direct("<34>Oct 11 22:14:15 mymachine su: first");
+    channel.writeInbound(BufferedSyslogRequestTest.datagram(first));
+    final LazyMessage message = channel.readInbound();
+    assertEquals("mymachine", message.host());
+    assertEquals("first", message.message());
+    assertTrue(message.release());
+    assertEquals(0, first.refCnt());
+
+    final ByteBuf second = BufferedSyslogRequestTest.direct("<134>Oct 11 22:14:16 othermachine sshd: second");
+    channel.writeInbound(BufferedSyslogRequestTest.datagram(second));
+    final LazyMessage recycled = channel.readInbound();
+    assertSame(message, recycled, "Message should be taken from the pool.");
+    assertEquals(1, recycled.refCnt());
+    assertEquals("othermachine", recycled.host());
+    assertEquals("sshd", recycled.tag());
+    assertEquals("second", recycled.message());
+    assertEquals(Integer.valueOf(16), recycled.facility());
+    assertTrue(recycled.release());
+    assertEquals(0, second.refCnt());
+    channel.finish();
+  }
+
+  @Test
+  public void malformedInput() {
+    final byte[] prefix = "<34>Oct 11 22:14:15 mymachine su: caf".getBytes(CharsetUtil.US_ASCII);
+    final byte[] suffix = " failed".getBytes(CharsetUtil.US_ASCII);
+    for (CodingErrorAction action : Arrays.asList(CodingErrorAction.REPLACE, CodingErrorAction.IGNORE)) {
+      // 0xC3 starts a two byte sequence that is cut short.
+      final BufferedSyslogRequest request = BufferedSyslogRequestTest.request(
+          Unpooled.buffer().writeBytes(prefix).writeByte(0xC3).writeBytes(suffix), action
+      );
+      final Message expected = new RFC3164ScanningMessageParser(CLOCK).parse(request);
+      final LazyMessage actual = (LazyMessage) new RFC3164ScanningMessageParser(CLOCK, true).parse(request);
+      try {
+        assertEquals(request.rawMessage(), expected.rawMessage());
+        assertEquals(expected.rawMessage(), actual.rawMessage(), "rawMessage should be decoded with " + action);
+        assertEquals(expected, actual.toSyslogMessage());
+      } finally {
+        actual.release();
+        request.release();
+      }
+    }
+  }
+
+  @Test
+  public void charset() {
+    for (boolean pooled : Arrays.asList(false, true)) {
+      for (boolean lazy : Arrays.asList(false, true)) {
+        final EmbeddedChannel channel = new EmbeddedChannel(
+            new UDPSyslogMessageDecoder(CharsetUtil.ISO_8859_1, CodingErrorAction.REPLACE, ReceiveClock.coarse(), pooled),
+            new SyslogMessageHandler(Arrays.asList(new RFC3164ScanningMessageParser(CLOCK, lazy)))
+        );
+        final ByteBuf content = Unpooled.wrappedBuffer(
+            "<34>Oct 11 22:14:15 mymachine su: café failed".getBytes(CharsetUtil.ISO_8859_1)
+        );
+        channel.writeInbound(BufferedSyslogRequestTest.datagram(content));
+        final Message message = channel.readInbound();
+        final String description = "pooled = " + pooled + " lazy = " + lazy;
+        assertEquals(lazy, message instanceof LazyMessage, description);
+        assertEquals("mymachine", message.host(), description);
+        assertEquals("café failed", message.message(), description);
+        assertEquals("<34>Oct 11 22:14:15 mymachine su: café failed", message.rawMessage(), description);
+        ReferenceCountUtil.release(message);
+        assertEquals(0, content.refCnt(), description);
+        channel.finish();
+      }
+    }
+  }
+}
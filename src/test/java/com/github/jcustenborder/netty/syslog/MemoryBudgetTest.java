@@ -0,0 +1,112 @@
+/**
+ * Copyright © 2018 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.netty.syslog;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MemoryBudgetTest {
+
+  static MemoryBudget budget(MemoryBudget.DatagramPolicy policy) {
+    return MemoryBudget.builder()
+        .highWatermark(100)
+        .lowWatermark(50)
+        .datagramPolicy(policy)
+        .build();
+  }
+
+  @Test
+  public void pauseHeaviest() {
+    final MemoryBudget budget = budget(MemoryBudget.DatagramPolicy.DROP);
+    final EmbeddedChannel heavy = new EmbeddedChannel();
+    final EmbeddedChannel medium = new EmbeddedChannel();
+    final EmbeddedChannel light = new EmbeddedChannel();
+    budget.acquire(heavy, 60);
+    budget.acquire(medium, 30);
+    assertEquals(0, budget.pausedCount());
+    budget.acquire(light, 20);
+    assertEquals(110L, budget.used());
+    assertEquals(1, budget.pausedCount());
+    assertFalse(heavy.config().isAutoRead(), "Heaviest connection should be paused.");
+    assertTrue(medium.config().isAutoRead());
+    assertTrue(light.config().isAutoRead());
+
+    budget.release(heavy, 60);
+    assertEquals(1, budget.pausedCount(), "Should stay paused until under the low watermark.");
+    budget.release(light, 10);
+    assertEquals(40L, budget.used());
+    assertEquals(0, budget.pausedCount());
+    assertTrue(heavy.config().isAutoRead());
+  }
+
+  @Test
+  public void pauseUntilLowWatermark() {
+    final MemoryBudget budget = budget(MemoryBudget.DatagramPolicy.DROP);
+    final EmbeddedChannel[] channels = new EmbeddedChannel[4];
+    for (int i = 0; i < channels.length; i++) {
+      channels[i] = new EmbeddedChannel();
+      budget.acquire(channels[i], 30);
+    }
+    // 120 in use, the paused connections need to hold 70 to get to the low watermark.
+    assertEquals(3, budget.pausedCount());
+    budget.remove(channels[0]);
+    assertEquals(2, budget.pausedCount());
+  }
+
+  @Test
+  public void datagrams() {
+    final MemoryBudget drop = budget(MemoryBudget.DatagramPolicy.DROP);
+    assertTrue(drop.tryAcquireDatagram(101));
+    assertFalse(drop.tryAcquireDatagram(10));
+    assertEquals(1L, drop.droppedCount());
+    assertEquals(101L, drop.used());
+    drop.releaseDatagram(101);
+    assertTrue(drop.tryAcquireDatagram(10));
+
+    final MemoryBudget accept = budget(MemoryBudget.DatagramPolicy.ACCEPT);
+    assertTrue(accept.tryAcquireDatagram(101));
+    assertTrue(accept.tryAcquireDatagram(10));
+    assertEquals(1L, accept.droppedCount());
+    assertEquals(111L, accept.used());
+  }
+
+  @Test
+  public void messageHandler() {
+    final MemoryBudget budget = budget(MemoryBudget.DatagramPolicy.DROP);
+    final SyslogMessageHandler handler = new SyslogMessageHandler(
+        SyslogMessageHandler.defaultParsers(), ParseExecution.offload(ImmediateEventExecutor.INSTANCE), null, budget
+    );
+    final EmbeddedChannel channel = new EmbeddedChannel(handler);
+    for (int i = 0; i < 5; i++) {
+      channel.pipeline().fireChannelRead(SyslogMessageHandlerTest.numbered(i));
+    }
+    assertTrue(budget.used() > 100L, "Queued requests should count against the budget.");
+    assertFalse(channel.config().isAutoRead());
+    channel.runPendingTasks();
+    SyslogMessageHandlerTest.assertOrdered(channel, 5);
+    assertEquals(0L, budget.used());
+    assertTrue(channel.config().isAutoRead());
+    channel.close();
+    assertEquals(Collections.emptyMap(), budget.channels);
+  }
+}
@@ -0,0 +1,139 @@
+/**
+ * Copyright © 2018 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.netty.syslog;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.nio.charset.CodingErrorAction;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MessageBatchHandlerTest {
+
+  static Message message(String rawMessage) {
+    return ImmutableSyslogMessage.builder()
+        .type(MessageType.RFC3164)
+        .date(LocalDateTime.now())
+        .remoteAddress(InetAddress.getLoopbackAddress())
+        .rawMessage(rawMessage)
+        .build();
+  }
+
+  /**
+   * Method is used to pass messages along without completing the read.
+   */
+  static void read(EmbeddedChannel channel, int count, String rawMessage) {
+    for (int i = 0; i < count; i++) {
+      channel.pipeline().fireChannelRead(message(rawMessage));
+    }
+  }
+
+  static void assertBatch(EmbeddedChannel channel, int size) {
+    final List<Message> batch = channel.readInbound();
+    assertEquals(size, batch.size());
+  }
+
+  @Test
+  public void maxMessages() {
+    final EmbeddedChannel channel = new EmbeddedChannel(new MessageBatchHandler(3, 1024, 0, TimeUnit.MILLISECONDS, MessageBatchHandler.Scope.CHANNEL));
+    read(channel, 7, "message");
+    assertBatch(channel, 3);
+    assertBatch(channel, 3);
+    assertNull(channel.readInbound());
+    channel.pipeline().fireChannelReadComplete();
+    assertBatch(channel, 1);
+    assertFalse(channel.finish());
+  }
+
+  @Test
+  public void maxBytes() {
+    final EmbeddedChannel channel = new EmbeddedChannel(new MessageBatchHandler(100, 20, 0, TimeUnit.MILLISECONDS, MessageBatchHandler.Scope.CHANNEL));
+    read(channel, 5, "0123456789");
+    assertBatch(channel, 2);
+    assertBatch(channel, 2);
+    assertNull(channel.readInbound());
+    channel.close();
+    assertBatch(channel, 1);
+    assertFalse(channel.finish());
+  }
+
+  @Test
+  public void linger() throws InterruptedException {
+    final EmbeddedChannel channel = new EmbeddedChannel(new MessageBatchHandler(100, 1024, 10, TimeUnit.MILLISECONDS, MessageBatchHandler.Scope.CHANNEL));
+    read(channel, 2, "message");
+    channel.runScheduledPendingTasks();
+    assertNull(channel.readInbound(), "Batch should wait for the linger.");
+    Thread.sleep(20);
+    channel.runScheduledPendingTasks();
+    assertBatch(channel, 2);
+    assertFalse(channel.finish());
+  }
+
+  @Test
+  public void eventLoop() {
+    final MessageBatchHandler handler = new MessageBatchHandler(3, 1024, 0, TimeUnit.MILLISECONDS, MessageBatchHandler.Scope.EVENT_LOOP);
+    final EmbeddedChannel first = new EmbeddedChannel(handler);
+    final EmbeddedChannel second = new EmbeddedChannel(handler);
+    // With auto read a completed read asks for the next one, which runs the pending tasks.
+    first.config().setAutoRead(false);
+    second.config().setAutoRead(false);
+    read(first, 2, "first");
+    read(second, 1, "second");
+    assertNull(first.readInbound());
+    final List<Message> full = second.readInbound();
+    assertEquals(3, full.size(), "Full batch should be passed along right away.");
+    assertEquals("first", full.get(0).rawMessage());
+    assertEquals("second", full.get(2).rawMessage());
+
+    read(first, 1, "first");
+    first.pipeline().fireChannelReadComplete();
+    read(second, 1, "second");
+    second.pipeline().fireChannelReadComplete();
+    // readInbound() runs the pending tasks, look at the queues instead.
+    assertTrue(first.inboundMessages().isEmpty(), "Batch should wait for the other channels of the event loop.");
+    assertTrue(second.inboundMessages().isEmpty());
+    first.runPendingTasks();
+    // Passed along on the channel that added the last message.
+    assertNull(first.readInbound());
+    final List<Message> batch = second.readInbound();
+    assertEquals(2, batch.size(), "Reads of both channels should share a batch.");
+    assertEquals("first", batch.get(0).rawMessage());
+    assertEquals("second", batch.get(1).rawMessage());
+    second.runPendingTasks();
+    assertNull(second.readInbound(), "Read complete should only schedule the batch once.");
+    assertFalse(first.finish());
+    assertFalse(second.finish());
+  }
+
+  @Test
+  public void lazyMessageSize() {
+    final BufferedSyslogRequest request = BufferedSyslogRequestTest.request(
+        BufferedSyslogRequestTest.direct("<34>Oct 11 22:14:15 mymachine su: café"), CodingErrorAction.REPLACE
+    );
+    final LazyMessage message = (LazyMessage) new RFC3164ScanningMessageParser(MessageParserTest.CLOCK, true).parse(request);
+    assertEquals(39, MessageBatchHandler.size(message), "Size should be in bytes, not chars.");
+    message.release();
+    request.release();
+  }
+}
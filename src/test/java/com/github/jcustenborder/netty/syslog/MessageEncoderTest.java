@@ -60,7 +60,9 @@ public abstract class MessageEncoderTest {
       assertFalse(output.isEmpty());
       ByteBuf actual = (ByteBuf) output.get(0);
       assertNotNull(actual, "actual should not be null.");
+      assertEquals(actual.capacity(), actual.readableBytes(), "Buffer should be allocated at its final size.");
       String a = actual.toString(Charset.forName("UTF-8")).replaceAll("\\s+", " ");
+      actual.release();
       assertEquals(testCase.input.replaceAll("\\s+", " "), a);
     }));
   }
@@ -23,6 +23,9 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.net.InetAddress;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
 import java.util.Arrays;
 import java.util.stream.Stream;
 
@@ -35,6 +38,10 @@ import static org.mockito.Mockito.when;
 
 public abstract class MessageParserTest<P extends MessageParser> {
   private static final Logger log = LoggerFactory.getLogger(MessageParserTest.class);
+  /**
+   * The test cases without a year in the timestamp were captured in 2018.
+   */
+  protected static final Clock CLOCK = Clock.fixed(Instant.parse("2018-06-15T00:00:00Z"), ZoneOffset.UTC);
 
   protected P parser;
 
@@ -0,0 +1,88 @@
+/**
+ * Copyright © 2018 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.netty.syslog;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.CharsetUtil;
+import org.junit.jupiter.api.DynamicTest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestFactory;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.DynamicTest.dynamicTest;
+
+public class NDJSONMessageEncoderTest {
+  static final ObjectMapper MAPPER = new ObjectMapper()
+      .configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false)
+      .setSerializationInclusion(JsonInclude.Include.NON_NULL)
+      .registerModule(new JavaTimeModule());
+
+  static String encode(EmbeddedChannel channel, Message message) {
+    channel.writeOutbound(message);
+    final ByteBuf buffer = channel.readOutbound();
+    try {
+      return buffer.toString(CharsetUtil.UTF_8);
+    } finally {
+      buffer.release();
+    }
+  }
+
+  static void assertJackson(EmbeddedChannel channel, Message message) throws Exception {
+    assertEquals(MAPPER.writeValueAsString(message) + "\n", encode(channel, message));
+  }
+
+  @TestFactory
+  public Stream<DynamicTest> encode() {
+    final EmbeddedChannel channel = new EmbeddedChannel(new NDJSONMessageEncoder());
+    final SyslogMessageHandler handler = new SyslogMessageHandler();
+    return Stream.of("cef", "rfc3164", "rfc5424")
+        .map(p -> new File("src/test/resources/com/github/jcustenborder/netty/syslog", p))
+        .flatMap(p -> Arrays.stream(p.listFiles(f -> f.getName().endsWith(".json"))))
+        .map(file -> dynamicTest(file.getName(), () -> {
+          final TestCase testCase = ObjectMapperFactory.INSTANCE.readValue(file, TestCase.class);
+          assertJackson(channel, testCase.expected);
+          assertJackson(channel, handler.parse(SyslogMessageHandlerTest.request(testCase.input)));
+        }));
+  }
+
+  @Test
+  public void escaped() throws Exception {
+    final EmbeddedChannel channel = new EmbeddedChannel(new NDJSONMessageEncoder());
+    final Message message = ImmutableSyslogMessage.builder()
+        .type(MessageType.RFC5424)
+        .date(LocalDateTime.of(2018, 6, 15, 12, 30, 45, 100))
+        .remoteAddress(InetAddress.getByAddress(new byte[]{10, 0, 0, 1}))
+        .rawMessage("quote \" slash \\ tab \t line \n\r bell \u0007 unicode é中")
+        .host("h\"ost")
+        .message("é")
+        .putExtension("k\u0001", "v\"")
+        .build();
+    assertJackson(channel, message);
+    // Second time through the cached host and address.
+    assertJackson(channel, message);
+  }
+}
@@ -0,0 +1,169 @@
+/**
+ * Copyright © 2018 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.netty.syslog;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.TooLongFrameException;
+import io.netty.util.CharsetUtil;
+import io.netty.util.ResourceLeakDetector;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class RELPFrameDecoderTest {
+  static ResourceLeakDetector.Level level;
+
+  @BeforeAll
+  public static void paranoid() {
+    level = ResourceLeakDetector.getLevel();
+    ResourceLeakDetector.setLevel(ResourceLeakDetector.Level.PARANOID);
+  }
+
+  @AfterAll
+  public static void restore() {
+    ResourceLeakDetector.setLevel(level);
+  }
+
+  static String frame(int txnr, String command, String data) {
+    final int length = data.getBytes(CharsetUtil.UTF_8).length;
+    return 0 == length ?
+        String.format("%s %s 0\n", txnr, command) :
+        String.format("%s %s %s %s\n", txnr, command, length, data);
+  }
+
+  static String toString(RELPFrame frame) {
+    return frame.txnr() + " " + frame.command() + " " + frame.content().toString(CharsetUtil.UTF_8);
+  }
+
+  /**
+   * Method is used to write the input to the channel in chunks of random size and return the frames
+   * that were decoded. Every chunk must be released once the frames are released.
+   */
+  static List<String> decode(EmbeddedChannel channel, String input, long seed) {
+    final byte[] bytes = input.getBytes(CharsetUtil.UTF_8);
+    final Random random = new Random(seed);
+    final List<ByteBuf> chunks = new ArrayList<>();
+    final List<String> result = new ArrayList<>();
+    int index = 0;
+    while (index < bytes.length) {
+      final int length = Math.min(bytes.length - index, 1 + random.nextInt(16));
+      final ByteBuf chunk = PooledByteBufAllocator.DEFAULT.directBuffer(length).writeBytes(bytes, index, length);
+      chunks.add(chunk);
+      channel.writeInbound(chunk);
+      index += length;
+      RELPFrame frame;
+      while (null != (frame = channel.readInbound())) {
+        result.add(toString(frame));
+        frame.release();
+      }
+    }
+    assertFalse(channel.finish(), "Nothing should be left in the channel.");
+    for (ByteBuf chunk : chunks) {
+      assertEquals(0, chunk.refCnt(), "Every chunk should be released.");
+    }
+    return result;
+  }
+
+  @Test
+  public void decode() {
+    final String input = frame(1, "open", "relp_version=0\nrelp_software=librelp,1.2.14\ncommands=syslog") +
+        frame(2, "syslog", "<34>Oct 11 22:14:15 mymachine su: 'su root' failed\nfor lonvick") +
+        frame(3, "syslog", "<165>1 2003-10-11T22:14:15.003Z mymachine.example.com evntslog - ID47 - café") +
+        frame(999999999, "close", "");
+    final List<String> expected = Arrays.asList(
+        "1 open relp_version=0\nrelp_software=librelp,1.2.14\ncommands=syslog",
+        "2 syslog <34>Oct 11 22:14:15 mymachine su: 'su root' failed\nfor lonvick",
+        "3 syslog <165>1 2003-10-11T22:14:15.003Z mymachine.example.com evntslog - ID47 - café",
+        "999999999 close "
+    );
+    for (long seed = 0; seed < 25; seed++) {
+      assertEquals(expected, decode(new EmbeddedChannel(new RELPFrameDecoder(1024)), input, seed));
+    }
+  }
+
+  @Test
+  public void command() {
+    final ByteBuf input = Unpooled.copiedBuffer("1 syslog 0\n2 starttls 0\n", CharsetUtil.US_ASCII);
+    final RELPFrameDecoder decoder = new RELPFrameDecoder();
+    final RELPFrame syslog = decoder.decode(input);
+    assertSame(RELPFrame.SYSLOG, syslog.command());
+    syslog.release();
+    final RELPFrame unknown = decoder.decode(input);
+    assertEquals("starttls", unknown.command());
+    unknown.release();
+    assertNull(decoder.decode(input));
+    input.release();
+  }
+
+  @Test
+  public void encode() {
+    final EmbeddedChannel channel = new EmbeddedChannel(new RELPFrameEncoder());
+    channel.writeOutbound(
+        new RELPFrame(7, RELPFrame.RSP, Unpooled.copiedBuffer("200 OK", CharsetUtil.US_ASCII)),
+        new RELPFrame(0, RELPFrame.SERVERCLOSE, Unpooled.EMPTY_BUFFER)
+    );
+    final List<String> actual = new ArrayList<>();
+    ByteBuf output;
+    while (null != (output = channel.readOutbound())) {
+      actual.add(output.toString(CharsetUtil.UTF_8));
+      output.release();
+    }
+    assertEquals(Arrays.asList("7 rsp 6 200 OK\n", "0 serverclose 0\n"), actual);
+    assertFalse(channel.finish());
+  }
+
+  @Test
+  public void tooLong() {
+    final EmbeddedChannel channel = new EmbeddedChannel(new RELPFrameDecoder(32));
+    final ByteBuf input = PooledByteBufAllocator.DEFAULT.buffer();
+    input.writeCharSequence(frame(1, "syslog", "first") + "2 syslog 40 ", CharsetUtil.UTF_8);
+    assertThrows(TooLongFrameException.class, () -> channel.writeInbound(input));
+    final RELPFrame first = channel.readInbound();
+    assertEquals("1 syslog first", toString(first));
+    first.release();
+    assertNull(channel.readInbound());
+    assertFalse(channel.finish());
+    assertEquals(0, input.refCnt());
+  }
+
+  @Test
+  public void corrupted() {
+    for (String input : Arrays.asList("x syslog 1 a\n", "1234567890 syslog 1 a\n", "1 sys-log 1 a\n", "1 syslog 1x a\n", "1 syslog 1 ab\n", "1 syslog 1\n")) {
+      final EmbeddedChannel channel = new EmbeddedChannel(new RELPFrameDecoder(1024));
+      final ByteBuf buffer = PooledByteBufAllocator.DEFAULT.buffer();
+      buffer.writeCharSequence(input, CharsetUtil.UTF_8);
+      assertThrows(CorruptedFrameException.class, () -> channel.writeInbound(buffer), input);
+      assertNull(channel.readInbound());
+      assertFalse(channel.finish());
+      assertEquals(0, buffer.refCnt());
+    }
+  }
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright © 2018 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.netty.syslog;
+
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.github.jcustenborder.netty.syslog.RELPFrameDecoderTest.frame;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RELPIT {
+  static final int PORT = 20007;
+
+  @ChannelHandler.Sharable
+  static class ConfirmingMessageHandler extends UDPSyslogListenerIT.ConcurrentMessageHandler {
+    @Override
+    protected void channelRead0(ChannelHandlerContext context, Message message) throws Exception {
+      super.channelRead0(context, message);
+      assertTrue(RELPServerHandler.confirm(context));
+    }
+  }
+
+  @Test
+  public void roundtrip() throws Exception {
+    final int count = 500;
+    final ConfirmingMessageHandler handler = new ConfirmingMessageHandler();
+    final InetAddress loopback = InetAddress.getLoopbackAddress();
+    try (SyslogServer server = SyslogServer.builder()
+        .bindAddress(loopback)
+        .relp(PORT)
+        .relpMaxPending(64)
+        .workerThreads(1)
+        .handler(handler)
+        .build()
+        .start()) {
+
+      try (Socket socket = new Socket(loopback, PORT)) {
+        final OutputStream outputStream = socket.getOutputStream();
+        final StringBuilder frames = new StringBuilder();
+        frames.append(frame(1, RELPFrame.OPEN, "relp_version=0\nrelp_software=test\ncommands=syslog"));
+        // The whole window is sent before any response is read.
+        for (int i = 0; i < count; i++) {
+          frames.append(frame(i + 2, RELPFrame.SYSLOG, String.format("<14>Jun 15 00:00:00 host app: message %s", i)));
+        }
+        frames.append(frame(count + 2, RELPFrame.CLOSE, ""));
+        outputStream.write(frames.toString().getBytes(StandardCharsets.UTF_8));
+        outputStream.flush();
+
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        // The open response spans four lines.
+        assertEquals("1 rsp " + RELPServerHandler.OPEN_RESPONSE.length() + " 200 OK", reader.readLine());
+        for (int i = 0; i < 3; i++) {
+          reader.readLine();
+        }
+        final List<String> acks = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+          acks.add(reader.readLine());
+        }
+        for (int i = 0; i < count; i++) {
+          assertEquals(String.format("%s rsp 6 200 OK", i + 2), acks.get(i));
+        }
+        assertEquals(String.format("%s rsp 0", count + 2), reader.readLine());
+        assertNull(reader.readLine(), "Server should close the session.");
+      }
+      assertEquals(count, handler.messages.size());
+      assertEquals(count, server.messageHandler(null).parsedCount(MessageType.RFC3164));
+    }
+  }
+}
@@ -0,0 +1,305 @@
+/**
+ * Copyright © 2018 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.netty.syslog;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.CharsetUtil;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.github.jcustenborder.netty.syslog.RELPFrameDecoderTest.frame;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RELPServerHandlerTest {
+  static final String OPEN = frame(1, RELPFrame.OPEN, "relp_version=0\nrelp_software=test\ncommands=syslog");
+
+  /**
+   * Holds on to the messages until the test confirms them.
+   */
+  static class HoldingHandler extends ChannelInboundHandlerAdapter {
+    final List<Message> messages = new ArrayList<>();
+    ChannelHandlerContext context;
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext context) {
+      this.context = context;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext context, Object msg) {
+      this.messages.add((Message) msg);
+    }
+
+    void confirm(int count) {
+      for (int i = 0; i < count; i++) {
+        assertTrue(RELPServerHandler.confirm(this.context));
+      }
+    }
+  }
+
+  static class RemoteChannel extends EmbeddedChannel {
+    RemoteChannel(ChannelHandler... handlers) {
+      super(handlers);
+    }
+
+    @Override
+    protected SocketAddress remoteAddress0() {
+      return new InetSocketAddress(InetAddress.getLoopbackAddress(), 12345);
+    }
+  }
+
+  RELPServerHandler relp;
+  HoldingHandler handler;
+  EmbeddedChannel channel;
+  int flushes;
+
+  @BeforeEach
+  public void setup() {
+    this.relp = new RELPServerHandler(CharsetUtil.UTF_8, CodingErrorAction.REPLACE, ReceiveClock.exact(), false, 4);
+    this.handler = new HoldingHandler();
+    this.channel = new RemoteChannel(
+        new ChannelOutboundHandlerAdapter() {
+          @Override
+          public void flush(ChannelHandlerContext context) throws Exception {
+            flushes++;
+            super.flush(context);
+          }
+        },
+        new RELPFrameEncoder(),
+        new RELPFrameDecoder(),
+        this.relp,
+        new SyslogMessageHandler(),
+        this.handler
+    );
+  }
+
+  void write(String... frames) {
+    this.channel.writeInbound(Unpooled.copiedBuffer(String.join("", frames), CharsetUtil.UTF_8));
+  }
+
+  /**
+   * @return Each flush that reached the socket.
+   */
+  List<String> flushed() {
+    this.channel.runPendingTasks();
+    final List<String> result = new ArrayList<>();
+    ByteBuf output;
+    while (null != (output = this.channel.readOutbound())) {
+      result.add(output.toString(CharsetUtil.UTF_8));
+      output.release();
+    }
+    return result;
+  }
+
+  static String syslog(int txnr) {
+    return frame(txnr, RELPFrame.SYSLOG, String.format("<34>Oct 11 22:14:15 mymachine su: message %s", txnr));
+  }
+
+  @Test
+  public void open() {
+    write(OPEN);
+    assertEquals(
+        Collections.singletonList(frame(1, RELPFrame.RSP, RELPServerHandler.OPEN_RESPONSE)),
+        flushed()
+    );
+  }
+
+  @Test
+  public void acknowledgeAfterConfirm() {
+    write(OPEN, syslog(2), syslog(3), syslog(4));
+    flushed();
+    assertEquals(3, this.handler.messages.size());
+    assertEquals("message 2", this.handler.messages.get(0).message());
+    assertEquals(InetAddress.getLoopbackAddress(), this.handler.messages.get(0).remoteAddress());
+    assertEquals(3, this.relp.pendingCount());
+    assertEquals(Collections.emptyList(), flushed(), "Nothing is acknowledged before it is confirmed.");
+
+    final int flushes = this.flushes;
+    this.handler.confirm(2);
+    assertEquals(1, this.relp.pendingCount());
+    assertEquals(
+        Arrays.asList(frame(2, RELPFrame.RSP, "200 OK"), frame(3, RELPFrame.RSP, "200 OK")),
+        flushed()
+    );
+    assertEquals(flushes + 1, this.flushes, "Acknowledgements are flushed together.");
+  }
+
+  @Test
+  public void confirmDuringRead() {
+    final EmbeddedChannel channel = new RemoteChannel(
+        new RELPFrameEncoder(),
+        new RELPFrameDecoder(),
+        new RELPServerHandler(),
+        new SyslogMessageHandler(),
+        new ChannelInboundHandlerAdapter() {
+          @Override
+          public void channelRead(ChannelHandlerContext context, Object msg) {
+            ReferenceCountUtil.release(msg);
+            RELPServerHandler.confirm(context);
+          }
+        }
+    );
+    channel.writeInbound(Unpooled.copiedBuffer(syslog(1) + syslog(2) + syslog(3), CharsetUtil.UTF_8));
+    final List<String> expected = Arrays.asList(
+        frame(1, RELPFrame.RSP, "200 OK"),
+        frame(2, RELPFrame.RSP, "200 OK"),
+        frame(3, RELPFrame.RSP, "200 OK")
+    );
+    final List<String> actual = new ArrayList<>();
+    ByteBuf output;
+    while (null != (output = channel.readOutbound())) {
+      actual.add(output.toString(CharsetUtil.UTF_8));
+      output.release();
+    }
+    assertEquals(expected, actual);
+  }
+
+  @Test
+  public void unparseable() {
+    write(frame(1, RELPFrame.SYSLOG, "<foo"));
+    assertEquals(0, this.handler.messages.size());
+    assertEquals(0, this.relp.pendingCount());
+    assertEquals(Collections.singletonList(frame(1, RELPFrame.RSP, "200 OK")), flushed());
+  }
+
+  @Test
+  public void unsupported() {
+    write(frame(1, "starttls", ""));
+    assertEquals(Collections.singletonList(frame(1, RELPFrame.RSP, "500 unsupported command starttls")), flushed());
+  }
+
+  @Test
+  public void backpressure() {
+    write(syslog(1), syslog(2), syslog(3), syslog(4));
+    assertFalse(this.channel.config().isAutoRead(), "Reading should stop at maxPending.");
+    this.handler.confirm(1);
+    assertFalse(this.channel.config().isAutoRead());
+    this.handler.confirm(1);
+    assertTrue(this.channel.config().isAutoRead(), "Reading should resume at half of maxPending.");
+    assertEquals(2, flushed().size());
+  }
+
+  /**
+   * Parser that throws for every request, like a parser with a bug.
+   */
+  static class ThrowingParser extends MessageParser {
+    @Override
+    public Message parse(SyslogRequest request) {
+      throw new IllegalStateException("parse failed");
+    }
+  }
+
+  void parseFailure(ParseExecution execution) {
+    final List<Throwable> errors = new ArrayList<>();
+    this.channel.pipeline().replace(SyslogMessageHandler.class, null, new SyslogMessageHandler(
+        Collections.singletonList(new ThrowingParser()), execution
+    ));
+    this.channel.pipeline().addLast(new ChannelInboundHandlerAdapter() {
+      @Override
+      public void exceptionCaught(ChannelHandlerContext context, Throwable cause) {
+        errors.add(cause);
+      }
+    });
+    write(syslog(1), syslog(2), syslog(3), syslog(4), syslog(5));
+    final StringBuilder expected = new StringBuilder();
+    for (int txnr = 1; txnr <= 5; txnr++) {
+      expected.append(frame(txnr, RELPFrame.RSP, "200 OK"));
+    }
+    assertEquals(expected.toString(), String.join("", flushed()), "Every message should be acknowledged.");
+    assertEquals(0, this.relp.pendingCount());
+    assertTrue(this.channel.config().isAutoRead());
+    assertEquals(5, errors.size());
+    assertTrue(this.handler.messages.isEmpty());
+  }
+
+  @Test
+  public void parseFailureInline() {
+    parseFailure(ParseExecution.inline());
+  }
+
+  @Test
+  public void parseFailureOffload() {
+    parseFailure(ParseExecution.offload(ImmediateEventExecutor.INSTANCE));
+  }
+
+  @Test
+  public void backpressureWithBudget() {
+    final MemoryBudget budget = MemoryBudgetTest.budget(MemoryBudget.DatagramPolicy.DROP);
+    budget.acquire(this.channel, 110);
+    assertFalse(this.channel.config().isAutoRead(), "Budget should pause reads.");
+    write(syslog(1), syslog(2), syslog(3), syslog(4));
+    budget.release(this.channel, 110);
+    assertEquals(0, budget.pausedCount());
+    assertFalse(this.channel.config().isAutoRead(), "Budget should not resume reads paused at maxPending.");
+    this.handler.confirm(2);
+    assertTrue(this.channel.config().isAutoRead());
+
+    write(syslog(5), syslog(6));
+    assertFalse(this.channel.config().isAutoRead());
+    budget.acquire(this.channel, 110);
+    this.handler.confirm(2);
+    assertFalse(this.channel.config().isAutoRead(), "Confirming should not resume reads paused by the budget.");
+    budget.release(this.channel, 110);
+    assertTrue(this.channel.config().isAutoRead());
+  }
+
+  @Test
+  public void close() {
+    write(syslog(1), syslog(2), frame(3, RELPFrame.CLOSE, ""));
+    assertTrue(this.channel.isOpen(), "Close waits for the pending messages.");
+    this.handler.confirm(2);
+    assertEquals(
+        Arrays.asList(frame(1, RELPFrame.RSP, "200 OK"), frame(2, RELPFrame.RSP, "200 OK"), frame(3, RELPFrame.RSP, "")),
+        flushed()
+    );
+    assertFalse(this.channel.isOpen());
+  }
+
+  @Test
+  public void serverClose() {
+    write(OPEN);
+    flushed();
+    this.channel.close();
+    assertEquals(Collections.singletonList(frame(0, RELPFrame.SERVERCLOSE, "")), flushed());
+  }
+
+  @Test
+  public void corrupted() {
+    write(OPEN);
+    flushed();
+    write("x syslog 1 a\n");
+    assertFalse(this.channel.isOpen());
+  }
+}
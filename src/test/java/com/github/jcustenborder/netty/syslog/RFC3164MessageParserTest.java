@@ -26,7 +26,7 @@ public class RFC3164MessageParserTest extends MessageParserTest<RFC3164MessagePa
 
   @Override
   protected RFC3164MessageParser createParser() {
-    return new RFC3164MessageParser();
+    return new RFC3164MessageParser(CLOCK);
   }
 
   @Override
@@ -0,0 +1,81 @@
+/**
+ * Copyright © 2018 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.netty.syslog;
+
+import org.junit.jupiter.api.DynamicTest;
+import org.junit.jupiter.api.TestFactory;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.DynamicTest.dynamicTest;
+
+public class RFC3164ScanningMessageParserTest extends MessageParserTest<RFC3164ScanningMessageParser> {
+  static final int PATHOLOGICAL_LENGTH = 1024 * 1024;
+
+  @Override
+  protected RFC3164ScanningMessageParser createParser() {
+    return new RFC3164ScanningMessageParser(CLOCK);
+  }
+
+  @Override
+  protected File testsPath() {
+    return new File("src/test/resources/com/github/jcustenborder/netty/syslog/rfc3164");
+  }
+
+  static String repeat(String input, int length) {
+    final StringBuilder builder = new StringBuilder(length + input.length());
+    while (builder.length() < length) {
+      builder.append(input);
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Inputs that cause the regular expression in RFC3164MessageParser to backtrack. Each one is
+   * roughly a megabyte and must be parsed well within the timeout.
+   */
+  @TestFactory
+  public Stream<DynamicTest> pathological() {
+    return Arrays.stream(
+        new String[]{
+            "Mar 12 12:00:08 server2 " + repeat("a:", PATHOLOGICAL_LENGTH) + "\nx",
+            "Mar 12 12:00:08 server2 " + repeat("a[1]:", PATHOLOGICAL_LENGTH) + "\nx",
+            "Mar 12 12:00:08 server2 " + repeat(":", PATHOLOGICAL_LENGTH),
+            "Mar 12 12:00:08 server2 " + repeat("a", PATHOLOGICAL_LENGTH) + "[",
+            "Mar 12 12:00:08 server2 tag[" + repeat("1", PATHOLOGICAL_LENGTH) + "] x",
+            "Mar 12 12:00:08 server2 " + repeat(" ", PATHOLOGICAL_LENGTH),
+            "Mar 12 12:00:08 " + repeat("server2", PATHOLOGICAL_LENGTH),
+            "Mar" + repeat(" 12", PATHOLOGICAL_LENGTH),
+            "<" + repeat("1", PATHOLOGICAL_LENGTH),
+            repeat("1:", PATHOLOGICAL_LENGTH),
+            repeat("[", PATHOLOGICAL_LENGTH),
+        }
+    ).map(input -> dynamicTest(String.format("%s...(%s)", input.substring(0, 30), input.length()), () -> {
+      final SyslogRequest request = ImmutableSyslogRequest.builder()
+          .receivedDate(LocalDateTime.now())
+          .remoteAddress(InetAddress.getLoopbackAddress())
+          .rawMessage(input)
+          .build();
+      assertTimeoutPreemptively(Duration.ofSeconds(2), () -> this.parser.parse(request));
+    }));
+  }
+}
@@ -20,7 +20,7 @@ import java.io.File;
 public class RFC5424MessageParserTest extends MessageParserTest<RFC5424MessageParser> {
   @Override
   protected RFC5424MessageParser createParser() {
-    return new RFC5424MessageParser();
+    return new RFC5424MessageParser(CLOCK);
   }
 
 
@@ -0,0 +1,99 @@
+/**
+ * Copyright © 2018 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.netty.syslog;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.CharsetUtil;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.CodingErrorAction;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static com.github.jcustenborder.netty.syslog.BufferedSyslogRequestTest.datagram;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ReceiveClockTest {
+  static class TickingClock extends Clock {
+    long millis = 1529020800000L;
+
+    @Override
+    public ZoneId getZone() {
+      return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public long millis() {
+      return this.millis++;
+    }
+
+    @Override
+    public Instant instant() {
+      return Instant.ofEpochMilli(millis());
+    }
+  }
+
+  @Test
+  public void exact() {
+    final ReceiveClock clock = ReceiveClock.exact(new TickingClock());
+    assertEquals(1529020800000000000L, clock.epochNanos());
+    assertEquals(1529020800001000000L, clock.epochNanos());
+  }
+
+  @Test
+  public void coarse() {
+    final ReceiveClock clock = ReceiveClock.coarse(new TickingClock());
+    assertEquals(1529020800000000000L, clock.epochNanos());
+    assertEquals(1529020800000000000L, clock.epochNanos(), "Time should be cached until the read completes.");
+    clock.readComplete();
+    assertEquals(1529020800001000000L, clock.epochNanos());
+  }
+
+  @Test
+  public void maxUses() {
+    final ReceiveClock clock = ReceiveClock.coarse(new TickingClock());
+    for (int i = 0; i < ReceiveClock.MAX_USES; i++) {
+      assertEquals(1529020800000000000L, clock.epochNanos());
+    }
+    assertEquals(1529020800001000000L, clock.epochNanos());
+  }
+
+  @Test
+  public void decoder() {
+    final ReceiveClock clock = ReceiveClock.coarse(new TickingClock());
+    final EmbeddedChannel channel = new EmbeddedChannel(new UDPSyslogMessageDecoder(CharsetUtil.UTF_8, CodingErrorAction.REPLACE, clock));
+    channel.pipeline().fireChannelRead(datagram(Unpooled.copiedBuffer("a", CharsetUtil.UTF_8)));
+    channel.pipeline().fireChannelRead(datagram(Unpooled.copiedBuffer("b", CharsetUtil.UTF_8)));
+    channel.pipeline().fireChannelReadComplete();
+    channel.pipeline().fireChannelRead(datagram(Unpooled.copiedBuffer("c", CharsetUtil.UTF_8)));
+
+    final long[] expected = {1529020800000000000L, 1529020800000000000L, 1529020800001000000L};
+    for (long nanos : expected) {
+      final BufferedSyslogRequest request = channel.readInbound();
+      assertEquals(nanos, request.receivedNanos());
+      assertEquals(Instant.ofEpochSecond(0L, nanos), request.receivedInstant());
+      request.release();
+    }
+  }
+}
@@ -0,0 +1,104 @@
+/**
+ * Copyright © 2018 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.netty.syslog;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.CharsetUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static com.github.jcustenborder.netty.syslog.MessageParserTest.CLOCK;
+import static com.github.jcustenborder.netty.syslog.SyslogMessageHandlerTest.request;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class StringCacheTest {
+  StringCache cache;
+
+  @BeforeEach
+  public void setup() {
+    this.cache = new StringCache(16);
+  }
+
+  static ByteBuf buffer(String text) {
+    return Unpooled.wrappedBuffer(text.getBytes(CharsetUtil.UTF_8));
+  }
+
+  @Test
+  public void hit() {
+    final String first = this.cache.get(buffer("host01 message"), 0, 6);
+    final String second = this.cache.get(buffer("xhost01"), 1, 7);
+    assertEquals("host01", first);
+    assertSame(first, second);
+    assertSame(first, this.cache.get("host01", 0, 6), "Characters and bytes should share entries.");
+    assertEquals(2L, this.cache.hits());
+    assertEquals(1L, this.cache.misses());
+    assertEquals(0L, this.cache.evictions());
+  }
+
+  @Test
+  public void eviction() {
+    for (int i = 0; i < 64; i++) {
+      final String host = String.format("host%02d", i);
+      assertEquals(host, this.cache.get(buffer(host), 0, host.length()));
+    }
+    assertEquals(0L, this.cache.hits());
+    assertEquals(64L, this.cache.misses());
+    assertEquals(64L - 16L, this.cache.evictions(), "Only 16 slots are available.");
+  }
+
+  @Test
+  public void notCached() {
+    final String text = "café";
+    final ByteBuf buffer = buffer(text);
+    assertEquals(text, this.cache.get(buffer, 0, buffer.writerIndex()));
+    assertEquals(text, this.cache.get(text, 0, text.length()));
+
+    final StringBuilder builder = new StringBuilder("x");
+    for (int i = 0; i <= StringCache.MAX_LENGTH; i++) {
+      builder.append('a');
+    }
+    final String longText = builder.toString();
+    assertNotSame(this.cache.get(longText, 1, longText.length()), this.cache.get(longText, 1, longText.length()));
+    assertEquals(0L, this.cache.hits());
+    assertEquals(0L, this.cache.misses());
+  }
+
+  @Test
+  public void parsers() {
+    final String host = "cachetest.example.com";
+    final MessageParser[] parsers = {
+        new RFC3164MessageParser(CLOCK),
+        new RFC3164ScanningMessageParser(CLOCK),
+        new RFC5424MessageParser(CLOCK),
+        new RFC5424ScanningMessageParser(CLOCK),
+        new CEFMessageParser(CLOCK)
+    };
+    final String[] inputs = {
+        "<34>Oct 11 22:14:15 " + host + " su: 'su root' failed for lonvick on /dev/pts/8",
+        "<34>Oct 11 22:14:15 " + host + " su: 'su root' failed for lonvick on /dev/pts/8",
+        "<34>1 2003-10-11T22:14:15.003Z " + host + " su - ID47 - BOM'su root' failed",
+        "<34>1 2003-10-11T22:14:15.003Z " + host + " su - ID47 - BOM'su root' failed",
+        "<134>Oct 11 22:14:15 " + host + " CEF:0|Security|threatmanager|1.0|100|worm successfully stopped|10|src=10.0.0.1"
+    };
+    final String expected = parsers[0].parse(request(inputs[0])).host();
+    for (int i = 1; i < parsers.length; i++) {
+      assertSame(expected, parsers[i].parse(request(inputs[i])).host(), parsers[i].getClass().getSimpleName());
+    }
+  }
+}
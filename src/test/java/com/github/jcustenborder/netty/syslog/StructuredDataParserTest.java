@@ -0,0 +1,97 @@
+/**
+ * Copyright © 2018 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.netty.syslog;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.CharsetUtil;
+import org.junit.jupiter.api.DynamicTest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestFactory;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static com.github.jcustenborder.netty.syslog.MessageParserTest.CLOCK;
+import static com.github.jcustenborder.netty.syslog.SyslogMessageHandlerTest.request;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.DynamicTest.dynamicTest;
+
+public class StructuredDataParserTest {
+
+  static Message.StructuredData element(String id, String... keyValues) {
+    final Map<String, String> elements = new LinkedHashMap<>();
+    for (int i = 0; i < keyValues.length; i += 2) {
+      elements.put(keyValues[i], keyValues[i + 1]);
+    }
+    return ImmutableStructuredData.of(id, elements);
+  }
+
+  static List<Message.StructuredData> parse(String input) {
+    final ByteBuf buffer = Unpooled.wrappedBuffer(input.getBytes(CharsetUtil.UTF_8));
+    return StructuredDataParser.parse(buffer, 0, buffer.writerIndex(), StringCache.shared());
+  }
+
+  @TestFactory
+  public Stream<DynamicTest> parse() {
+    return Stream.of(
+        dynamicTest("nil", () -> assertEquals(Collections.emptyList(), parse("-"))),
+        dynamicTest("id only", () -> assertEquals(Arrays.asList(element("exampleSDID@32473")), parse("[exampleSDID@32473]"))),
+        dynamicTest("multiple elements", () -> assertEquals(
+            Arrays.asList(
+                element("exampleSDID@32473", "iut", "3", "eventSource", "Application", "eventID", "1011"),
+                element("examplePriority@32473", "class", "high")
+            ),
+            parse("[exampleSDID@32473 iut=\"3\" eventSource=\"Application\" eventID=\"1011\"][examplePriority@32473 class=\"high\"]")
+        )),
+        dynamicTest("empty value", () -> assertEquals(Arrays.asList(element("a", "b", "", "c", "d")), parse("[a b=\"\" c=\"d\"]"))),
+        dynamicTest("escaped quote", () -> assertEquals(Arrays.asList(element("a", "b", "say \"hi\"")), parse("[a b=\"say \\\"hi\\\"\"]"))),
+        dynamicTest("escaped bracket", () -> assertEquals(Arrays.asList(element("a", "b", "x]y")), parse("[a b=\"x\\]y\"]"))),
+        dynamicTest("escaped backslash", () -> assertEquals(Arrays.asList(element("a", "b", "c:\\")), parse("[a b=\"c:\\\\\"]"))),
+        dynamicTest("other backslash", () -> assertEquals(Arrays.asList(element("a", "b", "c:\\tmp")), parse("[a b=\"c:\\tmp\"]"))),
+        dynamicTest("utf-8", () -> assertEquals(Arrays.asList(element("a", "b", "caf\u00e9")), parse("[a b=\"caf\u00e9\"]"))),
+        dynamicTest("unterminated", () -> assertNull(parse("[a b=\"c\""))),
+        dynamicTest("unquoted value", () -> assertNull(parse("[a b=c]"))),
+        dynamicTest("trailing space", () -> assertNull(parse("[a b=\"c\" ]"))),
+        dynamicTest("missing element", () -> assertNull(parse("[a] [b]"))),
+        dynamicTest("name too long", () -> assertNull(parse("[aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa]")))
+    );
+  }
+
+  @Test
+  public void skip() {
+    final RFC5424ScanningMessageParser parser = new RFC5424ScanningMessageParser(CLOCK, false, false);
+    final Message message = parser.parse(
+        request("<165>1 2003-10-11T22:14:15.003Z mymachine.example.com evntslog - ID47 [exampleSDID@32473 iut=\"3\"] BOMAn application event log entry...")
+    );
+    assertNull(message.structuredData());
+    assertEquals("BOMAn application event log entry...", message.message());
+  }
+
+  @Test
+  public void fallback() {
+    final RFC5424ScanningMessageParser parser = new RFC5424ScanningMessageParser(CLOCK);
+    final Message message = parser.parse(
+        request("<165>1 2003-10-11T22:14:15.003Z mymachine.example.com evntslog - ID47 [exampleSDID@32473 iut=\"3\" ] message")
+    );
+    assertEquals(Arrays.asList(element("exampleSDID@32473", "iut", "3")), message.structuredData());
+  }
+}
@@ -0,0 +1,194 @@
+/**
+ * Copyright © 2018 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.netty.syslog;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SyslogForwarderIT {
+  static final int TCP_PORT = 20008;
+  static final int UDP_PORT = 20009;
+
+  static Message message(int i) {
+    return ImmutableSyslogMessage.builder()
+        .type(MessageType.RFC3164)
+        .remoteAddress(InetAddress.getLoopbackAddress())
+        .rawMessage("")
+        .date(LocalDateTime.of(2018, 6, 15, 0, 0, 0))
+        .facility(1)
+        .level(6)
+        .host("host" + (i % 4))
+        .tag("app")
+        .message("message " + i)
+        .build();
+  }
+
+  static void await(UDPSyslogListenerIT.ConcurrentMessageHandler handler, int count) throws InterruptedException {
+    final long start = System.currentTimeMillis();
+    while ((System.currentTimeMillis() - start) < 10000 && handler.messages.size() < count) {
+      Thread.sleep(50);
+    }
+  }
+
+  static void awaitActive(SyslogForwarder forwarder, int count) throws InterruptedException {
+    final long start = System.currentTimeMillis();
+    while ((System.currentTimeMillis() - start) < 10000 && forwarder.activeCount() < count) {
+      Thread.sleep(50);
+    }
+    assertEquals(count, forwarder.activeCount());
+  }
+
+  static int send(SyslogForwarder forwarder, int count) throws InterruptedException {
+    for (int i = 0; i < count; i++) {
+      while (!forwarder.send(message(i))) {
+        Thread.sleep(1);
+      }
+    }
+    return count;
+  }
+
+  @Test
+  public void tcp() throws Exception {
+    final int count = 10000;
+    final UDPSyslogListenerIT.ConcurrentMessageHandler handler = new UDPSyslogListenerIT.ConcurrentMessageHandler();
+    final InetAddress loopback = InetAddress.getLoopbackAddress();
+    try (SyslogForwarder forwarder = SyslogForwarder.builder()
+        .target(new InetSocketAddress(loopback, TCP_PORT))
+        .connectionsPerTarget(2)
+        .selection(SyslogForwarder.Selection.HASH_BY_HOST)
+        .reconnectDelay(10, 50, TimeUnit.MILLISECONDS)
+        .workerThreads(2)
+        .build()
+        .start()) {
+      assertFalse(forwarder.send(message(0)), "Nothing should be connected.");
+      assertEquals(1L, forwarder.rejectedCount());
+
+      // The forwarder keeps reconnecting until the server is up.
+      try (SyslogServer server = SyslogServer.builder()
+          .bindAddress(loopback)
+          .tcp(TCP_PORT, MessageType.RFC3164)
+          .workerThreads(2)
+          .handler(handler)
+          .build()
+          .start()) {
+        awaitActive(forwarder, 2);
+        send(forwarder, count);
+        await(handler, count);
+        assertEquals(count, handler.messages.size());
+        assertEquals(count, forwarder.sentCount());
+        assertEquals(count, server.messageHandler(MessageType.RFC3164).parsedCount(MessageType.RFC3164));
+
+        final Set<String> messages = new HashSet<>();
+        for (Message message : handler.messages) {
+          assertEquals("app", message.tag());
+          messages.add(message.message());
+        }
+        assertEquals(count, messages.size());
+      }
+    }
+  }
+
+  @Test
+  public void udp() throws Exception {
+    final int count = 100;
+    final UDPSyslogListenerIT.ConcurrentMessageHandler handler = new UDPSyslogListenerIT.ConcurrentMessageHandler();
+    final InetAddress loopback = InetAddress.getLoopbackAddress();
+    try (SyslogServer server = SyslogServer.builder()
+        .bindAddress(loopback)
+        .udp(UDP_PORT, MessageType.RFC3164)
+        .workerThreads(1)
+        .udpSockets(1)
+        .handler(handler)
+        .build()
+        .start()) {
+      try (SyslogForwarder forwarder = SyslogForwarder.builder()
+          .target(new InetSocketAddress(loopback, UDP_PORT))
+          .protocol(SyslogForwarder.Protocol.UDP)
+          .workerThreads(1)
+          .build()
+          .start()) {
+        awaitActive(forwarder, SyslogForwarder.DEFAULT_CONNECTIONS_PER_TARGET);
+        for (int i = 0; i < count; i++) {
+          send(forwarder, 1);
+          // Give the receive buffer a chance, udp drops what does not fit.
+          if (i % 10 == 0) {
+            Thread.sleep(1);
+          }
+        }
+        await(handler, count);
+        assertEquals(count, handler.messages.size());
+        assertEquals(count, server.messageHandler(MessageType.RFC3164).parsedCount(MessageType.RFC3164));
+      }
+    }
+  }
+
+  @Test
+  public void reconnectDelay() {
+    final Random random = new Random(1234);
+    for (int attempt = 0; attempt < 100; attempt++) {
+      final long expected = Math.min(30000L, 100L << Math.min(attempt, 20));
+      final long delay = SyslogForwarder.reconnectDelay(attempt, 100, 30000, random);
+      assertTrue(delay <= expected && delay >= expected / 2, "delay " + delay + " for attempt " + attempt);
+    }
+  }
+
+  /**
+   * Closes the channel right after it was found writable, the way it closes when the connection
+   * drops while {@link SyslogForwarder#send(Message)} is running.
+   */
+  static class ClosingChannel extends EmbeddedChannel {
+    @Override
+    public boolean isWritable() {
+      final boolean result = super.isWritable();
+      close();
+      return result;
+    }
+  }
+
+  @Test
+  public void closedWhileSending() {
+    final ClosingChannel channel = new ClosingChannel();
+    final InetSocketAddress target = new InetSocketAddress(InetAddress.getLoopbackAddress(), TCP_PORT);
+    try (SyslogForwarder forwarder = SyslogForwarder.builder()
+        .target(target)
+        .group(channel.eventLoop())
+        .build()) {
+      final SyslogForwarder.Connection connection = forwarder.new Connection(null, target, channel.eventLoop());
+      connection.channel = channel;
+      channel.closeFuture().addListener(f -> connection.channel = null);
+      forwarder.connections.add(connection);
+
+      assertTrue(forwarder.send(message(0)), "Message should be written to the channel that was selected.");
+      assertNull(connection.channel);
+      assertEquals(1L, forwarder.sentCount());
+      assertFalse(forwarder.send(message(1)));
+      assertEquals(1L, forwarder.rejectedCount());
+    }
+  }
+}
@@ -0,0 +1,163 @@
+/**
+ * Copyright © 2018 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.netty.syslog;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.TooLongFrameException;
+import io.netty.util.CharsetUtil;
+import io.netty.util.ResourceLeakDetector;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class SyslogFrameDecoderTest {
+  static ResourceLeakDetector.Level level;
+
+  @BeforeAll
+  public static void paranoid() {
+    level = ResourceLeakDetector.getLevel();
+    ResourceLeakDetector.setLevel(ResourceLeakDetector.Level.PARANOID);
+  }
+
+  @AfterAll
+  public static void restore() {
+    ResourceLeakDetector.setLevel(level);
+  }
+
+  static String octetCounted(String... messages) {
+    final StringBuilder builder = new StringBuilder();
+    for (String message : messages) {
+      builder.append(message.getBytes(CharsetUtil.UTF_8).length).append(' ').append(message);
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Method is used to write the input to the channel in chunks of random size from a pooled
+   * allocator and return the frames that were decoded. Every chunk must be released once the frames
+   * are released.
+   */
+  static List<String> decode(EmbeddedChannel channel, String input, long seed) {
+    final byte[] bytes = input.getBytes(CharsetUtil.UTF_8);
+    final Random random = new Random(seed);
+    final List<ByteBuf> chunks = new ArrayList<>();
+    final List<String> result = new ArrayList<>();
+    int index = 0;
+    while (index < bytes.length) {
+      final int length = Math.min(bytes.length - index, 1 + random.nextInt(16));
+      final ByteBuf chunk = PooledByteBufAllocator.DEFAULT.directBuffer(length).writeBytes(bytes, index, length);
+      chunks.add(chunk);
+      channel.writeInbound(chunk);
+      index += length;
+      ByteBuf frame;
+      while (null != (frame = channel.readInbound())) {
+        result.add(frame.toString(CharsetUtil.UTF_8));
+        frame.release();
+      }
+    }
+    assertFalse(channel.finish(), "Nothing should be left in the channel.");
+    for (ByteBuf chunk : chunks) {
+      assertEquals(0, chunk.refCnt(), "Every chunk should be released.");
+    }
+    return result;
+  }
+
+  static final List<String> MESSAGES = Arrays.asList(
+      "<34>1 2003-10-11T22:14:15.003Z mymachine.example.com su - ID47 - BOM'su root' failed",
+      "<165>1 2003-10-11T22:14:15.003Z mymachine.example.com evntslog - ID47 [exampleSDID@32473 iut=\"3\"] café",
+      "<34>Oct 11 22:14:15 mymachine su: 'su root' failed for lonvick on /dev/pts/8"
+  );
+
+  @Test
+  public void octetCounting() {
+    for (long seed = 0; seed < 25; seed++) {
+      final SyslogFrameDecoder decoder = new SyslogFrameDecoder(1024);
+      final String input = octetCounted(MESSAGES.toArray(new String[0]));
+      assertEquals(MESSAGES, decode(new EmbeddedChannel(decoder), input, seed));
+      assertEquals(SyslogFrameDecoder.Framing.OCTET_COUNTING, decoder.framing);
+    }
+  }
+
+  @Test
+  public void nonTransparent() {
+    for (long seed = 0; seed < 25; seed++) {
+      final SyslogFrameDecoder decoder = new SyslogFrameDecoder(1024);
+      final String input = String.join("\n", MESSAGES) + "\n";
+      assertEquals(MESSAGES, decode(new EmbeddedChannel(decoder), input, seed));
+      assertEquals(SyslogFrameDecoder.Framing.NON_TRANSPARENT, decoder.framing);
+    }
+  }
+
+  @Test
+  public void sticky() {
+    // Once the connection is line delimited a message starting with digits is not a length.
+    final List<String> lines = Arrays.asList("<34>Oct 11 22:14:15 mymachine su: first", "12 34 not a length");
+    assertEquals(lines, decode(new EmbeddedChannel(new SyslogFrameDecoder(1024)), String.join("\n", lines) + "\n", 1));
+
+    // Once the connection is octet counted a message starting with digits is not misframed.
+    final List<String> frames = Arrays.asList("<34>1 - - - - - - first", "2018-06-15 has a\nline feed");
+    assertEquals(frames, decode(new EmbeddedChannel(new SyslogFrameDecoder(1024)), octetCounted(frames.toArray(new String[0])), 1));
+  }
+
+  @Test
+  public void trailingLineFeed() {
+    final String input = octetCounted(MESSAGES.get(0)) + "\n" + octetCounted(MESSAGES.get(1)) + "\r\n";
+    assertEquals(MESSAGES.subList(0, 2), decode(new EmbeddedChannel(new SyslogFrameDecoder(1024)), input, 1));
+  }
+
+  @Test
+  public void tooLong() {
+    final EmbeddedChannel channel = new EmbeddedChannel(new SyslogFrameDecoder(32));
+    final ByteBuf input = PooledByteBufAllocator.DEFAULT.buffer();
+    input.writeCharSequence("5 first40 " + new String(new char[40]).replace('\0', 'a') + "6 second", CharsetUtil.UTF_8);
+    assertThrows(TooLongFrameException.class, () -> channel.writeInbound(input));
+    final ByteBuf first = channel.readInbound();
+    assertEquals("first", first.toString(CharsetUtil.UTF_8));
+    first.release();
+    final ByteBuf second = channel.readInbound();
+    assertEquals("second", second.toString(CharsetUtil.UTF_8));
+    second.release();
+    assertNull(channel.readInbound());
+    assertFalse(channel.finish());
+    assertEquals(0, input.refCnt());
+  }
+
+  @Test
+  public void invalidLength() {
+    final EmbeddedChannel channel = new EmbeddedChannel(new SyslogFrameDecoder(1024));
+    final ByteBuf input = PooledByteBufAllocator.DEFAULT.buffer();
+    input.writeCharSequence("5 first5x second", CharsetUtil.UTF_8);
+    assertThrows(CorruptedFrameException.class, () -> channel.writeInbound(input));
+    final ByteBuf first = channel.readInbound();
+    assertEquals("first", first.toString(CharsetUtil.UTF_8));
+    first.release();
+    assertFalse(channel.finish());
+    assertEquals(0, input.refCnt());
+  }
+}
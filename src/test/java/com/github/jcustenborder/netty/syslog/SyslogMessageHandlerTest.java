@@ -0,0 +1,217 @@
+/**
+ * Copyright © 2018 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.netty.syslog;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.CharsetUtil;
+import io.netty.util.concurrent.DefaultEventExecutorGroup;
+import io.netty.util.concurrent.EventExecutorGroup;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import io.netty.util.concurrent.RejectedExecutionHandlers;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DynamicTest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestFactory;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.nio.charset.CodingErrorAction;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.DynamicTest.dynamicTest;
+
+public class SyslogMessageHandlerTest {
+  SyslogMessageHandler handler;
+
+  @BeforeEach
+  public void setup() {
+    this.handler = new SyslogMessageHandler();
+  }
+
+  static SyslogRequest request(String rawMessage) {
+    return ImmutableSyslogRequest.builder()
+        .receivedDate(LocalDateTime.now())
+        .remoteAddress(InetAddress.getLoopbackAddress())
+        .rawMessage(rawMessage)
+        .build();
+  }
+
+  @TestFactory
+  public Stream<DynamicTest> detect() {
+    return Stream.of("cef", "rfc3164", "rfc5424")
+        .map(p -> new File("src/test/resources/com/github/jcustenborder/netty/syslog", p))
+        .flatMap(p -> Arrays.stream(p.listFiles(f -> f.getName().endsWith(".json"))))
+        .map(file -> dynamicTest(file.getName(), () -> {
+          final TestCase testCase = ObjectMapperFactory.INSTANCE.readValue(file, TestCase.class);
+          final SyslogMessageHandler handler = new SyslogMessageHandler();
+          final Message message = handler.parse(request(testCase.input));
+          assertNotNull(message, "message should not be null.");
+          assertEquals(testCase.expected.type(), message.type());
+          assertEquals(testCase.expected.type(), MessageTypeDetector.detect(testCase.input));
+          assertEquals(testCase.expected.type(), MessageTypeDetector.detect(Unpooled.wrappedBuffer(testCase.input.getBytes(CharsetUtil.UTF_8))));
+          assertEquals(1L, handler.parsedCount(testCase.expected.type()));
+          assertEquals(0L, handler.fallbackCount());
+        }));
+  }
+
+  @Test
+  public void fallback() {
+    // Looks like CEF but the marker is in the message.
+    final Message message = this.handler.parse(request("Mar 12 12:00:08 server2 rcd[308]: forwarding CEF:0|a|b"));
+    assertNotNull(message);
+    assertEquals(MessageType.RFC3164, message.type());
+    assertEquals(1L, this.handler.fallbackCount());
+    assertEquals(1L, this.handler.parsedCount(MessageType.RFC3164));
+  }
+
+  @Test
+  public void unparseable() {
+    assertNull(this.handler.parse(request("<foo")));
+    assertEquals(1L, this.handler.fallbackCount());
+    assertEquals(1L, this.handler.parsedCount(MessageType.UNKNOWN));
+  }
+
+  @Test
+  public void format() {
+    final SyslogMessageHandler handler = new SyslogMessageHandler(ParseExecution.inline(), MessageType.RFC3164);
+    // Detection picks CEF for this message, the hint sends it straight to the RFC 3164 parser.
+    final Message message = handler.parse(request("Mar 12 12:00:08 server2 rcd[308]: forwarding CEF:0|a|b"));
+    assertNotNull(message);
+    assertEquals(MessageType.RFC3164, message.type());
+    assertEquals(0L, handler.fallbackCount());
+    assertEquals(1L, handler.parsedCount(MessageType.RFC3164));
+  }
+
+  static SyslogRequest numbered(int i) {
+    return request(String.format("<34>Oct 11 22:14:15 mymachine su: message %s", i));
+  }
+
+  static void assertOrdered(EmbeddedChannel channel, int count) {
+    for (int i = 0; i < count; i++) {
+      final Message message = channel.readInbound();
+      assertNotNull(message, "message " + i + " should not be null.");
+      assertEquals("message " + i, message.message());
+    }
+    assertNull(channel.readInbound());
+  }
+
+  @Test
+  public void inline() {
+    final EmbeddedChannel channel = new EmbeddedChannel(this.handler);
+    for (int i = 0; i < 10; i++) {
+      channel.pipeline().fireChannelRead(numbered(i));
+    }
+    assertOrdered(channel, 10);
+    assertEquals(0L, this.handler.queueDepth());
+  }
+
+  @Test
+  public void offload() {
+    final SyslogMessageHandler handler = new SyslogMessageHandler(ParseExecution.offload(ImmediateEventExecutor.INSTANCE));
+    final EmbeddedChannel channel = new EmbeddedChannel(handler);
+    for (int i = 0; i < 10; i++) {
+      channel.pipeline().fireChannelRead(numbered(i));
+    }
+    assertNull(channel.readInbound(), "Results should be delivered on the event loop.");
+    assertEquals(10L, handler.queueDepth());
+    channel.runPendingTasks();
+    assertOrdered(channel, 10);
+    assertEquals(0L, handler.queueDepth());
+  }
+
+  @Test
+  public void auto() {
+    final SyslogMessageHandler handler = new SyslogMessageHandler(ParseExecution.auto(ImmediateEventExecutor.INSTANCE, 2));
+    final EmbeddedChannel channel = new EmbeddedChannel(handler);
+    for (int i = 0; i < 5; i++) {
+      channel.pipeline().fireChannelRead(numbered(i));
+    }
+    assertEquals(3L, handler.queueDepth(), "Requests over the threshold should be offloaded.");
+    channel.pipeline().fireChannelReadComplete();
+    channel.runPendingTasks();
+    assertOrdered(channel, 5);
+
+    channel.pipeline().fireChannelRead(numbered(0));
+    assertEquals(0L, handler.queueDepth(), "Next read should be parsed inline.");
+    assertOrdered(channel, 1);
+  }
+
+  @Test
+  public void rejected() throws InterruptedException {
+    final EventExecutorGroup group = new DefaultEventExecutorGroup(1, null, 16, RejectedExecutionHandlers.reject());
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    group.execute(() -> {
+      started.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    started.await();
+
+    final SyslogMessageHandler handler = new SyslogMessageHandler(ParseExecution.offload(group));
+    final EmbeddedChannel channel = new EmbeddedChannel(handler);
+    for (int i = 0; i < 20; i++) {
+      channel.pipeline().fireChannelRead(numbered(i));
+    }
+    assertEquals(4L, handler.rejectedCount());
+    assertEquals(16L, handler.queueDepth());
+
+    release.countDown();
+    assertTrue(group.shutdownGracefully(0, 10, TimeUnit.SECONDS).await(10, TimeUnit.SECONDS));
+    channel.runPendingTasks();
+    assertOrdered(channel, 16);
+    assertEquals(0L, handler.queueDepth());
+  }
+
+  @Test
+  public void parseFailure() {
+    final MemoryBudget budget = MemoryBudgetTest.budget(MemoryBudget.DatagramPolicy.DROP);
+    final SyslogMessageHandler handler = new SyslogMessageHandler(
+        Arrays.asList(new RFC3164MessageParser()), ParseExecution.offload(ImmediateEventExecutor.INSTANCE), MessageType.RFC3164, budget
+    );
+    final EmbeddedChannel channel = new EmbeddedChannel(handler);
+    final BufferedSyslogRequest request = new BufferedSyslogRequest(
+        Unpooled.copiedBuffer("<34>Foo 99 99:99:99 host app: msg", CharsetUtil.UTF_8),
+        LocalDateTime.now(),
+        InetAddress.getLoopbackAddress(),
+        CharsetUtil.UTF_8,
+        CodingErrorAction.REPLACE
+    );
+    channel.pipeline().fireChannelRead(request);
+    assertEquals(1L, handler.queueDepth());
+    channel.runPendingTasks();
+    assertThrows(NullPointerException.class, channel::checkException);
+    assertNull(channel.readInbound());
+    assertEquals(0L, handler.queueDepth());
+    assertEquals(0, SyslogMessageHandler.state(channel.pipeline().firstContext()).inFlight);
+    assertEquals(0L, budget.used());
+    assertEquals(0, request.refCnt());
+    channel.finish();
+  }
+}
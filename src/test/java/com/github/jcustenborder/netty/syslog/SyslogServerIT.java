@@ -0,0 +1,77 @@
+/**
+ * Copyright © 2018 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.netty.syslog;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class SyslogServerIT {
+  static final int TCP_PORT = 20004;
+  static final int UDP_PORT = 20005;
+  static final String CEF = "<14>Jun 15 00:00:00 host CEF:0|Security|threatmanager|1.0|100|worm successfully stopped|10|src=10.0.0.1 dst=2.1.2.2 spt=1232";
+
+  @Test
+  public void roundtrip() throws Exception {
+    final int count = 100;
+    final UDPSyslogListenerIT.ConcurrentMessageHandler handler = new UDPSyslogListenerIT.ConcurrentMessageHandler();
+    final InetAddress loopback = InetAddress.getLoopbackAddress();
+    try (SyslogServer server = SyslogServer.builder()
+        .bindAddress(loopback)
+        .tcp(TCP_PORT)
+        .udp(UDP_PORT, MessageType.CEF)
+        .workerThreads(2)
+        .udpSockets(2)
+        .handler(handler)
+        .build()
+        .start()) {
+
+      try (Socket socket = new Socket(loopback, TCP_PORT)) {
+        final OutputStream outputStream = socket.getOutputStream();
+        for (int i = 0; i < count; i++) {
+          final String message = String.format("<14>Jun 15 00:00:00 host app: message %s", i);
+          final byte[] data = message.getBytes(StandardCharsets.UTF_8);
+          outputStream.write(String.format("%s ", data.length).getBytes(StandardCharsets.UTF_8));
+          outputStream.write(data);
+        }
+        outputStream.flush();
+      }
+
+      try (DatagramSocket socket = new DatagramSocket()) {
+        final byte[] data = CEF.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < count; i++) {
+          socket.send(new DatagramPacket(data, data.length, loopback, UDP_PORT));
+        }
+      }
+
+      final long start = System.currentTimeMillis();
+      while ((System.currentTimeMillis() - start) < 5000 && handler.messages.size() < count * 2) {
+        Thread.sleep(100);
+      }
+      assertEquals(count * 2, handler.messages.size());
+      assertEquals(count, server.messageHandler(null).parsedCount(MessageType.RFC3164));
+      assertEquals(count, server.messageHandler(MessageType.CEF).parsedCount(MessageType.CEF));
+      assertEquals(0L, server.messageHandler(MessageType.CEF).fallbackCount());
+    }
+  }
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright © 2018 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.netty.syslog;
+
+import io.netty.handler.ssl.JdkSslContext;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
+import io.netty.handler.ssl.util.SelfSignedCertificate;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SyslogTlsIT {
+  static final int PORT = 20006;
+
+  SelfSignedCertificate certificate;
+  UDPSyslogListenerIT.ConcurrentMessageHandler handler;
+  SyslogServer server;
+  SSLSocketFactory socketFactory;
+
+  @BeforeEach
+  public void setup() throws Exception {
+    this.certificate = new SelfSignedCertificate();
+    final SslContext sslContext = SyslogTls.forServer(this.certificate.certificate(), this.certificate.privateKey()).build();
+    this.handler = new UDPSyslogListenerIT.ConcurrentMessageHandler();
+    this.server = SyslogServer.builder()
+        .bindAddress(InetAddress.getLoopbackAddress())
+        .tls(PORT, sslContext)
+        .workerThreads(2)
+        .handler(this.handler)
+        .build()
+        .start();
+    final SslContext clientContext = SslContextBuilder.forClient()
+        .sslProvider(SslProvider.JDK)
+        .trustManager(InsecureTrustManagerFactory.INSTANCE)
+        .build();
+    this.socketFactory = ((JdkSslContext) clientContext).context().getSocketFactory();
+  }
+
+  @AfterEach
+  public void close() {
+    this.server.close();
+    this.certificate.delete();
+  }
+
+  byte[] send(int count) throws Exception {
+    try (SSLSocket socket = (SSLSocket) this.socketFactory.createSocket(InetAddress.getLoopbackAddress(), PORT)) {
+      socket.startHandshake();
+      final OutputStream outputStream = socket.getOutputStream();
+      for (int i = 0; i < count; i++) {
+        final byte[] data = String.format("<14>1 2018-06-15T00:00:00.000Z host app - - - message %s", i)
+            .getBytes(StandardCharsets.UTF_8);
+        // rfc 5425 frames every message with its length.
+        outputStream.write(String.format("%s ", data.length).getBytes(StandardCharsets.UTF_8));
+        outputStream.write(data);
+      }
+      outputStream.flush();
+      return socket.getSession().getId();
+    }
+  }
+
+  @Test
+  public void roundtrip() throws Exception {
+    final int count = 100;
+    final byte[] first = send(count);
+    final byte[] second = send(count);
+    assertTrue(Arrays.equals(first, second), "Second connection should resume the session.");
+
+    final long start = System.currentTimeMillis();
+    while ((System.currentTimeMillis() - start) < 5000 && this.handler.messages.size() < count * 2) {
+      Thread.sleep(100);
+    }
+    assertEquals(count * 2, this.handler.messages.size());
+    assertEquals(count * 2, this.server.messageHandler(null).parsedCount(MessageType.RFC5424));
+  }
+}
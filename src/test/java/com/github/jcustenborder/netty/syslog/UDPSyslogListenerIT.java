@@ -0,0 +1,81 @@
+/**
+ * Copyright © 2018 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.netty.syslog;
+
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.MultithreadEventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import org.junit.jupiter.api.Test;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class UDPSyslogListenerIT {
+  static final int PORT = 20003;
+
+  @ChannelHandler.Sharable
+  static class ConcurrentMessageHandler extends SimpleChannelInboundHandler<Message> {
+    final Queue<Message> messages = new ConcurrentLinkedQueue<>();
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext channelHandlerContext, Message message) throws Exception {
+      messages.add(message);
+    }
+  }
+
+  @Test
+  public void roundtrip() throws Exception {
+    final int count = 100;
+    final int senders = 4;
+    final ConcurrentMessageHandler handler = new ConcurrentMessageHandler();
+    final InetAddress loopback = InetAddress.getLoopbackAddress();
+    try (UDPSyslogListener listener = UDPSyslogListener.builder()
+        .bindAddress(loopback)
+        .port(PORT)
+        .sockets(2)
+        .handler(handler)
+        .build()
+        .start()) {
+      assertEquals(NativeTransport.EPOLL ? 2 : 1, listener.channels().size());
+      assertEquals(listener.channels().size(), ((MultithreadEventLoopGroup) listener.group).executorCount(),
+          "Owned group should have a thread per socket.");
+
+      // Each sender has its own source port so SO_REUSEPORT can spread them across the sockets.
+      for (int s = 0; s < senders; s++) {
+        try (DatagramSocket socket = new DatagramSocket()) {
+          for (int i = 0; i < count; i++) {
+            final byte[] data = String.format("<14>Jun 15 00:00:00 host app[%s]: message %s", s, i)
+                .getBytes(StandardCharsets.UTF_8);
+            socket.send(new DatagramPacket(data, data.length, loopback, PORT));
+          }
+        }
+      }
+
+      final long start = System.currentTimeMillis();
+      while ((System.currentTimeMillis() - start) < 5000 && handler.messages.size() < count * senders) {
+        Thread.sleep(100);
+      }
+      assertEquals(count * senders, handler.messages.size());
+    }
+  }
+}